@@ -0,0 +1,51 @@
+package com.rajala.bluetooth;
+
+import android.bluetooth.BluetoothSocket;
+
+import com.rajala.can.transport.ITransport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Bluetooth RFCOMM transport, the address is the name of a bonded device
+public class BluetoothTransport implements ITransport {
+
+    private final BluetoothInterface btInterface = new BluetoothInterface();
+    private volatile InputStream input;
+    private volatile OutputStream output;
+
+    public void connect(String address) throws IOException {
+        close();
+        btInterface.connect(address);
+        BluetoothSocket btSocket = btInterface.getSocket();
+        if (btSocket == null) {
+            throw new IOException("Closed while connecting");
+        }
+        try {
+            input = btSocket.getInputStream();
+            output = btSocket.getOutputStream();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public void close() {
+        input = null;
+        output = null;
+        btInterface.close();
+    }
+
+    public boolean isConnected() {
+        return btInterface.isConnected() && (input != null);
+    }
+
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    public OutputStream getOutputStream() {
+        return output;
+    }
+}
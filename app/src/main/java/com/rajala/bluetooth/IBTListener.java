@@ -1,6 +0,0 @@
-package com.rajala.bluetooth;
-
-public interface IBTListener {
-    void onBTConnected(String deviceName);
-    void onBTDisconnected();
-}
@@ -0,0 +1,15 @@
+package com.rajala.candroid;
+
+import android.util.Log;
+
+import com.rajala.can.log.ILogSink;
+
+/**
+ * Forwards the CAN library's log lines to logcat.
+ */
+public class AndroidLogSink implements ILogSink {
+
+    public void log(int priority, String tag, String msg) {
+        Log.println(priority, tag, msg);
+    }
+}
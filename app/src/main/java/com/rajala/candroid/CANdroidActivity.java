@@ -4,32 +4,42 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.support.v4.app.FragmentActivity;
-import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.ExpandableListView;
+import android.widget.TextView;
 import android.widget.ToggleButton;
 
 
+import com.rajala.bluetooth.BluetoothTransport;
 import com.rajala.bluetooth.DeviceListFrag;
 import com.rajala.can.CANMessage;
 import com.rajala.can.ICANListener;
 import com.rajala.can.device.ICANDevice;
 import com.rajala.can.device.bluecan.BlueCAN;
 import com.rajala.can.device.elm327.ELM327;
+import com.rajala.can.log.CANLog;
+import com.rajala.can.record.CANRecorder;
+import com.rajala.can.stats.CANDeviceStats;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Set;
 
-public class CANdroidActivity extends FragmentActivity implements DeviceListFrag.DeviceListFragListener, ICANListener {
+public class CANdroidActivity extends FragmentActivity implements DeviceListFrag.DeviceListFragListener, ICANListener,
+        RenderScheduler.Target {
 
     private static final String TAG = "CANdroid";
+    private static final long STATS_INTERVAL_MS = 1000;
+    // 128 MB of captures at the default segment size, older ones are deleted
+    private static final int MAX_CAPTURE_SEGMENTS = 8;
 
     // BT/CAN device
     ICANDevice canDevice;
+    private CANRecorder recorder;
 
     // Button status
     private long startTime;
@@ -38,33 +48,58 @@ public class CANdroidActivity extends FragmentActivity implements DeviceListFrag
     private Button btn_connect;
 
     // RecvCAN stuff
-    private CANMessage canMessage;
     private boolean newMessage = false;
 
     private LinkedHashMap<String, MessageInfo> myMessages = new LinkedHashMap<>();
     private ArrayList<MessageInfo> messageList = new ArrayList<>();
+    private HistoryStore history = new HistoryStore();
 
     private MyListAdapter listAdapter;
     private ExpandableListView myList;
+    private RenderScheduler renderScheduler;
+
+    // Stats overlay
+    private TextView tv_stats;
+    private CANDeviceStats.Snapshot lastStats;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        CANLog.setSink(new AndroidLogSink());
 
         setContentView(R.layout.activity_candroid);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
         myList = (ExpandableListView)findViewById(R.id.elv_can_messages);
-        listAdapter = new MyListAdapter(getBaseContext(), messageList);
+        listAdapter = new MyListAdapter(getBaseContext(), messageList, history);
         myList.setAdapter(listAdapter);
+        renderScheduler = new RenderScheduler(this);
+        recorder = new CANRecorder(new File(getFilesDir(), "captures"));
+        recorder.setMaxSegments(MAX_CAPTURE_SEGMENTS);
+        recorder.start();
+        tv_stats = (TextView)findViewById(R.id.tv_stats);
 
         expandAll();
     }
 
+    @Override
+    protected void onDestroy() {
+        stateHandler.removeCallbacks(updateStats);
+        renderScheduler.stop();
+        if (canDevice != null) {
+            recorder.detach(canDevice);
+            canDevice.stop();
+            canDevice = null;
+        }
+        recorder.stop();
+        super.onDestroy();
+    }
+
     public void onStart(View v) {
         ToggleButton tbtn = (ToggleButton)v;
         on = tbtn.isChecked();
-        startTime = System.currentTimeMillis();
+        startTime = System.nanoTime();
+        listAdapter.setStartTime(startTime);
         if (on) {
             clearAll();
         }
@@ -79,6 +114,8 @@ public class CANdroidActivity extends FragmentActivity implements DeviceListFrag
             recvMode = Constants.MODE_OVERWRITE;
             btn.setText("Mode: Overwrite");
         }
+        renderScheduler.setMode(recvMode);
+        listAdapter.setMode(recvMode);
     }
 
     public void onConnect(View v) {
@@ -89,69 +126,65 @@ public class CANdroidActivity extends FragmentActivity implements DeviceListFrag
 
     public void onDeviceListSelect(String deviceName) {
         if (canDevice != null) {
+            recorder.detach(canDevice);
             canDevice.disconnect();
+            canDevice.stop();
         }
         if (deviceName.contains("OBD")) {
-            canDevice = new ELM327(stateHandler);
+            canDevice = new ELM327(new HandlerDeviceListener(stateHandler), new BluetoothTransport(),
+                    ELM327.DEFAULT_DEVICE_NAME);
             canDevice.addCANListener(this);
         } else {
-            canDevice = new BlueCAN(stateHandler);
+            canDevice = new BlueCAN(new HandlerDeviceListener(stateHandler), new BluetoothTransport(),
+                    BlueCAN.DEFAULT_DEVICE_NAME);
             canDevice.addCANListener(this);
         }
+        recorder.attach(canDevice);
+        renderScheduler.setLatencyHistogram(canDevice.getLatencyStats().getDispatchToRender());
+
+        lastStats = canDevice.getStats().snapshot();
+        tv_stats.setVisibility(View.VISIBLE);
+        stateHandler.removeCallbacks(updateStats);
+        stateHandler.postDelayed(updateStats, STATS_INTERVAL_MS);
     }
 
+    // Refreshes the overlay with the rates over the last interval
+    private final Runnable updateStats = new Runnable() {
+        @Override
+        public void run() {
+            if (canDevice == null) {
+                return;
+            }
+            CANDeviceStats.Snapshot stats = canDevice.getStats().snapshot();
+            tv_stats.setText(stats.delta(lastStats).toString());
+            lastStats = stats;
+            stateHandler.postDelayed(this, STATS_INTERVAL_MS);
+        }
+    };
+
     public void onCANMessage(CANMessage msg) {
-        Log.d(TAG, "onCANMessage");
-        canMessage = msg;
         if (on) {
-            final int id = canMessage.getID();
-            final short[] data = canMessage.getBytes();
-            switch (recvMode) {
-                case Constants.MODE_OVERWRITE:
-                    Log.d(TAG, "Overwriting mode:");
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            long timeDiff = System.currentTimeMillis() - startTime;
-                            long secs = timeDiff / 1000;
-                            long millis = timeDiff % 1000;
-                            String timestamp = String.format("t=%d.%03d", secs, millis);
-                            String hexData = arrayToHexString(data);
-                            String idStr = String.format("%03X", id);
-                            overwriteData(idStr, hexData, timestamp);
-                            listAdapter.notifyDataSetChanged();
-                        }
-                    });
-                    break;
-                case Constants.MODE_APPEND:
-                    Log.d(TAG, "Appending mode:");
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            long timeDiff = System.currentTimeMillis() - startTime;
-                            long secs = timeDiff / 1000;
-                            long millis = timeDiff % 1000;
-                            String timestamp = String.format("t=%d.%03d", secs, millis);
-                            String hexData = arrayToHexString(data);
-                            String idStr = String.format("%03X", id);
-                            appendData(timestamp + " " + idStr + " " + hexData, "", "");
-                            listAdapter.notifyDataSetChanged();
-                        }
-                    });
-                    break;
-            }
+            renderScheduler.onCANMessage(msg);
         }
     }
 
-    private String arrayToHexString(short[] array) {
-        StringBuilder hex = new StringBuilder();
-        hex.append("[");
-        for (int i = 0; i < array.length; i++) {
-            hex.append(String.format("%02X,", (array[i] & 0xFF)));
+    // === Render callbacks, once per display frame on the UI thread ===
+
+    public void onRenderFrame(int id, boolean extended, long data, int dlc, long timestamp) {
+        switch (recvMode) {
+            case Constants.MODE_OVERWRITE:
+                overwriteData(FrameFormat.id(id, extended), FrameFormat.data(data, dlc),
+                        FrameFormat.timestamp(timestamp, startTime));
+                break;
+            case Constants.MODE_APPEND:
+                // Stored raw, the adapter formats only the rows on screen
+                history.append(id, extended, data, dlc, timestamp);
+                break;
         }
-        hex.deleteCharAt(hex.length() - 1);
-        hex.append("]");
-        return hex.toString();
+    }
+
+    public void onRenderComplete() {
+        listAdapter.notifyDataSetChanged();
     }
 
     private void expandAll() {
@@ -167,6 +200,8 @@ public class CANdroidActivity extends FragmentActivity implements DeviceListFrag
             clearData(message);
         }
         messageList.clear();
+        history.clear();
+        renderScheduler.clear();
         listAdapter.notifyDataSetChanged();
     }
 
@@ -210,29 +245,6 @@ public class CANdroidActivity extends FragmentActivity implements DeviceListFrag
         messageInfo.setDataList(dataList);
     }
 
-    private void appendData(String message, String data, String timestamp){
-
-        //check the hash map if the group already exists
-        MessageInfo messageInfo = myMessages.get(message);
-        //add the group if doesn't exists
-        if (messageInfo == null){
-            messageInfo = new MessageInfo();
-            messageInfo.setID(message);
-            myMessages.put(message, messageInfo);
-            messageList.add(messageInfo);
-        }
-
-        //get the children for the group
-        ArrayList<DataInfo> dataList = messageInfo.getDataList();
-
-        //create a new child and add that to the group
-        DataInfo dataInfo = new DataInfo();
-        dataInfo.setTimestamp(timestamp);
-        dataInfo.setData(data);
-        dataList.add(dataInfo);
-        messageInfo.setDataList(dataList);
-    }
-
     public final Handler stateHandler = new Handler() {
         @Override
         public void handleMessage(Message msg) {
@@ -0,0 +1,32 @@
+package com.rajala.candroid;
+
+// Display strings for received frames
+public final class FrameFormat {
+
+    private FrameFormat() {
+    }
+
+    public static String timestamp(long timestamp, long startTime) {
+        long timeDiff = (timestamp - startTime) / 1000000;
+        long secs = timeDiff / 1000;
+        long millis = timeDiff % 1000;
+        return String.format("t=%d.%03d", secs, millis);
+    }
+
+    public static String id(int id, boolean extended) {
+        return String.format(extended ? "%08X" : "%03X", id);
+    }
+
+    public static String data(long data, int dlc) {
+        StringBuilder hex = new StringBuilder();
+        hex.append("[");
+        for (int i = 0; i < dlc; i++) {
+            hex.append(String.format("%02X,", (data >>> (56 - 8*i)) & 0xFF));
+        }
+        if (dlc > 0) {
+            hex.deleteCharAt(hex.length() - 1);
+        }
+        hex.append("]");
+        return hex.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.rajala.candroid;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.device.ICANDeviceListener;
+
+/**
+ * Posts device connection events to a Handler as BLUETOOTH_CONNECTED and BLUETOOTH_DISCONNECTED
+ * messages carrying the device name, so they are handled on the Handler's thread.
+ */
+public class HandlerDeviceListener implements ICANDeviceListener {
+
+    private final Handler handler;
+
+    public HandlerDeviceListener(Handler handler) {
+        this.handler = handler;
+    }
+
+    public void onDeviceConnected(ICANDevice device, String deviceName) {
+        send(Constants.BLUETOOTH_CONNECTED, deviceName);
+    }
+
+    public void onDeviceDisconnected(ICANDevice device) {
+        send(Constants.BLUETOOTH_DISCONNECTED, "none");
+    }
+
+    private void send(int what, String deviceName) {
+        Message msg = handler.obtainMessage(what);
+        Bundle bundle = new Bundle();
+        bundle.putString("deviceName", deviceName);
+        msg.setData(bundle);
+        handler.sendMessage(msg);
+    }
+}
@@ -0,0 +1,155 @@
+package com.rajala.candroid;
+
+import com.rajala.can.util.IntObjectMap;
+
+/**
+ * Bounded frame history for append mode, grouped by ID.
+ *
+ * Every ID gets fixed capacity primitive rings for timestamps, payloads and DLCs, and at most
+ * maxIds IDs are tracked, so memory stays flat however long a capture runs. Rows are kept as raw
+ * values and only formatted when the list shows them. The store is not thread safe, it is written
+ * and read on the UI thread.
+ */
+public class HistoryStore {
+
+    // When a ring is full, overwrite its oldest row or drop the new frame
+    public static final int EVICT_OLDEST = 0;
+    public static final int EVICT_NEWEST = 1;
+
+    public static final int DEFAULT_MAX_IDS = 256;
+    public static final int DEFAULT_CAPACITY_PER_ID = 1024;
+
+    private static final int EXTENDED_KEY = 1 << 29;
+
+    private static class Ring {
+        final long[] timestamps;
+        final long[] payloads;
+        final byte[] dlcs;
+        int head;
+        int count;
+
+        Ring(int capacity) {
+            timestamps = new long[capacity];
+            payloads = new long[capacity];
+            dlcs = new byte[capacity];
+        }
+    }
+
+    private final int maxIds;
+    private final int capacityPerId;
+    private int evictionPolicy;
+
+    // Groups in order of first appearance
+    private final int[] ids;
+    private final Ring[] rings;
+    private int idCount;
+    private final IntObjectMap<Ring> ringsById;
+
+    private long evictedRows;
+    private long droppedRows;
+
+    public HistoryStore() {
+        this(DEFAULT_MAX_IDS, DEFAULT_CAPACITY_PER_ID, EVICT_OLDEST);
+    }
+
+    public HistoryStore(int maxIds, int capacityPerId, int evictionPolicy) {
+        this.maxIds = maxIds;
+        this.capacityPerId = capacityPerId;
+        this.evictionPolicy = evictionPolicy;
+        ids = new int[maxIds];
+        rings = new Ring[maxIds];
+        ringsById = new IntObjectMap<>(maxIds);
+    }
+
+    public void setEvictionPolicy(int evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public void append(int id, boolean extended, long data, int dlc, long timestamp) {
+
+        int key = extended ? (id | EXTENDED_KEY) : id;
+        Ring ring = ringsById.get(key);
+        if (ring == null) {
+            if (idCount == maxIds) {
+                droppedRows++;
+                return;
+            }
+            ring = new Ring(capacityPerId);
+            ringsById.put(key, ring);
+            ids[idCount] = key;
+            rings[idCount] = ring;
+            idCount++;
+        }
+
+        if (ring.count == capacityPerId) {
+            if (evictionPolicy == EVICT_NEWEST) {
+                droppedRows++;
+                return;
+            }
+            evictedRows++;
+        } else {
+            ring.count++;
+        }
+        ring.timestamps[ring.head] = timestamp;
+        ring.payloads[ring.head] = data;
+        ring.dlcs[ring.head] = (byte)dlc;
+        ring.head = (ring.head + 1) % capacityPerId;
+    }
+
+    // Keeps the groups and their memory, forgets the rows
+    public void clear() {
+        for (int i = 0; i < idCount; i++) {
+            rings[i].head = 0;
+            rings[i].count = 0;
+        }
+        evictedRows = 0;
+        droppedRows = 0;
+    }
+
+    // === Queries, group and row indices as used by the list adapter ===
+
+    public int getIdCount() {
+        return idCount;
+    }
+
+    public int getID(int group) {
+        return ids[group] & ~EXTENDED_KEY;
+    }
+
+    public boolean isExtended(int group) {
+        return (ids[group] & EXTENDED_KEY) != 0;
+    }
+
+    public int getRowCount(int group) {
+        return rings[group].count;
+    }
+
+    // Row 0 is the oldest frame still held for the group
+    public long getTimestamp(int group, int row) {
+        return rings[group].timestamps[index(rings[group], row)];
+    }
+
+    public long getData(int group, int row) {
+        return rings[group].payloads[index(rings[group], row)];
+    }
+
+    public int getDLC(int group, int row) {
+        return rings[group].dlcs[index(rings[group], row)];
+    }
+
+    public long getEvictedRowCount() {
+        return evictedRows;
+    }
+
+    public long getDroppedRowCount() {
+        return droppedRows;
+    }
+
+    private int index(Ring ring, int row) {
+        int oldest = ring.head - ring.count;
+        if (oldest < 0) {
+            oldest += capacityPerId;
+        }
+        return (oldest + row) % capacityPerId;
+    }
+}
@@ -13,13 +13,32 @@ public class MyListAdapter extends BaseExpandableListAdapter {
     private Context context;
     private ArrayList<MessageInfo> messageList;
 
-    public MyListAdapter(Context context, ArrayList<MessageInfo> messageList) {
+    // Append mode rows are read from the history and formatted only when shown
+    private int mode = Constants.MODE_OVERWRITE;
+    private HistoryStore history;
+    private long startTime;
+
+    public MyListAdapter(Context context, ArrayList<MessageInfo> messageList, HistoryStore history) {
         this.context = context;
         this.messageList = messageList;
+        this.history = history;
+    }
+
+    public void setMode(int mode) {
+        this.mode = mode;
+        notifyDataSetChanged();
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
     }
 
     @Override
     public Object getChild(int groupPosition, int childPosition) {
+        if (mode == Constants.MODE_APPEND) {
+            return FrameFormat.data(history.getData(groupPosition, childPosition),
+                    history.getDLC(groupPosition, childPosition));
+        }
         ArrayList<DataInfo> dataList = messageList.get(groupPosition).getDataList();
         return dataList.get(childPosition);
     }
@@ -33,15 +52,21 @@ public class MyListAdapter extends BaseExpandableListAdapter {
     public View getChildView(int groupPosition, int childPosition, boolean isLastChild,
                              View view, ViewGroup parent) {
 
-        DataInfo dataInfo = (DataInfo)getChild(groupPosition, childPosition);
         if (view == null) {
             LayoutInflater infalInflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
             view = infalInflater.inflate(R.layout.child_row, null);
         }
 
         TextView sequence = (TextView) view.findViewById(R.id.sequence);
-        sequence.setText(dataInfo.getTimestamp().trim());
         TextView childItem = (TextView) view.findViewById(R.id.childItem);
+        if (mode == Constants.MODE_APPEND) {
+            sequence.setText(FrameFormat.timestamp(history.getTimestamp(groupPosition, childPosition), startTime));
+            childItem.setText((String)getChild(groupPosition, childPosition));
+            return view;
+        }
+
+        DataInfo dataInfo = (DataInfo)getChild(groupPosition, childPosition);
+        sequence.setText(dataInfo.getTimestamp().trim());
         childItem.setText(dataInfo.getData().trim());
 
         return view;
@@ -49,17 +74,26 @@ public class MyListAdapter extends BaseExpandableListAdapter {
 
     @Override
     public int getChildrenCount(int groupPosition) {
+        if (mode == Constants.MODE_APPEND) {
+            return history.getRowCount(groupPosition);
+        }
         ArrayList<DataInfo> dataList = messageList.get(groupPosition).getDataList();
         return dataList.size();
     }
 
     @Override
     public Object getGroup(int groupPosition) {
+        if (mode == Constants.MODE_APPEND) {
+            return FrameFormat.id(history.getID(groupPosition), history.isExtended(groupPosition));
+        }
         return messageList.get(groupPosition);
     }
 
     @Override
     public int getGroupCount() {
+        if (mode == Constants.MODE_APPEND) {
+            return history.getIdCount();
+        }
         return messageList.size();
     }
 
@@ -72,13 +106,18 @@ public class MyListAdapter extends BaseExpandableListAdapter {
     public View getGroupView(int groupPosition, boolean isLastChild, View view,
                              ViewGroup parent) {
 
-        MessageInfo messageInfo = (MessageInfo)getGroup(groupPosition);
         if (view == null) {
             LayoutInflater inf = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
             view = inf.inflate(R.layout.group_heading, null);
         }
 
         TextView heading = (TextView) view.findViewById(R.id.heading);
+        if (mode == Constants.MODE_APPEND) {
+            heading.setText((String)getGroup(groupPosition));
+            return view;
+        }
+
+        MessageInfo messageInfo = (MessageInfo)getGroup(groupPosition);
         heading.setText(messageInfo.getID().trim());
 
         return view;
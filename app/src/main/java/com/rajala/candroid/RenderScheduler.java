@@ -0,0 +1,327 @@
+package com.rajala.candroid;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.stats.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces received frames into one UI update per display frame.
+ *
+ * Frames arrive on the device's dispatch thread. In overwrite mode only the latest frame per ID
+ * is kept and the IDs that changed since the last vsync form the dirty set; in append mode frames
+ * are queued up to a fixed budget per display frame. Either way a single callback is scheduled
+ * with the Choreographer (or a 16 ms Handler tick before Jelly Bean), and the target gets the
+ * batch and one completion call on the UI thread, no matter how fast the bus is. The time from
+ * dispatch to the display frame that draws a frame can be recorded into a latency histogram.
+ */
+public class RenderScheduler implements ICANListener {
+
+    public interface Target {
+        void onRenderFrame(int id, boolean extended, long data, int dlc, long timestamp);
+
+        void onRenderComplete();
+    }
+
+    private static final long FRAME_INTERVAL_MS = 16;
+    private static final int INITIAL_TABLE_SIZE = 256;
+    private static final int APPEND_BUDGET = 1024;
+    private static final int EXTENDED_KEY = 1 << 29;
+    private static final int EMPTY = -1;
+
+    private final Target target;
+    private final FrameClock clock;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile int mode = Constants.MODE_OVERWRITE;
+    private volatile LatencyHistogram renderLatency;
+
+    // Written on the dispatch thread, drained on the UI thread, guarded by lock
+    private final Object lock = new Object();
+
+    // Overwrite mode: latest frame per ID, open addressing on the ID key
+    private int[] keys;
+    private long[] latestData;
+    private byte[] latestDlc;
+    private long[] latestTime;
+    private long[] latestDispatch;
+    private boolean[] dirty;
+    private int[] dirtySlots;
+    private int dirtyCount;
+    private int tableSize;
+
+    // Append mode: frames received since the last display frame
+    private final int[] pendingKeys = new int[APPEND_BUDGET];
+    private final long[] pendingData = new long[APPEND_BUDGET];
+    private final byte[] pendingDlc = new byte[APPEND_BUDGET];
+    private final long[] pendingTime = new long[APPEND_BUDGET];
+    private final long[] pendingDispatch = new long[APPEND_BUDGET];
+    private int pendingCount;
+    private long droppedFrames;
+
+    // UI thread copies of one batch
+    private int[] batchKeys = new int[APPEND_BUDGET];
+    private long[] batchData = new long[APPEND_BUDGET];
+    private byte[] batchDlc = new byte[APPEND_BUDGET];
+    private long[] batchTime = new long[APPEND_BUDGET];
+    private long[] batchDispatch = new long[APPEND_BUDGET];
+
+    // Must be created on the UI thread
+    public RenderScheduler(Target target) {
+        this.target = target;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            clock = new ChoreographerClock();
+        } else {
+            clock = new HandlerClock();
+        }
+        allocateTable(INITIAL_TABLE_SIZE);
+    }
+
+    public void setMode(int mode) {
+        synchronized (lock) {
+            this.mode = mode;
+            pendingCount = 0;
+        }
+    }
+
+    // Forgets every frame that has not been rendered yet
+    public void clear() {
+        synchronized (lock) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = EMPTY;
+                dirty[i] = false;
+            }
+            tableSize = 0;
+            dirtyCount = 0;
+            pendingCount = 0;
+        }
+    }
+
+    public void stop() {
+        clock.cancel();
+        scheduled.set(false);
+    }
+
+    // Records dispatch to render latency, e.g. into the device's CANLatencyStats, null stops recording
+    public void setLatencyHistogram(LatencyHistogram histogram) {
+        renderLatency = histogram;
+    }
+
+    // Frames that did not fit into the append budget of a display frame
+    public long getDroppedFrameCount() {
+        synchronized (lock) {
+            return droppedFrames;
+        }
+    }
+
+    // === Dispatch thread ===
+
+    public void onCANMessage(CANMessage msg) {
+
+        int key = msg.isExtended() ? (msg.getID() | EXTENDED_KEY) : msg.getID();
+        long dispatchTime = (renderLatency != null) ? System.nanoTime() : 0;
+        synchronized (lock) {
+            if (mode == Constants.MODE_OVERWRITE) {
+                int slot = findSlot(key);
+                latestData[slot] = msg.getLongData();
+                latestDlc[slot] = (byte)msg.getDLC();
+                latestTime[slot] = msg.getTimestamp();
+                latestDispatch[slot] = dispatchTime;
+                if (!dirty[slot]) {
+                    dirty[slot] = true;
+                    dirtySlots[dirtyCount++] = slot;
+                }
+            } else {
+                if (pendingCount == APPEND_BUDGET) {
+                    droppedFrames++;
+                    return;
+                }
+                pendingKeys[pendingCount] = key;
+                pendingData[pendingCount] = msg.getLongData();
+                pendingDlc[pendingCount] = (byte)msg.getDLC();
+                pendingTime[pendingCount] = msg.getTimestamp();
+                pendingDispatch[pendingCount] = dispatchTime;
+                pendingCount++;
+            }
+        }
+
+        if (!scheduled.getAndSet(true)) {
+            clock.post();
+        }
+    }
+
+    private int findSlot(int key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        if ((tableSize + 1) * 2 > keys.length) {
+            growTable();
+            return findSlot(key);
+        }
+        keys[i] = key;
+        tableSize++;
+        return i;
+    }
+
+    private void growTable() {
+        int[] oldKeys = keys;
+        long[] oldData = latestData;
+        byte[] oldDlc = latestDlc;
+        long[] oldTime = latestTime;
+        long[] oldDispatch = latestDispatch;
+        boolean[] oldDirty = dirty;
+        allocateTable(oldKeys.length * 2);
+        tableSize = 0;
+        dirtyCount = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) {
+                continue;
+            }
+            int slot = findSlot(oldKeys[i]);
+            latestData[slot] = oldData[i];
+            latestDlc[slot] = oldDlc[i];
+            latestTime[slot] = oldTime[i];
+            latestDispatch[slot] = oldDispatch[i];
+            if (oldDirty[i]) {
+                dirty[slot] = true;
+                dirtySlots[dirtyCount++] = slot;
+            }
+        }
+    }
+
+    private void allocateTable(int capacity) {
+        keys = new int[capacity];
+        latestData = new long[capacity];
+        latestDlc = new byte[capacity];
+        latestTime = new long[capacity];
+        latestDispatch = new long[capacity];
+        dirty = new boolean[capacity];
+        dirtySlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            keys[i] = EMPTY;
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // === UI thread ===
+
+    private void render() {
+
+        scheduled.set(false);
+
+        int count;
+        synchronized (lock) {
+            if (mode == Constants.MODE_OVERWRITE) {
+                count = dirtyCount;
+                ensureBatchCapacity(count);
+                for (int i = 0; i < count; i++) {
+                    int slot = dirtySlots[i];
+                    batchKeys[i] = keys[slot];
+                    batchData[i] = latestData[slot];
+                    batchDlc[i] = latestDlc[slot];
+                    batchTime[i] = latestTime[slot];
+                    batchDispatch[i] = latestDispatch[slot];
+                    dirty[slot] = false;
+                }
+                dirtyCount = 0;
+            } else {
+                count = pendingCount;
+                System.arraycopy(pendingKeys, 0, batchKeys, 0, count);
+                System.arraycopy(pendingData, 0, batchData, 0, count);
+                System.arraycopy(pendingDlc, 0, batchDlc, 0, count);
+                System.arraycopy(pendingTime, 0, batchTime, 0, count);
+                System.arraycopy(pendingDispatch, 0, batchDispatch, 0, count);
+                pendingCount = 0;
+            }
+        }
+
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int key = batchKeys[i];
+            target.onRenderFrame(key & ~EXTENDED_KEY, (key & EXTENDED_KEY) != 0, batchData[i], batchDlc[i],
+                    batchTime[i]);
+        }
+        target.onRenderComplete();
+
+        LatencyHistogram histogram = renderLatency;
+        if (histogram != null) {
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                if (batchDispatch[i] != 0) {
+                    histogram.record(now - batchDispatch[i]);
+                }
+            }
+        }
+    }
+
+    private void ensureBatchCapacity(int count) {
+        if (count <= batchKeys.length) {
+            return;
+        }
+        batchKeys = new int[count];
+        batchData = new long[count];
+        batchDlc = new byte[count];
+        batchTime = new long[count];
+        batchDispatch = new long[count];
+    }
+
+    // === Frame sources ===
+
+    private interface FrameClock {
+        void post();
+
+        void cancel();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class ChoreographerClock implements FrameClock, Choreographer.FrameCallback {
+
+        private final Choreographer choreographer = Choreographer.getInstance();
+
+        public void post() {
+            choreographer.postFrameCallback(this);
+        }
+
+        public void cancel() {
+            choreographer.removeFrameCallback(this);
+        }
+
+        public void doFrame(long frameTimeNanos) {
+            render();
+        }
+    }
+
+    private class HandlerClock implements FrameClock, Runnable {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        public void post() {
+            handler.postDelayed(this, FRAME_INTERVAL_MS);
+        }
+
+        public void cancel() {
+            handler.removeCallbacks(this);
+        }
+
+        public void run() {
+            render();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.rajala.benchmarks;
+
+import com.rajala.benchmarks.legacy.LegacyCANMessage;
+import com.rajala.can.CANMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the payload of every corpus frame, scores are frames per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CANMessageBenchmark {
+
+    private CANMessage[] messages;
+    private LegacyCANMessage[] legacyMessages;
+
+    @Setup
+    public void setup() throws IOException {
+        Corpus corpus = Corpus.load();
+        messages = new CANMessage[Corpus.FRAMES];
+        legacyMessages = new LegacyCANMessage[Corpus.FRAMES];
+        for (int n = 0; n < Corpus.FRAMES; n++) {
+            messages[n] = new CANMessage();
+            messages[n].set(1, corpus.ids[n], corpus.extended[n], corpus.data[n], corpus.dlc[n], 0);
+            legacyMessages[n] = new LegacyCANMessage();
+            legacyMessages[n].setBytes(messages[n].getBytes());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long getLongData() {
+        long sum = 0;
+        for (CANMessage msg : messages) {
+            sum += msg.getLongData();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long getLongDataLegacy() {
+        long sum = 0;
+        for (LegacyCANMessage msg : legacyMessages) {
+            sum += msg.getLongData();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long getByte() {
+        long sum = 0;
+        for (CANMessage msg : messages) {
+            for (int i = 0; i < msg.getDLC(); i++) {
+                sum += msg.getByte(i);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long getBytesLegacy() {
+        long sum = 0;
+        for (LegacyCANMessage msg : legacyMessages) {
+            short[] bytes = msg.getBytes();
+            for (int i = 0; i < bytes.length; i++) {
+                sum += bytes[i];
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,157 @@
+package com.rajala.benchmarks;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.device.bluecan.BlueCANCodec;
+import com.rajala.can.record.CANTraceReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The frames every benchmark works on, and the same frames as each adapter prints them.
+ *
+ * By default this is a synthetic powertrain bus: a fixed schedule of 11 and 29 bit IDs at their
+ * usual periods, with rolling counters, checksums and slowly drifting signals in the payload. A
+ * recorded capture can be used instead by pointing the {@code corpus} system property at a
+ * {@code .cantrace} segment written by CANRecorder; its first {@link #FRAMES} records are taken,
+ * repeated if it is shorter.
+ */
+public class Corpus {
+
+    public static final int FRAMES = 10000;
+
+    // ID, extended, DLC and period in ms of every frame on the synthetic bus
+    private static final int[][] SCHEDULE = {
+            { 0x0C9, 0, 8, 10 },
+            { 0x0F1, 0, 4, 10 },
+            { 0x130, 0, 8, 20 },
+            { 0x1A0, 0, 8, 20 },
+            { 0x1E5, 0, 7, 20 },
+            { 0x2C3, 0, 8, 50 },
+            { 0x348, 0, 6, 50 },
+            { 0x3E9, 0, 8, 100 },
+            { 0x4C1, 0, 8, 100 },
+            { 0x4F1, 0, 3, 500 },
+            { 0x7E8, 0, 8, 100 },
+            { 0x18FEF100, 1, 8, 100 },
+            { 0x0CF00400, 1, 8, 20 },
+            { 0x18DAF110, 1, 8, 200 },
+            { 0x18FEEE00, 1, 8, 1000 },
+    };
+
+    private static final long SEED = 0x43414E;
+
+    public final int[] ids = new int[FRAMES];
+    public final boolean[] extended = new boolean[FRAMES];
+    public final long[] data = new long[FRAMES];
+    public final int[] dlc = new int[FRAMES];
+
+    private Corpus() {
+    }
+
+    public static Corpus load() throws IOException {
+        String path = System.getProperty("corpus");
+        return (path != null) ? fromCapture(new File(path)) : synthetic();
+    }
+
+    // Frames in the order the schedule puts them on the bus
+    public static Corpus synthetic() {
+
+        Corpus corpus = new Corpus();
+        Random random = new Random(SEED);
+        long[] next = new long[SCHEDULE.length];
+        long[] signal = new long[SCHEDULE.length];
+        int[] counter = new int[SCHEDULE.length];
+        for (int i = 0; i < SCHEDULE.length; i++) {
+            next[i] = random.nextInt(SCHEDULE[i][3]);
+            signal[i] = random.nextLong();
+        }
+
+        for (int n = 0; n < FRAMES; n++) {
+            int due = 0;
+            for (int i = 1; i < SCHEDULE.length; i++) {
+                if (next[i] < next[due]) {
+                    due = i;
+                }
+            }
+            next[due] += SCHEDULE[due][3];
+
+            // Signals drift in the middle bytes, the first byte counts and the last one is a checksum
+            int length = SCHEDULE[due][2];
+            signal[due] += (long)(random.nextGaussian() * 256) << 24;
+            counter[due] = (counter[due] + 1) & 0xF;
+            long payload = (signal[due] & 0x00FFFFFFFFFFFFFFL) | ((long)counter[due] << 56);
+            payload &= -1L << (64 - 8*(length - 1));
+            int checksum = 0;
+            for (int b = 0; b < length - 1; b++) {
+                checksum += (int)(payload >>> (56 - 8*b)) & 0xFF;
+            }
+            payload |= (long)(checksum & 0xFF) << (56 - 8*(length - 1));
+
+            corpus.ids[n] = SCHEDULE[due][0];
+            corpus.extended[n] = SCHEDULE[due][1] != 0;
+            corpus.dlc[n] = length;
+            corpus.data[n] = payload;
+        }
+        return corpus;
+    }
+
+    public static Corpus fromCapture(File file) throws IOException {
+        Corpus corpus = new Corpus();
+        CANTraceReader reader = new CANTraceReader(file);
+        long count = reader.getRecordCount();
+        if (count == 0) {
+            throw new IOException("Capture " + file + " is empty");
+        }
+        CANMessage msg = new CANMessage();
+        for (int n = 0; n < FRAMES; n++) {
+            reader.read(n % count, msg);
+            corpus.ids[n] = msg.getID();
+            corpus.extended[n] = msg.isExtended();
+            corpus.data[n] = msg.getLongData();
+            corpus.dlc[n] = msg.getDLC();
+        }
+        return corpus;
+    }
+
+    // ATMA output with headers and spaces on, e.g. "7E8 03 41 0C 1A F8" or "18 DA F1 10 03 41 0C"
+    public byte[] toELM327() {
+        StringBuilder sb = new StringBuilder(FRAMES * 32);
+        for (int n = 0; n < FRAMES; n++) {
+            if (extended[n]) {
+                for (int shift = 24; shift >= 0; shift -= 8) {
+                    sb.append(String.format("%02X ", (ids[n] >>> shift) & 0xFF));
+                }
+            } else {
+                sb.append(String.format("%03X ", ids[n]));
+            }
+            for (int i = 0; i < dlc[n]; i++) {
+                sb.append(String.format("%02X ", (data[n] >>> (56 - 8*i)) & 0xFF));
+            }
+            sb.setLength(sb.length() - 1);
+            sb.append('\r');
+        }
+        return ascii(sb.toString());
+    }
+
+    // BlueCAN output, CAN1:ID:DATA per line
+    public byte[] toBlueCAN() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(FRAMES * 32);
+        byte[] line = new byte[BlueCANCodec.MAX_COMMAND_LENGTH];
+        for (int n = 0; n < FRAMES; n++) {
+            int length = BlueCANCodec.encodeFrame(1, ids[n], data[n], dlc[n], line, 0);
+            out.write(line, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)s.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,83 @@
+package com.rajala.benchmarks;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.dbc.DBCDecoderTable;
+import com.rajala.can.dbc.DBCLoader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding every corpus frame into physical values, scores are frames per second. Every ID of the
+ * corpus gets a message with the same mix of Intel, Motorola, signed and multiplexed signals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DBCDecoderBenchmark {
+
+    private static final String SIGNALS =
+            " SG_ Counter : 56|4@1+ (1,0) [0|15] \"\" X\n"
+            + " SG_ Speed : 8|16@1+ (0.01,0) [0|655.35] \"km/h\" X\n"
+            + " SG_ Torque : 24|8@1- (0.5,0) [-64|63.5] \"Nm\" X\n"
+            + " SG_ Pressure : 39|12@0+ (0.1,-100) [-100|309.5] \"kPa\" X\n"
+            + " SG_ Current : 43|12@0- (0.05,0) [-102.4|102.35] \"A\" X\n"
+            + " SG_ Page M : 7|2@0+ (1,0) [0|3] \"\" X\n"
+            + " SG_ Voltage m0 : 5|6@0+ (0.25,6) [6|21.75] \"V\" X\n"
+            + " SG_ Temperature m1 : 5|6@0+ (1,-40) [-40|23] \"degC\" X\n";
+
+    private Corpus corpus;
+    private DBCDecoderTable table;
+    private final CANMessage msg = new CANMessage();
+    private double[] values;
+
+    @Setup
+    public void setup() throws IOException {
+        corpus = Corpus.load();
+        StringBuilder dbc = new StringBuilder();
+        Set<Long> ids = new HashSet<>();
+        for (int n = 0; n < Corpus.FRAMES; n++) {
+            long rawID = corpus.extended[n] ? (corpus.ids[n] | 0x80000000L) : corpus.ids[n];
+            if (ids.add(rawID)) {
+                dbc.append("BO_ ").append(rawID).append(" M").append(ids.size()).append(": 8 X\n");
+                dbc.append(SIGNALS).append('\n');
+            }
+        }
+        table = new DBCDecoderTable(DBCLoader.load(new StringReader(dbc.toString())));
+        values = new double[table.getMaxSignalCount()];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public double decode() {
+        double sum = 0;
+        for (int n = 0; n < Corpus.FRAMES; n++) {
+            msg.set(1, corpus.ids[n], corpus.extended[n], corpus.data[n], corpus.dlc[n], 0);
+            int count = table.decode(msg, values);
+            for (int i = 0; i < count; i++) {
+                if (!Double.isNaN(values[i])) {
+                    sum += values[i];
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,135 @@
+package com.rajala.benchmarks;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.dispatch.CANSubscriptionRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivering every corpus frame to the listeners, scores are frames per second.
+ *
+ * fanOut subscribes every listener to all IDs. filtered subscribes each listener to one ID of the
+ * corpus, the legacy variant hands every frame to every listener and leaves the filtering to them,
+ * as the original devices did with their synchronized listener lists.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({ "1", "4", "16" })
+    public int listeners;
+
+    private Corpus corpus;
+    private final CANMessage msg = new CANMessage();
+    private final CANSubscriptionRegistry allRegistry = new CANSubscriptionRegistry();
+    private final CANSubscriptionRegistry filteredRegistry = new CANSubscriptionRegistry();
+    private final List<ICANListener> allList = new ArrayList<>();
+    private final List<ICANListener> filteredList = new ArrayList<>();
+    private long delivered;
+
+    @Setup
+    public void setup() throws IOException {
+        corpus = Corpus.load();
+
+        for (int i = 0; i < listeners; i++) {
+            allRegistry.subscribe(counter(), CANFilter.all());
+            allList.add(counter());
+        }
+
+        // Listener i wants the i-th distinct ID of the corpus
+        List<Integer> ids = new ArrayList<>();
+        int n = 0;
+        while (ids.size() < listeners && n < Corpus.FRAMES) {
+            if (!ids.contains(corpus.ids[n])) {
+                ids.add(corpus.ids[n]);
+                final int id = corpus.ids[n];
+                final boolean extended = corpus.extended[n];
+                filteredRegistry.subscribe(counter(), extended ? CANFilter.extendedId(id) : CANFilter.id(id));
+                filteredList.add(new ICANListener() {
+                    public void onCANMessage(CANMessage msg) {
+                        if (msg.getID() == id && msg.isExtended() == extended) {
+                            delivered += msg.getLongData();
+                        }
+                    }
+                });
+            }
+            n++;
+        }
+    }
+
+    private ICANListener counter() {
+        return new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+                delivered += msg.getLongData();
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long fanOut() {
+        return dispatch(allRegistry);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long fanOutLegacy() {
+        return dispatch(allList);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long filtered() {
+        return dispatch(filteredRegistry);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long filteredLegacy() {
+        return dispatch(filteredList);
+    }
+
+    private long dispatch(CANSubscriptionRegistry registry) {
+        delivered = 0;
+        for (int n = 0; n < Corpus.FRAMES; n++) {
+            msg.set(1, corpus.ids[n], corpus.extended[n], corpus.data[n], corpus.dlc[n], 0);
+            registry.dispatch(msg);
+        }
+        return delivered;
+    }
+
+    private long dispatch(List<ICANListener> list) {
+        delivered = 0;
+        for (int n = 0; n < Corpus.FRAMES; n++) {
+            msg.set(1, corpus.ids[n], corpus.extended[n], corpus.data[n], corpus.dlc[n], 0);
+            synchronized (list) {
+                for (ICANListener listener : list) {
+                    listener.onCANMessage(msg);
+                }
+            }
+        }
+        return delivered;
+    }
+}
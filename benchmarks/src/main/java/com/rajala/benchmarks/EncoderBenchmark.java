@@ -0,0 +1,99 @@
+package com.rajala.benchmarks;
+
+import com.rajala.benchmarks.legacy.LegacyBlueCAN;
+import com.rajala.benchmarks.legacy.LegacyCANMessage;
+import com.rajala.benchmarks.legacy.LegacyELM327;
+import com.rajala.can.CANMessage;
+import com.rajala.can.device.bluecan.BlueCANCodec;
+import com.rajala.can.device.elm327.ELM327FrameEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting every corpus frame into the bytes written to the adapter, scores are frames per
+ * second. The ELM327 benchmarks encode the header for every frame, as if the ID always changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark {
+
+    private CANMessage[] messages;
+    private LegacyCANMessage[] legacyMessages;
+    private final byte[] line = new byte[BlueCANCodec.MAX_COMMAND_LENGTH];
+
+    @Setup
+    public void setup() throws IOException {
+        Corpus corpus = Corpus.load();
+        messages = new CANMessage[Corpus.FRAMES];
+        legacyMessages = new LegacyCANMessage[Corpus.FRAMES];
+        for (int n = 0; n < Corpus.FRAMES; n++) {
+            messages[n] = new CANMessage();
+            messages[n].set(1, corpus.ids[n], corpus.extended[n], corpus.data[n], corpus.dlc[n], 0);
+            short[] bytes = messages[n].getBytes();
+            legacyMessages[n] = new LegacyCANMessage();
+            legacyMessages[n].setID(corpus.ids[n]);
+            legacyMessages[n].setBytes(bytes);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public int blueCAN() {
+        int length = 0;
+        for (CANMessage msg : messages) {
+            length += BlueCANCodec.encodeFrame(msg.getChannel(), msg.getID(), msg.getLongData(), msg.getDLC(),
+                    line, 0);
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public int blueCANLegacy() {
+        int length = 0;
+        for (LegacyCANMessage msg : legacyMessages) {
+            length += LegacyBlueCAN.buildCANCommand(msg).length;
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public int elm327() {
+        int length = 0;
+        for (CANMessage msg : messages) {
+            int header = ELM327FrameEncoder.header(msg.getID(), msg.isExtended());
+            length += ELM327FrameEncoder.encodeHeader(header, msg.isExtended(), line, 0);
+            length += ELM327FrameEncoder.encodeData(msg.getLongData(), msg.getDLC(), line, 0);
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public int elm327Legacy() {
+        int length = 0;
+        for (LegacyCANMessage msg : legacyMessages) {
+            byte[][] lines = LegacyELM327.formatCANMessage(msg);
+            length += lines[0].length + lines[1].length;
+        }
+        return length;
+    }
+}
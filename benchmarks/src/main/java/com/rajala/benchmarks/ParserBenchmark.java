@@ -0,0 +1,128 @@
+package com.rajala.benchmarks;
+
+import com.rajala.benchmarks.legacy.LegacyBlueCAN;
+import com.rajala.benchmarks.legacy.LegacyCANMessage;
+import com.rajala.benchmarks.legacy.LegacyELM327;
+import com.rajala.can.device.bluecan.BlueCANCodec;
+import com.rajala.can.device.elm327.ELM327Parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the adapter output of the whole corpus, scores are frames per second. The streaming
+ * parsers are fed in socket sized reads, the legacy ones line by line from a BufferedReader the way
+ * the original receive threads read the socket.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    // Bytes per read on the reader thread
+    private static final int READ_SIZE = 1024;
+
+    private byte[] elm327Output;
+    private byte[] blueCANOutput;
+    private ELM327Parser elm327Parser;
+    private BlueCANCodec blueCANCodec;
+    private long checksum;
+
+    @Setup
+    public void setup() throws IOException {
+        Corpus corpus = Corpus.load();
+        elm327Output = corpus.toELM327();
+        blueCANOutput = corpus.toBlueCAN();
+
+        elm327Parser = new ELM327Parser(new ELM327Parser.Callback() {
+            public void onFrame(int id, boolean extended, long data, int dlc) {
+                checksum += id ^ data;
+            }
+
+            public void onEvent(int event, byte[] line, int length) {
+                checksum += event;
+            }
+        });
+        blueCANCodec = new BlueCANCodec(new BlueCANCodec.Callback() {
+            public void onFrame(int channel, int id, boolean extended, long data, int dlc) {
+                checksum += id ^ data;
+            }
+
+            public void onUnprocessed(byte[] line, int length) {
+                checksum += length;
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long elm327() {
+        checksum = 0;
+        for (int offset = 0; offset < elm327Output.length; offset += READ_SIZE) {
+            elm327Parser.parse(elm327Output, offset, Math.min(READ_SIZE, elm327Output.length - offset));
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long elm327Legacy() throws IOException {
+        long sum = 0;
+        BufferedReader input = reader(elm327Output);
+        String line;
+        while ((line = input.readLine()) != null) {
+            LegacyCANMessage msg = LegacyELM327.parseCANMessage(line);
+            if (msg != null) {
+                sum += msg.getID() ^ msg.getLongData();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long blueCAN() {
+        checksum = 0;
+        for (int offset = 0; offset < blueCANOutput.length; offset += READ_SIZE) {
+            blueCANCodec.decode(blueCANOutput, offset, Math.min(READ_SIZE, blueCANOutput.length - offset));
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.FRAMES)
+    public long blueCANLegacy() throws IOException {
+        long sum = 0;
+        BufferedReader input = reader(blueCANOutput);
+        String line;
+        while ((line = input.readLine()) != null) {
+            LegacyCANMessage msg = LegacyBlueCAN.parseLine(line);
+            if (msg != null) {
+                sum += msg.getID() ^ msg.getLongData();
+            }
+        }
+        return sum;
+    }
+
+    private static BufferedReader reader(byte[] bytes) {
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes)));
+    }
+}
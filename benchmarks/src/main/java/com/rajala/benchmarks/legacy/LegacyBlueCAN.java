@@ -0,0 +1,51 @@
+package com.rajala.benchmarks.legacy;
+
+/**
+ * The original String based BlueCAN receive parser and command builder, kept as a benchmark
+ * baseline. The per byte debug logging of the original is left out, so the baseline errs on the
+ * fast side.
+ */
+public class LegacyBlueCAN {
+
+    private static final String CAN_SEND_MESSAGE = "CAN%d:%X:";
+
+    // BlueCAN.BlueCANRXThread, the tokenizing done before parseCANMessage
+    public static LegacyCANMessage parseLine(String line) {
+        String[] tokens = line.trim().split(":");
+        if (tokens.length == 3) {
+            return parseCANMessage(tokens);
+        }
+        return null;
+    }
+
+    // BlueCAN.BlueCANRXThread.parseCANMessage
+    public static LegacyCANMessage parseCANMessage(String[] tokens) {
+        try {
+
+            LegacyCANMessage msg = new LegacyCANMessage();
+            msg.setID(Integer.parseInt(tokens[1], 16));
+            int dlc = tokens[2].length() / 2;
+            if ((dlc < 0) || (dlc > 8)) {
+                return null;
+            }
+            byte[] data = new byte[dlc];
+            for (int ib = 0; ib < dlc; ib++) {
+                data[ib] = (byte)Integer.parseInt(tokens[2].substring((ib*2), (ib*2)+2), 16);
+            }
+            msg.setBytes(data);
+            return msg;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // BlueCAN.buildCANCommand, followed by the CR sendCommand appended
+    public static byte[] buildCANCommand(LegacyCANMessage msg) {
+        String cmd = String.format(CAN_SEND_MESSAGE, msg.getChannel(), msg.getID());
+        short[] msgData = msg.getBytes();
+        for (int ib = 0; ib < msg.getDLC(); ib++) {
+            cmd += String.format("%02X", msgData[ib]);
+        }
+        return (cmd + "\r").getBytes();
+    }
+}
@@ -1,31 +1,18 @@
-package com.rajala.can;
+package com.rajala.benchmarks.legacy;
 
-import android.support.annotation.Nullable;
-
-public class CANMessage {
-
-    private static final String TAG = "CANMessage";
+/**
+ * The original CANMessage, payload held as one short per byte, kept as a benchmark baseline.
+ */
+public class LegacyCANMessage {
 
     private int channel;
     private int id;
     private short[] data;
-    private boolean periodic;
-    private int period;
 
-    public CANMessage() {
+    public LegacyCANMessage() {
         channel = 1;
         id = 0;
         data = new short[8];
-        periodic = false;
-        period = 50;
-    }
-
-    public CANMessage(int channel, int id, int dlc, boolean periodic, @Nullable int period) {
-        this.channel = channel;
-        this.id = id;
-        this.periodic = periodic;
-        this.period = period;
-        data = new short[dlc];
     }
 
     public void setChannel(int channel) {
@@ -47,14 +34,6 @@ public class CANMessage {
         this.data = data;
     }
 
-    public void setPeriodic(boolean periodic) {
-        this.periodic = periodic;
-    }
-
-    public void setPeriod(int period) {
-        this.period = period;
-    }
-
     public int getChannel() {
         return channel;
     }
@@ -79,12 +58,4 @@ public class CANMessage {
         longData = Long.reverseBytes(longData);
         return longData;
     }
-
-    public boolean isPeriodic() {
-        return periodic;
-    }
-
-    public int getPeriod() {
-        return period;
-    }
 }
@@ -0,0 +1,64 @@
+package com.rajala.benchmarks.legacy;
+
+import com.rajala.can.device.elm327.ELM327Commands;
+
+/**
+ * The original String based ELM327 receive parser and transmit formatting, kept as a benchmark
+ * baseline. The per frame debug logging of the original is left out, so the baseline errs on the
+ * fast side.
+ */
+public class LegacyELM327 {
+
+    // ELM327.RXMonitor.parseCANMessage
+    public static LegacyCANMessage parseCANMessage(String line) {
+
+        LegacyCANMessage msg = new LegacyCANMessage();
+
+        if (line.length() == 0) {
+            return null;
+        }
+
+        String[] contents = line.split(" ");
+
+        // Parse 3 digit ID
+        String idString;
+        if (contents[0].charAt(0) == '>') {
+            idString = contents[0].substring(1, contents[0].length());
+        } else {
+            idString = contents[0].substring(0, contents[0].length());
+        }
+        int id;
+        try {
+            id = Integer.parseInt(idString, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        // Parse data bytes until no more numbers
+        int dataLength = 8;
+        if (contents.length < 9) {
+            dataLength = contents.length - 1;
+        }
+        short[] data = new short[dataLength];
+        for (int i = 0; i < dataLength; i++) {
+            try {
+                data[i] = Short.parseShort(contents[i + 1], 16);
+            } catch (NumberFormatException e) {
+                break;
+            }
+        }
+
+        // Set CAN message
+        msg.setID(id);
+        msg.setBytes(data);
+
+        return msg;
+    }
+
+    // ELM327.sendCANMessage, the two command lines it wrote with the CR sendOBDCommand appended
+    public static byte[][] formatCANMessage(LegacyCANMessage msg) {
+        String hdr = String.format(ELM327Commands.AT_SET_HEADER, String.format("%03X", msg.getID()));
+        String data = String.format("%016X", msg.getLongData()).substring(0, 2*msg.getDLC()) + "0";
+        return new byte[][] { (hdr + "\r").getBytes(), (data + "\r").getBytes() };
+    }
+}
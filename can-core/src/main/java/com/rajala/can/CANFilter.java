@@ -0,0 +1,157 @@
+package com.rajala.can;
+
+/**
+ * Immutable description of the IDs a listener wants to receive. Standard (11 bit) and extended
+ * (29 bit) filters only match frames of their own kind, except {@link #all()}.
+ */
+public class CANFilter {
+
+    public static final int MAX_STANDARD_ID = 0x7FF;
+    public static final int MAX_EXTENDED_ID = 0x1FFFFFFF;
+
+    public enum Type {
+        ALL,
+        EXACT,
+        RANGE,
+        MASK,
+    }
+
+    private static final CANFilter ALL = new CANFilter(Type.ALL, false, 0, MAX_EXTENDED_ID);
+
+    private final Type type;
+    private final boolean extended;
+    // EXACT: id in first. RANGE: first to last inclusive. MASK: match in first, mask in last.
+    private final int first;
+    private final int last;
+
+    private CANFilter(Type type, boolean extended, int first, int last) {
+        this.type = type;
+        this.extended = extended;
+        this.first = first;
+        this.last = last;
+    }
+
+    // === Factories ===
+
+    public static CANFilter all() {
+        return ALL;
+    }
+
+    public static CANFilter id(int id) {
+        return new CANFilter(Type.EXACT, false, checkId(id, false), id);
+    }
+
+    public static CANFilter extendedId(int id) {
+        return new CANFilter(Type.EXACT, true, checkId(id, true), id);
+    }
+
+    public static CANFilter range(int from, int to) {
+        return new CANFilter(Type.RANGE, false, checkId(from, false), checkRange(from, to, false));
+    }
+
+    public static CANFilter extendedRange(int from, int to) {
+        return new CANFilter(Type.RANGE, true, checkId(from, true), checkRange(from, to, true));
+    }
+
+    // Matches every ID where (id & mask) == (match & mask)
+    public static CANFilter mask(int match, int mask) {
+        return new CANFilter(Type.MASK, false, match & mask & MAX_STANDARD_ID, mask & MAX_STANDARD_ID);
+    }
+
+    public static CANFilter extendedMask(int match, int mask) {
+        return new CANFilter(Type.MASK, true, match & mask & MAX_EXTENDED_ID, mask & MAX_EXTENDED_ID);
+    }
+
+    // === Queries ===
+
+    public boolean matches(int id, boolean extended) {
+        if (type == Type.ALL) {
+            return true;
+        }
+        if (extended != this.extended) {
+            return false;
+        }
+        switch (type) {
+            case EXACT:
+                return id == first;
+            case RANGE:
+                return id >= first && id <= last;
+            case MASK:
+                return (id & last) == first;
+            default:
+                return false;
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isExtended() {
+        return extended;
+    }
+
+    public int getID() {
+        return first;
+    }
+
+    public int getRangeStart() {
+        return first;
+    }
+
+    public int getRangeEnd() {
+        return last;
+    }
+
+    public int getMatch() {
+        return first;
+    }
+
+    public int getMask() {
+        return last;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CANFilter)) {
+            return false;
+        }
+        CANFilter other = (CANFilter)o;
+        return type == other.type && extended == other.extended && first == other.first && last == other.last;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((type.ordinal() * 31 + (extended ? 1 : 0)) * 31 + first) * 31 + last;
+    }
+
+    @Override
+    public String toString() {
+        String width = extended ? "%08X" : "%03X";
+        switch (type) {
+            case EXACT:
+                return "CANFilter[" + String.format(width, first) + "]";
+            case RANGE:
+                return "CANFilter[" + String.format(width, first) + "-" + String.format(width, last) + "]";
+            case MASK:
+                return "CANFilter[" + String.format(width, first) + "/" + String.format(width, last) + "]";
+            default:
+                return "CANFilter[all]";
+        }
+    }
+
+    private static int checkId(int id, boolean extended) {
+        if (id < 0 || id > (extended ? MAX_EXTENDED_ID : MAX_STANDARD_ID)) {
+            throw new IllegalArgumentException("Invalid CAN ID " + id);
+        }
+        return id;
+    }
+
+    private static int checkRange(int from, int to, boolean extended) {
+        checkId(to, extended);
+        if (to < from) {
+            throw new IllegalArgumentException("Empty CAN ID range " + from + "-" + to);
+        }
+        return to;
+    }
+}
@@ -0,0 +1,247 @@
+package com.rajala.can;
+
+public class CANMessage {
+
+    private static final String TAG = "CANMessage";
+
+    public static final long NO_ADAPTER_TIMESTAMP = -1;
+    public static final int NO_SOURCE = 0;
+
+    // Recycled messages, same scheme as android.os.Message
+    private static final int MAX_POOL_SIZE = 64;
+    private static final Object poolLock = new Object();
+    private static CANMessage pool;
+    private static int poolSize = 0;
+    private CANMessage next;
+    private boolean inUse;
+
+    private int channel;
+    private int id;
+    private boolean extended;
+    private long data;
+    private int dlc;
+    private long timestamp;
+    private long adapterTimestamp = NO_ADAPTER_TIMESTAMP;
+    private long publishTime;
+    private boolean periodic;
+    private int period;
+    // Session channel of the device the frame came through, see CANSession
+    private int source = NO_SOURCE;
+
+    public CANMessage() {
+        channel = 1;
+        id = 0;
+        dlc = 8;
+        periodic = false;
+        period = 50;
+    }
+
+    public CANMessage(int channel, int id, int dlc, boolean periodic, int period) {
+        this.channel = channel;
+        this.id = id;
+        this.dlc = dlc;
+        this.periodic = periodic;
+        this.period = period;
+    }
+
+    // === Pool ===
+
+    public static CANMessage obtain() {
+        synchronized (poolLock) {
+            if (pool != null) {
+                CANMessage msg = pool;
+                pool = msg.next;
+                msg.next = null;
+                msg.inUse = true;
+                poolSize--;
+                return msg;
+            }
+        }
+        CANMessage msg = new CANMessage();
+        msg.inUse = true;
+        return msg;
+    }
+
+    public static CANMessage obtain(CANMessage src) {
+        CANMessage msg = obtain();
+        msg.copyFrom(src);
+        return msg;
+    }
+
+    // Returns the message to the pool, it must not be touched by the caller afterwards
+    public void recycle() {
+        if (!inUse) {
+            throw new IllegalStateException("CANMessage recycled while not obtained from the pool");
+        }
+        inUse = false;
+        channel = 1;
+        id = 0;
+        extended = false;
+        data = 0;
+        dlc = 8;
+        timestamp = 0;
+        adapterTimestamp = NO_ADAPTER_TIMESTAMP;
+        publishTime = 0;
+        periodic = false;
+        period = 50;
+        source = NO_SOURCE;
+        synchronized (poolLock) {
+            if (poolSize < MAX_POOL_SIZE) {
+                next = pool;
+                pool = this;
+                poolSize++;
+            }
+        }
+    }
+
+    // === Setters ===
+
+    public void set(int channel, int id, boolean extended, long data, int dlc, long timestamp) {
+        this.channel = channel;
+        this.id = id;
+        this.extended = extended;
+        this.data = data;
+        this.dlc = dlc;
+        this.timestamp = timestamp;
+        adapterTimestamp = NO_ADAPTER_TIMESTAMP;
+        source = NO_SOURCE;
+    }
+
+    public void copyFrom(CANMessage src) {
+        channel = src.channel;
+        id = src.id;
+        extended = src.extended;
+        data = src.data;
+        dlc = src.dlc;
+        timestamp = src.timestamp;
+        adapterTimestamp = src.adapterTimestamp;
+        publishTime = src.publishTime;
+        periodic = src.periodic;
+        period = src.period;
+        source = src.source;
+    }
+
+    public void setChannel(int channel) {
+        this.channel = channel;
+    }
+
+    public void setID(int id) {
+        this.id = id;
+    }
+
+    public void setExtended(boolean extended) {
+        this.extended = extended;
+    }
+
+    public void setBytes(byte[] data) {
+        setLongData(pack(data.length, data, null), Math.min(data.length, 8));
+    }
+
+    public void setBytes(short[] data) {
+        setLongData(pack(data.length, null, data), Math.min(data.length, 8));
+    }
+
+    // Payload is left aligned, byte 0 in the most significant byte
+    public void setLongData(long data, int dlc) {
+        this.data = data;
+        this.dlc = dlc;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public void setAdapterTimestamp(long adapterTimestamp) {
+        this.adapterTimestamp = adapterTimestamp;
+    }
+
+    public void setPublishTime(long publishTime) {
+        this.publishTime = publishTime;
+    }
+
+    public void setPeriodic(boolean periodic) {
+        this.periodic = periodic;
+    }
+
+    public void setPeriod(int period) {
+        this.period = period;
+    }
+
+    public void setSource(int source) {
+        this.source = source;
+    }
+
+    // === Getters ===
+
+    public int getChannel() {
+        return channel;
+    }
+
+    public int getID() {
+        return id;
+    }
+
+    public boolean isExtended() {
+        return extended;
+    }
+
+    public int getDLC() {
+        return dlc;
+    }
+
+    public int getByte(int index) {
+        return (int)(data >>> (56 - 8*index)) & 0xFF;
+    }
+
+    // Allocates a copy, use getByte or getLongData on hot paths
+    public short[] getBytes() {
+        short[] bytes = new short[dlc];
+        for (int i = 0; i < dlc; i++) {
+            bytes[i] = (short)getByte(i);
+        }
+        return bytes;
+    }
+
+    public long getLongData() {
+        return data;
+    }
+
+    // System.nanoTime() when the frame was read from the device
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // The adapter's own time stamp in its units, NO_ADAPTER_TIMESTAMP if it sends none
+    public long getAdapterTimestamp() {
+        return adapterTimestamp;
+    }
+
+    // System.nanoTime() when the decoded frame was handed to the dispatch ring
+    public long getPublishTime() {
+        return publishTime;
+    }
+
+    public boolean isPeriodic() {
+        return periodic;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    // NO_SOURCE unless the frame was merged by a CANSession
+    public int getSource() {
+        return source;
+    }
+
+    private static long pack(int length, byte[] bytes, short[] shorts) {
+        long longData = 0;
+        for (int i = 0; i < 8; i++) {
+            longData <<= 8;
+            if (i < length) {
+                longData |= ((bytes != null) ? bytes[i] : shorts[i]) & 0xFF;
+            }
+        }
+        return longData;
+    }
+}
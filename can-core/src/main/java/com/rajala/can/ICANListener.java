@@ -0,0 +1,12 @@
+package com.rajala.can;
+
+public interface ICANListener {
+    // onCANMessage is called on the device's dispatch thread, so a slow listener delays the other
+    // listeners but never the socket reader. Frames that arrive while the dispatch ring is full
+    // are dropped and counted.
+    //
+    // msg is owned by the device and is reused as soon as onCANMessage returns. Listeners that
+    // need the frame afterwards must copy it, e.g. with CANMessage.obtain(msg), and recycle the
+    // copy when done.
+    void onCANMessage(CANMessage msg);
+}
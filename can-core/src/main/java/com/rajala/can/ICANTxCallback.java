@@ -0,0 +1,11 @@
+package com.rajala.can;
+
+public interface ICANTxCallback {
+    // Called on the device's transmit thread once the frame has been handed to the bus. msg is
+    // owned by the device and only valid for the duration of the call.
+    void onTxComplete(CANMessage msg);
+
+    // Called when the frame could not be sent: the queue was full, the adapter rejected it or did
+    // not answer, or the device disconnected
+    void onTxFailed(CANMessage msg);
+}
@@ -0,0 +1,203 @@
+package com.rajala.can.dbc;
+
+import java.util.List;
+
+/**
+ * The signals of one message compiled into extractors over the 64 bit payload.
+ *
+ * Payloads are left aligned as in {@code CANMessage.getLongData()}, so a Motorola signal is a
+ * contiguous run of bits that ends at its MSB, bit 56 - 8 * (start / 8) + start % 8 of the word.
+ * Intel signals are contiguous in the byte reversed word, starting at their start bit. Each signal
+ * is reduced to the word it is read from, a shift, a mask and a sign extension, and then scaled
+ * with its factor and offset. Decoding reads nothing but primitive arrays and allocates nothing.
+ *
+ * Signals that lie beyond the received DLC, or whose multiplexer has a different value, decode to
+ * NaN. Instances are immutable and may be shared between threads.
+ */
+public class DBCDecoder {
+
+    private static final int TYPE_INTEGER = 0;
+    private static final int TYPE_FLOAT = 1;
+    private static final int TYPE_DOUBLE = 2;
+    private static final int ALWAYS = DBCSignal.NOT_MULTIPLEXED;
+    private static final int NO_MULTIPLEXER = -1;
+
+    private final DBCMessage message;
+    private final DBCSignal[] signals;
+
+    // Extractors, one entry per signal
+    private final boolean[] littleEndian;
+    private final int[] shift;
+    private final long[] mask;
+    private final int[] signShift;
+    private final int[] type;
+    private final double[] factor;
+    private final double[] offset;
+    private final int[] minDLC;
+    private final int[] multiplexValue;
+
+    private final int multiplexer;
+    private final boolean anyLittleEndian;
+
+    public DBCDecoder(DBCMessage message) {
+
+        this.message = message;
+        List<DBCSignal> list = message.getSignals();
+        int count = list.size();
+        signals = list.toArray(new DBCSignal[count]);
+        littleEndian = new boolean[count];
+        shift = new int[count];
+        mask = new long[count];
+        signShift = new int[count];
+        type = new int[count];
+        factor = new double[count];
+        offset = new double[count];
+        minDLC = new int[count];
+        multiplexValue = new int[count];
+
+        int mux = NO_MULTIPLEXER;
+        boolean anyIntel = false;
+        for (int i = 0; i < count; i++) {
+            DBCSignal s = signals[i];
+            if (!fits(s)) {
+                throw new IllegalArgumentException("Signal " + s.getName() + " does not fit into the payload");
+            }
+            int length = s.getLength();
+            int lsb = lsb(s);
+            littleEndian[i] = s.isLittleEndian();
+            shift[i] = lsb;
+            mask[i] = (length == 64) ? -1L : (1L << length) - 1;
+            signShift[i] = (s.isSigned() && s.getValueType() == DBCSignal.ValueType.INTEGER) ? 64 - length : 0;
+            type[i] = (s.getValueType() == DBCSignal.ValueType.FLOAT) ? TYPE_FLOAT
+                    : (s.getValueType() == DBCSignal.ValueType.DOUBLE) ? TYPE_DOUBLE : TYPE_INTEGER;
+            factor[i] = s.getFactor();
+            offset[i] = s.getOffset();
+            minDLC[i] = minDLC(s);
+            multiplexValue[i] = s.getMultiplexValue();
+            if (s.isMultiplexer()) {
+                mux = i;
+            }
+            anyIntel |= s.isLittleEndian();
+        }
+        if (mux == NO_MULTIPLEXER) {
+            // Multiplexed signals without a multiplexer are always decoded
+            for (int i = 0; i < count; i++) {
+                multiplexValue[i] = ALWAYS;
+            }
+        }
+        multiplexer = mux;
+        anyLittleEndian = anyIntel;
+    }
+
+    // Whether the signal lies within a 64 bit payload
+    public static boolean fits(DBCSignal s) {
+        int start = s.getStartBit();
+        int length = s.getLength();
+        if (length < 1 || length > 64 || start < 0 || start > 63) {
+            return false;
+        }
+        if (s.isLittleEndian()) {
+            return start + length <= 64;
+        }
+        return motorolaMSB(start) - length + 1 >= 0;
+    }
+
+    public DBCMessage getMessage() {
+        return message;
+    }
+
+    public int getSignalCount() {
+        return signals.length;
+    }
+
+    public DBCSignal getSignal(int index) {
+        return signals[index];
+    }
+
+    // Index of the named signal in the decoded values, -1 if the message has none of that name
+    public int indexOf(String signalName) {
+        for (int i = 0; i < signals.length; i++) {
+            if (signals[i].getName().equals(signalName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Physical values of every signal into out[outOffset..], returns the number of signals
+    public int decode(long data, int dlc, double[] out, int outOffset) {
+
+        long reversed = anyLittleEndian ? Long.reverseBytes(data) : 0;
+        long selected = -1;
+        if (multiplexer != NO_MULTIPLEXER) {
+            selected = (dlc >= minDLC[multiplexer]) ? raw(multiplexer, data, reversed) : -1;
+        }
+
+        for (int i = 0; i < signals.length; i++) {
+            if (dlc < minDLC[i] || (multiplexValue[i] != ALWAYS && multiplexValue[i] != selected)) {
+                out[outOffset + i] = Double.NaN;
+            } else {
+                out[outOffset + i] = physical(i, raw(i, data, reversed));
+            }
+        }
+        return signals.length;
+    }
+
+    // Physical value of a single signal
+    public double decode(long data, int dlc, int index) {
+        long reversed = anyLittleEndian ? Long.reverseBytes(data) : 0;
+        if (dlc < minDLC[index]) {
+            return Double.NaN;
+        }
+        if (multiplexValue[index] != ALWAYS && (dlc < minDLC[multiplexer]
+                || raw(multiplexer, data, reversed) != multiplexValue[index])) {
+            return Double.NaN;
+        }
+        return physical(index, raw(index, data, reversed));
+    }
+
+    private long raw(int i, long data, long reversed) {
+        long raw = ((littleEndian[i] ? reversed : data) >>> shift[i]) & mask[i];
+        if (signShift[i] != 0) {
+            raw = (raw << signShift[i]) >> signShift[i];
+        }
+        return raw;
+    }
+
+    private double physical(int i, long raw) {
+        double value;
+        switch (type[i]) {
+            case TYPE_FLOAT:
+                value = Float.intBitsToFloat((int)raw);
+                break;
+            case TYPE_DOUBLE:
+                value = Double.longBitsToDouble(raw);
+                break;
+            default:
+                value = raw;
+                break;
+        }
+        return value * factor[i] + offset[i];
+    }
+
+    // Position of the signal's LSB in the word it is read from
+    private static int lsb(DBCSignal s) {
+        if (s.isLittleEndian()) {
+            return s.getStartBit();
+        }
+        return motorolaMSB(s.getStartBit()) - s.getLength() + 1;
+    }
+
+    // Position of DBC bit start in the left aligned payload
+    private static int motorolaMSB(int start) {
+        return 56 - 8 * (start / 8) + start % 8;
+    }
+
+    // Payload bytes the signal needs
+    private static int minDLC(DBCSignal s) {
+        if (s.isLittleEndian()) {
+            return (s.getStartBit() + s.getLength() - 1) / 8 + 1;
+        }
+        return (63 - lsb(s)) / 8 + 1;
+    }
+}
@@ -0,0 +1,67 @@
+package com.rajala.can.dbc;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.util.IntObjectMap;
+
+import java.util.List;
+
+/**
+ * Compiled decoders of a whole DBC file, looked up by ID: an array indexed by the 11 bit ID and a
+ * hash table for 29 bit IDs, the same split as the subscription registry. Built once and immutable
+ * afterwards, so it can be shared with the dispatch thread.
+ */
+public class DBCDecoderTable {
+
+    public static final int NO_DECODER = -1;
+
+    private final DBCDecoder[] standard = new DBCDecoder[CANFilter.MAX_STANDARD_ID + 1];
+    private final IntObjectMap<DBCDecoder> extended = new IntObjectMap<>();
+    private final int maxSignalCount;
+    private final int size;
+
+    public DBCDecoderTable(List<DBCMessage> messages) {
+        int max = 0;
+        int n = 0;
+        for (DBCMessage message : messages) {
+            DBCDecoder decoder = new DBCDecoder(message);
+            if (message.isExtended()) {
+                extended.put(message.getID(), decoder);
+            } else if (message.getID() <= CANFilter.MAX_STANDARD_ID) {
+                standard[message.getID()] = decoder;
+            } else {
+                continue;
+            }
+            max = Math.max(max, decoder.getSignalCount());
+            n++;
+        }
+        maxSignalCount = max;
+        size = n;
+    }
+
+    public DBCDecoder get(int id, boolean isExtended) {
+        if (isExtended) {
+            return extended.get(id);
+        }
+        return (id >= 0 && id <= CANFilter.MAX_STANDARD_ID) ? standard[id] : null;
+    }
+
+    // Number of messages with a decoder
+    public int size() {
+        return size;
+    }
+
+    // Length of an array that can take the values of any message
+    public int getMaxSignalCount() {
+        return maxSignalCount;
+    }
+
+    // Physical values of the frame's signals into out, returns their count or NO_DECODER
+    public int decode(CANMessage msg, double[] out) {
+        DBCDecoder decoder = get(msg.getID(), msg.isExtended());
+        if (decoder == null) {
+            return NO_DECODER;
+        }
+        return decoder.decode(msg.getLongData(), msg.getDLC(), out, 0);
+    }
+}
@@ -0,0 +1,169 @@
+package com.rajala.can.dbc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the messages and signals of a DBC file.
+ *
+ * Only what decoding needs is read: BO_ and SG_ lines, including multiplexer indicators, and
+ * SIG_VALTYPE_ for IEEE float signals. Everything else, nodes, comments, attributes and value
+ * tables, is skipped. A signal that does not fit into 64 bits of payload is rejected with the line
+ * it was defined on.
+ */
+public class DBCLoader {
+
+    // Pseudo message Vector tools put unassigned signals in
+    private static final String INDEPENDENT_SIGNALS = "VECTOR__INDEPENDENT_SIG_MSG";
+    private static final long EXTENDED_FLAG = 0x80000000L;
+    private static final int MAX_EXTENDED_ID = 0x1FFFFFFF;
+
+    private static final Pattern MESSAGE = Pattern.compile("^BO_\\s+(\\d+)\\s+(\\w+)\\s*:\\s*(\\d+)");
+    private static final Pattern SIGNAL = Pattern.compile(
+            "^SG_\\s+(\\w+)\\s*(M|m\\d+M?)?\\s*:\\s*(\\d+)\\|(\\d+)@([01])([+-])"
+            + "\\s*\\(([^,]+),([^)]+)\\)\\s*\\[([^|]+)\\|([^\\]]+)\\]\\s*\"([^\"]*)\"");
+    private static final Pattern VALUE_TYPE = Pattern.compile("^SIG_VALTYPE_\\s+(\\d+)\\s+(\\w+)\\s*:\\s*(\\d)");
+
+    private DBCLoader() {
+    }
+
+    public static List<DBCMessage> load(File file) throws IOException {
+        // DBC files are usually written in the Windows code page, which agrees with Latin-1 on letters
+        Reader reader = new InputStreamReader(new FileInputStream(file), "ISO-8859-1");
+        try {
+            return load(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static List<DBCMessage> load(Reader reader) throws IOException {
+
+        List<DBCMessage> messages = new ArrayList<>();
+        BufferedReader input = new BufferedReader(reader);
+        DBCMessage current = null;
+        boolean skipping = false;
+        int lineNumber = 0;
+        String line;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+
+            if (line.startsWith("BO_ ")) {
+                Matcher m = MESSAGE.matcher(line);
+                if (!m.find()) {
+                    throw error(lineNumber, "malformed message");
+                }
+                long rawID = Long.parseLong(m.group(1));
+                skipping = m.group(2).equals(INDEPENDENT_SIGNALS);
+                if (skipping) {
+                    current = null;
+                    continue;
+                }
+                boolean extended = (rawID & EXTENDED_FLAG) != 0;
+                int id = (int)(rawID & MAX_EXTENDED_ID);
+                current = new DBCMessage(id, extended, m.group(2), Integer.parseInt(m.group(3)));
+                messages.add(current);
+
+            } else if (line.startsWith("SG_ ")) {
+                if (skipping) {
+                    continue;
+                }
+                if (current == null) {
+                    throw error(lineNumber, "signal outside of a message");
+                }
+                Matcher m = SIGNAL.matcher(line);
+                if (!m.find()) {
+                    throw error(lineNumber, "malformed signal");
+                }
+                DBCSignal signal = new DBCSignal(m.group(1),
+                        Integer.parseInt(m.group(3)), Integer.parseInt(m.group(4)),
+                        m.group(5).equals("1"), m.group(6).equals("-"),
+                        parseNumber(m.group(7), lineNumber), parseNumber(m.group(8), lineNumber),
+                        parseNumber(m.group(9), lineNumber), parseNumber(m.group(10), lineNumber),
+                        m.group(11), multiplex(m.group(2)));
+                if (!DBCDecoder.fits(signal)) {
+                    throw error(lineNumber, "signal " + signal.getName() + " does not fit into the payload");
+                }
+                current.addSignal(signal);
+
+            } else if (line.startsWith("SIG_VALTYPE_ ")) {
+                Matcher m = VALUE_TYPE.matcher(line);
+                if (!m.find()) {
+                    throw error(lineNumber, "malformed value type");
+                }
+                setValueType(messages, Long.parseLong(m.group(1)), m.group(2), m.group(3), lineNumber);
+
+            } else if (line.length() > 0) {
+                current = null;
+                skipping = false;
+            }
+        }
+        return messages;
+    }
+
+    // M marks the multiplexer, mN a signal present when it is N. The nested mNM form is read as mN.
+    private static int multiplex(String indicator) {
+        if (indicator == null) {
+            return DBCSignal.NOT_MULTIPLEXED;
+        }
+        if (indicator.equals("M")) {
+            return DBCSignal.MULTIPLEXER;
+        }
+        int end = indicator.endsWith("M") ? indicator.length() - 1 : indicator.length();
+        return Integer.parseInt(indicator.substring(1, end));
+    }
+
+    private static void setValueType(List<DBCMessage> messages, long rawID, String name, String type,
+                                     int lineNumber) throws IOException {
+        DBCSignal.ValueType valueType;
+        switch (type) {
+            case "1":
+                valueType = DBCSignal.ValueType.FLOAT;
+                break;
+            case "2":
+                valueType = DBCSignal.ValueType.DOUBLE;
+                break;
+            default:
+                valueType = DBCSignal.ValueType.INTEGER;
+                break;
+        }
+        boolean extended = (rawID & EXTENDED_FLAG) != 0;
+        int id = (int)(rawID & MAX_EXTENDED_ID);
+        for (DBCMessage message : messages) {
+            if (message.getID() == id && message.isExtended() == extended) {
+                DBCSignal signal = message.getSignal(name);
+                if (signal == null) {
+                    throw error(lineNumber, "value type of unknown signal " + name);
+                }
+                int bits = (valueType == DBCSignal.ValueType.FLOAT) ? 32 : 64;
+                if (valueType != DBCSignal.ValueType.INTEGER && signal.getLength() != bits) {
+                    throw error(lineNumber, "signal " + name + " is not " + bits + " bits long");
+                }
+                signal.setValueType(valueType);
+                return;
+            }
+        }
+        throw error(lineNumber, "value type of unknown message " + rawID);
+    }
+
+    private static double parseNumber(String s, int lineNumber) throws IOException {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            throw error(lineNumber, "malformed number " + s);
+        }
+    }
+
+    private static IOException error(int lineNumber, String msg) {
+        return new IOException("DBC line " + lineNumber + ": " + msg);
+    }
+}
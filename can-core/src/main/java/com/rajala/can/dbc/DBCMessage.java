@@ -0,0 +1,62 @@
+package com.rajala.can.dbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message of a DBC file, the BO_ line and the signals under it.
+ */
+public class DBCMessage {
+
+    private final int id;
+    private final boolean extended;
+    private final String name;
+    private final int dlc;
+    private final List<DBCSignal> signals = new ArrayList<>();
+
+    public DBCMessage(int id, boolean extended, String name, int dlc) {
+        this.id = id;
+        this.extended = extended;
+        this.name = name;
+        this.dlc = dlc;
+    }
+
+    void addSignal(DBCSignal signal) {
+        signals.add(signal);
+    }
+
+    public int getID() {
+        return id;
+    }
+
+    public boolean isExtended() {
+        return extended;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDLC() {
+        return dlc;
+    }
+
+    public List<DBCSignal> getSignals() {
+        return Collections.unmodifiableList(signals);
+    }
+
+    public DBCSignal getSignal(String signalName) {
+        for (DBCSignal signal : signals) {
+            if (signal.getName().equals(signalName)) {
+                return signal;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %X%s: %d signals", name, id, extended ? "x" : "", signals.size());
+    }
+}
@@ -0,0 +1,113 @@
+package com.rajala.can.dbc;
+
+/**
+ * One signal of a DBC message, as written in its SG_ line.
+ *
+ * Bits are numbered the DBC way: bit b is bit b % 8 of payload byte b / 8, counting from the least
+ * significant bit. The start bit is the least significant bit of an Intel (little endian) signal
+ * and the most significant bit of a Motorola (big endian) one.
+ */
+public class DBCSignal {
+
+    public static final int NOT_MULTIPLEXED = -1;
+    public static final int MULTIPLEXER = -2;
+
+    public enum ValueType {
+        INTEGER,
+        FLOAT,
+        DOUBLE,
+    }
+
+    private final String name;
+    private final int startBit;
+    private final int length;
+    private final boolean littleEndian;
+    private final boolean signed;
+    private final double factor;
+    private final double offset;
+    private final double minimum;
+    private final double maximum;
+    private final String unit;
+    private final int multiplex;
+    private ValueType valueType = ValueType.INTEGER;
+
+    public DBCSignal(String name, int startBit, int length, boolean littleEndian, boolean signed,
+                     double factor, double offset, double minimum, double maximum, String unit,
+                     int multiplex) {
+        this.name = name;
+        this.startBit = startBit;
+        this.length = length;
+        this.littleEndian = littleEndian;
+        this.signed = signed;
+        this.factor = factor;
+        this.offset = offset;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.unit = unit;
+        this.multiplex = multiplex;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getStartBit() {
+        return startBit;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public boolean isLittleEndian() {
+        return littleEndian;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    public double getFactor() {
+        return factor;
+    }
+
+    public double getOffset() {
+        return offset;
+    }
+
+    public double getMinimum() {
+        return minimum;
+    }
+
+    public double getMaximum() {
+        return maximum;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public boolean isMultiplexer() {
+        return multiplex == MULTIPLEXER;
+    }
+
+    // Multiplexer value for which the signal is present, NOT_MULTIPLEXED if it always is
+    public int getMultiplexValue() {
+        return (multiplex >= 0) ? multiplex : NOT_MULTIPLEXED;
+    }
+
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    // Set by SIG_VALTYPE_, which may come after the message
+    void setValueType(ValueType valueType) {
+        this.valueType = valueType;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + startBit + "|" + length + "@" + (littleEndian ? "1" : "0") + (signed ? "-" : "+")
+                + " (" + factor + "," + offset + ") \"" + unit + "\"";
+    }
+}
@@ -0,0 +1,50 @@
+package com.rajala.can.device;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.dispatch.CANChangeFilter;
+import com.rajala.can.stats.CANDeviceStats;
+import com.rajala.can.stats.CANLatencyStats;
+
+import java.util.List;
+
+public interface ICANDevice {
+
+    void connect(String deviceName);
+
+    void disconnect();
+
+    void stop();
+
+    boolean isConnected();
+
+    void sendCANMessage(CANMessage msg);
+
+    // msg is copied, so the caller may reuse it immediately. Returns false when the frame could
+    // not be queued, callback may be null.
+    boolean sendCANMessage(CANMessage msg, ICANTxCallback callback);
+
+    // Receives every frame, same as addCANListener(listener, CANFilter.all())
+    void addCANListener(ICANListener listener);
+
+    // Receives only the frames matching filter, may be called repeatedly to combine filters
+    void addCANListener(ICANListener listener, CANFilter filter);
+
+    // Replaces every subscription of the listener at once, without a gap for the frames that match
+    // both the old and the new filters. An empty list removes the listener.
+    void setCANListenerFilters(ICANListener listener, List<CANFilter> filters);
+
+    // Removes every subscription of the listener
+    void removeCANListener(ICANListener listener);
+
+    void clearCANListeners();
+
+    // Delivers a frame only when its payload changed, null delivers every frame
+    void setChangeFilter(CANChangeFilter filter);
+
+    CANLatencyStats getLatencyStats();
+
+    CANDeviceStats getStats();
+}
@@ -0,0 +1,10 @@
+package com.rajala.can.device;
+
+/**
+ * Connection events of a device, called on its ConnectionSupervisor thread.
+ */
+public interface ICANDeviceListener {
+    void onDeviceConnected(ICANDevice device, String deviceName);
+
+    void onDeviceDisconnected(ICANDevice device);
+}
@@ -0,0 +1,14 @@
+package com.rajala.can.device;
+
+import com.rajala.can.CANMessage;
+
+// A device that can repeat frames by itself, without the host sending each one
+public interface ICyclicCANDevice extends ICANDevice {
+
+    int getCyclicSlotCount();
+
+    // Repeats msg every msg.getPeriod() ms on msg.getChannel() until the slot is stopped or reused
+    boolean startCyclic(int slot, CANMessage msg);
+
+    boolean stopCyclic(int slot);
+}
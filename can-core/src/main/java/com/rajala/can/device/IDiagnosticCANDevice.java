@@ -0,0 +1,16 @@
+package com.rajala.can.device;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANTxCallback;
+
+// A device that handles diagnostic requests itself, adding the ISO-TP PCI byte and sending flow
+// control for multi-frame responses, and waits for the response before taking the next request
+public interface IDiagnosticCANDevice extends ICANDevice {
+
+    // Sends the payload of msg as a single frame request and listens for up to responses frames,
+    // which reach the listeners like any other frame. callback completes once they have arrived
+    // or the adapter gave up waiting, so the next request can go out straight away.
+    boolean sendRequest(CANMessage msg, int responses, ICANTxCallback callback);
+
+    int getMaxResponses();
+}
@@ -0,0 +1,354 @@
+package com.rajala.can.device.bluecan;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.ICANDeviceListener;
+import com.rajala.can.device.ICyclicCANDevice;
+import com.rajala.can.dispatch.BlockingWaitStrategy;
+import com.rajala.can.dispatch.CANChangeFilter;
+import com.rajala.can.dispatch.CANPipeline;
+import com.rajala.can.dispatch.IWaitStrategy;
+import com.rajala.can.log.CANLog;
+import com.rajala.can.stats.CANDeviceStats;
+import com.rajala.can.stats.CANLatencyStats;
+import com.rajala.can.transport.ConnectionSupervisor;
+import com.rajala.can.transport.IConnectionStateListener;
+import com.rajala.can.transport.ITransport;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+public class BlueCAN implements ICyclicCANDevice, IConnectionStateListener {
+
+    private static final String TAG = "BlueCAN";
+
+    // Frames the adapter repeats by itself
+    private static final int CYCLIC_SLOTS = 8;
+
+    // Device states
+    private enum BlueCANState {
+        DISCONNECTED,
+        CONFIGURABLE,
+        CONNECTED,
+    }
+
+    // Object states
+    private volatile BlueCANState blueCANState;
+    private boolean connectedBefore;
+
+    // Transport I/O, the supervisor reconnects by itself
+    public static final String DEFAULT_DEVICE_NAME = "BlueCAN  9";
+    private final ConnectionSupervisor supervisor;
+    private volatile ConnectionSupervisor.Connection connection;
+    private final ICANDeviceListener deviceListener;
+    private final byte[] txBuffer = new byte[2 * BlueCANCodec.MAX_COMMAND_LENGTH];
+    private final int[] cyclicChannels = new int[CYCLIC_SLOTS];
+    // Copies of the frames the adapter repeats, null for a stopped slot, guarded by txBuffer
+    private final CANMessage[] cyclicFrames = new CANMessage[CYCLIC_SLOTS];
+
+    // CAN network members
+    private final CANPipeline pipeline;
+
+    // === User Methods ===
+
+    // deviceListener may be null
+    public BlueCAN(ICANDeviceListener deviceListener, ITransport transport, String address) {
+        this(deviceListener, transport, address, new BlockingWaitStrategy());
+    }
+
+    public BlueCAN(ICANDeviceListener deviceListener, ITransport transport, String address,
+                   IWaitStrategy waitStrategy) {
+
+        // Set the state
+        blueCANState = BlueCANState.DISCONNECTED;
+        this.deviceListener = deviceListener;
+        supervisor = new ConnectionSupervisor(TAG, transport);
+        supervisor.addStateListener(this);
+
+        // Start dispatching received frames
+        pipeline = new CANPipeline(TAG, CANPipeline.DEFAULT_CAPACITY, waitStrategy);
+        // The adapter repeats unchanged frames, pass only changes unless setChangeFilter(null)
+        pipeline.setChangeFilter(new CANChangeFilter());
+        pipeline.start();
+
+        // A single receive thread serves every connection
+        Thread rxThread = new Thread(new BlueCANRXThread(), TAG + ".rx");
+        rxThread.setDaemon(true);
+        rxThread.start();
+
+        // Open the connection
+        supervisor.start();
+        connect(address);
+    }
+
+    public void connect(String address) {
+        supervisor.connect(address);
+    }
+
+    public void disconnect() {
+        supervisor.disconnect();
+    }
+
+    public boolean isConnected() {
+        return (blueCANState == BlueCANState.CONNECTED)
+                && (supervisor.getState() == ConnectionSupervisor.State.CONNECTED);
+    }
+
+    // Also ends the receive thread, which waits on the supervisor
+    public void stop() {
+        supervisor.stop();
+        pipeline.stop();
+    }
+
+    public void sendCANMessage(CANMessage msg) {
+        sendCANMessage(msg, null);
+    }
+
+    // BlueCAN needs no handshake, so frames are written straight from the calling thread
+    public boolean sendCANMessage(CANMessage msg, ICANTxCallback callback) {
+        boolean sent;
+        synchronized (txBuffer) {
+            int length = BlueCANCodec.encodeFrame(msg.getChannel(), msg.getID(), msg.getLongData(),
+                    msg.getDLC(), txBuffer, 0);
+            if (length == BlueCANCodec.INVALID) {
+                CANLog.e(TAG, "Invalid frame on channel " + msg.getChannel() + " ID " + msg.getID());
+                sent = false;
+            } else {
+                sent = write(txBuffer, length);
+            }
+        }
+        pipeline.getStats().recordTransmit(sent);
+        if (callback != null) {
+            if (sent) {
+                callback.onTxComplete(msg);
+            } else {
+                callback.onTxFailed(msg);
+            }
+        }
+        return sent;
+    }
+
+//    public void sendCANMessage(CANMessage msg) {
+//        txMessages.add(msg);
+//    }
+
+    public int getCyclicSlotCount() {
+        return CYCLIC_SLOTS;
+    }
+
+    // Configures the slot and switches it on in a single write. The slot is started again after
+    // every reconnect until it is stopped.
+    public boolean startCyclic(int slot, CANMessage msg) {
+        checkSlot(slot);
+        synchronized (txBuffer) {
+            cyclicChannels[slot] = msg.getChannel();
+            if (!writeCyclic(slot, msg)) {
+                // The caller sends the frame itself now
+                cyclicFrames[slot] = null;
+                return false;
+            }
+            if (cyclicFrames[slot] == null) {
+                cyclicFrames[slot] = new CANMessage();
+            }
+            cyclicFrames[slot].copyFrom(msg);
+            return true;
+        }
+    }
+
+    public boolean stopCyclic(int slot) {
+        checkSlot(slot);
+        synchronized (txBuffer) {
+            cyclicFrames[slot] = null;
+            int length = BlueCANCodec.encodePeriodicSwitch(cyclicChannels[slot], slot, false, txBuffer, 0);
+            return (length != BlueCANCodec.INVALID) && write(txBuffer, length);
+        }
+    }
+
+    public void addCANListener(ICANListener listener) {
+        pipeline.addListener(listener, CANFilter.all());
+    }
+
+    public void addCANListener(ICANListener listener, CANFilter filter) {
+        pipeline.addListener(listener, filter);
+    }
+
+    public void setCANListenerFilters(ICANListener listener, List<CANFilter> filters) {
+        pipeline.setListenerFilters(listener, filters);
+    }
+
+    public void removeCANListener(ICANListener listener) {
+        pipeline.removeListener(listener);
+    }
+
+    public void clearCANListeners() {
+        pipeline.clearListeners();
+    }
+
+    // Replaces the default filter that drops repeated payloads, null passes every frame
+    public void setChangeFilter(CANChangeFilter filter) {
+        pipeline.setChangeFilter(filter);
+    }
+
+    public CANLatencyStats getLatencyStats() {
+        return pipeline.getLatencyStats();
+    }
+
+    public CANDeviceStats getStats() {
+        return pipeline.getStats();
+    }
+
+    public ConnectionSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    // === Internal Methods ===
+
+    private void configure() {
+        synchronized (txBuffer) {
+            write(txBuffer, BlueCANCodec.encodeSetBaud(1, 500000 / 1000, txBuffer, 0));
+            // The adapter may have lost its cyclic frames with the connection, start them again
+            for (int slot = 0; slot < CYCLIC_SLOTS; slot++) {
+                if (cyclicFrames[slot] != null) {
+                    writeCyclic(slot, cyclicFrames[slot]);
+                }
+            }
+        }
+    }
+
+    // Called with txBuffer held
+    private boolean writeCyclic(int slot, CANMessage msg) {
+        int length = BlueCANCodec.encodePeriodicFrame(msg.getChannel(), slot, msg.getPeriod(), msg.getID(),
+                msg.getLongData(), msg.getDLC(), txBuffer, 0);
+        if (length == BlueCANCodec.INVALID) {
+            CANLog.e(TAG, "Invalid cyclic frame on channel " + msg.getChannel() + " ID " + msg.getID());
+            return false;
+        }
+        length = BlueCANCodec.encodePeriodicSwitch(msg.getChannel(), slot, true, txBuffer, length);
+        return write(txBuffer, length);
+    }
+
+    private static void checkSlot(int slot) {
+        if (slot < 0 || slot >= CYCLIC_SLOTS) {
+            throw new IllegalArgumentException("Cyclic slot " + slot + " out of range 0.." + (CYCLIC_SLOTS - 1));
+        }
+    }
+
+    // === RX and TX methods ===
+
+    private class BlueCANRXThread implements Runnable, BlueCANCodec.Callback {
+
+        private static final int READ_BUFFER_SIZE = 512;
+
+        private long readTime;
+        private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+        private final BlueCANCodec codec = new BlueCANCodec(this);
+
+        public void run() {
+
+            ConnectionSupervisor.Connection c;
+            while ((c = supervisor.awaitConnected()) != null) {
+                codec.reset();
+                InputStream input = c.getInputStream();
+                try {
+                    int count;
+                    while ((count = input.read(readBuffer)) >= 0) {
+                        readTime = System.nanoTime();
+                        pipeline.getStats().recordBytes(count);
+                        codec.decode(readBuffer, 0, count);
+                    }
+                    CANLog.d(TAG, "End of input in BlueCAN");
+                } catch (Exception e) {
+                    CANLog.d(TAG, "Caught exception reading input in BlueCAN");
+                }
+                supervisor.connectionLost(c);
+            }
+
+            CANLog.d(TAG, "Ending BlueCANRXThread run");
+        }
+
+        public void onFrame(int channel, int id, boolean extended, long data, int dlc) {
+
+            // Hand the messages off to the dispatch thread, duplicates are left to the change filter
+            pipeline.publish(channel, id, extended, data, dlc, readTime);
+        }
+
+        public void onUnprocessed(byte[] line, int length) {
+            pipeline.getStats().recordParseError();
+            CANLog.i(TAG, "Unprocessed message of " + length + " bytes");
+        }
+    }
+
+    private boolean write(byte[] bytes, int length) {
+
+        // Check I/O devices
+        ConnectionSupervisor.Connection c = connection;
+        if (c == null) {
+            CANLog.e(TAG, "No IO devices in write");
+            return false;
+        }
+
+        // Write to output device
+        OutputStream output = c.getOutputStream();
+        try {
+            output.write(bytes, 0, length);
+            output.flush();
+        } catch (Exception e) {
+            CANLog.e(TAG, "Caught exception during write");
+            supervisor.connectionLost(c);
+            return false;
+        }
+        return true;
+    }
+
+    // === Connection Handler ===
+
+    public void onConnectionStateChanged(ConnectionSupervisor supervisor, ConnectionSupervisor.State state) {
+        if (state == ConnectionSupervisor.State.CONNECTED) {
+            onConnected(supervisor.getConnection());
+        } else {
+            onDisconnected();
+        }
+    }
+
+    private void onConnected(ConnectionSupervisor.Connection c) {
+
+        if (c == null) {
+            // Lost again before it could be reported
+            return;
+        }
+        if (connectedBefore) {
+            pipeline.getStats().recordReconnect();
+        }
+        connectedBefore = true;
+
+        // Configure the device, the receive thread is already monitoring
+        connection = c;
+        blueCANState = BlueCANState.CONFIGURABLE;
+        configure();
+        blueCANState = BlueCANState.CONNECTED;
+
+        if (deviceListener != null) {
+            deviceListener.onDeviceConnected(this, c.getAddress());
+        }
+    }
+
+    // Reported once per connection, whatever noticed the loss first
+    private void onDisconnected() {
+
+        if (connection == null) {
+            return;
+        }
+        boolean wasConnected = (blueCANState == BlueCANState.CONNECTED);
+
+        // Clear interface and set state to disconnected
+        connection = null;
+        blueCANState = BlueCANState.DISCONNECTED;
+
+        if (wasConnected && deviceListener != null) {
+            deviceListener.onDeviceDisconnected(this);
+        }
+    }
+}
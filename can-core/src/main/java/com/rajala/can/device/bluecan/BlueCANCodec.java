@@ -0,0 +1,312 @@
+package com.rajala.can.device.bluecan;
+
+import com.rajala.can.CANFilter;
+
+/**
+ * Streaming codec for the BlueCAN wire protocol.
+ *
+ * Received lines have the form {@code CANn:ID:DATA} and are decoded byte by byte into primitives.
+ * Commands are encoded into caller supplied buffers. Neither direction allocates once the codec
+ * has been constructed. The encoders return {@link #INVALID} without writing anything when an
+ * argument is out of range for the protocol.
+ */
+public class BlueCANCodec {
+
+    public interface Callback {
+        // data holds the payload left aligned, byte 0 in the most significant byte
+        void onFrame(int channel, int id, boolean extended, long data, int dlc);
+
+        // Any line that is not a CAN frame, only valid for the duration of the call
+        void onUnprocessed(byte[] line, int length);
+    }
+
+    // Longest command: "CONF:CANn:CYCn:<period>:<id>:" plus 16 data digits and CR
+    public static final int MAX_COMMAND_LENGTH = 64;
+
+    // Returned by the encoders instead of a length
+    public static final int INVALID = -1;
+
+    // Channels and cyclic slots are a single digit on the wire
+    public static final int MAX_CHANNEL = 9;
+    public static final int MAX_SLOT = 9;
+    public static final int MAX_DLC = 8;
+
+    private static final int MAX_LINE = 128;
+    private static final int MAX_ID_DIGITS = 8;
+    private static final int MAX_DATA_DIGITS = 16;
+
+    private static final byte[] CAN = {'C', 'A', 'N'};
+    private static final byte[] CONF = {'C', 'O', 'N', 'F', ':'};
+    private static final byte[] CYC = {'C', 'Y', 'C'};
+    private static final byte[] ON = {'O', 'N'};
+    private static final byte[] OFF = {'O', 'F', 'F'};
+    private static final byte[] INIT = {'I', 'N', 'I', 'T'};
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    // Decoder states
+    private static final int STATE_PREFIX = 0;
+    private static final int STATE_CHANNEL = 1;
+    private static final int STATE_ID = 2;
+    private static final int STATE_DATA = 3;
+    private static final int STATE_INVALID = 4;
+
+    private final Callback callback;
+
+    // Current line state
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength;
+    private int state;
+    private int prefixIndex;
+    private int channel;
+    private int id;
+    private int idDigits;
+    private long data;
+    private int dataDigits;
+
+    public BlueCANCodec(Callback callback) {
+        this.callback = callback;
+    }
+
+    // === Decoding ===
+
+    public void decode(byte[] buffer, int offset, int count) {
+
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            byte b = buffer[i];
+            if (b == '\r' || b == '\n') {
+                endLine();
+                continue;
+            }
+            if (b == ' ' && lineLength == 0) {
+                // Leading whitespace
+                continue;
+            }
+            if (lineLength < MAX_LINE) {
+                line[lineLength++] = b;
+            } else {
+                state = STATE_INVALID;
+            }
+            step(b);
+        }
+    }
+
+    public void reset() {
+        lineLength = 0;
+        state = STATE_PREFIX;
+        prefixIndex = 0;
+        channel = 0;
+        id = 0;
+        idDigits = 0;
+        data = 0;
+        dataDigits = 0;
+    }
+
+    private void step(byte b) {
+        switch (state) {
+            case STATE_PREFIX:
+                if (b == CAN[prefixIndex]) {
+                    prefixIndex++;
+                    if (prefixIndex == CAN.length) {
+                        state = STATE_CHANNEL;
+                    }
+                } else {
+                    state = STATE_INVALID;
+                }
+                break;
+            case STATE_CHANNEL:
+                if (b >= '0' && b <= '9') {
+                    channel = channel * 10 + (b - '0');
+                } else if (b == ':' && channel > 0) {
+                    state = STATE_ID;
+                } else {
+                    state = STATE_INVALID;
+                }
+                break;
+            case STATE_ID: {
+                int value = hexValue(b);
+                if (value >= 0 && idDigits < MAX_ID_DIGITS) {
+                    id = (id << 4) | value;
+                    idDigits++;
+                } else if (b == ':' && idDigits > 0) {
+                    state = STATE_DATA;
+                } else {
+                    state = STATE_INVALID;
+                }
+                break;
+            }
+            case STATE_DATA: {
+                int value = hexValue(b);
+                if (value >= 0 && dataDigits < MAX_DATA_DIGITS) {
+                    data = (data << 4) | value;
+                    dataDigits++;
+                } else if (b != ' ') {
+                    state = STATE_INVALID;
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private void endLine() {
+
+        if (lineLength == 0) {
+            reset();
+            return;
+        }
+
+        if (state == STATE_DATA && (dataDigits & 1) == 0) {
+            int dlc = dataDigits / 2;
+            long payload = (dlc > 0) ? data << (8 * (8 - dlc)) : 0;
+            callback.onFrame(channel, id, (idDigits > 3) || (id > 0x7FF), payload, dlc);
+        } else {
+            callback.onUnprocessed(line, lineLength);
+        }
+        reset();
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        return -1;
+    }
+
+    // === Encoding ===
+
+    // CANn:ID:DATA<CR>
+    public static int encodeFrame(int channel, int id, long data, int dlc, byte[] out, int offset) {
+        if (!isValidChannel(channel) || !isValidID(id) || !isValidDLC(dlc)) {
+            return INVALID;
+        }
+        int pos = put(CAN, out, offset);
+        pos = putDecimal(channel, out, pos);
+        out[pos++] = ':';
+        pos = putHex(id, out, pos);
+        out[pos++] = ':';
+        pos = putData(data, dlc, out, pos);
+        out[pos++] = '\r';
+        return pos;
+    }
+
+    // CONF:CANn:CYCs:PERIOD:ID:DATA<CR>
+    public static int encodePeriodicFrame(int channel, int slot, int period, int id, long data, int dlc,
+                                          byte[] out, int offset) {
+        if (!isValidChannel(channel) || !isValidSlot(slot) || period <= 0 || !isValidID(id) || !isValidDLC(dlc)) {
+            return INVALID;
+        }
+        int pos = putCyclicPrefix(channel, slot, out, offset);
+        pos = putDecimal(period, out, pos);
+        out[pos++] = ':';
+        pos = putHex(id, out, pos);
+        out[pos++] = ':';
+        pos = putData(data, dlc, out, pos);
+        out[pos++] = '\r';
+        return pos;
+    }
+
+    // CONF:CANn:CYCs:ON<CR> or CONF:CANn:CYCs:OFF<CR>
+    public static int encodePeriodicSwitch(int channel, int slot, boolean on, byte[] out, int offset) {
+        if (!isValidChannel(channel) || !isValidSlot(slot)) {
+            return INVALID;
+        }
+        int pos = putCyclicPrefix(channel, slot, out, offset);
+        pos = put(on ? ON : OFF, out, pos);
+        out[pos++] = '\r';
+        return pos;
+    }
+
+    // CANn:INIT:KBAUD<CR>
+    public static int encodeSetBaud(int channel, int kbaud, byte[] out, int offset) {
+        if (!isValidChannel(channel) || kbaud <= 0) {
+            return INVALID;
+        }
+        int pos = put(CAN, out, offset);
+        pos = putDecimal(channel, out, pos);
+        out[pos++] = ':';
+        pos = put(INIT, out, pos);
+        out[pos++] = ':';
+        pos = putDecimal(kbaud, out, pos);
+        out[pos++] = '\r';
+        return pos;
+    }
+
+    private static boolean isValidChannel(int channel) {
+        return channel >= 1 && channel <= MAX_CHANNEL;
+    }
+
+    private static boolean isValidSlot(int slot) {
+        return slot >= 0 && slot <= MAX_SLOT;
+    }
+
+    private static boolean isValidID(int id) {
+        return id >= 0 && id <= CANFilter.MAX_EXTENDED_ID;
+    }
+
+    private static boolean isValidDLC(int dlc) {
+        return dlc >= 0 && dlc <= MAX_DLC;
+    }
+
+    private static int putCyclicPrefix(int channel, int slot, byte[] out, int pos) {
+        pos = put(CONF, out, pos);
+        pos = put(CAN, out, pos);
+        pos = putDecimal(channel, out, pos);
+        out[pos++] = ':';
+        pos = put(CYC, out, pos);
+        pos = putDecimal(slot, out, pos);
+        out[pos++] = ':';
+        return pos;
+    }
+
+    private static int put(byte[] src, byte[] out, int pos) {
+        System.arraycopy(src, 0, out, pos, src.length);
+        return pos + src.length;
+    }
+
+    // value must not be negative, the encoders check their arguments before
+    private static int putDecimal(int value, byte[] out, int pos) {
+        if (value == 0) {
+            out[pos++] = '0';
+            return pos;
+        }
+        int digits = 0;
+        for (int v = value; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            out[i] = (byte)('0' + (value % 10));
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    // Upper case hex without leading zeros, same as %X
+    private static int putHex(int value, byte[] out, int pos) {
+        int shift = 28;
+        while (shift > 0 && ((value >>> shift) & 0xF) == 0) {
+            shift -= 4;
+        }
+        for (; shift >= 0; shift -= 4) {
+            out[pos++] = HEX_DIGITS[(value >>> shift) & 0xF];
+        }
+        return pos;
+    }
+
+    private static int putData(long data, int dlc, byte[] out, int pos) {
+        for (int i = 0; i < dlc; i++) {
+            int b = (int)(data >>> (56 - 8*i)) & 0xFF;
+            out[pos++] = HEX_DIGITS[b >>> 4];
+            out[pos++] = HEX_DIGITS[b & 0xF];
+        }
+        return pos;
+    }
+}
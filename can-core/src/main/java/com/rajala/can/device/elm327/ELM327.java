@@ -0,0 +1,329 @@
+package com.rajala.can.device.elm327;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.ICANDeviceListener;
+import com.rajala.can.device.IDiagnosticCANDevice;
+import com.rajala.can.dispatch.BlockingWaitStrategy;
+import com.rajala.can.dispatch.CANChangeFilter;
+import com.rajala.can.dispatch.CANPipeline;
+import com.rajala.can.dispatch.CANSubscriptionRegistry;
+import com.rajala.can.dispatch.IWaitStrategy;
+import com.rajala.can.log.CANLog;
+import com.rajala.can.stats.CANDeviceStats;
+import com.rajala.can.stats.CANLatencyStats;
+import com.rajala.can.transport.ConnectionSupervisor;
+import com.rajala.can.transport.IConnectionStateListener;
+import com.rajala.can.transport.ITransport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+public class ELM327 implements IDiagnosticCANDevice, IConnectionStateListener {
+
+    private static final String TAG = "ELM327";
+    public static final String DEFAULT_DEVICE_NAME = "OBDII";
+
+    // ATZ restarts the chip, which takes about a second on clones
+    private static final long RESET_TIMEOUT_MS = 2000;
+    private static final long COMMAND_TIMEOUT_MS = 500;
+    private static final int COMMAND_RETRIES = 2;
+
+    public enum ELM327State {
+        DISCONNECTED,
+        CONNECTED,
+    }
+    private volatile ELM327State currState = ELM327State.DISCONNECTED;
+    private boolean connectedBefore;
+
+    // Connection members, the supervisor reconnects by itself
+    private final ConnectionSupervisor supervisor;
+    private volatile ConnectionSupervisor.Connection connection;
+    private final ICANDeviceListener deviceListener;
+
+    // Commands are matched to their replies, outgoing frames are queued and sent one prompt at a time
+    private final ELM327CommandEngine engine = new ELM327CommandEngine();
+    private final ELM327Transmitter transmitter = new ELM327Transmitter(engine);
+
+    // Received frames are handed off to the listeners on the pipeline's dispatch thread
+    private final CANPipeline pipeline;
+
+    // === User methods ===
+
+    // deviceListener may be null
+    public ELM327(ICANDeviceListener deviceListener, ITransport transport, String address) {
+        this(deviceListener, transport, address, new BlockingWaitStrategy());
+    }
+
+    public ELM327(ICANDeviceListener deviceListener, ITransport transport, String address,
+                  IWaitStrategy waitStrategy) {
+
+        // Set the state
+        currState = ELM327State.DISCONNECTED;
+        this.deviceListener = deviceListener;
+        supervisor = new ConnectionSupervisor(TAG, transport);
+        supervisor.addStateListener(this);
+
+        // Start dispatching received frames
+        pipeline = new CANPipeline(TAG, CANPipeline.DEFAULT_CAPACITY, waitStrategy);
+        pipeline.start();
+        transmitter.setStats(pipeline.getStats());
+        transmitter.start();
+
+        // Only let the subscribed IDs across the link
+        pipeline.getRegistry().setChangeListener(new CANSubscriptionRegistry.ChangeListener() {
+            public void onSubscriptionsChanged(CANSubscriptionRegistry registry) {
+                transmitter.setAcceptanceFilter(ELM327AcceptanceFilter.compute(registry.getFilters()));
+            }
+        });
+
+        // A single receive thread serves every connection
+        Thread rxThread = new Thread(new RXMonitor(), TAG + ".rx");
+        rxThread.setDaemon(true);
+        rxThread.start();
+
+        // Open the connection
+        supervisor.start();
+        connect(address);
+    }
+
+    public void connect(String address) {
+        supervisor.connect(address);
+    }
+
+    // The device can be connected again, stop() ends it for good
+    public void disconnect() {
+        supervisor.disconnect();
+    }
+
+    public boolean isConnected() {
+        return (currState == ELM327State.CONNECTED)
+                && (supervisor.getState() == ConnectionSupervisor.State.CONNECTED);
+    }
+
+    // Also ends the receive thread, which waits on the supervisor
+    public void stop() {
+        supervisor.stop();
+        transmitter.stop();
+        pipeline.stop();
+    }
+
+    // Blocks until the adapter has answered, returns one of the ELM327CommandEngine results
+    public int sendOBDCommand(String cmd) {
+
+        if (!isConnected()) {
+            CANLog.e(TAG, "Not connected");
+            return ELM327CommandEngine.RESULT_DISCONNECTED;
+        }
+
+        CANLog.d(TAG, "Sending: " + cmd);
+        int result = engine.execute(cmd);
+        if (result == ELM327CommandEngine.RESULT_DISCONNECTED) {
+            CANLog.e(TAG, "Failed to write to output");
+            supervisor.connectionLost(connection);
+        }
+        return result;
+    }
+
+    public void sendCANMessage(CANMessage msg) {
+        transmitter.enqueue(msg, null);
+    }
+
+    public boolean sendCANMessage(CANMessage msg, ICANTxCallback callback) {
+        return transmitter.enqueue(msg, callback);
+    }
+
+    // Queued with the frames, a waiting request goes out as soon as the previous prompt arrives
+    public boolean sendRequest(CANMessage msg, int responses, ICANTxCallback callback) {
+        return transmitter.enqueue(msg, callback, responses);
+    }
+
+    public int getMaxResponses() {
+        return ELM327FrameEncoder.MAX_RESPONSES;
+    }
+
+    public ELM327Transmitter getTransmitter() {
+        return transmitter;
+    }
+
+    public void addCANListener(ICANListener listener) {
+        pipeline.addListener(listener, CANFilter.all());
+    }
+
+    public void addCANListener(ICANListener listener, CANFilter filter) {
+        pipeline.addListener(listener, filter);
+    }
+
+    public void setCANListenerFilters(ICANListener listener, List<CANFilter> filters) {
+        pipeline.setListenerFilters(listener, filters);
+    }
+
+    public void removeCANListener(ICANListener listener) {
+        pipeline.removeListener(listener);
+    }
+
+    public void clearCANListeners() {
+        pipeline.clearListeners();
+    }
+
+    public void setChangeFilter(CANChangeFilter filter) {
+        pipeline.setChangeFilter(filter);
+    }
+
+    public CANLatencyStats getLatencyStats() {
+        return pipeline.getLatencyStats();
+    }
+
+    public CANDeviceStats getStats() {
+        return pipeline.getStats();
+    }
+
+    public ELM327State getCurrState() {
+        return currState;
+    }
+
+    public ConnectionSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    // === Handler methods ===
+
+    public void onConnectionStateChanged(ConnectionSupervisor supervisor, ConnectionSupervisor.State state) {
+        if (state == ConnectionSupervisor.State.CONNECTED) {
+            onConnected(supervisor.getConnection());
+        } else {
+            onDisconnected();
+        }
+    }
+
+    private void onConnected(ConnectionSupervisor.Connection c) {
+
+        if (c == null) {
+            // Lost again before it could be reported
+            return;
+        }
+        CANLog.i(TAG, "Transport connected");
+        if (connectedBefore) {
+            pipeline.getStats().recordReconnect();
+        }
+        connectedBefore = true;
+
+        // The receive thread is already reading, so the replies to the configuration are matched
+        connection = c;
+        engine.setOutput(c.getOutputStream());
+        if (!configure()) {
+            CANLog.e(TAG, "Adapter did not accept the configuration");
+            supervisor.connectionLost(c);
+            return;
+        }
+        currState = ELM327State.CONNECTED;
+        transmitter.setConnected(true);
+        transmitter.startMonitoring();
+
+        if (deviceListener != null) {
+            deviceListener.onDeviceConnected(this, c.getAddress());
+        }
+    }
+
+    // Reported once per connection, whatever noticed the loss first
+    private void onDisconnected() {
+
+        if (connection == null) {
+            return;
+        }
+        boolean wasConnected = (currState == ELM327State.CONNECTED);
+        CANLog.i(TAG, "Transport disconnected");
+        connection = null;
+        currState = ELM327State.DISCONNECTED;
+        engine.setOutput(null);
+        transmitter.setConnected(false);
+
+        if (wasConnected && deviceListener != null) {
+            deviceListener.onDeviceDisconnected(this);
+        }
+    }
+
+    // === Internal methods ===
+
+    // Each step completes as soon as the adapter answers, monitoring is started by the transmitter
+    private boolean configure() {
+
+        // The adapter may still be monitoring from a previous connection
+        engine.interrupt();
+
+        int result = engine.execute(ELM327Commands.AT_RESET_ALL, RESET_TIMEOUT_MS, COMMAND_RETRIES);
+        if (result != ELM327CommandEngine.RESULT_OK) {
+            return false;
+        }
+        CANLog.i(TAG, "Adapter: " + engine.getResponse());
+        return engine.execute(String.format(ELM327Commands.AT_ECHO, 0), COMMAND_TIMEOUT_MS,
+                COMMAND_RETRIES) == ELM327CommandEngine.RESULT_OK
+                && engine.execute(String.format(ELM327Commands.AT_HEADERS, 1), COMMAND_TIMEOUT_MS,
+                COMMAND_RETRIES) == ELM327CommandEngine.RESULT_OK;
+    }
+
+    // === Receiving thread ===
+
+    private class RXMonitor implements Runnable, ELM327Parser.Callback {
+
+        private static final String TAG = "ELM327.RXMonitor";
+        private static final int READ_BUFFER_SIZE = 512;
+
+        private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+        private final ELM327Parser parser = new ELM327Parser(this);
+        private long readTime;
+
+        public void run() {
+
+            ConnectionSupervisor.Connection c;
+            while ((c = supervisor.awaitConnected()) != null) {
+                parser.reset();
+                InputStream input = c.getInputStream();
+                try {
+                    int count;
+                    while ((count = input.read(readBuffer)) >= 0) {
+                        readTime = System.nanoTime();
+                        pipeline.getStats().recordBytes(count);
+                        parser.parse(readBuffer, 0, count);
+                    }
+                    CANLog.e(TAG, "End of input stream");
+                } catch (IOException e) {
+                    CANLog.e(TAG, "Input stream failed");
+                }
+                supervisor.connectionLost(c);
+            }
+        }
+
+        public void onFrame(int id, boolean extended, long data, int dlc) {
+
+            // Never wait on the listeners here, a full ring drops the frame
+            pipeline.publish(1, id, extended, data, dlc, readTime);
+        }
+
+        public void onEvent(int event, byte[] line, int length) {
+            engine.onEvent(event, line, length);
+            transmitter.onEvent(event);
+            switch (event) {
+                case ELM327Parser.EVENT_BUFFER_FULL:
+                    // The transmitter restarts monitoring
+                    CANLog.w(TAG, "Adapter buffer full, restarting monitor");
+                    pipeline.getStats().recordOverflow();
+                    break;
+                case ELM327Parser.EVENT_MALFORMED:
+                    pipeline.getStats().recordParseError();
+                    break;
+                case ELM327Parser.EVENT_NO_DATA:
+                    CANLog.d(TAG, "No data");
+                    break;
+                case ELM327Parser.EVENT_UNKNOWN_COMMAND:
+                    CANLog.w(TAG, "Adapter rejected a command");
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
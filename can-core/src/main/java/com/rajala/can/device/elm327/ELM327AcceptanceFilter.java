@@ -0,0 +1,148 @@
+package com.rajala.can.device.elm327;
+
+import com.rajala.can.CANFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Acceptance filter for the adapter, computed from the filters listeners subscribed with.
+ *
+ * The ELM327 has a single ID filter/mask pair (ATCF/ATCM) and a receive address (ATCRA), so the
+ * subscriptions are folded into the tightest pair that still passes every requested ID: the mask
+ * keeps only the bits on which all requested IDs agree. A single exact ID is programmed with
+ * ATCRA instead. Anything that cannot be narrowed down, a match-all subscription or a mix of 11
+ * and 29 bit IDs, leaves the adapter passing everything. Frames that get through without being
+ * asked for are dropped on the host by the subscription registry.
+ */
+public class ELM327AcceptanceFilter {
+
+    public static final ELM327AcceptanceFilter PASS_ALL = new ELM327AcceptanceFilter(false, 0, 0);
+
+    private final boolean extended;
+    private final int filter;
+    private final int mask;
+
+    private ELM327AcceptanceFilter(boolean extended, int filter, int mask) {
+        this.extended = extended;
+        this.filter = filter & mask;
+        this.mask = mask;
+    }
+
+    public static ELM327AcceptanceFilter compute(List<CANFilter> filters) {
+
+        if (filters.isEmpty()) {
+            return PASS_ALL;
+        }
+
+        boolean extended = filters.get(0).isExtended();
+        int fullMask = extended ? CANFilter.MAX_EXTENDED_ID : CANFilter.MAX_STANDARD_ID;
+        int value = 0;
+        int mask = fullMask;
+        boolean first = true;
+        for (CANFilter f : filters) {
+            if (f.getType() == CANFilter.Type.ALL || f.isExtended() != extended) {
+                return PASS_ALL;
+            }
+
+            // Each filter as the value/mask pair covering it
+            int fValue;
+            int fMask;
+            switch (f.getType()) {
+                case EXACT:
+                    fValue = f.getID();
+                    fMask = fullMask;
+                    break;
+                case RANGE:
+                    // Every ID in the range shares the bits above the highest one that differs
+                    fValue = f.getRangeStart();
+                    fMask = fullMask & ~spread(f.getRangeStart() ^ f.getRangeEnd());
+                    break;
+                default:
+                    fValue = f.getMatch();
+                    fMask = f.getMask() & fullMask;
+                    break;
+            }
+
+            if (first) {
+                value = fValue;
+                mask = fMask;
+                first = false;
+            } else {
+                mask &= fMask & ~(value ^ fValue);
+            }
+        }
+        return (mask == 0) ? PASS_ALL : new ELM327AcceptanceFilter(extended, value, mask);
+    }
+
+    // All bits from the highest set bit of x down
+    private static int spread(int x) {
+        x |= x >>> 1;
+        x |= x >>> 2;
+        x |= x >>> 4;
+        x |= x >>> 8;
+        x |= x >>> 16;
+        return x;
+    }
+
+    public boolean isPassAll() {
+        return mask == 0;
+    }
+
+    public boolean isExtended() {
+        return extended;
+    }
+
+    public int getFilter() {
+        return filter;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public boolean accepts(int id) {
+        return (id & mask) == filter;
+    }
+
+    // Commands that program the adapter, clearing whatever was set before
+    public List<String> toCommands() {
+        List<String> commands = new ArrayList<>(3);
+        String format = extended ? "%08X" : "%03X";
+        int fullMask = extended ? CANFilter.MAX_EXTENDED_ID : CANFilter.MAX_STANDARD_ID;
+
+        commands.add(String.format(ELM327Commands.AT_CAN_RECEIVE_ADDRESS, ""));
+        if (isPassAll()) {
+            // Both the 11 and the 29 bit masks let everything through
+            commands.add(String.format(ELM327Commands.AT_CAN_MASK, "000"));
+            commands.add(String.format(ELM327Commands.AT_CAN_MASK, "00000000"));
+        } else if (mask == fullMask) {
+            commands.add(String.format(ELM327Commands.AT_CAN_RECEIVE_ADDRESS,
+                    String.format(Locale.US, format, filter)));
+        } else {
+            commands.add(String.format(ELM327Commands.AT_CAN_FILTER, String.format(Locale.US, format, filter)));
+            commands.add(String.format(ELM327Commands.AT_CAN_MASK, String.format(Locale.US, format, mask)));
+        }
+        return commands;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ELM327AcceptanceFilter)) {
+            return false;
+        }
+        ELM327AcceptanceFilter other = (ELM327AcceptanceFilter)o;
+        return extended == other.extended && filter == other.filter && mask == other.mask;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (extended ? 1 : 0) + filter) + mask;
+    }
+
+    @Override
+    public String toString() {
+        return isPassAll() ? "pass all" : String.format(Locale.US, "filter %X mask %X", filter, mask);
+    }
+}
@@ -0,0 +1,222 @@
+package com.rajala.can.device.elm327;
+
+import com.rajala.can.log.CANLog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request/response layer over the ELM327 command interface.
+ *
+ * The adapter handles one command at a time and ends every reply with a {@code >} prompt, so a
+ * single command is outstanding at any moment. Parser events from the receive thread are matched
+ * to it: OK, ?, NO DATA and error lines set the result, the first other text line is kept as the
+ * response (e.g. the version after ATZ), echoed command lines are skipped, and the prompt
+ * completes the command. A command that gets no prompt within its timeout, or is rejected, is
+ * sent again up to the given number of retries.
+ *
+ * The engine also tracks whether the adapter is monitoring and interrupts ATMA before any other
+ * command is written.
+ */
+public class ELM327CommandEngine {
+
+    private static final String TAG = "ELM327CommandEngine";
+
+    public static final int RESULT_OK = 0;
+    public static final int RESULT_NO_DATA = 1;
+    public static final int RESULT_REJECTED = 2;
+    public static final int RESULT_ERROR = 3;
+    public static final int RESULT_TIMEOUT = 4;
+    public static final int RESULT_DISCONNECTED = 5;
+
+    public static final long DEFAULT_TIMEOUT_MS = 500;
+    private static final long STOP_TIMEOUT_MS = 200;
+    private static final int MAX_COMMAND = 64;
+    private static final int MAX_RESPONSE = 64;
+
+    // Any byte stops monitoring, the adapter answers with STOPPED and a prompt
+    private static final byte STOP_MONITOR = '\r';
+    private static final byte[] MONITOR_ALL = (ELM327Commands.AT_MONITOR_ALL + "\r").getBytes();
+
+    private volatile OutputStream output;
+    private volatile boolean monitoring;
+
+    // Outstanding command, written by the caller and matched on the receive thread
+    private final Semaphore prompts = new Semaphore(0);
+    private final byte[] command = new byte[MAX_COMMAND + 1];
+    private volatile int commandLength;
+    private volatile int result;
+    private final byte[] response = new byte[MAX_RESPONSE];
+    private volatile int responseLength;
+
+    // Set on connect, null on disconnect. The adapter is assumed idle until told otherwise.
+    public void setOutput(OutputStream output) {
+        this.output = output;
+        monitoring = false;
+        if (output == null) {
+            // Wake a caller waiting for a prompt that will never come
+            prompts.release();
+        }
+    }
+
+    public boolean isMonitoring() {
+        return monitoring;
+    }
+
+    // === Commands ===
+
+    public int execute(String cmd) {
+        return execute(cmd, DEFAULT_TIMEOUT_MS, 0);
+    }
+
+    public int execute(String cmd, long timeoutMs, int retries) {
+        byte[] bytes = cmd.getBytes();
+        return execute(bytes, bytes.length, timeoutMs, retries);
+    }
+
+    // Sends cmd followed by CR and waits for the prompt that ends its reply
+    public synchronized int execute(byte[] cmd, int length, long timeoutMs, int retries) {
+
+        if (length > MAX_COMMAND) {
+            throw new IllegalArgumentException("Command too long");
+        }
+        if (monitoring && !stopMonitor()) {
+            return RESULT_TIMEOUT;
+        }
+
+        System.arraycopy(cmd, 0, command, 0, length);
+        command[length] = '\r';
+        int attempt = 0;
+        while (true) {
+            int status = send(length, timeoutMs);
+            if ((status != RESULT_TIMEOUT && status != RESULT_REJECTED) || attempt++ >= retries) {
+                commandLength = 0;
+                return status;
+            }
+            CANLog.w(TAG, "Retrying " + new String(command, 0, length));
+        }
+    }
+
+    // First line of the last reply that was not a status line, e.g. the version after ATZ
+    public synchronized String getResponse() {
+        return new String(response, 0, responseLength);
+    }
+
+    // Starts ATMA, which is not answered until it is interrupted
+    public synchronized boolean startMonitor() {
+        if (monitoring) {
+            return true;
+        }
+        monitoring = write(MONITOR_ALL, MONITOR_ALL.length);
+        return monitoring;
+    }
+
+    // Interrupts ATMA and waits until the adapter accepts commands again
+    public synchronized boolean stopMonitor() {
+        if (!monitoring) {
+            return true;
+        }
+        monitoring = false;
+        prompts.drainPermits();
+        if (!write(new byte[] { STOP_MONITOR }, 1)) {
+            return false;
+        }
+        try {
+            if (!prompts.tryAcquire(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                CANLog.w(TAG, "Adapter did not stop monitoring");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    // Interrupts whatever the adapter is doing, used before initialization when its state is unknown
+    public synchronized boolean interrupt() {
+        monitoring = true;
+        return stopMonitor();
+    }
+
+    private int send(int length, long timeoutMs) {
+
+        prompts.drainPermits();
+        result = RESULT_OK;
+        responseLength = 0;
+        commandLength = length;
+        if (!write(command, length + 1)) {
+            return RESULT_DISCONNECTED;
+        }
+        try {
+            if (!prompts.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                return RESULT_TIMEOUT;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RESULT_TIMEOUT;
+        }
+        return (output == null) ? RESULT_DISCONNECTED : result;
+    }
+
+    private boolean write(byte[] bytes, int length) {
+        OutputStream out = output;
+        if (out == null) {
+            return false;
+        }
+        try {
+            out.write(bytes, 0, length);
+            out.flush();
+        } catch (IOException e) {
+            CANLog.e(TAG, "Failed to write to output");
+            return false;
+        }
+        return true;
+    }
+
+    // === Receive thread ===
+
+    public void onEvent(int event, byte[] line, int length) {
+        switch (event) {
+            case ELM327Parser.EVENT_PROMPT:
+                prompts.release();
+                break;
+            case ELM327Parser.EVENT_NO_DATA:
+                result = RESULT_NO_DATA;
+                break;
+            case ELM327Parser.EVENT_UNKNOWN_COMMAND:
+                result = RESULT_REJECTED;
+                break;
+            case ELM327Parser.EVENT_ERROR:
+                result = RESULT_ERROR;
+                break;
+            case ELM327Parser.EVENT_BUFFER_FULL:
+            case ELM327Parser.EVENT_STOPPED:
+                monitoring = false;
+                break;
+            case ELM327Parser.EVENT_TEXT:
+                if (responseLength == 0 && !isEcho(line, length)) {
+                    int n = Math.min(length, MAX_RESPONSE);
+                    System.arraycopy(line, 0, response, 0, n);
+                    responseLength = n;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private boolean isEcho(byte[] line, int length) {
+        if (length != commandLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[i] != command[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
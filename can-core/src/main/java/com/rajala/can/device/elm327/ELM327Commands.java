@@ -22,4 +22,8 @@ public interface ELM327Commands {
     String AT_ECHO                      = AT_COMMAND + "E%d";
     String AT_DEFAULTS                  = AT_COMMAND + "D";
     String AT_HEADERS                   = AT_COMMAND + "H%d";
+    String AT_CAN_PRIORITY              = AT_COMMAND + "CP%02X";
+    String AT_CAN_FILTER                = AT_COMMAND + "CF%s";
+    String AT_CAN_MASK                  = AT_COMMAND + "CM%s";
+    String AT_CAN_RECEIVE_ADDRESS       = AT_COMMAND + "CRA%s";
 }
\ No newline at end of file
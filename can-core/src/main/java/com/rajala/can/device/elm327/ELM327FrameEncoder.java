@@ -0,0 +1,71 @@
+package com.rajala.can.device.elm327;
+
+/**
+ * Encodes the command lines that put a CAN frame on the bus through the ELM327.
+ *
+ * A frame takes up to three lines: ATCP with the top five bits of a 29 bit ID, ATSH with the rest
+ * of the header, and the payload as hex digits. Lines are written into caller supplied buffers
+ * without the terminating CR, which the {@link ELM327CommandEngine} appends. Nothing is allocated.
+ */
+public class ELM327FrameEncoder {
+
+    // Longest line: the payload, 16 digits plus the response count digit
+    public static final int MAX_LINE_LENGTH = 32;
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+    private static final byte[] SET_HEADER = ELM327Commands.AT_SET_HEADER.replace("%s", "").getBytes();
+    private static final byte[] SET_PRIORITY = ELM327Commands.AT_CAN_PRIORITY.replace("%02X", "").getBytes();
+
+    // Value ATSH takes, the whole 11 bit ID or the low 24 bits of a 29 bit one
+    public static int header(int id, boolean extended) {
+        return extended ? (id & 0xFFFFFF) : id;
+    }
+
+    // Value ATCP takes, only meaningful for 29 bit IDs
+    public static int priority(int id) {
+        return id >>> 24;
+    }
+
+    // ATSHhhh or ATSHhhhhhh
+    public static int encodeHeader(int header, boolean extended, byte[] out, int offset) {
+        int pos = put(SET_HEADER, out, offset);
+        return putHex(header, extended ? 6 : 3, out, pos);
+    }
+
+    // ATCPpp
+    public static int encodePriority(int priority, byte[] out, int offset) {
+        int pos = put(SET_PRIORITY, out, offset);
+        return putHex(priority, 2, out, pos);
+    }
+
+    // Largest response count the digit after the payload can hold
+    public static final int MAX_RESPONSES = 0xF;
+
+    // The payload bytes followed by 0, which tells the adapter not to wait for any responses
+    public static int encodeData(long data, int dlc, byte[] out, int offset) {
+        return encodeData(data, dlc, 0, out, offset);
+    }
+
+    // The payload bytes followed by the number of response frames to wait for. The adapter
+    // prompts as soon as that many have arrived instead of waiting out its timeout.
+    public static int encodeData(long data, int dlc, int responses, byte[] out, int offset) {
+        int pos = offset;
+        for (int i = 0; i < dlc; i++) {
+            pos = putHex((int)(data >>> (56 - 8*i)) & 0xFF, 2, out, pos);
+        }
+        return putHex(responses, 1, out, pos);
+    }
+
+    private static int put(byte[] src, byte[] out, int pos) {
+        System.arraycopy(src, 0, out, pos, src.length);
+        return pos + src.length;
+    }
+
+    private static int putHex(int value, int digits, byte[] out, int pos) {
+        for (int shift = 4 * (digits - 1); shift >= 0; shift -= 4) {
+            out[pos++] = HEX_DIGITS[(value >>> shift) & 0xF];
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,233 @@
+package com.rajala.can.device.elm327;
+
+/**
+ * Byte level state machine for the ELM327 output stream.
+ *
+ * Raw socket bytes are fed through {@link #parse(byte[], int, int)}. Hex digits are decoded into
+ * a preallocated nibble buffer as they arrive, and on every line ending the buffered line is either
+ * emitted as a CAN frame made of primitives or classified as an out-of-band event. No objects are
+ * allocated once the parser has been constructed.
+ */
+public class ELM327Parser {
+
+    // Out-of-band events
+    public static final int EVENT_PROMPT = 0;
+    public static final int EVENT_OK = 1;
+    public static final int EVENT_BUFFER_FULL = 2;
+    public static final int EVENT_NO_DATA = 3;
+    public static final int EVENT_UNKNOWN_COMMAND = 4;
+    public static final int EVENT_STOPPED = 5;
+    public static final int EVENT_ERROR = 6;
+    public static final int EVENT_MALFORMED = 7;
+    public static final int EVENT_TEXT = 8;
+
+    public interface Callback {
+        // data holds the payload left aligned, byte 0 in the most significant byte
+        void onFrame(int id, boolean extended, long data, int dlc);
+
+        // line is only valid for the duration of the call
+        void onEvent(int event, byte[] line, int length);
+    }
+
+    private static final int MAX_LINE = 128;
+    private static final int STD_ID_NIBBLES = 3;
+    private static final int EXT_ID_NIBBLES = 8;
+    private static final int MAX_NIBBLES = EXT_ID_NIBBLES + 16;
+
+    private static final byte[] BUFFER_FULL = ascii("BUFFER FULL");
+    private static final byte[] NO_DATA = ascii("NO DATA");
+    private static final byte[] STOPPED = ascii("STOPPED");
+    private static final byte[] ERROR = ascii("ERROR");
+    private static final byte[] OK = ascii("OK");
+
+    private static final byte[] HEX_VALUES = new byte[128];
+    static {
+        for (int i = 0; i < HEX_VALUES.length; i++) {
+            HEX_VALUES[i] = -1;
+        }
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte)i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['A' + i] = (byte)(10 + i);
+            HEX_VALUES['a' + i] = (byte)(10 + i);
+        }
+    }
+
+    private final Callback callback;
+
+    // Current line state
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength;
+    private final byte[] nibbles = new byte[MAX_NIBBLES];
+    private int nibbleCount;
+    private int firstTokenNibbles;
+    private boolean textLine;
+    private boolean overflow;
+
+    public ELM327Parser(Callback callback) {
+        this.callback = callback;
+    }
+
+    public void parse(byte[] buffer, int offset, int count) {
+
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            byte b = buffer[i];
+            switch (b) {
+                case '>':
+                    endLine();
+                    callback.onEvent(EVENT_PROMPT, line, 0);
+                    break;
+                case '\r':
+                case '\n':
+                    endLine();
+                    break;
+                case 0:
+                    // The ELM327 may emit NUL bytes while it is busy
+                    break;
+                case ' ':
+                    if (firstTokenNibbles == 0) {
+                        firstTokenNibbles = nibbleCount;
+                    }
+                    append(b);
+                    break;
+                default:
+                    int value = (b >= 0) ? HEX_VALUES[b] : -1;
+                    if (value < 0) {
+                        textLine = true;
+                    } else if (nibbleCount < MAX_NIBBLES) {
+                        nibbles[nibbleCount++] = (byte)value;
+                    } else {
+                        overflow = true;
+                    }
+                    append(b);
+                    break;
+            }
+        }
+    }
+
+    public void reset() {
+        lineLength = 0;
+        nibbleCount = 0;
+        firstTokenNibbles = 0;
+        textLine = false;
+        overflow = false;
+    }
+
+    // === Internal methods ===
+
+    private void append(byte b) {
+        if (lineLength < MAX_LINE) {
+            line[lineLength++] = b;
+        } else {
+            overflow = true;
+        }
+    }
+
+    private void endLine() {
+
+        // Blank lines carry nothing
+        if (lineLength == 0 || (nibbleCount == 0 && !textLine)) {
+            reset();
+            return;
+        }
+
+        if (textLine) {
+            callback.onEvent(classify(), line, lineLength);
+        } else if (!emitFrame()) {
+            callback.onEvent(EVENT_MALFORMED, line, lineLength);
+        }
+        reset();
+    }
+
+    private boolean emitFrame() {
+
+        if (overflow) {
+            return false;
+        }
+
+        // Spaced output gives the header width away with the first token, packed output (ATS0)
+        // is told apart by parity since 11 bit headers have an odd number of digits
+        int idNibbles;
+        switch (firstTokenNibbles) {
+            case STD_ID_NIBBLES:
+                idNibbles = STD_ID_NIBBLES;
+                break;
+            case 2:
+            case EXT_ID_NIBBLES:
+                idNibbles = EXT_ID_NIBBLES;
+                break;
+            case 0:
+                idNibbles = ((nibbleCount & 1) == 1) ? STD_ID_NIBBLES : EXT_ID_NIBBLES;
+                break;
+            default:
+                return false;
+        }
+
+        int dataNibbles = nibbleCount - idNibbles;
+        if (dataNibbles < 0 || (dataNibbles & 1) == 1 || dataNibbles > 16) {
+            return false;
+        }
+
+        int id = 0;
+        for (int i = 0; i < idNibbles; i++) {
+            id = (id << 4) | nibbles[i];
+        }
+        long data = 0;
+        for (int i = idNibbles; i < nibbleCount; i++) {
+            data = (data << 4) | nibbles[i];
+        }
+        int dlc = dataNibbles / 2;
+        if (dlc > 0) {
+            data <<= 8 * (8 - dlc);
+        }
+
+        callback.onFrame(id, idNibbles == EXT_ID_NIBBLES, data, dlc);
+        return true;
+    }
+
+    private int classify() {
+        if (lineLength == 1 && line[0] == '?') {
+            return EVENT_UNKNOWN_COMMAND;
+        }
+        if (contains(BUFFER_FULL)) {
+            return EVENT_BUFFER_FULL;
+        }
+        if (contains(NO_DATA)) {
+            return EVENT_NO_DATA;
+        }
+        if (contains(STOPPED)) {
+            return EVENT_STOPPED;
+        }
+        if (contains(ERROR)) {
+            return EVENT_ERROR;
+        }
+        if (lineLength == OK.length && contains(OK)) {
+            return EVENT_OK;
+        }
+        return EVENT_TEXT;
+    }
+
+    private boolean contains(byte[] pattern) {
+        int last = lineLength - pattern.length;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < pattern.length && line[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)s.charAt(i);
+        }
+        return bytes;
+    }
+}
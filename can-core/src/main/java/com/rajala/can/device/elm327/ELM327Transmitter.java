@@ -0,0 +1,362 @@
+package com.rajala.can.device.elm327;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.log.CANLog;
+import com.rajala.can.stats.CANDeviceStats;
+import com.rajala.can.stats.StripedCounter;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transmit engine for the ELM327.
+ *
+ * Frames are copied into a bounded queue and sent by a single thread through the
+ * {@link ELM327CommandEngine}, so every command waits for the prompt that answers the previous
+ * one instead of racing it. The last header is cached and ATSH is only sent when the ID changes,
+ * which leaves one socket write per frame for a steady stream to a single ID. Monitoring is
+ * interrupted while the queue is being drained and ATMA is resumed once it is empty, after
+ * reprogramming the acceptance filter if the subscriptions changed in the meantime.
+ *
+ * The header cache and the programmed filter belong to the transmit thread. A connect or
+ * disconnect only marks the adapter as reset, and the transmit thread forgets what it had sent
+ * the next time it takes from the queue.
+ */
+public class ELM327Transmitter implements Runnable {
+
+    private static final String TAG = "ELM327Transmitter";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private static final long PROMPT_TIMEOUT_MS = 500;
+    private static final int NO_HEADER = -1;
+
+    // Pending frames, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final CANMessage[] queue;
+    private final ICANTxCallback[] callbacks;
+    private final int[] responses;
+    private int queueHead;
+    private int queueCount;
+    private boolean monitorRestart;
+    private boolean connected;
+    private boolean adapterReset;
+
+    // Transmit thread state
+    private final ELM327CommandEngine engine;
+    private final CANMessage current = new CANMessage();
+    private int currentResponses;
+    private final byte[] line = new byte[ELM327FrameEncoder.MAX_LINE_LENGTH];
+    private boolean adapterConnected;
+    private volatile boolean monitorEnabled;
+    private volatile boolean isRunning;
+    private Thread txThread;
+    private int cachedHeader = NO_HEADER;
+    private int cachedPriority = NO_HEADER;
+    private volatile ELM327AcceptanceFilter acceptanceFilter = ELM327AcceptanceFilter.PASS_ALL;
+    private ELM327AcceptanceFilter programmedFilter;
+
+    private volatile CANDeviceStats stats;
+    // Sent frames are only counted by the transmit thread, failures by any thread
+    private volatile long sentFrames;
+    private final StripedCounter failedFrames = new StripedCounter();
+
+    public ELM327Transmitter(ELM327CommandEngine engine) {
+        this(engine, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ELM327Transmitter(ELM327CommandEngine engine, int capacity) {
+        this.engine = engine;
+        queue = new CANMessage[capacity];
+        callbacks = new ICANTxCallback[capacity];
+        responses = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            queue[i] = new CANMessage();
+        }
+    }
+
+    // === User methods ===
+
+    public synchronized void start() {
+        if (txThread != null) {
+            return;
+        }
+        isRunning = true;
+        txThread = new Thread(this, TAG);
+        txThread.setDaemon(true);
+        txThread.start();
+    }
+
+    public synchronized void stop() {
+        if (txThread == null) {
+            return;
+        }
+        isRunning = false;
+        txThread.interrupt();
+        try {
+            txThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        txThread = null;
+        failAll();
+    }
+
+    // Copies msg into the queue, returns false and fails the frame right away when the queue is full
+    public boolean enqueue(CANMessage msg, ICANTxCallback callback) {
+        return enqueue(msg, callback, 0);
+    }
+
+    // Same as enqueue, but the adapter listens for responses frames after sending, so the callback
+    // completes once they have arrived or the adapter's own timeout has expired
+    public boolean enqueue(CANMessage msg, ICANTxCallback callback, int responses) {
+        if (responses < 0 || responses > ELM327FrameEncoder.MAX_RESPONSES) {
+            throw new IllegalArgumentException("Invalid response count " + responses);
+        }
+        lock.lock();
+        try {
+            if (queueCount < queue.length) {
+                int index = (queueHead + queueCount) % queue.length;
+                queue[index].copyFrom(msg);
+                callbacks[index] = callback;
+                this.responses[index] = responses;
+                queueCount++;
+                notEmpty.signal();
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        failedFrames.increment();
+        if (callback != null) {
+            callback.onTxFailed(msg);
+        }
+        return false;
+    }
+
+    // The adapter starts out with no header after every connect
+    public void setConnected(boolean connected) {
+        lock.lock();
+        try {
+            this.connected = connected;
+            adapterReset = true;
+            monitorRestart = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (!connected) {
+            failAll();
+        }
+    }
+
+    // Starts monitoring now and again whenever the queue has been drained
+    public void startMonitoring() {
+        monitorEnabled = true;
+        wake();
+    }
+
+    public void stopMonitoring() {
+        monitorEnabled = false;
+        wake();
+    }
+
+    // Programmed into the adapter before monitoring is next resumed
+    public void setAcceptanceFilter(ELM327AcceptanceFilter filter) {
+        acceptanceFilter = filter;
+        wake();
+    }
+
+    public void setStats(CANDeviceStats stats) {
+        this.stats = stats;
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queueCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentFrameCount() {
+        return sentFrames;
+    }
+
+    public long getFailedFrameCount() {
+        return failedFrames.sum();
+    }
+
+    // === Receive thread ===
+
+    // Parser events from the receive thread, after the command engine has seen them
+    public void onEvent(int event) {
+        if (event == ELM327Parser.EVENT_BUFFER_FULL) {
+            // The adapter stopped monitoring by itself
+            wake();
+        }
+    }
+
+    private void wake() {
+        lock.lock();
+        try {
+            monitorRestart = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // === Transmit thread ===
+
+    public void run() {
+
+        while (isRunning) {
+            ICANTxCallback callback = null;
+            boolean hasFrame = false;
+            lock.lock();
+            try {
+                while (queueCount == 0 && !monitorRestart) {
+                    notEmpty.await();
+                }
+                monitorRestart = false;
+                if (adapterReset) {
+                    adapterReset = false;
+                    cachedHeader = NO_HEADER;
+                    cachedPriority = NO_HEADER;
+                    programmedFilter = null;
+                }
+                adapterConnected = connected;
+                if (queueCount > 0) {
+                    hasFrame = true;
+                    current.copyFrom(queue[queueHead]);
+                    callback = callbacks[queueHead];
+                    callbacks[queueHead] = null;
+                    currentResponses = responses[queueHead];
+                    queueHead = (queueHead + 1) % queue.length;
+                    queueCount--;
+                }
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                lock.unlock();
+            }
+
+            if (hasFrame) {
+                boolean sent = transmit(current);
+                complete(current, callback, sent);
+            }
+            if (getQueueDepth() == 0) {
+                updateMonitor();
+            }
+        }
+    }
+
+    private boolean transmit(CANMessage msg) {
+
+        if (!adapterConnected) {
+            return false;
+        }
+
+        int header = ELM327FrameEncoder.header(msg.getID(), msg.isExtended());
+        int priority = msg.isExtended() ? ELM327FrameEncoder.priority(msg.getID()) : NO_HEADER;
+        if (priority != NO_HEADER && priority != cachedPriority) {
+            // 29 bit IDs carry their top five bits in the CAN priority byte
+            if (!command(ELM327FrameEncoder.encodePriority(priority, line, 0))) {
+                cachedPriority = NO_HEADER;
+                return false;
+            }
+            cachedPriority = priority;
+        }
+        if (header != cachedHeader) {
+            if (!command(ELM327FrameEncoder.encodeHeader(header, msg.isExtended(), line, 0))) {
+                cachedHeader = NO_HEADER;
+                return false;
+            }
+            cachedHeader = header;
+        }
+
+        int length = ELM327FrameEncoder.encodeData(msg.getLongData(), msg.getDLC(), currentResponses, line, 0);
+        if (!command(length)) {
+            cachedHeader = NO_HEADER;
+            return false;
+        }
+        return true;
+    }
+
+    // Sends one command line and waits for the prompt that answers it
+    private boolean command(int length) {
+        int status = engine.execute(line, length, PROMPT_TIMEOUT_MS, 0);
+        return (status == ELM327CommandEngine.RESULT_OK) || (status == ELM327CommandEngine.RESULT_NO_DATA);
+    }
+
+    private void updateMonitor() {
+        ELM327AcceptanceFilter filter = acceptanceFilter;
+        if (adapterConnected && !filter.equals(programmedFilter)) {
+            program(filter);
+        }
+        if (monitorEnabled && adapterConnected) {
+            engine.startMonitor();
+        } else if (!monitorEnabled) {
+            engine.stopMonitor();
+        }
+    }
+
+    private void program(ELM327AcceptanceFilter filter) {
+        for (String cmd : filter.toCommands()) {
+            int status = engine.execute(cmd, PROMPT_TIMEOUT_MS, 1);
+            if (status != ELM327CommandEngine.RESULT_OK) {
+                // Keep monitoring with whatever the adapter has, the host still filters
+                CANLog.w(TAG, "Adapter rejected " + cmd);
+                break;
+            }
+        }
+        CANLog.d(TAG, "Acceptance filter " + filter);
+        programmedFilter = filter;
+    }
+
+    private void complete(CANMessage msg, ICANTxCallback callback, boolean sent) {
+        if (sent) {
+            sentFrames++;
+        } else {
+            failedFrames.increment();
+        }
+        CANDeviceStats s = stats;
+        if (s != null) {
+            s.recordTransmit(sent);
+        }
+        if (callback == null) {
+            return;
+        }
+        if (sent) {
+            callback.onTxComplete(msg);
+        } else {
+            callback.onTxFailed(msg);
+        }
+    }
+
+    // Fails every queued frame, on disconnect and stop
+    private void failAll() {
+        CANMessage failed = new CANMessage();
+        while (true) {
+            ICANTxCallback callback;
+            lock.lock();
+            try {
+                if (queueCount == 0) {
+                    return;
+                }
+                failed.copyFrom(queue[queueHead]);
+                callback = callbacks[queueHead];
+                callbacks[queueHead] = null;
+                queueHead = (queueHead + 1) % queue.length;
+                queueCount--;
+            } finally {
+                lock.unlock();
+            }
+            complete(failed, callback, false);
+        }
+    }
+}
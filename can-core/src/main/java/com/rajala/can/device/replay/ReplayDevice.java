@@ -0,0 +1,303 @@
+package com.rajala.can.device.replay;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.dispatch.BlockingWaitStrategy;
+import com.rajala.can.dispatch.CANChangeFilter;
+import com.rajala.can.dispatch.CANPipeline;
+import com.rajala.can.dispatch.IWaitStrategy;
+import com.rajala.can.record.CANTraceFormat;
+import com.rajala.can.record.CANTraceReader;
+import com.rajala.can.stats.CANDeviceStats;
+import com.rajala.can.stats.CANLatencyStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a recorded trace into the normal listener pipeline as if it came from an adapter. Frames
+ * are paced by their timestamps on the trace clock of {@link CANTraceReader} divided by the speed,
+ * or sent back to back when the speed is {@link #SPEED_UNLIMITED}. Segments of several recordings
+ * therefore play one after the other without waiting out the time between them. Each frame is stamped with System.nanoTime() when it is
+ * published, the same point at which the Bluetooth drivers stamp theirs.
+ *
+ * Unlike a real adapter, replay waits for room in the dispatch ring instead of dropping frames,
+ * so throughput measurements see every recorded frame.
+ */
+public class ReplayDevice implements ICANDevice {
+
+    public static final double SPEED_REAL_TIME = 1.0;
+    public static final double SPEED_UNLIMITED = 0.0;
+
+    // Shortest wait worth parking for, shorter waits spin
+    private static final long MIN_PARK_NANOS = 50000;
+
+    private final CANPipeline pipeline;
+    private final CANMessage frame = new CANMessage();
+    private CANTraceReader reader;
+    private Playback playback;
+    private Thread playbackThread;
+
+    private volatile double speed = SPEED_REAL_TIME;
+    private volatile boolean loop;
+    private volatile long seekIndex = -1;
+    private volatile long position;
+    private volatile long playedFrames;
+
+    public ReplayDevice() {
+        this(new BlockingWaitStrategy());
+    }
+
+    public ReplayDevice(IWaitStrategy waitStrategy) {
+        pipeline = new CANPipeline("ReplayDevice", CANPipeline.DEFAULT_CAPACITY, waitStrategy);
+        pipeline.start();
+    }
+
+    public ReplayDevice(CANTraceReader reader) {
+        this();
+        this.reader = reader;
+    }
+
+    // === Playback control ===
+
+    // 1.0 plays in real time, 10.0 ten times faster, SPEED_UNLIMITED as fast as possible
+    public void setSpeed(double speed) {
+        this.speed = speed;
+        seekIndex = position;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    // Continues playback from the first frame at least offsetNanos after the start of the trace
+    public synchronized void seek(long offsetNanos) {
+        if (reader != null) {
+            seekIndex = reader.seek(offsetNanos);
+        }
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getPlayedFrameCount() {
+        return playedFrames;
+    }
+
+    // Waits for the end of the trace, returns false on timeout
+    public boolean awaitCompletion(long timeoutMs) throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = playbackThread;
+        }
+        if (thread != null) {
+            thread.join(timeoutMs);
+            return !thread.isAlive();
+        }
+        return true;
+    }
+
+    // === ICANDevice ===
+
+    // deviceName is a trace segment or a directory of segments, which may hold several recordings,
+    // null replays the reader given to the constructor
+    public synchronized void connect(String deviceName) {
+
+        disconnect();
+        if (deviceName != null) {
+            File source = new File(deviceName);
+            File[] segments = source.isDirectory() ? source.listFiles() : new File[] { source };
+            try {
+                reader = new CANTraceReader(filterSegments(segments));
+            } catch (IOException e) {
+                reader = null;
+                return;
+            }
+        }
+        if (reader == null) {
+            return;
+        }
+
+        seekIndex = 0;
+        playback = new Playback(reader);
+        playbackThread = new Thread(playback, "ReplayDevice.playback");
+        playbackThread.setDaemon(true);
+        playbackThread.start();
+    }
+
+    // Returns once the playback thread has ended, so a following connect() never runs two
+    public void disconnect() {
+        Playback stopping;
+        Thread thread;
+        synchronized (this) {
+            stopping = playback;
+            thread = playbackThread;
+            playback = null;
+            playbackThread = null;
+        }
+        if (stopping == null) {
+            return;
+        }
+        stopping.running = false;
+        thread.interrupt();
+        if (thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void stop() {
+        disconnect();
+        pipeline.stop();
+    }
+
+    public synchronized boolean isConnected() {
+        return (playback != null) && playback.running;
+    }
+
+    // A trace has no bus to send to
+    public void sendCANMessage(CANMessage msg) {
+    }
+
+    // A trace cannot transmit
+    public boolean sendCANMessage(CANMessage msg, ICANTxCallback callback) {
+        if (callback != null) {
+            callback.onTxFailed(msg);
+        }
+        return false;
+    }
+
+    public void addCANListener(ICANListener listener) {
+        pipeline.addListener(listener, CANFilter.all());
+    }
+
+    public void addCANListener(ICANListener listener, CANFilter filter) {
+        pipeline.addListener(listener, filter);
+    }
+
+    public void setCANListenerFilters(ICANListener listener, List<CANFilter> filters) {
+        pipeline.setListenerFilters(listener, filters);
+    }
+
+    public void removeCANListener(ICANListener listener) {
+        pipeline.removeListener(listener);
+    }
+
+    public void clearCANListeners() {
+        pipeline.clearListeners();
+    }
+
+    public void setChangeFilter(CANChangeFilter filter) {
+        pipeline.setChangeFilter(filter);
+    }
+
+    public CANLatencyStats getLatencyStats() {
+        return pipeline.getLatencyStats();
+    }
+
+    public CANDeviceStats getStats() {
+        return pipeline.getStats();
+    }
+
+    // === Playback thread ===
+
+    private class Playback implements Runnable {
+
+        private final CANTraceReader reader;
+        private volatile boolean running = true;
+
+        Playback(CANTraceReader reader) {
+            this.reader = reader;
+        }
+
+        public void run() {
+
+            long count = reader.getRecordCount();
+            long index = 0;
+            long wallStart = 0;
+            long traceStart = 0;
+            double currentSpeed = SPEED_UNLIMITED;
+
+            while (running) {
+
+                // Seeking and speed changes re-anchor the clock on the next frame
+                long seek = seekIndex;
+                if (seek >= 0) {
+                    seekIndex = -1;
+                    index = seek;
+                    wallStart = -1;
+                }
+                if (index >= count) {
+                    if (!loop || count == 0) {
+                        break;
+                    }
+                    index = 0;
+                    wallStart = -1;
+                }
+
+                reader.read(index, frame);
+                if (wallStart < 0) {
+                    wallStart = System.nanoTime();
+                    traceStart = frame.getTimestamp();
+                    currentSpeed = speed;
+                }
+
+                if (currentSpeed > 0) {
+                    long due = wallStart + (long)((frame.getTimestamp() - traceStart) / currentSpeed);
+                    long wait;
+                    while (running && seekIndex < 0 && (wait = due - System.nanoTime()) > 0) {
+                        if (wait > MIN_PARK_NANOS) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    if (seekIndex >= 0) {
+                        continue;
+                    }
+                }
+
+                // Interrupted by disconnect() while waiting for room in the ring
+                if (!pipeline.publishWaiting(frame.getChannel(), frame.getID(), frame.isExtended(),
+                        frame.getLongData(), frame.getDLC(), System.nanoTime())) {
+                    break;
+                }
+                playedFrames++;
+                index++;
+                position = index;
+            }
+
+            running = false;
+        }
+    }
+
+    private static File[] filterSegments(File[] files) {
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        File[] segments = new File[files.length];
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(CANTraceFormat.FILE_EXTENSION)) {
+                segments[count++] = file;
+            }
+        }
+        File[] result = new File[count];
+        System.arraycopy(segments, 0, result, 0, count);
+        Arrays.sort(result);
+        return result;
+    }
+}
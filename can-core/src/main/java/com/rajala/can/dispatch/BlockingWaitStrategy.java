@@ -0,0 +1,46 @@
+package com.rajala.can.dispatch;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Parks idle consumers, the producer only takes the lock when a consumer is actually waiting
+public class BlockingWaitStrategy implements IWaitStrategy {
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+
+    public long waitFor(long sequence, Sequence cursor) throws InterruptedException {
+        long available = cursor.get();
+        if (available < sequence) {
+            lock.lock();
+            try {
+                do {
+                    signalNeeded.set(true);
+                    available = cursor.get();
+                    if (available >= sequence) {
+                        break;
+                    }
+                    published.await();
+                    available = cursor.get();
+                } while (available < sequence);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return available;
+    }
+
+    public void signalAllWhenBlocking() {
+        if (signalNeeded.getAndSet(false)) {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
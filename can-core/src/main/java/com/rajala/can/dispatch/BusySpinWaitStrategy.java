@@ -0,0 +1,18 @@
+package com.rajala.can.dispatch;
+
+// Lowest latency, burns a core while idle
+public class BusySpinWaitStrategy implements IWaitStrategy {
+
+    public long waitFor(long sequence, Sequence cursor) throws InterruptedException {
+        long available;
+        while ((available = cursor.get()) < sequence) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return available;
+    }
+
+    public void signalAllWhenBlocking() {
+    }
+}
@@ -0,0 +1,179 @@
+package com.rajala.can.dispatch;
+
+import com.rajala.can.util.IntObjectMap;
+
+/**
+ * Deliver-on-change filter for the receive path.
+ *
+ * The last payload and DLC of every ID (per channel) is kept in a primitive open addressing
+ * table, and a frame is only passed on when either changed or when the heartbeat interval has
+ * elapsed since the ID was last passed on. Bytes that change on every frame without carrying
+ * information, rolling counters and checksums, can be excluded per ID with an ignore mask.
+ *
+ * {@link #accept} belongs to the device's reader thread. Ignore masks may be changed from any
+ * thread; they are kept in a copy-on-write table.
+ */
+public class CANChangeFilter {
+
+    public static final long NO_HEARTBEAT = 0;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int EXTENDED_KEY = 1 << 29;
+    private static final long EMPTY = -1;
+
+    private final long heartbeatNanos;
+
+    // Last passed frame per key, reader thread only
+    private long[] keys;
+    private long[] lastData;
+    private byte[] lastDlc;
+    private long[] lastTime;
+    private int size;
+    private volatile boolean resetRequested;
+
+    // Payload bits to ignore per ID, replaced as a whole on every change
+    private volatile IntObjectMap<long[]> ignoreMasks = new IntObjectMap<>();
+
+    private volatile long suppressedFrames;
+
+    public CANChangeFilter() {
+        this(NO_HEARTBEAT);
+    }
+
+    // An unchanged ID is still passed on every heartbeatMs, NO_HEARTBEAT never passes it
+    public CANChangeFilter(long heartbeatMs) {
+        heartbeatNanos = heartbeatMs * 1000000;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // === Configuration ===
+
+    // Bits set in mask are not compared, the mask is left aligned like the payload
+    public synchronized void setIgnoreMask(int id, boolean extended, long mask) {
+        IntObjectMap<long[]> current = ignoreMasks;
+        IntObjectMap<long[]> updated = new IntObjectMap<>(current.size() + 1);
+        int key = key(id, extended);
+        for (int i = 0; i < current.capacity(); i++) {
+            int k = current.keyAt(i);
+            if (k >= 0 && k != key) {
+                updated.put(k, current.valueAt(i));
+            }
+        }
+        if (mask != 0) {
+            updated.put(key, new long[] { mask });
+        }
+        ignoreMasks = updated;
+    }
+
+    // Mask covering the given byte indices, e.g. byteMask(7) for a checksum in the last byte
+    public static long byteMask(int... bytes) {
+        long mask = 0;
+        for (int b : bytes) {
+            mask |= 0xFFL << (56 - 8*b);
+        }
+        return mask;
+    }
+
+    // Forgets every remembered payload, the next frame of each ID is passed on
+    public void reset() {
+        resetRequested = true;
+    }
+
+    public long getSuppressedFrameCount() {
+        return suppressedFrames;
+    }
+
+    // === Reader thread ===
+
+    public boolean accept(int channel, int id, boolean extended, long data, int dlc, long timestamp) {
+
+        if (resetRequested) {
+            resetRequested = false;
+            clearTable();
+        }
+
+        int idKey = key(id, extended);
+        long[] ignore = ignoreMasks.get(idKey);
+        if (ignore != null) {
+            data &= ~ignore[0];
+        }
+
+        long key = ((long)channel << 32) | idKey;
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                if (lastData[i] == data && lastDlc[i] == dlc
+                        && (heartbeatNanos == NO_HEARTBEAT || timestamp - lastTime[i] < heartbeatNanos)) {
+                    suppressedFrames++;
+                    return false;
+                }
+                lastData[i] = data;
+                lastDlc[i] = (byte)dlc;
+                lastTime[i] = timestamp;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+
+        // First frame of this ID
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return accept(channel, id, extended, data, dlc, timestamp);
+        }
+        keys[i] = key;
+        lastData[i] = data;
+        lastDlc[i] = (byte)dlc;
+        lastTime[i] = timestamp;
+        size++;
+        return true;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldData = lastData;
+        byte[] oldDlc = lastDlc;
+        long[] oldTime = lastTime;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY) {
+                continue;
+            }
+            int i = hash(oldKeys[j]) & mask;
+            while (keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            lastData[i] = oldData[j];
+            lastDlc[i] = oldDlc[j];
+            lastTime[i] = oldTime[j];
+            size++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        lastData = new long[capacity];
+        lastDlc = new byte[capacity];
+        lastTime = new long[capacity];
+        size = 0;
+        clearTable();
+    }
+
+    private void clearTable() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = EMPTY;
+        }
+        size = 0;
+    }
+
+    private static int key(int id, boolean extended) {
+        return extended ? (id | EXTENDED_KEY) : id;
+    }
+
+    private static int hash(long key) {
+        int h = (int)(key ^ (key >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,56 @@
+package com.rajala.can.dispatch;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+
+/**
+ * Sequence based consumer of a {@link CANRingBuffer}. Frames are handed to the handler in batches
+ * of everything published since the last wake up, and the consumer sequence is only advanced once
+ * the batch is done so the slots are not reused while the handler still sees them.
+ */
+public class CANDispatcher implements Runnable {
+
+    private final CANRingBuffer ringBuffer;
+    private final ICANListener handler;
+    private final Sequence sequence = new Sequence();
+    private volatile long handlerErrors;
+
+    public CANDispatcher(CANRingBuffer ringBuffer, ICANListener handler) {
+        this.ringBuffer = ringBuffer;
+        this.handler = handler;
+    }
+
+    public Sequence getSequence() {
+        return sequence;
+    }
+
+    public long getHandlerErrorCount() {
+        return handlerErrors;
+    }
+
+    public void run() {
+
+        IWaitStrategy waitStrategy = ringBuffer.getWaitStrategy();
+        Sequence cursor = ringBuffer.getCursor();
+        long next = sequence.get() + 1;
+
+        while (true) {
+            long available;
+            try {
+                available = waitStrategy.waitFor(next, cursor);
+            } catch (InterruptedException e) {
+                break;
+            }
+            while (next <= available) {
+                CANMessage msg = ringBuffer.get(next);
+                try {
+                    handler.onCANMessage(msg);
+                } catch (RuntimeException e) {
+                    handlerErrors++;
+                }
+                next++;
+            }
+            sequence.set(available);
+        }
+    }
+}
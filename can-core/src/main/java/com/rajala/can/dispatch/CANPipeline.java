@@ -0,0 +1,179 @@
+package com.rajala.can.dispatch;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.stats.CANDeviceStats;
+import com.rajala.can.stats.CANLatencyStats;
+import com.rajala.can.stats.LatencyHistogram;
+
+import java.util.List;
+
+/**
+ * Receive path shared by the CAN devices. The socket reader publishes decoded frames into a
+ * {@link CANRingBuffer} and returns immediately, a dedicated dispatch thread delivers them to the
+ * {@link ICANListener}s subscribed to their ID. Frames nobody subscribed to are dropped before they
+ * take up a slot in the ring. The time each frame spends in parsing and in the ring is recorded in
+ * the pipeline's {@link CANLatencyStats}.
+ */
+public class CANPipeline {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final String name;
+    private final CANRingBuffer ringBuffer;
+    private final CANDispatcher dispatcher;
+    private final CANSubscriptionRegistry registry = new CANSubscriptionRegistry();
+    private volatile CANChangeFilter changeFilter;
+    private final CANLatencyStats latencyStats = new CANLatencyStats();
+    private final CANDeviceStats stats = new CANDeviceStats();
+    private Thread dispatchThread;
+
+    public CANPipeline(String name) {
+        this(name, DEFAULT_CAPACITY, new BlockingWaitStrategy());
+    }
+
+    public CANPipeline(String name, int capacity, IWaitStrategy waitStrategy) {
+        this.name = name;
+        ringBuffer = new CANRingBuffer(capacity, waitStrategy);
+        final LatencyHistogram parseToDispatch = latencyStats.getParseToDispatch();
+        dispatcher = new CANDispatcher(ringBuffer, new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+                parseToDispatch.record(System.nanoTime() - msg.getPublishTime());
+                registry.dispatch(msg);
+            }
+        });
+        ringBuffer.addGatingSequence(dispatcher.getSequence());
+        stats.setQueueDepthGauge(new CANDeviceStats.Gauge() {
+            public long get() {
+                return ringBuffer.getDepth();
+            }
+        });
+    }
+
+    public synchronized void start() {
+        if (dispatchThread != null) {
+            return;
+        }
+        dispatchThread = new Thread(dispatcher, name + ".dispatch");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+    }
+
+    public synchronized void stop() {
+        if (dispatchThread == null) {
+            return;
+        }
+        dispatchThread.interrupt();
+        dispatchThread = null;
+    }
+
+    // Producer side, must only be called from the device's reader thread. timestamp is the
+    // System.nanoTime() at which the frame's bytes were read. Returns false if the frame was
+    // dropped because the ring is full.
+    public boolean publish(int channel, int id, boolean extended, long data, int dlc, long timestamp) {
+        return publish(channel, id, extended, data, dlc, timestamp, CANMessage.NO_ADAPTER_TIMESTAMP);
+    }
+
+    public boolean publish(int channel, int id, boolean extended, long data, int dlc, long timestamp,
+                           long adapterTimestamp) {
+        stats.recordFrame(id, extended);
+        if (!registry.hasSubscribers(id, extended)) {
+            return true;
+        }
+        // The slot is claimed before the change filter remembers the payload, so a frame dropped
+        // here is passed on when it arrives again
+        long sequence = ringBuffer.tryNext();
+        if (sequence < 0) {
+            stats.recordDrop();
+            return false;
+        }
+        commit(sequence, channel, id, extended, data, dlc, timestamp, adapterTimestamp);
+        return true;
+    }
+
+    // Same as publish() but waits for room in the ring instead of dropping, for producers that
+    // must not lose frames such as trace replay. Returns false only if the calling thread was
+    // interrupted while waiting, the frame is then discarded.
+    public boolean publishWaiting(int channel, int id, boolean extended, long data, int dlc, long timestamp) {
+        stats.recordFrame(id, extended);
+        if (!registry.hasSubscribers(id, extended)) {
+            return true;
+        }
+        long sequence;
+        while ((sequence = ringBuffer.tryClaim()) < 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            Thread.yield();
+        }
+        commit(sequence, channel, id, extended, data, dlc, timestamp, CANMessage.NO_ADAPTER_TIMESTAMP);
+        return true;
+    }
+
+    // Runs the change filter on a claimed slot and publishes the frame or gives the slot back
+    private void commit(long sequence, int channel, int id, boolean extended, long data, int dlc,
+                        long timestamp, long adapterTimestamp) {
+        CANChangeFilter filter = changeFilter;
+        if (filter != null && !filter.accept(channel, id, extended, data, dlc, timestamp)) {
+            ringBuffer.cancel(sequence);
+            return;
+        }
+        long now = System.nanoTime();
+        latencyStats.getReadToParse().record(now - timestamp);
+        CANMessage msg = ringBuffer.get(sequence);
+        msg.set(channel, id, extended, data, dlc, timestamp);
+        msg.setAdapterTimestamp(adapterTimestamp);
+        msg.setPublishTime(now);
+        ringBuffer.publish(sequence);
+    }
+
+    public void addListener(ICANListener listener, CANFilter filter) {
+        registry.subscribe(listener, filter);
+    }
+
+    public void setListenerFilters(ICANListener listener, List<CANFilter> filters) {
+        registry.resubscribe(listener, filters);
+    }
+
+    public void removeListener(ICANListener listener) {
+        registry.unsubscribe(listener);
+    }
+
+    public void clearListeners() {
+        registry.clear();
+    }
+
+    // Only frames whose payload changed are published, null publishes every frame
+    public void setChangeFilter(CANChangeFilter filter) {
+        changeFilter = filter;
+    }
+
+    public CANChangeFilter getChangeFilter() {
+        return changeFilter;
+    }
+
+    public CANDeviceStats getStats() {
+        return stats;
+    }
+
+    public CANLatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    public CANSubscriptionRegistry getRegistry() {
+        return registry;
+    }
+
+    public long getOverflowCount() {
+        return ringBuffer.getOverflowCount();
+    }
+
+    public int getDepth() {
+        return ringBuffer.getDepth();
+    }
+
+    public long getListenerErrorCount() {
+        return dispatcher.getHandlerErrorCount();
+    }
+}
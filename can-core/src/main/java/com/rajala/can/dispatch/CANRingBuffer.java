@@ -0,0 +1,139 @@
+package com.rajala.can.dispatch;
+
+import com.rajala.can.CANMessage;
+
+/**
+ * Preallocated single producer ring of frame slots.
+ *
+ * The producer claims a slot with {@link #tryNext()}, fills the {@link CANMessage} returned by
+ * {@link #get(long)} and makes it visible with {@link #publish(long)}. Consumers track their own
+ * {@link Sequence} and are registered as gating sequences so the producer never overwrites a slot
+ * that is still being read. When the ring is full the producer drops the frame and counts an
+ * overflow instead of waiting, so the socket reader is never held up by a consumer.
+ */
+public class CANRingBuffer {
+
+    private final CANMessage[] slots;
+    private final int mask;
+    private final Sequence cursor = new Sequence();
+    private final IWaitStrategy waitStrategy;
+    private volatile Sequence[] gatingSequences = new Sequence[0];
+
+    // Producer state, only touched by the producer thread
+    private long nextSequence = Sequence.INITIAL_VALUE;
+    private long cachedGatingSequence = Sequence.INITIAL_VALUE;
+    private volatile long overflowCount;
+
+    public CANRingBuffer(int capacity, IWaitStrategy waitStrategy) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2");
+        }
+        this.waitStrategy = waitStrategy;
+        slots = new CANMessage[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new CANMessage();
+        }
+        mask = capacity - 1;
+    }
+
+    // === Producer ===
+
+    // Returns the claimed sequence, or -1 if the ring is full and the frame has to be dropped
+    public long tryNext() {
+        long next = tryClaim();
+        if (next < 0) {
+            overflowCount++;
+        }
+        return next;
+    }
+
+    // Same as tryNext() without counting a full ring as an overflow, for producers that wait
+    public long tryClaim() {
+        long next = nextSequence + 1;
+        long wrapPoint = next - slots.length;
+        if (wrapPoint > cachedGatingSequence) {
+            long minSequence = getMinimumGatingSequence(nextSequence);
+            cachedGatingSequence = minSequence;
+            if (wrapPoint > minSequence) {
+                return -1;
+            }
+        }
+        nextSequence = next;
+        return next;
+    }
+
+    // Gives back the sequence just claimed without publishing it
+    public void cancel(long sequence) {
+        if (sequence != nextSequence || sequence <= cursor.get()) {
+            throw new IllegalStateException("Only the last unpublished claim can be cancelled");
+        }
+        nextSequence = sequence - 1;
+    }
+
+    public void publish(long sequence) {
+        cursor.set(sequence);
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    // === Consumers ===
+
+    public CANMessage get(long sequence) {
+        return slots[(int)sequence & mask];
+    }
+
+    public synchronized void addGatingSequence(Sequence sequence) {
+        sequence.set(cursor.get());
+        Sequence[] current = gatingSequences;
+        Sequence[] updated = new Sequence[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = sequence;
+        gatingSequences = updated;
+    }
+
+    public synchronized void removeGatingSequence(Sequence sequence) {
+        Sequence[] current = gatingSequences;
+        int count = 0;
+        Sequence[] updated = new Sequence[current.length];
+        for (Sequence s : current) {
+            if (s != sequence) {
+                updated[count++] = s;
+            }
+        }
+        Sequence[] trimmed = new Sequence[count];
+        System.arraycopy(updated, 0, trimmed, 0, count);
+        gatingSequences = trimmed;
+    }
+
+    public Sequence getCursor() {
+        return cursor;
+    }
+
+    public IWaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    // Published frames the slowest consumer has not processed yet
+    public int getDepth() {
+        long published = cursor.get();
+        return (int)(published - getMinimumGatingSequence(published));
+    }
+
+    private long getMinimumGatingSequence(long defaultSequence) {
+        long minimum = defaultSequence;
+        for (Sequence sequence : gatingSequences) {
+            long value = sequence.get();
+            if (value < minimum) {
+                minimum = value;
+            }
+        }
+        return minimum;
+    }
+}
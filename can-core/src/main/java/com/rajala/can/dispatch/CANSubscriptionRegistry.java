@@ -0,0 +1,297 @@
+package com.rajala.can.dispatch;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.util.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per device table of who wants which IDs.
+ *
+ * Subscriptions are compiled into an immutable snapshot whenever they change: an array indexed by
+ * the 11 bit ID, a hash table for exact 29 bit IDs, and a short list for extended ranges and masks
+ * which cannot be enumerated. Lookups read the current snapshot without taking a lock, so the
+ * dispatch thread never contends with registration.
+ */
+public class CANSubscriptionRegistry {
+
+    public interface ChangeListener {
+        // Called on the registering thread after the new snapshot is in place
+        void onSubscriptionsChanged(CANSubscriptionRegistry registry);
+    }
+
+    private static final ICANListener[] NONE = new ICANListener[0];
+
+    private static class Subscription {
+        final ICANListener listener;
+        final CANFilter filter;
+
+        Subscription(ICANListener listener, CANFilter filter) {
+            this.listener = listener;
+            this.filter = filter;
+        }
+    }
+
+    // Extended range, mask and match-all filters grouped by listener
+    private static class Wildcard {
+        final ICANListener listener;
+        final CANFilter[] filters;
+
+        Wildcard(ICANListener listener, CANFilter[] filters) {
+            this.listener = listener;
+            this.filters = filters;
+        }
+
+        boolean matches(int id) {
+            for (CANFilter filter : filters) {
+                if (filter.matches(id, true)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Snapshot {
+        final ICANListener[][] standard = new ICANListener[CANFilter.MAX_STANDARD_ID + 1][];
+        final IntObjectMap<ICANListener[]> extended = new IntObjectMap<>();
+        Wildcard[] wildcards;
+    }
+
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private volatile Snapshot snapshot = build(subscriptions);
+    private volatile ChangeListener changeListener;
+
+    // === Registration ===
+
+    public synchronized void subscribe(ICANListener listener, CANFilter filter) {
+        for (Subscription s : subscriptions) {
+            if (s.listener == listener && s.filter.equals(filter)) {
+                return;
+            }
+        }
+        subscriptions.add(new Subscription(listener, filter));
+        rebuild();
+    }
+
+    // Removes every subscription of the listener
+    public synchronized void unsubscribe(ICANListener listener) {
+        boolean removed = false;
+        for (int i = subscriptions.size() - 1; i >= 0; i--) {
+            if (subscriptions.get(i).listener == listener) {
+                subscriptions.remove(i);
+                removed = true;
+            }
+        }
+        if (removed) {
+            rebuild();
+        }
+    }
+
+    // Replaces every subscription of the listener with filters in a single snapshot, so frames
+    // matching both the old and the new filters keep flowing. An empty list unsubscribes.
+    public synchronized void resubscribe(ICANListener listener, List<CANFilter> filters) {
+        List<Subscription> updated = new ArrayList<>(subscriptions.size() + filters.size());
+        List<CANFilter> current = new ArrayList<>();
+        for (Subscription s : subscriptions) {
+            if (s.listener == listener) {
+                current.add(s.filter);
+            } else {
+                updated.add(s);
+            }
+        }
+        LinkedHashSet<CANFilter> unique = new LinkedHashSet<>(filters);
+        if (new HashSet<>(current).equals(unique)) {
+            return;
+        }
+        for (CANFilter filter : unique) {
+            updated.add(new Subscription(listener, filter));
+        }
+        subscriptions.clear();
+        subscriptions.addAll(updated);
+        rebuild();
+    }
+
+    public synchronized void clear() {
+        subscriptions.clear();
+        rebuild();
+    }
+
+    public void setChangeListener(ChangeListener listener) {
+        changeListener = listener;
+    }
+
+    public synchronized List<CANFilter> getFilters() {
+        List<CANFilter> filters = new ArrayList<>(subscriptions.size());
+        for (Subscription s : subscriptions) {
+            filters.add(s.filter);
+        }
+        return filters;
+    }
+
+    // === Lookup ===
+
+    public boolean hasSubscribers(int id, boolean extended) {
+        Snapshot s = snapshot;
+        if (!extended) {
+            return (id >= 0) && (id <= CANFilter.MAX_STANDARD_ID) && (s.standard[id] != null);
+        }
+        if (s.extended.get(id) != null) {
+            return true;
+        }
+        for (Wildcard w : s.wildcards) {
+            if (w.matches(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Delivers the message to every interested listener exactly once
+    public void dispatch(CANMessage msg) {
+        Snapshot s = snapshot;
+        int id = msg.getID();
+
+        if (!msg.isExtended()) {
+            if (id < 0 || id > CANFilter.MAX_STANDARD_ID) {
+                return;
+            }
+            ICANListener[] listeners = s.standard[id];
+            if (listeners != null) {
+                for (ICANListener listener : listeners) {
+                    listener.onCANMessage(msg);
+                }
+            }
+            return;
+        }
+
+        ICANListener[] listeners = s.extended.get(id);
+        if (listeners == null) {
+            listeners = NONE;
+        }
+        for (ICANListener listener : listeners) {
+            listener.onCANMessage(msg);
+        }
+        for (Wildcard w : s.wildcards) {
+            if (w.matches(id) && !contains(listeners, w.listener)) {
+                w.listener.onCANMessage(msg);
+            }
+        }
+    }
+
+    // === Snapshot compilation ===
+
+    private void rebuild() {
+        snapshot = build(subscriptions);
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onSubscriptionsChanged(this);
+        }
+    }
+
+    private static Snapshot build(List<Subscription> subscriptions) {
+
+        Snapshot s = new Snapshot();
+
+        // Standard IDs, every filter that can match an 11 bit ID is enumerated into the table
+        List<List<ICANListener>> standard = new ArrayList<>(s.standard.length);
+        for (int i = 0; i < s.standard.length; i++) {
+            standard.add(null);
+        }
+        for (Subscription sub : subscriptions) {
+            CANFilter filter = sub.filter;
+            if (filter.isExtended() && filter.getType() != CANFilter.Type.ALL) {
+                continue;
+            }
+            int from = 0;
+            int to = CANFilter.MAX_STANDARD_ID;
+            if (filter.getType() == CANFilter.Type.EXACT) {
+                from = to = filter.getID();
+            } else if (filter.getType() == CANFilter.Type.RANGE) {
+                from = filter.getRangeStart();
+                to = filter.getRangeEnd();
+            }
+            for (int id = from; id <= to; id++) {
+                if (filter.matches(id, false)) {
+                    List<ICANListener> list = standard.get(id);
+                    if (list == null) {
+                        list = new ArrayList<>(2);
+                        standard.set(id, list);
+                    }
+                    if (!list.contains(sub.listener)) {
+                        list.add(sub.listener);
+                    }
+                }
+            }
+        }
+
+        // Share one array between IDs with the same listeners
+        Map<List<ICANListener>, ICANListener[]> interned = new HashMap<>();
+        for (int id = 0; id < s.standard.length; id++) {
+            List<ICANListener> list = standard.get(id);
+            if (list == null) {
+                continue;
+            }
+            ICANListener[] array = interned.get(list);
+            if (array == null) {
+                array = list.toArray(new ICANListener[list.size()]);
+                interned.put(list, array);
+            }
+            s.standard[id] = array;
+        }
+
+        // Extended IDs, exact ones are hashed and the rest are grouped per listener
+        Map<Integer, List<ICANListener>> exact = new HashMap<>();
+        Map<ICANListener, List<CANFilter>> wildcards = new HashMap<>();
+        List<ICANListener> wildcardOrder = new ArrayList<>();
+        for (Subscription sub : subscriptions) {
+            CANFilter filter = sub.filter;
+            if (filter.getType() == CANFilter.Type.EXACT && filter.isExtended()) {
+                List<ICANListener> list = exact.get(filter.getID());
+                if (list == null) {
+                    list = new ArrayList<>(2);
+                    exact.put(filter.getID(), list);
+                }
+                if (!list.contains(sub.listener)) {
+                    list.add(sub.listener);
+                }
+            } else if (filter.isExtended() || filter.getType() == CANFilter.Type.ALL) {
+                List<CANFilter> filters = wildcards.get(sub.listener);
+                if (filters == null) {
+                    filters = new ArrayList<>(1);
+                    wildcards.put(sub.listener, filters);
+                    wildcardOrder.add(sub.listener);
+                }
+                filters.add(filter);
+            }
+        }
+        for (Map.Entry<Integer, List<ICANListener>> entry : exact.entrySet()) {
+            List<ICANListener> list = entry.getValue();
+            s.extended.put(entry.getKey(), list.toArray(new ICANListener[list.size()]));
+        }
+        s.wildcards = new Wildcard[wildcardOrder.size()];
+        for (int i = 0; i < s.wildcards.length; i++) {
+            ICANListener listener = wildcardOrder.get(i);
+            List<CANFilter> filters = wildcards.get(listener);
+            s.wildcards[i] = new Wildcard(listener, filters.toArray(new CANFilter[filters.size()]));
+        }
+
+        return s;
+    }
+
+    private static boolean contains(ICANListener[] listeners, ICANListener listener) {
+        for (ICANListener l : listeners) {
+            if (l == listener) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,11 @@
+package com.rajala.can.dispatch;
+
+public interface IWaitStrategy {
+
+    // Waits until cursor reaches sequence and returns the highest published sequence. Throws when
+    // the waiting thread is interrupted, which is how consumers are stopped.
+    long waitFor(long sequence, Sequence cursor) throws InterruptedException;
+
+    // Called by the producer after every publish
+    void signalAllWhenBlocking();
+}
@@ -0,0 +1,31 @@
+package com.rajala.can.dispatch;
+
+/**
+ * Ring buffer position owned by a single writer, padded so that producer and consumer sequences
+ * do not share a cache line.
+ */
+public class Sequence {
+
+    public static final long INITIAL_VALUE = -1;
+
+    private long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    private long q1, q2, q3, q4, q5, q6, q7;
+
+    public Sequence() {
+        value = INITIAL_VALUE;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    // Keeps the padding from being optimised away
+    long sumPadding() {
+        return p1 + p2 + p3 + p4 + p5 + p6 + p7 + q1 + q2 + q3 + q4 + q5 + q6 + q7;
+    }
+}
@@ -0,0 +1,26 @@
+package com.rajala.can.dispatch;
+
+// Spins briefly, then yields the CPU between checks
+public class YieldingWaitStrategy implements IWaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    public long waitFor(long sequence, Sequence cursor) throws InterruptedException {
+        long available;
+        int counter = SPIN_TRIES;
+        while ((available = cursor.get()) < sequence) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (counter > 0) {
+                counter--;
+            } else {
+                Thread.yield();
+            }
+        }
+        return available;
+    }
+
+    public void signalAllWhenBlocking() {
+    }
+}
@@ -0,0 +1,73 @@
+package com.rajala.can.history;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling (Steinarsson, 2013).
+ *
+ * The first and last points are kept, the rest are split into equal buckets and from each bucket
+ * the point is kept that forms the largest triangle with the point kept from the previous bucket
+ * and the average of the next bucket. Peaks survive, flat stretches are thinned out, and the cost
+ * is linear in the number of input points.
+ */
+public class LTTB {
+
+    private LTTB() {
+    }
+
+    // Indices of the points to keep, written to selected in ascending order. Returns their count,
+    // which is min(count, threshold). x must be ascending and threshold at least 3.
+    public static int downsample(double[] x, float[] y, int count, int threshold, int[] selected) {
+
+        if (threshold >= count) {
+            for (int i = 0; i < count; i++) {
+                selected[i] = i;
+            }
+            return count;
+        }
+
+        double every = (double)(count - 2) / (threshold - 2);
+        int kept = 0;
+        int a = 0;
+        selected[kept++] = a;
+
+        for (int i = 0; i < threshold - 2; i++) {
+
+            // Average of the next bucket, the last point for the last bucket
+            int nextStart = (int)((i + 1) * every) + 1;
+            int nextEnd = Math.min((int)((i + 2) * every) + 1, count);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += x[j];
+                avgY += y[j];
+            }
+            int nextCount = nextEnd - nextStart;
+            if (nextCount > 0) {
+                avgX /= nextCount;
+                avgY /= nextCount;
+            } else {
+                avgX = x[count - 1];
+                avgY = y[count - 1];
+            }
+
+            // Point of this bucket with the largest triangle
+            int start = (int)(i * every) + 1;
+            int end = (int)((i + 1) * every) + 1;
+            double ax = x[a];
+            double ay = y[a];
+            double maxArea = -1;
+            int chosen = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - avgX) * (y[j] - ay) - (ax - x[j]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            selected[kept++] = chosen;
+            a = chosen;
+        }
+
+        selected[kept++] = count - 1;
+        return kept;
+    }
+}
@@ -0,0 +1,95 @@
+package com.rajala.can.history;
+
+/**
+ * Result of a {@link SignalSeries#query}, reused across queries so charting allocates nothing once
+ * its buffers have grown to the size of the largest window. One instance per querying thread.
+ */
+public class SeriesQuery {
+
+    public static final int TIER_RAW = 0;
+    public static final int TIER_100MS = 1;
+    public static final int TIER_1S = 2;
+
+    private final int maxPoints;
+
+    // Points of the selected tier inside the window
+    long[] inTime = new long[256];
+    float[] inValue = new float[256];
+    double[] inX = new double[256];
+    int inCount;
+    private final int[] selected;
+
+    // Downsampled points
+    private final long[] time;
+    private final float[] value;
+    private int count;
+    private int tier;
+
+    // maxPoints is the point budget of every query, at least 3
+    public SeriesQuery(int maxPoints) {
+        if (maxPoints < 3) {
+            throw new IllegalArgumentException("At least 3 points are needed");
+        }
+        this.maxPoints = maxPoints;
+        time = new long[maxPoints];
+        value = new float[maxPoints];
+        selected = new int[maxPoints];
+    }
+
+    public int getMaxPoints() {
+        return maxPoints;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // Time of the point in the units of CANMessage.getTimestamp()
+    public long getTime(int index) {
+        return time[index];
+    }
+
+    public float getValue(int index) {
+        return value[index];
+    }
+
+    // Resolution the points were taken from, one of the TIER constants
+    public int getTier() {
+        return tier;
+    }
+
+    // === Filled by SignalSeries ===
+
+    void begin(int selectedTier) {
+        tier = selectedTier;
+        inCount = 0;
+        count = 0;
+    }
+
+    void add(long t, float v) {
+        if (inCount == inTime.length) {
+            int capacity = inCount * 2;
+            long[] grownTime = new long[capacity];
+            float[] grownValue = new float[capacity];
+            System.arraycopy(inTime, 0, grownTime, 0, inCount);
+            System.arraycopy(inValue, 0, grownValue, 0, inCount);
+            inTime = grownTime;
+            inValue = grownValue;
+            inX = new double[capacity];
+        }
+        inTime[inCount] = t;
+        inValue[inCount] = v;
+        inCount++;
+    }
+
+    void finish(long from) {
+        for (int i = 0; i < inCount; i++) {
+            inX[i] = inTime[i] - from;
+        }
+        count = LTTB.downsample(inX, inValue, inCount, maxPoints, selected);
+        for (int i = 0; i < count; i++) {
+            time[i] = inTime[selected[i]];
+            value[i] = inValue[selected[i]];
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.rajala.can.history;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.dbc.DBCDecoder;
+import com.rajala.can.dbc.DBCDecoderTable;
+import com.rajala.can.util.IntObjectMap;
+
+/**
+ * Keeps a {@link SignalSeries} for every signal seen on a device, fed as an {@link ICANListener}.
+ *
+ * With a {@link DBCDecoderTable} each frame is decoded and every signal of its message gets a
+ * series, indexed like the decoder's signals. Frames without a decoder, or all frames when there
+ * is no table, are kept as one series per payload byte. Those eight series per ID are capped at the
+ * much smaller BYTE_* capacities, about 10 min of raw samples at 1 Hz, 1 min of 100 ms buckets and
+ * 1 h of 1 s buckets.
+ *
+ * Series are created on the dispatch thread the first time an ID is seen and published through a
+ * copy-on-write table, so {@link #getSeries} can be called from any thread. After that, a frame
+ * costs its decode and one {@link SignalSeries#add} per signal, without allocating.
+ */
+public class SignalHistory implements ICANListener {
+
+    private static final int EXTENDED_KEY = 1 << 29;
+    private static final int PAYLOAD_BYTES = 8;
+
+    public static final int BYTE_RAW_CAPACITY = 512;
+    public static final int BYTE_100MS_CAPACITY = 600;
+    public static final int BYTE_1S_CAPACITY = 3600;
+
+    private final DBCDecoderTable decoders;
+    private final int rawCapacity;
+    private final int capacity100ms;
+    private final int capacity1s;
+    private final int byteRawCapacity;
+    private final int byteCapacity100ms;
+    private final int byteCapacity1s;
+
+    // Series per ID, replaced as a whole when an ID is added
+    private volatile IntObjectMap<SignalSeries[]> series = new IntObjectMap<>();
+
+    // Dispatch thread only
+    private final double[] values;
+
+    public SignalHistory() {
+        this(null);
+    }
+
+    // decoders may be null, every frame is then kept byte by byte
+    public SignalHistory(DBCDecoderTable decoders) {
+        this(decoders, SignalSeries.DEFAULT_RAW_CAPACITY, SignalSeries.DEFAULT_100MS_CAPACITY,
+                SignalSeries.DEFAULT_1S_CAPACITY);
+    }
+
+    // Capacities of the decoded signals' series, payload byte series get at most the BYTE_* ones
+    public SignalHistory(DBCDecoderTable decoders, int rawCapacity, int capacity100ms, int capacity1s) {
+        this.decoders = decoders;
+        this.rawCapacity = rawCapacity;
+        this.capacity100ms = capacity100ms;
+        this.capacity1s = capacity1s;
+        byteRawCapacity = Math.min(rawCapacity, BYTE_RAW_CAPACITY);
+        byteCapacity100ms = Math.min(capacity100ms, BYTE_100MS_CAPACITY);
+        byteCapacity1s = Math.min(capacity1s, BYTE_1S_CAPACITY);
+        int maxSignals = (decoders != null) ? decoders.getMaxSignalCount() : 0;
+        values = new double[Math.max(maxSignals, PAYLOAD_BYTES)];
+    }
+
+    public void onCANMessage(CANMessage msg) {
+
+        int key = key(msg.getID(), msg.isExtended());
+        DBCDecoder decoder = (decoders != null) ? decoders.get(msg.getID(), msg.isExtended()) : null;
+        int count;
+        if (decoder != null) {
+            count = decoder.decode(msg.getLongData(), msg.getDLC(), values, 0);
+        } else {
+            count = msg.getDLC();
+            for (int i = 0; i < count; i++) {
+                values[i] = msg.getByte(i);
+            }
+        }
+
+        SignalSeries[] idSeries = series.get(key);
+        if (idSeries == null) {
+            idSeries = (decoder != null) ? addID(key, count, rawCapacity, capacity100ms, capacity1s)
+                    : addID(key, PAYLOAD_BYTES, byteRawCapacity, byteCapacity100ms, byteCapacity1s);
+        }
+        long time = msg.getTimestamp();
+        for (int i = 0; i < count && i < idSeries.length; i++) {
+            idSeries[i].add(time, values[i]);
+        }
+    }
+
+    // Series of the index-th signal, or payload byte without a decoder. Null until the ID was seen.
+    public SignalSeries getSeries(int id, boolean extended, int index) {
+        SignalSeries[] idSeries = series.get(key(id, extended));
+        return (idSeries != null && index >= 0 && index < idSeries.length) ? idSeries[index] : null;
+    }
+
+    public int getSeriesCount(int id, boolean extended) {
+        SignalSeries[] idSeries = series.get(key(id, extended));
+        return (idSeries != null) ? idSeries.length : 0;
+    }
+
+    public DBCDecoderTable getDecoders() {
+        return decoders;
+    }
+
+    private SignalSeries[] addID(int key, int count, int raw, int buckets100ms, int buckets1s) {
+        SignalSeries[] idSeries = new SignalSeries[count];
+        for (int i = 0; i < count; i++) {
+            idSeries[i] = new SignalSeries(raw, buckets100ms, buckets1s);
+        }
+        IntObjectMap<SignalSeries[]> current = series;
+        IntObjectMap<SignalSeries[]> updated = new IntObjectMap<>(current.size() + 1);
+        for (int i = 0; i < current.capacity(); i++) {
+            int k = current.keyAt(i);
+            if (k >= 0) {
+                updated.put(k, current.valueAt(i));
+            }
+        }
+        updated.put(key, idSeries);
+        series = updated;
+        return idSeries;
+    }
+
+    private static int key(int id, boolean extended) {
+        return extended ? (id | EXTENDED_KEY) : id;
+    }
+}
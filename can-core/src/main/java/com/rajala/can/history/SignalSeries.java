@@ -0,0 +1,234 @@
+package com.rajala.can.history;
+
+/**
+ * History of one signal at three resolutions.
+ *
+ * Every sample goes into a ring of raw (time, value) pairs and into two rings of min/max buckets,
+ * 100 ms and 1 s wide, so the coarser tiers reach back much further than the raw one in the same
+ * memory. Buckets are addressed by time / width and empty ones hold NaN. A query picks the finest
+ * tier that covers the window with at most a few points per requested point and downsamples that
+ * with {@link LTTB}, so its cost depends on the point budget rather than on the window length.
+ *
+ * The capacities are upper bounds. The rings start small and double as samples and buckets come in,
+ * so a slow or short lived signal only takes what it filled, rather than the full ~212 KB the
+ * default capacities reach.
+ *
+ * Values are kept as floats, which is plenty for charting. Samples are added on the dispatch thread
+ * and queried from the UI thread; both take the series' lock, which is held only briefly.
+ */
+public class SignalSeries {
+
+    public static final int DEFAULT_RAW_CAPACITY = 4096;
+    public static final int DEFAULT_100MS_CAPACITY = 6000;
+    public static final int DEFAULT_1S_CAPACITY = 14400;
+
+    // Entries every ring starts with before it grows
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final long NANOS_100MS = 100000000L;
+    private static final long NANOS_1S = 1000000000L;
+
+    // Input points per requested point up to which a finer tier is used
+    private static final int OVERSAMPLING = 4;
+
+    private static class Tier {
+        final long width;
+        final int capacity;
+        float[] min;
+        float[] max;
+        long first = Long.MIN_VALUE;
+        long newest = Long.MIN_VALUE;
+
+        Tier(long width, int capacity) {
+            this.width = width;
+            this.capacity = capacity;
+            min = new float[Math.min(capacity, INITIAL_CAPACITY)];
+            max = new float[min.length];
+        }
+
+        void add(long t, float v) {
+            long bucket = floorDiv(t, width);
+            if (newest == Long.MIN_VALUE) {
+                first = bucket;
+                newest = bucket - 1;
+            }
+            if (bucket > newest) {
+                if (bucket - first >= min.length && min.length < capacity) {
+                    grow(bucket - first + 1);
+                }
+                // Clear the buckets skipped over, at most the whole ring
+                long clearFrom = Math.max(newest + 1, bucket - min.length + 1);
+                for (long b = clearFrom; b <= bucket; b++) {
+                    int slot = slot(b);
+                    min[slot] = Float.NaN;
+                    max[slot] = Float.NaN;
+                }
+                newest = bucket;
+            } else if (bucket <= newest - min.length || bucket < first) {
+                // Older than anything kept
+                return;
+            }
+            int slot = slot(bucket);
+            if (Float.isNaN(min[slot])) {
+                min[slot] = v;
+                max[slot] = v;
+            } else {
+                min[slot] = Math.min(min[slot], v);
+                max[slot] = Math.max(max[slot], v);
+            }
+        }
+
+        long oldest() {
+            return Math.max(first, newest - min.length + 1);
+        }
+
+        boolean covers(long from) {
+            return newest != Long.MIN_VALUE && (oldest() == first || oldest() * width <= from);
+        }
+
+        long pointsIn(long from, long to) {
+            return 2 * (floorDiv(to, width) - floorDiv(from, width) + 1);
+        }
+
+        void collect(long from, long to, SeriesQuery q) {
+            long start = Math.max(floorDiv(from, width), oldest());
+            long end = Math.min(floorDiv(to, width), newest);
+            for (long b = start; b <= end; b++) {
+                int slot = slot(b);
+                if (Float.isNaN(min[slot])) {
+                    continue;
+                }
+                long t = b * width + width / 2;
+                q.add(t, min[slot]);
+                if (max[slot] != min[slot]) {
+                    q.add(t, max[slot]);
+                }
+            }
+        }
+
+        private int slot(long bucket) {
+            int slot = (int)(bucket % min.length);
+            return (slot < 0) ? slot + min.length : slot;
+        }
+
+        // Nothing was overwritten while the ring was below capacity, so every bucket since first moves
+        private void grow(long needed) {
+            int length = (int)Math.min(capacity, Math.max(needed, 2L * min.length));
+            float[] oldMin = min;
+            float[] oldMax = max;
+            int oldSlot = slot(first);
+            min = new float[length];
+            max = new float[length];
+            for (long b = first; b <= newest; b++) {
+                int slot = slot(b);
+                min[slot] = oldMin[oldSlot];
+                max[slot] = oldMax[oldSlot];
+                oldSlot = (oldSlot + 1 == oldMin.length) ? 0 : oldSlot + 1;
+            }
+        }
+    }
+
+    private final int rawCapacity;
+    private long[] rawTime;
+    private float[] rawValue;
+    private long rawCount;
+    private final Tier tier100ms;
+    private final Tier tier1s;
+
+    public SignalSeries() {
+        this(DEFAULT_RAW_CAPACITY, DEFAULT_100MS_CAPACITY, DEFAULT_1S_CAPACITY);
+    }
+
+    public SignalSeries(int rawCapacity, int capacity100ms, int capacity1s) {
+        if (rawCapacity < 1 || capacity100ms < 1 || capacity1s < 1) {
+            throw new IllegalArgumentException("Invalid series capacity " + rawCapacity + "/"
+                    + capacity100ms + "/" + capacity1s);
+        }
+        this.rawCapacity = rawCapacity;
+        rawTime = new long[Math.min(rawCapacity, INITIAL_CAPACITY)];
+        rawValue = new float[rawTime.length];
+        tier100ms = new Tier(NANOS_100MS, capacity100ms);
+        tier1s = new Tier(NANOS_1S, capacity1s);
+    }
+
+    // time in the units of CANMessage.getTimestamp(), samples are expected in time order
+    public synchronized void add(long time, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        float v = (float)value;
+        if (rawCount == rawTime.length && rawTime.length < rawCapacity) {
+            // Not wrapped yet, the samples keep their slots
+            int length = (int)Math.min(rawCapacity, 2L * rawTime.length);
+            long[] grownTime = new long[length];
+            float[] grownValue = new float[length];
+            System.arraycopy(rawTime, 0, grownTime, 0, rawTime.length);
+            System.arraycopy(rawValue, 0, grownValue, 0, rawValue.length);
+            rawTime = grownTime;
+            rawValue = grownValue;
+        }
+        int slot = (int)(rawCount % rawTime.length);
+        rawTime[slot] = time;
+        rawValue[slot] = v;
+        rawCount++;
+        tier100ms.add(time, v);
+        tier1s.add(time, v);
+    }
+
+    public synchronized long getSampleCount() {
+        return rawCount;
+    }
+
+    // Most recent value, NaN before the first sample
+    public synchronized float getLatest() {
+        return (rawCount > 0) ? rawValue[(int)((rawCount - 1) % rawValue.length)] : Float.NaN;
+    }
+
+    // At most q.getMaxPoints() points between from and to, both inclusive
+    public synchronized void query(long from, long to, SeriesQuery q) {
+
+        long budget = (long)q.getMaxPoints() * OVERSAMPLING;
+        long rawFirst = Math.max(0, rawCount - rawTime.length);
+        if (rawCount > 0 && (rawFirst == 0 || rawTime[index(rawFirst)] <= from)) {
+            long lo = lowerBound(rawFirst, from);
+            long hi = lowerBound(lo, to + 1);
+            if (hi - lo <= budget) {
+                q.begin(SeriesQuery.TIER_RAW);
+                for (long i = lo; i < hi; i++) {
+                    q.add(rawTime[index(i)], rawValue[index(i)]);
+                }
+                q.finish(from);
+                return;
+            }
+        }
+
+        Tier tier = (tier100ms.covers(from) && tier100ms.pointsIn(from, to) <= budget) ? tier100ms : tier1s;
+        q.begin((tier == tier100ms) ? SeriesQuery.TIER_100MS : SeriesQuery.TIER_1S);
+        tier.collect(from, to, q);
+        q.finish(from);
+    }
+
+    // First logical raw index at or after start whose time is not below t
+    private long lowerBound(long start, long t) {
+        long lo = start;
+        long hi = rawCount;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (rawTime[index(mid)] < t) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int index(long logical) {
+        return (int)(logical % rawTime.length);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return ((x % y != 0) && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+}
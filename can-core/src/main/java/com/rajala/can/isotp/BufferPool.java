@@ -0,0 +1,43 @@
+package com.rajala.can.isotp;
+
+/**
+ * Transfer buffers in power of two sizes from 64 bytes up, kept for reuse so that transfers of
+ * recurring sizes allocate nothing once the pool has warmed up. Shared by every channel of an
+ * engine.
+ */
+class BufferPool {
+
+    private static final int MIN_SHIFT = 6;
+    private static final int MAX_SHIFT = 30;
+    private static final int BUFFERS_PER_SIZE = 8;
+
+    private final byte[][][] free = new byte[MAX_SHIFT - MIN_SHIFT + 1][BUFFERS_PER_SIZE][];
+    private final int[] counts = new int[free.length];
+
+    // At least length bytes long
+    byte[] obtain(int length) {
+        int size = sizeClass(length);
+        synchronized (this) {
+            if (counts[size] > 0) {
+                byte[] buffer = free[size][--counts[size]];
+                free[size][counts[size]] = null;
+                return buffer;
+            }
+        }
+        return new byte[1 << (size + MIN_SHIFT)];
+    }
+
+    void release(byte[] buffer) {
+        int size = sizeClass(buffer.length);
+        synchronized (this) {
+            if (counts[size] < BUFFERS_PER_SIZE) {
+                free[size][counts[size]++] = buffer;
+            }
+        }
+    }
+
+    private static int sizeClass(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+}
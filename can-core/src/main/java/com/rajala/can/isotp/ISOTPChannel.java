@@ -0,0 +1,646 @@
+package com.rajala.can.isotp;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.ICANDevice;
+
+/**
+ * One ISO-TP session with a peer, opened through {@link ISOTPEngine}. Frames to the peer go out
+ * on the transmit ID; its data and flow control frames both arrive on the receive ID, which is
+ * what the channel subscribes to.
+ *
+ * Receiving and sending are independent, so a request can go out while a response is still
+ * coming in. Incoming transfers are reassembled on the dispatch thread into a pooled buffer and
+ * answered with flow control using the channel's block size and STmin. Outgoing transfers are
+ * copied into a pooled buffer; their consecutive frames are paced by the engine thread as the
+ * peer's flow control asks, keeping a few of them queued on the device when it asks for no gap
+ * at all. Waiting for the peer's next frame is bounded by the channel timeout in both directions.
+ *
+ * A listen-only channel reassembles what arrives on its ID but never sends, so it can follow a
+ * conversation between two other nodes without disturbing it.
+ */
+public class ISOTPChannel implements ICANListener {
+
+    public static final int NO_PADDING = -1;
+    public static final int DEFAULT_PADDING = 0xCC;
+    public static final int DEFAULT_TIMEOUT_MS = 1000;
+
+    // Flow control WAIT frames accepted in a row before a transfer is given up
+    public static final int MAX_WAIT_FRAMES = 10;
+
+    public enum Failure {
+        // Receive side
+        TIMEOUT_CONSECUTIVE,
+        WRONG_SEQUENCE,
+        TOO_LONG,
+        UNEXPECTED_FRAME,
+        // Send side
+        TIMEOUT_FLOW_CONTROL,
+        OVERFLOW,
+        WAIT_LIMIT,
+        INVALID_FLOW_CONTROL,
+        TX_FAILED,
+        // Either
+        CLOSED,
+    }
+
+    private static final int RX_IDLE = 0;
+    private static final int RX_RECEIVING = 1;
+
+    private static final int TX_IDLE = 0;
+    private static final int TX_WAIT_FLOW = 1;
+    private static final int TX_SENDING = 2;
+
+    // Consecutive frames queued on the device at once when the peer asks for no separation
+    private static final int TX_WINDOW = 4;
+
+    private final ISOTPEngine engine;
+    private final ICANDevice device;
+    private final BufferPool pool;
+    private final int txId;
+    private final int rxId;
+    private final boolean extended;
+    private final boolean listenOnly;
+    private final int maxLength;
+    private final ITransferListener listener;
+
+    private volatile int blockSize = 0;
+    private volatile int stMin = 0;
+    private volatile int padding = DEFAULT_PADDING;
+    private volatile long timeoutNanos = DEFAULT_TIMEOUT_MS * 1000000L;
+
+    // Receive state, guarded by this
+    private int rxState = RX_IDLE;
+    private byte[] rxBuffer;
+    private int rxLength;
+    private int rxOffset;
+    private int rxSequence;
+    private int rxBlockSize;
+    private int rxBlockRemaining;
+    private int rxSTmin;
+    private long rxDeadline;
+
+    // Transmit state, guarded by this
+    private int txState = TX_IDLE;
+    private byte[] txBuffer;
+    private int txLength;
+    private int txOffset;
+    private int txSequence;
+    private int txBlockRemaining;
+    private long txSeparation;
+    private long txNextTime;
+    private long txDeadline;
+    private int txWaits;
+    // Frames handed to the device and not yet completed or failed, may outlive their transfer
+    private int txInFlight;
+    private boolean closed;
+
+    // Dispatch thread only
+    private final byte[] single = new byte[ISOTPFrame.SINGLE_PAYLOAD];
+    private final CANMessage flowControl = new CANMessage();
+
+    // Engine thread only
+    private final CANMessage consecutive = new CANMessage();
+
+    private volatile long receivedTransfers;
+    private volatile long receivedBytes;
+    private volatile long sentTransfers;
+    private volatile long sentBytes;
+    private volatile long failedTransfers;
+
+    private final ICANTxCallback txCallback = new ICANTxCallback() {
+        public void onTxComplete(CANMessage msg) {
+            txCompleted();
+        }
+
+        public void onTxFailed(CANMessage msg) {
+            txFailed();
+        }
+    };
+
+    ISOTPChannel(ISOTPEngine engine, ICANDevice device, BufferPool pool, int txId, int rxId,
+                 boolean extended, boolean listenOnly, int maxLength, ITransferListener listener) {
+        this.engine = engine;
+        this.device = device;
+        this.pool = pool;
+        this.txId = txId;
+        this.rxId = rxId;
+        this.extended = extended;
+        this.listenOnly = listenOnly;
+        this.maxLength = maxLength;
+        this.listener = listener;
+    }
+
+    // === User methods ===
+
+    // Copies length bytes of data and starts sending them. Returns false while the previous
+    // transfer is still going; once accepted, the outcome is reported to the listener.
+    public boolean send(byte[] data, int off, int length) {
+
+        if (listenOnly) {
+            throw new IllegalStateException("Listen-only channel cannot send");
+        }
+        if (length < 1 || length > maxLength) {
+            throw new IllegalArgumentException("Invalid ISO-TP length " + length);
+        }
+
+        byte[] buffer = pool.obtain(length);
+        System.arraycopy(data, off, buffer, 0, length);
+
+        long payload;
+        int dlc;
+        synchronized (this) {
+            if (closed || txState != TX_IDLE || txInFlight > 0) {
+                pool.release(buffer);
+                return false;
+            }
+            txBuffer = buffer;
+            txLength = length;
+            txSequence = 1;
+            txWaits = 0;
+            txInFlight = 1;
+            if (length <= ISOTPFrame.SINGLE_PAYLOAD) {
+                payload = ISOTPFrame.single(buffer, 0, length);
+                dlc = length + 1;
+                txOffset = length;
+                txState = TX_SENDING;
+            } else {
+                payload = ISOTPFrame.first(length, buffer, 0);
+                dlc = 8;
+                txOffset = ISOTPFrame.firstPayload(length);
+                txState = TX_WAIT_FLOW;
+                txDeadline = System.nanoTime() + timeoutNanos;
+            }
+        }
+
+        // A refused frame fails the transfer through the callback
+        CANMessage frame = CANMessage.obtain();
+        setFrame(frame, txId, payload, dlc);
+        device.sendCANMessage(frame, txCallback);
+        frame.recycle();
+        return true;
+    }
+
+    public boolean send(byte[] data) {
+        return send(data, 0, data.length);
+    }
+
+    // Consecutive frames the peer may send before waiting for the next flow control, 0 for all
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 0 || blockSize > 0xFF) {
+            throw new IllegalArgumentException("Invalid block size " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    // Minimum gap between the peer's consecutive frames as the raw STmin byte, see
+    // ISOTPFrame.separationNanos
+    public void setSTmin(int stMin) {
+        if (!ISOTPFrame.isValidSTmin(stMin)) {
+            throw new IllegalArgumentException("Invalid STmin " + stMin);
+        }
+        this.stMin = stMin;
+    }
+
+    // Byte the unused part of every sent frame is filled with, NO_PADDING sends short frames
+    public void setPadding(int padding) {
+        this.padding = (padding < 0) ? NO_PADDING : (padding & 0xFF);
+    }
+
+    // How long to wait for the peer's next consecutive or flow control frame
+    public void setTimeout(int timeoutMs) {
+        timeoutNanos = timeoutMs * 1000000L;
+    }
+
+    // === Getters ===
+
+    public int getTxID() {
+        return txId;
+    }
+
+    public int getRxID() {
+        return rxId;
+    }
+
+    public boolean isExtended() {
+        return extended;
+    }
+
+    public boolean isListenOnly() {
+        return listenOnly;
+    }
+
+    public ITransferListener getListener() {
+        return listener;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getSTmin() {
+        return stMin;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    public int getTimeout() {
+        return (int)(timeoutNanos / 1000000L);
+    }
+
+    public synchronized boolean isReceiving() {
+        return rxState != RX_IDLE;
+    }
+
+    public synchronized boolean isSending() {
+        return txState != TX_IDLE;
+    }
+
+    public long getReceivedTransferCount() {
+        return receivedTransfers;
+    }
+
+    public long getReceivedByteCount() {
+        return receivedBytes;
+    }
+
+    public long getSentTransferCount() {
+        return sentTransfers;
+    }
+
+    public long getSentByteCount() {
+        return sentBytes;
+    }
+
+    public long getFailedTransferCount() {
+        return failedTransfers;
+    }
+
+    // === Receiving, dispatch thread ===
+
+    public void onCANMessage(CANMessage msg) {
+        int dlc = msg.getDLC();
+        if (dlc < 1) {
+            return;
+        }
+        long data = msg.getLongData();
+        switch (ISOTPFrame.type(data)) {
+            case ISOTPFrame.SINGLE:
+                receiveSingle(data, dlc);
+                break;
+            case ISOTPFrame.FIRST:
+                receiveFirst(data, dlc);
+                break;
+            case ISOTPFrame.CONSECUTIVE:
+                receiveConsecutive(data, dlc);
+                break;
+            case ISOTPFrame.FLOW_CONTROL:
+                receiveFlowControl(data, dlc);
+                break;
+        }
+    }
+
+    private void receiveSingle(long data, int dlc) {
+
+        // 0 is the CAN FD escape, which classic frames cannot carry
+        int length = ISOTPFrame.lowNibble(data);
+        if (length == 0 || length > dlc - 1) {
+            return;
+        }
+        if (abortReceive()) {
+            fail(Failure.UNEXPECTED_FRAME);
+        }
+
+        ISOTPFrame.getBytes(data, 1, length, single, 0);
+        receivedTransfers++;
+        receivedBytes += length;
+        listener.onTransferReceived(this, single, length);
+    }
+
+    private void receiveFirst(long data, int dlc) {
+
+        if (dlc < 8) {
+            return;
+        }
+        int length = ((int)(data >>> 48)) & ISOTPFrame.MAX_SHORT_LENGTH;
+        int offset = 2;
+        if (length == 0) {
+            long escaped = (data >>> 16) & 0xFFFFFFFFL;
+            if (escaped <= ISOTPFrame.MAX_SHORT_LENGTH) {
+                return;
+            }
+            length = (int)Math.min(escaped, Integer.MAX_VALUE);
+            offset = 8 - ISOTPFrame.FIRST_ESCAPE_PAYLOAD;
+        } else if (length <= ISOTPFrame.SINGLE_PAYLOAD) {
+            return;
+        }
+        if (abortReceive()) {
+            fail(Failure.UNEXPECTED_FRAME);
+        }
+
+        if (length > maxLength) {
+            if (!listenOnly) {
+                sendFlowControl(ISOTPFrame.FLOW_OVERFLOW, 0, 0);
+            }
+            fail(Failure.TOO_LONG);
+            return;
+        }
+
+        byte[] buffer = pool.obtain(length);
+        ISOTPFrame.getBytes(data, offset, 8 - offset, buffer, 0);
+        int bs = blockSize;
+        int st = stMin;
+        synchronized (this) {
+            if (closed) {
+                pool.release(buffer);
+                return;
+            }
+            rxBuffer = buffer;
+            rxLength = length;
+            rxOffset = 8 - offset;
+            rxSequence = 1;
+            // The sender follows someone else's flow control, so blocks cannot be counted
+            rxBlockSize = listenOnly ? 0 : bs;
+            rxBlockRemaining = rxBlockSize;
+            rxSTmin = st;
+            rxDeadline = System.nanoTime() + timeoutNanos;
+            rxState = RX_RECEIVING;
+        }
+        if (!listenOnly) {
+            sendFlowControl(ISOTPFrame.FLOW_CONTINUE, bs, st);
+        }
+    }
+
+    private void receiveConsecutive(long data, int dlc) {
+
+        byte[] complete = null;
+        int length = 0;
+        boolean flow = false;
+        boolean lost = false;
+        int bs;
+        int st;
+        synchronized (this) {
+            if (rxState != RX_RECEIVING) {
+                return;
+            }
+            // Only the last consecutive frame may be short
+            int count = Math.min(ISOTPFrame.CONSECUTIVE_PAYLOAD, rxLength - rxOffset);
+            if (dlc - 1 < count) {
+                return;
+            }
+            if (ISOTPFrame.lowNibble(data) != rxSequence) {
+                endReceive();
+                lost = true;
+            } else {
+                ISOTPFrame.getBytes(data, 1, count, rxBuffer, rxOffset);
+                rxOffset += count;
+                rxSequence = (rxSequence + 1) & 0xF;
+                if (rxOffset == rxLength) {
+                    complete = rxBuffer;
+                    length = rxLength;
+                    rxBuffer = null;
+                    rxState = RX_IDLE;
+                } else {
+                    rxDeadline = System.nanoTime() + timeoutNanos;
+                    if (rxBlockSize > 0 && --rxBlockRemaining == 0) {
+                        rxBlockRemaining = rxBlockSize;
+                        flow = true;
+                    }
+                }
+            }
+            bs = rxBlockSize;
+            st = rxSTmin;
+        }
+
+        if (lost) {
+            fail(Failure.WRONG_SEQUENCE);
+        } else if (flow) {
+            sendFlowControl(ISOTPFrame.FLOW_CONTINUE, bs, st);
+        } else if (complete != null) {
+            receivedTransfers++;
+            receivedBytes += length;
+            listener.onTransferReceived(this, complete, length);
+            pool.release(complete);
+        }
+    }
+
+    private void sendFlowControl(int status, int bs, int st) {
+        setFrame(flowControl, txId, ISOTPFrame.flowControl(status, bs, st), ISOTPFrame.FLOW_CONTROL_LENGTH);
+        device.sendCANMessage(flowControl);
+    }
+
+    // Drops a transfer in progress, returns whether there was one
+    private synchronized boolean abortReceive() {
+        if (rxState == RX_IDLE) {
+            return false;
+        }
+        endReceive();
+        return true;
+    }
+
+    private void endReceive() {
+        pool.release(rxBuffer);
+        rxBuffer = null;
+        rxState = RX_IDLE;
+    }
+
+    // === Sending ===
+
+    private void receiveFlowControl(long data, int dlc) {
+
+        if (listenOnly || dlc < ISOTPFrame.FLOW_CONTROL_LENGTH) {
+            return;
+        }
+        Failure failure = null;
+        synchronized (this) {
+            if (txState != TX_WAIT_FLOW) {
+                return;
+            }
+            switch (ISOTPFrame.lowNibble(data)) {
+                case ISOTPFrame.FLOW_CONTINUE:
+                    int bs = ISOTPFrame.getByte(data, 1);
+                    txBlockRemaining = (bs == 0) ? -1 : bs;
+                    txSeparation = ISOTPFrame.separationNanos(ISOTPFrame.getByte(data, 2));
+                    txNextTime = System.nanoTime();
+                    txWaits = 0;
+                    txState = TX_SENDING;
+                    break;
+                case ISOTPFrame.FLOW_WAIT:
+                    if (++txWaits > MAX_WAIT_FRAMES) {
+                        failure = Failure.WAIT_LIMIT;
+                    } else {
+                        txDeadline = System.nanoTime() + timeoutNanos;
+                    }
+                    break;
+                case ISOTPFrame.FLOW_OVERFLOW:
+                    failure = Failure.OVERFLOW;
+                    break;
+                default:
+                    failure = Failure.INVALID_FLOW_CONTROL;
+                    break;
+            }
+            if (failure != null) {
+                endTransmit();
+            }
+        }
+
+        if (failure != null) {
+            fail(failure);
+        } else {
+            engine.wakeUp();
+        }
+    }
+
+    // Device transmit thread, or the sender's when the device fails a frame right away
+    private void txCompleted() {
+        int length;
+        synchronized (this) {
+            txInFlight--;
+            if (txState != TX_SENDING) {
+                return;
+            }
+            if (txOffset < txLength || txInFlight > 0) {
+                if (txSeparation > 0) {
+                    txNextTime = System.nanoTime() + txSeparation;
+                }
+                length = 0;
+            } else {
+                length = txLength;
+                endTransmit();
+            }
+        }
+
+        if (length > 0) {
+            sentTransfers++;
+            sentBytes += length;
+            listener.onTransferSent(this);
+        } else {
+            engine.wakeUp();
+        }
+    }
+
+    private void txFailed() {
+        synchronized (this) {
+            txInFlight--;
+            if (txState == TX_IDLE) {
+                return;
+            }
+            endTransmit();
+        }
+        fail(Failure.TX_FAILED);
+    }
+
+    private void endTransmit() {
+        pool.release(txBuffer);
+        txBuffer = null;
+        txState = TX_IDLE;
+    }
+
+    // === Engine thread ===
+
+    // Sends the next consecutive frame when it is due and checks the timeouts. Returns the time
+    // the channel next needs a poll, or wake if that is earlier.
+    long poll(long now, long wake) {
+
+        Failure rxFailure = null;
+        Failure txFailure = null;
+        long payload = 0;
+        int dlc = 0;
+        synchronized (this) {
+            if (rxState == RX_RECEIVING) {
+                if (now - rxDeadline >= 0) {
+                    rxFailure = Failure.TIMEOUT_CONSECUTIVE;
+                    endReceive();
+                } else {
+                    wake = earlier(wake, rxDeadline);
+                }
+            }
+
+            if (txState == TX_WAIT_FLOW) {
+                if (now - txDeadline >= 0) {
+                    txFailure = Failure.TIMEOUT_FLOW_CONTROL;
+                    endTransmit();
+                } else {
+                    wake = earlier(wake, txDeadline);
+                }
+            } else if (txState == TX_SENDING && txOffset < txLength) {
+                // Otherwise the next completion wakes the engine
+                int window = (txSeparation == 0) ? TX_WINDOW : 1;
+                if (txInFlight < window) {
+                    if (now - txNextTime >= 0) {
+                        int count = Math.min(ISOTPFrame.CONSECUTIVE_PAYLOAD, txLength - txOffset);
+                        payload = ISOTPFrame.consecutive(txSequence, txBuffer, txOffset, count);
+                        dlc = count + 1;
+                        txOffset += count;
+                        txSequence = (txSequence + 1) & 0xF;
+                        txInFlight++;
+                        if (txBlockRemaining > 0 && --txBlockRemaining == 0 && txOffset < txLength) {
+                            txState = TX_WAIT_FLOW;
+                            txDeadline = now + timeoutNanos;
+                        }
+                        wake = now;
+                    } else {
+                        wake = earlier(wake, txNextTime);
+                    }
+                }
+            }
+        }
+
+        if (dlc > 0) {
+            setFrame(consecutive, txId, payload, dlc);
+            device.sendCANMessage(consecutive, txCallback);
+        }
+        if (rxFailure != null) {
+            fail(rxFailure);
+        }
+        if (txFailure != null) {
+            fail(txFailure);
+        }
+        return wake;
+    }
+
+    // Ends both directions, called by the engine after unsubscribing the channel
+    void close() {
+        boolean receiving;
+        boolean sending;
+        synchronized (this) {
+            closed = true;
+            receiving = rxState != RX_IDLE;
+            sending = txState != TX_IDLE;
+            if (receiving) {
+                endReceive();
+            }
+            if (sending) {
+                endTransmit();
+            }
+        }
+        if (receiving) {
+            fail(Failure.CLOSED);
+        }
+        if (sending) {
+            fail(Failure.CLOSED);
+        }
+    }
+
+    private void setFrame(CANMessage frame, int id, long payload, int length) {
+        int pad = padding;
+        frame.setID(id);
+        frame.setExtended(extended);
+        frame.setLongData(ISOTPFrame.pad(payload, length, pad), (pad == NO_PADDING) ? length : 8);
+    }
+
+    private void fail(Failure failure) {
+        // Failures are noticed on several threads
+        synchronized (this) {
+            failedTransfers++;
+        }
+        listener.onTransferFailed(this, failure);
+    }
+
+    private static long earlier(long a, long b) {
+        return (b - a < 0) ? b : a;
+    }
+}
@@ -0,0 +1,204 @@
+package com.rajala.can.isotp;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.device.IDiagnosticCANDevice;
+import com.rajala.can.util.IntObjectMap;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ISO 15765-2 transport on top of an {@link ICANDevice}, for diagnostic messages longer than a
+ * single frame such as VINs, DTC lists and UDS data.
+ *
+ * Every {@link ISOTPChannel} is one session keyed by its receive ID and subscribes to the device
+ * for that ID only, so frames of other IDs never reach the engine and any number of sessions run
+ * side by side. Reassembly happens on the device's dispatch thread as frames arrive. A single
+ * engine thread paces the consecutive frames of every outgoing transfer and expires sessions whose
+ * peer went quiet; it parks until the earliest of those is due, or until a flow control frame or
+ * a transmit completion wakes it.
+ *
+ * Only normal addressing is supported: the whole CAN ID addresses the peer and all 8 bytes are
+ * ISO-TP payload.
+ *
+ * An {@link IDiagnosticCANDevice} such as the ELM327 formats what it sends itself, adding its own
+ * PCI byte and sending at most 7 data bytes, so the engine cannot send through it. Only listen
+ * only channels can be opened on one; requests go out with
+ * {@link IDiagnosticCANDevice#sendRequest}, as the OBDPoller does.
+ */
+public class ISOTPEngine implements Runnable {
+
+    private static final String TAG = "ISOTPEngine";
+
+    public static final int DEFAULT_MAX_LENGTH = ISOTPFrame.MAX_SHORT_LENGTH;
+    public static final int MAX_LENGTH = 1 << 30;
+
+    private static final int EXTENDED_KEY = 1 << 29;
+    private static final long IDLE_PARK_NANOS = 100000000L;
+
+    private final ICANDevice device;
+    private final int maxLength;
+    private final BufferPool pool = new BufferPool();
+
+    // Open channels, replaced as a whole under this
+    private volatile ISOTPChannel[] channels = new ISOTPChannel[0];
+    private volatile IntObjectMap<ISOTPChannel> channelsByRxID = new IntObjectMap<>();
+
+    private volatile boolean isRunning;
+    private volatile Thread engineThread;
+
+    public ISOTPEngine(ICANDevice device) {
+        this(device, DEFAULT_MAX_LENGTH);
+    }
+
+    // maxLength bounds both directions, longer incoming transfers are refused with an overflow
+    public ISOTPEngine(ICANDevice device, int maxLength) {
+        if (maxLength <= ISOTPFrame.SINGLE_PAYLOAD || maxLength > MAX_LENGTH) {
+            throw new IllegalArgumentException("Invalid ISO-TP maximum length " + maxLength);
+        }
+        this.device = device;
+        this.maxLength = maxLength;
+    }
+
+    // === User methods ===
+
+    public synchronized void start() {
+        if (engineThread != null) {
+            return;
+        }
+        isRunning = true;
+        engineThread = new Thread(this, TAG);
+        engineThread.setDaemon(true);
+        engineThread.start();
+    }
+
+    // Stops the engine thread and closes every channel
+    public synchronized void stop() {
+        for (ISOTPChannel channel : channels) {
+            close(channel);
+        }
+        Thread thread = engineThread;
+        if (thread == null) {
+            return;
+        }
+        isRunning = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        engineThread = null;
+    }
+
+    // Session sending on txId and receiving on rxId, both standard or both extended
+    public ISOTPChannel open(int txId, int rxId, boolean extended, ITransferListener listener) {
+        if (device instanceof IDiagnosticCANDevice) {
+            throw new IllegalArgumentException("ISO-TP cannot send through a diagnostic device, "
+                    + "open a listen only channel instead");
+        }
+        checkID(txId, extended);
+        return add(new ISOTPChannel(this, device, pool, txId, rxId, extended, false, maxLength, listener));
+    }
+
+    // Session that only reassembles what arrives on rxId, without ever sending flow control
+    public ISOTPChannel openListenOnly(int rxId, boolean extended, ITransferListener listener) {
+        return add(new ISOTPChannel(this, device, pool, rxId, rxId, extended, true, maxLength, listener));
+    }
+
+    // Unsubscribes the channel, transfers in progress fail with Failure.CLOSED
+    public void close(ISOTPChannel channel) {
+        synchronized (this) {
+            ISOTPChannel[] current = channels;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == channel) {
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            ISOTPChannel[] updated = new ISOTPChannel[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, updated.length - index);
+            publish(updated);
+        }
+        device.removeCANListener(channel);
+        channel.close();
+    }
+
+    public ISOTPChannel getChannel(int rxId, boolean extended) {
+        return channelsByRxID.get(key(rxId, extended));
+    }
+
+    public int getChannelCount() {
+        return channels.length;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    private ISOTPChannel add(ISOTPChannel channel) {
+        if (channel.getListener() == null) {
+            throw new IllegalArgumentException("ISO-TP channel needs a listener");
+        }
+        CANFilter filter = checkID(channel.getRxID(), channel.isExtended());
+        synchronized (this) {
+            if (channelsByRxID.get(key(channel.getRxID(), channel.isExtended())) != null) {
+                throw new IllegalArgumentException("ISO-TP channel already open for " + filter);
+            }
+            ISOTPChannel[] current = channels;
+            ISOTPChannel[] updated = new ISOTPChannel[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = channel;
+            publish(updated);
+        }
+        device.addCANListener(channel, filter);
+        return channel;
+    }
+
+    private void publish(ISOTPChannel[] updated) {
+        IntObjectMap<ISOTPChannel> byRxID = new IntObjectMap<>(updated.length);
+        for (ISOTPChannel channel : updated) {
+            byRxID.put(key(channel.getRxID(), channel.isExtended()), channel);
+        }
+        channelsByRxID = byRxID;
+        channels = updated;
+    }
+
+    // Validates the ID by building the filter for it
+    private static CANFilter checkID(int id, boolean extended) {
+        return extended ? CANFilter.extendedId(id) : CANFilter.id(id);
+    }
+
+    private static int key(int id, boolean extended) {
+        return extended ? (id | EXTENDED_KEY) : id;
+    }
+
+    // === Engine thread ===
+
+    // Called by channels when a flow control frame or a transmit completion may let them send
+    void wakeUp() {
+        Thread thread = engineThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public void run() {
+
+        while (isRunning) {
+            long now = System.nanoTime();
+            long wake = now + IDLE_PARK_NANOS;
+            for (ISOTPChannel channel : channels) {
+                wake = channel.poll(now, wake);
+            }
+            long delay = wake - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(this, delay);
+            }
+        }
+    }
+}
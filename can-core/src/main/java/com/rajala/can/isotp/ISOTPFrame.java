@@ -0,0 +1,116 @@
+package com.rajala.can.isotp;
+
+/**
+ * Protocol control information of ISO 15765-2 frames with normal addressing, read from and packed
+ * into the left aligned payload {@link com.rajala.can.CANMessage} uses.
+ *
+ * The first nibble of byte 0 is the frame type. A single frame carries up to 7 bytes, a first
+ * frame announces the total length and carries the first 6, every consecutive frame carries 7
+ * more with a 4 bit sequence number, and flow control tells the sender how many consecutive
+ * frames it may send in a block and how far apart.
+ */
+public final class ISOTPFrame {
+
+    public static final int SINGLE = 0;
+    public static final int FIRST = 1;
+    public static final int CONSECUTIVE = 2;
+    public static final int FLOW_CONTROL = 3;
+
+    // Flow status of a flow control frame
+    public static final int FLOW_CONTINUE = 0;
+    public static final int FLOW_WAIT = 1;
+    public static final int FLOW_OVERFLOW = 2;
+
+    public static final int SINGLE_PAYLOAD = 7;
+    public static final int FIRST_PAYLOAD = 6;
+    public static final int CONSECUTIVE_PAYLOAD = 7;
+
+    // Longest transfer the 12 bit length of a first frame can announce. Longer ones set it to 0
+    // and follow it with a 32 bit length, which leaves 2 bytes of payload in the first frame.
+    public static final int MAX_SHORT_LENGTH = 0xFFF;
+    public static final int FIRST_ESCAPE_PAYLOAD = 2;
+
+    public static final int FLOW_CONTROL_LENGTH = 3;
+
+    private ISOTPFrame() {
+    }
+
+    // === Reading ===
+
+    public static int type(long data) {
+        return (int)(data >>> 60) & 0xF;
+    }
+
+    // Single frame length, consecutive frame sequence number or flow status
+    public static int lowNibble(long data) {
+        return (int)(data >>> 56) & 0xF;
+    }
+
+    public static int getByte(long data, int index) {
+        return (int)(data >>> (56 - 8*index)) & 0xFF;
+    }
+
+    // Copies count payload bytes starting at byte from into buffer
+    public static void getBytes(long data, int from, int count, byte[] buffer, int off) {
+        for (int i = 0; i < count; i++) {
+            buffer[off + i] = (byte)(data >>> (56 - 8*(from + i)));
+        }
+    }
+
+    // STmin byte as ns: 0x00-0x7F are ms, 0xF1-0xF9 are 100-900 us, reserved values mean 127 ms
+    public static long separationNanos(int stMin) {
+        if (stMin >= 0 && stMin <= 0x7F) {
+            return stMin * 1000000L;
+        }
+        if (stMin >= 0xF1 && stMin <= 0xF9) {
+            return (stMin - 0xF0) * 100000L;
+        }
+        return 0x7F * 1000000L;
+    }
+
+    public static boolean isValidSTmin(int stMin) {
+        return (stMin >= 0 && stMin <= 0x7F) || (stMin >= 0xF1 && stMin <= 0xF9);
+    }
+
+    // === Writing ===
+
+    public static long single(byte[] buffer, int off, int length) {
+        return ((long)length << 56) | putBytes(buffer, off, length, 1);
+    }
+
+    // Returns the payload, the frame carries firstPayload(length) bytes of the transfer
+    public static long first(int length, byte[] buffer, int off) {
+        if (length <= MAX_SHORT_LENGTH) {
+            return ((long)(0x1000 | length) << 48) | putBytes(buffer, off, FIRST_PAYLOAD, 2);
+        }
+        return (0x10L << 56) | ((length & 0xFFFFFFFFL) << 16) | putBytes(buffer, off, FIRST_ESCAPE_PAYLOAD, 6);
+    }
+
+    public static int firstPayload(int length) {
+        return (length <= MAX_SHORT_LENGTH) ? FIRST_PAYLOAD : FIRST_ESCAPE_PAYLOAD;
+    }
+
+    public static long consecutive(int sequence, byte[] buffer, int off, int count) {
+        return ((long)(0x20 | (sequence & 0xF)) << 56) | putBytes(buffer, off, count, 1);
+    }
+
+    public static long flowControl(int status, int blockSize, int stMin) {
+        return ((long)(0x30 | status) << 56) | ((long)(blockSize & 0xFF) << 48) | ((long)(stMin & 0xFF) << 40);
+    }
+
+    // Fills the bytes after length with padding, returns the payload unchanged for NO_PADDING
+    public static long pad(long data, int length, int padding) {
+        for (int i = length; padding >= 0 && i < 8; i++) {
+            data |= (long)(padding & 0xFF) << (56 - 8*i);
+        }
+        return data;
+    }
+
+    private static long putBytes(byte[] buffer, int off, int count, int at) {
+        long data = 0;
+        for (int i = 0; i < count; i++) {
+            data |= (long)(buffer[off + i] & 0xFF) << (56 - 8*(at + i));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,15 @@
+package com.rajala.can.isotp;
+
+public interface ITransferListener {
+    // Called on the device's dispatch thread once the last frame of a transfer has arrived. data
+    // is owned by the engine and is reused as soon as onTransferReceived returns, length is the
+    // size of the transfer, not of the buffer.
+    void onTransferReceived(ISOTPChannel channel, byte[] data, int length);
+
+    // Called on the device's transmit thread once the last frame has been handed to the bus
+    void onTransferSent(ISOTPChannel channel);
+
+    // Called on whichever thread noticed the failure. Receive and transmit failures both end up
+    // here, see ISOTPChannel.Failure for which is which.
+    void onTransferFailed(ISOTPChannel channel, ISOTPChannel.Failure failure);
+}
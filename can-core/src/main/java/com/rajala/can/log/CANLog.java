@@ -0,0 +1,45 @@
+package com.rajala.can.log;
+
+/**
+ * Logging front end of the CAN library, called the same way as android.util.Log.
+ *
+ * Lines go to a single process wide {@link ILogSink}. The Android app installs one that forwards
+ * to logcat; anywhere else they go to {@link ConsoleLogSink} unless another sink is set.
+ */
+public class CANLog {
+
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static volatile ILogSink sink = new ConsoleLogSink(INFO);
+
+    private CANLog() {
+    }
+
+    public static void setSink(ILogSink logSink) {
+        sink = logSink;
+    }
+
+    public static void v(String tag, String msg) {
+        sink.log(VERBOSE, tag, msg);
+    }
+
+    public static void d(String tag, String msg) {
+        sink.log(DEBUG, tag, msg);
+    }
+
+    public static void i(String tag, String msg) {
+        sink.log(INFO, tag, msg);
+    }
+
+    public static void w(String tag, String msg) {
+        sink.log(WARN, tag, msg);
+    }
+
+    public static void e(String tag, String msg) {
+        sink.log(ERROR, tag, msg);
+    }
+}
@@ -0,0 +1,32 @@
+package com.rajala.can.log;
+
+import java.io.PrintStream;
+
+/**
+ * Writes log lines at or above a priority to a stream, System.err by default, in logcat's brief
+ * format: {@code W/ELM327: Adapter rejected a command}.
+ */
+public class ConsoleLogSink implements ILogSink {
+
+    private static final char[] LEVELS = {'?', '?', 'V', 'D', 'I', 'W', 'E'};
+
+    private final int minPriority;
+    private final PrintStream out;
+
+    public ConsoleLogSink(int minPriority) {
+        this(minPriority, System.err);
+    }
+
+    public ConsoleLogSink(int minPriority, PrintStream out) {
+        this.minPriority = minPriority;
+        this.out = out;
+    }
+
+    public void log(int priority, String tag, String msg) {
+        if (priority < minPriority) {
+            return;
+        }
+        char level = (priority >= 0 && priority < LEVELS.length) ? LEVELS[priority] : '?';
+        out.println(level + "/" + tag + ": " + msg);
+    }
+}
@@ -0,0 +1,9 @@
+package com.rajala.can.log;
+
+/**
+ * Destination of the log lines written through {@link CANLog}.
+ */
+public interface ILogSink {
+    // priority is one of the CANLog levels, which have the values of android.util.Log's
+    void log(int priority, String tag, String msg);
+}
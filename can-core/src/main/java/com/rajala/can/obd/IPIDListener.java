@@ -0,0 +1,7 @@
+package com.rajala.can.obd;
+
+public interface IPIDListener {
+    // Called on the device's dispatch thread for every polled PID in a response. timestamp is
+    // System.nanoTime() when the response was complete.
+    void onPIDValue(OBDPID pid, double value, long timestamp);
+}
@@ -0,0 +1,165 @@
+package com.rajala.can.obd;
+
+/**
+ * A Mode 01 PID of SAE J1979: how many data bytes its response carries and how to turn them into
+ * a physical value.
+ *
+ * Every formula in the standard set is linear in a big endian integer made of the first one, two
+ * or four data bytes, e.g. engine speed is (256A + B) / 4, so a PID is described by that integer's
+ * width, a factor and an offset. PIDs whose data is a bit field, such as the support bitmaps,
+ * decode to the raw integer.
+ */
+public class OBDPID {
+
+    // PIDs 00, 20, 40... report which of the next 32 PIDs the ECU supports
+    public static final int SUPPORT_INTERVAL = 0x20;
+
+    private static final OBDPID[] TABLE = new OBDPID[256];
+
+    static {
+        for (int pid = 0; pid <= 0xE0; pid += SUPPORT_INTERVAL) {
+            String name = String.format("PIDs supported %02X-%02X", pid + 1, pid + SUPPORT_INTERVAL);
+            define(pid, name, "", 4, 4, 1, 0);
+        }
+        define(0x01, "Monitor status", "", 4, 4, 1, 0);
+        define(0x03, "Fuel system status", "", 2, 2, 1, 0);
+        define(0x04, "Calculated engine load", "%", 1, 1, 100.0 / 255, 0);
+        define(0x05, "Engine coolant temperature", "\u00B0C", 1, 1, 1, -40);
+        define(0x06, "Short term fuel trim bank 1", "%", 1, 1, 100.0 / 128, -100);
+        define(0x07, "Long term fuel trim bank 1", "%", 1, 1, 100.0 / 128, -100);
+        define(0x08, "Short term fuel trim bank 2", "%", 1, 1, 100.0 / 128, -100);
+        define(0x09, "Long term fuel trim bank 2", "%", 1, 1, 100.0 / 128, -100);
+        define(0x0A, "Fuel pressure", "kPa", 1, 1, 3, 0);
+        define(0x0B, "Intake manifold absolute pressure", "kPa", 1, 1, 1, 0);
+        define(0x0C, "Engine speed", "rpm", 2, 2, 0.25, 0);
+        define(0x0D, "Vehicle speed", "km/h", 1, 1, 1, 0);
+        define(0x0E, "Timing advance", "\u00B0", 1, 1, 0.5, -64);
+        define(0x0F, "Intake air temperature", "\u00B0C", 1, 1, 1, -40);
+        define(0x10, "Mass air flow rate", "g/s", 2, 2, 0.01, 0);
+        define(0x11, "Throttle position", "%", 1, 1, 100.0 / 255, 0);
+        for (int sensor = 0; sensor < 8; sensor++) {
+            String name = "Oxygen sensor " + (sensor + 1);
+            // Followed by the sensor's short term fuel trim
+            define(0x14 + sensor, name + " voltage", "V", 2, 1, 0.005, 0);
+            // Followed by the sensor's voltage (24-2B) or current (34-3B)
+            define(0x24 + sensor, name + " equivalence ratio", "", 4, 2, 2.0 / 65536, 0);
+            define(0x34 + sensor, name + " equivalence ratio", "", 4, 2, 2.0 / 65536, 0);
+        }
+        define(0x1F, "Run time since engine start", "s", 2, 2, 1, 0);
+        define(0x21, "Distance traveled with MIL on", "km", 2, 2, 1, 0);
+        define(0x22, "Fuel rail pressure", "kPa", 2, 2, 0.079, 0);
+        define(0x23, "Fuel rail gauge pressure", "kPa", 2, 2, 10, 0);
+        define(0x2C, "Commanded EGR", "%", 1, 1, 100.0 / 255, 0);
+        define(0x2D, "EGR error", "%", 1, 1, 100.0 / 128, -100);
+        define(0x2E, "Commanded evaporative purge", "%", 1, 1, 100.0 / 255, 0);
+        define(0x2F, "Fuel tank level", "%", 1, 1, 100.0 / 255, 0);
+        define(0x30, "Warm-ups since codes cleared", "", 1, 1, 1, 0);
+        define(0x31, "Distance traveled since codes cleared", "km", 2, 2, 1, 0);
+        define(0x33, "Absolute barometric pressure", "kPa", 1, 1, 1, 0);
+        define(0x3C, "Catalyst temperature bank 1 sensor 1", "\u00B0C", 2, 2, 0.1, -40);
+        define(0x3D, "Catalyst temperature bank 2 sensor 1", "\u00B0C", 2, 2, 0.1, -40);
+        define(0x3E, "Catalyst temperature bank 1 sensor 2", "\u00B0C", 2, 2, 0.1, -40);
+        define(0x3F, "Catalyst temperature bank 2 sensor 2", "\u00B0C", 2, 2, 0.1, -40);
+        define(0x42, "Control module voltage", "V", 2, 2, 0.001, 0);
+        define(0x43, "Absolute load value", "%", 2, 2, 100.0 / 255, 0);
+        define(0x44, "Commanded equivalence ratio", "", 2, 2, 2.0 / 65536, 0);
+        define(0x45, "Relative throttle position", "%", 1, 1, 100.0 / 255, 0);
+        define(0x46, "Ambient air temperature", "\u00B0C", 1, 1, 1, -40);
+        define(0x47, "Absolute throttle position B", "%", 1, 1, 100.0 / 255, 0);
+        define(0x48, "Absolute throttle position C", "%", 1, 1, 100.0 / 255, 0);
+        define(0x49, "Accelerator pedal position D", "%", 1, 1, 100.0 / 255, 0);
+        define(0x4A, "Accelerator pedal position E", "%", 1, 1, 100.0 / 255, 0);
+        define(0x4B, "Accelerator pedal position F", "%", 1, 1, 100.0 / 255, 0);
+        define(0x4C, "Commanded throttle actuator", "%", 1, 1, 100.0 / 255, 0);
+        define(0x4D, "Time run with MIL on", "min", 2, 2, 1, 0);
+        define(0x4E, "Time since trouble codes cleared", "min", 2, 2, 1, 0);
+        define(0x51, "Fuel type", "", 1, 1, 1, 0);
+        define(0x52, "Ethanol fuel", "%", 1, 1, 100.0 / 255, 0);
+        define(0x59, "Fuel rail absolute pressure", "kPa", 2, 2, 10, 0);
+        define(0x5A, "Relative accelerator pedal position", "%", 1, 1, 100.0 / 255, 0);
+        define(0x5B, "Hybrid battery pack remaining life", "%", 1, 1, 100.0 / 255, 0);
+        define(0x5C, "Engine oil temperature", "\u00B0C", 1, 1, 1, -40);
+        define(0x5D, "Fuel injection timing", "\u00B0", 2, 2, 1.0 / 128, -210);
+        define(0x5E, "Engine fuel rate", "L/h", 2, 2, 0.05, 0);
+        define(0x61, "Driver's demand engine torque", "%", 1, 1, 1, -125);
+        define(0x62, "Actual engine torque", "%", 1, 1, 1, -125);
+        define(0x63, "Engine reference torque", "Nm", 2, 2, 1, 0);
+    }
+
+    private final int pid;
+    private final String name;
+    private final String unit;
+    private final int length;
+    private final int valueBytes;
+    private final double factor;
+    private final double offset;
+
+    private OBDPID(int pid, String name, String unit, int length, int valueBytes, double factor,
+                   double offset) {
+        this.pid = pid;
+        this.name = name;
+        this.unit = unit;
+        this.length = length;
+        this.valueBytes = valueBytes;
+        this.factor = factor;
+        this.offset = offset;
+    }
+
+    private static void define(int pid, String name, String unit, int length, int valueBytes,
+                               double factor, double offset) {
+        TABLE[pid] = new OBDPID(pid, name, unit, length, valueBytes, factor, offset);
+    }
+
+    // Null for PIDs the table does not know, whose response length is therefore unknown too
+    public static OBDPID get(int pid) {
+        return (pid >= 0 && pid < TABLE.length) ? TABLE[pid] : null;
+    }
+
+    public static boolean isSupportPID(int pid) {
+        return pid % SUPPORT_INTERVAL == 0;
+    }
+
+    // Physical value of the data bytes starting at off
+    public double decode(byte[] data, int off) {
+        long raw = 0;
+        for (int i = 0; i < valueBytes; i++) {
+            raw = (raw << 8) | (data[off + i] & 0xFF);
+        }
+        return raw * factor + offset;
+    }
+
+    public int getPID() {
+        return pid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    // Data bytes in a response, after the PID byte
+    public int getLength() {
+        return length;
+    }
+
+    // Leading data bytes the value is made of, the rest carry something else
+    public int getValueBytes() {
+        return valueBytes;
+    }
+
+    public double getFactor() {
+        return factor;
+    }
+
+    public double getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%02X %s", pid, name);
+    }
+}
@@ -0,0 +1,525 @@
+package com.rajala.can.obd;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.device.IDiagnosticCANDevice;
+import com.rajala.can.isotp.ISOTPChannel;
+import com.rajala.can.isotp.ISOTPEngine;
+import com.rajala.can.isotp.ISOTPFrame;
+import com.rajala.can.isotp.ITransferListener;
+import com.rajala.can.log.CANLog;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Polls Mode 01 PIDs of one ECU, each at its own target rate.
+ *
+ * A request asks for up to six PIDs, the most J1979 allows. Whenever the link can take another
+ * request, the PID with the earliest deadline, its last request plus its period, goes out once it
+ * is due, together with up to five more that fall due before the link could take the request
+ * after this one, so PIDs share round trips instead of paying one each. When the targets ask for
+ * more than the link carries, every PID falls behind in proportion to its rate. The rate each PID
+ * actually gets is measured from its updates.
+ *
+ * Responses are reassembled by an ISO-TP channel on the response ID. A Mode 01 response names
+ * every PID it carries, so it is decoded on its own without matching it to a request. On an
+ * {@link IDiagnosticCANDevice} such as the ELM327 the adapter sends flow control itself and
+ * prompts as soon as the expected response frames are in; the next request is already queued
+ * behind it by then and goes out at the prompt without waiting for the host. Other devices get
+ * a plain ISO-TP request and the channel sends flow control.
+ *
+ * Polling starts by reading the support bitmaps of PIDs 00, 20, 40... PIDs the ECU does not
+ * support are left out of the requests, and ones that go unanswered several times in a row, say
+ * while the engine is off, are only retried every few seconds.
+ */
+public class OBDPoller implements Runnable, ITransferListener {
+
+    private static final String TAG = "OBDPoller";
+
+    // Engine ECU, physically addressed so that a single ECU answers
+    public static final int DEFAULT_REQUEST_ID = 0x7E0;
+    public static final int DEFAULT_RESPONSE_ID = 0x7E8;
+
+    public static final int MODE_CURRENT_DATA = 0x01;
+    public static final int MAX_PIDS_PER_REQUEST = 6;
+
+    private static final int POSITIVE_RESPONSE = 0x40;
+    // Requests handed to a diagnostic device at once, one with the adapter and one waiting
+    private static final int DIAGNOSTIC_DEPTH = 2;
+    // Requests in a row without an answer after which a PID is only retried now and then
+    private static final int MAX_UNANSWERED = 3;
+    private static final long RETRY_NANOS = 5000000000L;
+    private static final long SUPPORT_TIMEOUT_NANOS = 1000000000L;
+    // A request whose completion never came is written off after this
+    private static final long REQUEST_TIMEOUT_NANOS = 2000000000L;
+    private static final long IDLE_PARK_NANOS = 100000000L;
+    // Weight of the newest interval in the mean update and request intervals
+    private static final double INTERVAL_WEIGHT = 0.125;
+
+    // State of one polled PID, guarded by lock
+    private static class Poll {
+        final OBDPID pid;
+        long periodNanos;
+        long deadline;
+        int unanswered;
+        // Unsupported according to the ECU's bitmaps
+        boolean dropped;
+        double value = Double.NaN;
+        long updateTime;
+        long updates;
+        double meanInterval;
+
+        Poll(OBDPID pid) {
+            this.pid = pid;
+        }
+    }
+
+    private final IDiagnosticCANDevice diagnosticDevice;
+    private final ISOTPEngine isotp;
+    private final int requestId;
+    private final int responseId;
+
+    // Polled PIDs and support, guarded by lock
+    private final Object lock = new Object();
+    private final Poll[] polls = new Poll[256];
+    private final boolean[] supported = new boolean[256];
+    private boolean supportKnown;
+    private int supportBase = -1;
+    private long supportTime;
+    private int inFlight;
+    private long requestTime;
+    private long completionTime;
+    // Mean time the link takes per request when busy
+    private double requestInterval;
+
+    private volatile IPIDListener[] listeners = new IPIDListener[0];
+    private volatile long requests;
+    private volatile long responses;
+
+    // Poller thread state
+    private final Poll[] batch = new Poll[MAX_PIDS_PER_REQUEST];
+    private final byte[] request = new byte[1 + MAX_PIDS_PER_REQUEST];
+    private final CANMessage requestFrame = new CANMessage();
+    private ISOTPChannel channel;
+    private volatile boolean isRunning;
+    private volatile Thread pollerThread;
+
+    private final ICANTxCallback requestCallback = new ICANTxCallback() {
+        public void onTxComplete(CANMessage msg) {
+            requestDone();
+        }
+
+        public void onTxFailed(CANMessage msg) {
+            requestDone();
+        }
+    };
+
+    public OBDPoller(ICANDevice device, ISOTPEngine isotp) {
+        this(device, isotp, DEFAULT_REQUEST_ID, DEFAULT_RESPONSE_ID);
+    }
+
+    // isotp must run on device, it reassembles the responses
+    public OBDPoller(ICANDevice device, ISOTPEngine isotp, int requestId, int responseId) {
+        diagnosticDevice = (device instanceof IDiagnosticCANDevice)
+                ? (IDiagnosticCANDevice)device : null;
+        this.isotp = isotp;
+        this.requestId = requestId;
+        this.responseId = responseId;
+    }
+
+    // === User methods ===
+
+    public synchronized void start() {
+        if (pollerThread != null) {
+            return;
+        }
+        // A diagnostic device sends the flow control for its own requests
+        channel = (diagnosticDevice != null)
+                ? isotp.openListenOnly(responseId, false, this)
+                : isotp.open(requestId, responseId, false, this);
+        synchronized (lock) {
+            supportKnown = false;
+            supportBase = 0;
+            supportTime = 0;
+            inFlight = 0;
+        }
+        isRunning = true;
+        pollerThread = new Thread(this, TAG);
+        pollerThread.setDaemon(true);
+        pollerThread.start();
+    }
+
+    public synchronized void stop() {
+        if (pollerThread == null) {
+            return;
+        }
+        isRunning = false;
+        LockSupport.unpark(pollerThread);
+        try {
+            pollerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pollerThread = null;
+        isotp.close(channel);
+        channel = null;
+    }
+
+    // Polls pid about rateHz times a second, or changes the rate of a PID already polled
+    public void addPID(int pid, double rateHz) {
+        OBDPID definition = OBDPID.get(pid);
+        if (definition == null || OBDPID.isSupportPID(pid)) {
+            throw new IllegalArgumentException("Cannot poll PID " + pid);
+        }
+        if (!(rateHz > 0)) {
+            throw new IllegalArgumentException("Invalid rate " + rateHz);
+        }
+        synchronized (lock) {
+            Poll poll = polls[pid];
+            if (poll == null) {
+                poll = new Poll(definition);
+                poll.deadline = System.nanoTime();
+                poll.dropped = supportKnown && !supported[pid];
+                polls[pid] = poll;
+            }
+            poll.periodNanos = (long)(1e9 / rateHz);
+        }
+        wakeUp();
+    }
+
+    public void removePID(int pid) {
+        synchronized (lock) {
+            if (pid >= 0 && pid < polls.length) {
+                polls[pid] = null;
+            }
+        }
+    }
+
+    public synchronized void addListener(IPIDListener listener) {
+        IPIDListener[] current = listeners;
+        IPIDListener[] updated = new IPIDListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    public synchronized void removeListener(IPIDListener listener) {
+        IPIDListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                IPIDListener[] updated = new IPIDListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, updated.length - i);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    // Updates per second the PID has been getting, 0 until it was updated twice
+    public double getAchievedRate(int pid) {
+        synchronized (lock) {
+            Poll poll = getPoll(pid);
+            return (poll != null && poll.meanInterval > 0) ? 1e9 / poll.meanInterval : 0;
+        }
+    }
+
+    public double getTargetRate(int pid) {
+        synchronized (lock) {
+            Poll poll = getPoll(pid);
+            return (poll != null) ? 1e9 / poll.periodNanos : 0;
+        }
+    }
+
+    // Last value, NaN until the first response
+    public double getValue(int pid) {
+        synchronized (lock) {
+            Poll poll = getPoll(pid);
+            return (poll != null) ? poll.value : Double.NaN;
+        }
+    }
+
+    // False while the ECU reports the PID unsupported or leaves it unanswered
+    public boolean isPolling(int pid) {
+        synchronized (lock) {
+            Poll poll = getPoll(pid);
+            return poll != null && !poll.dropped && poll.unanswered <= MAX_UNANSWERED;
+        }
+    }
+
+    public long getRequestCount() {
+        return requests;
+    }
+
+    public long getResponseCount() {
+        return responses;
+    }
+
+    // The poll of pid, null when it is not polled or out of range. Called with lock held.
+    private Poll getPoll(int pid) {
+        return (pid >= 0 && pid < polls.length) ? polls[pid] : null;
+    }
+
+    // === Poller thread ===
+
+    public void run() {
+
+        while (isRunning) {
+            long now = System.nanoTime();
+            long wake = now + IDLE_PARK_NANOS;
+            int count = 0;
+            int support = -1;
+            synchronized (lock) {
+                if (inFlight > 0 && now - requestTime > REQUEST_TIMEOUT_NANOS) {
+                    CANLog.w(TAG, "Request not completed, writing it off");
+                    inFlight = 0;
+                }
+                if (inFlight < depth()) {
+                    if (supportBase >= 0) {
+                        if (supportTime == 0) {
+                            support = supportBase;
+                            supportTime = now;
+                        } else if (now - supportTime > SUPPORT_TIMEOUT_NANOS) {
+                            // Poll everything and let unanswered PIDs drop out
+                            CANLog.w(TAG, "No answer to PID " + String.format("%02X", supportBase));
+                            supportBase = -1;
+                            wake = now;
+                        } else {
+                            wake = supportTime + SUPPORT_TIMEOUT_NANOS;
+                        }
+                    } else {
+                        count = select(now);
+                        wake = (count > 0) ? now : nextDeadline(wake);
+                    }
+                    if (support >= 0 || count > 0) {
+                        inFlight++;
+                        requestTime = now;
+                    }
+                }
+            }
+
+            if (support >= 0) {
+                request[1] = (byte)support;
+                send(2, 1);
+            } else if (count > 0) {
+                send(1 + count, responseFrames(count));
+            } else {
+                long delay = wake - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(this, delay);
+                }
+            }
+        }
+    }
+
+    private int depth() {
+        return (diagnosticDevice != null) ? DIAGNOSTIC_DEPTH : 1;
+    }
+
+    // Fills batch with the PID due first and the ones due soon after it, earliest deadline first
+    private int select(long now) {
+
+        int count = 0;
+        while (count < MAX_PIDS_PER_REQUEST) {
+            Poll next = null;
+            for (Poll poll : polls) {
+                if (poll != null && !poll.dropped && !inBatch(poll, count)
+                        && (next == null || poll.deadline - next.deadline < 0)) {
+                    next = poll;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            // The first must be due, the rest may be early by the time the link takes per request
+            long slack = (count == 0) ? 0 : Math.min((long)requestInterval, next.periodNanos / 2);
+            if (next.deadline - now > slack) {
+                break;
+            }
+            batch[count++] = next;
+        }
+
+        for (int i = 0; i < count; i++) {
+            // Early PIDs keep their phase, so joining a request never raises their rate
+            Poll poll = batch[i];
+            poll.deadline = ((poll.deadline - now > 0) ? poll.deadline : now) + poll.periodNanos;
+            if (++poll.unanswered > MAX_UNANSWERED) {
+                // Not supported after all, or the ECU is off
+                if (poll.unanswered == MAX_UNANSWERED + 1) {
+                    CANLog.w(TAG, "No answer for " + poll.pid + ", retrying now and then");
+                }
+                poll.deadline = now + RETRY_NANOS;
+            }
+            request[1 + i] = (byte)poll.pid.getPID();
+        }
+        return count;
+    }
+
+    private boolean inBatch(Poll poll, int count) {
+        for (int i = 0; i < count; i++) {
+            if (batch[i] == poll) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long nextDeadline(long wake) {
+        for (Poll poll : polls) {
+            if (poll != null && !poll.dropped && poll.deadline - wake < 0) {
+                wake = poll.deadline;
+            }
+        }
+        return wake;
+    }
+
+    // Frames of the response to the PIDs in request, when every one of them is answered
+    private int responseFrames(int count) {
+        int length = 1;
+        for (int i = 0; i < count; i++) {
+            length += 1 + OBDPID.get(request[1 + i] & 0xFF).getLength();
+        }
+        if (length <= ISOTPFrame.SINGLE_PAYLOAD) {
+            return 1;
+        }
+        int rest = length - ISOTPFrame.FIRST_PAYLOAD;
+        return 1 + (rest + ISOTPFrame.CONSECUTIVE_PAYLOAD - 1) / ISOTPFrame.CONSECUTIVE_PAYLOAD;
+    }
+
+    private void send(int length, int frames) {
+
+        request[0] = MODE_CURRENT_DATA;
+        requests++;
+        ISOTPChannel current = channel;
+        if (diagnosticDevice != null) {
+            long data = 0;
+            for (int i = 0; i < length; i++) {
+                data |= (long)(request[i] & 0xFF) << (56 - 8*i);
+            }
+            requestFrame.setID(requestId);
+            requestFrame.setExtended(false);
+            requestFrame.setLongData(data, length);
+            diagnosticDevice.sendRequest(requestFrame, Math.min(frames, diagnosticDevice.getMaxResponses()),
+                    requestCallback);
+        } else if (current == null || !current.send(request, 0, length)) {
+            requestDone();
+        }
+    }
+
+    private void requestDone() {
+        long now = System.nanoTime();
+        synchronized (lock) {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+            // A request that waited behind another took only the time since that one completed
+            double interval = now - Math.max(requestTime, completionTime);
+            requestInterval = (requestInterval > 0)
+                    ? requestInterval + INTERVAL_WEIGHT * (interval - requestInterval)
+                    : interval;
+            completionTime = now;
+        }
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        Thread thread = pollerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // === Responses, dispatch thread ===
+
+    public void onTransferReceived(ISOTPChannel channel, byte[] data, int length) {
+
+        // Negative responses and other modes are not ours
+        if (length < 2 || (data[0] & 0xFF) != (POSITIVE_RESPONSE | MODE_CURRENT_DATA)) {
+            return;
+        }
+        responses++;
+        long now = System.nanoTime();
+        IPIDListener[] current = listeners;
+
+        int i = 1;
+        while (i < length) {
+            int pid = data[i] & 0xFF;
+            OBDPID definition = OBDPID.get(pid);
+            if (definition == null || i + 1 + definition.getLength() > length) {
+                // The rest cannot be delimited
+                break;
+            }
+            if (OBDPID.isSupportPID(pid)) {
+                onSupport(pid, data, i + 1);
+            } else {
+                double value = definition.decode(data, i + 1);
+                if (update(pid, value, now)) {
+                    for (IPIDListener listener : current) {
+                        listener.onPIDValue(definition, value, now);
+                    }
+                }
+            }
+            i += 1 + definition.getLength();
+        }
+    }
+
+    // Returns false for PIDs nobody polls, which another tool on the bus may have asked for
+    private boolean update(int pid, double value, long now) {
+        synchronized (lock) {
+            Poll poll = polls[pid];
+            if (poll == null) {
+                return false;
+            }
+            if (poll.updateTime != 0) {
+                double interval = now - poll.updateTime;
+                poll.meanInterval = (poll.updates > 1)
+                        ? poll.meanInterval + INTERVAL_WEIGHT * (interval - poll.meanInterval)
+                        : interval;
+            }
+            poll.value = value;
+            poll.updateTime = now;
+            poll.updates++;
+            poll.unanswered = 0;
+            return true;
+        }
+    }
+
+    private void onSupport(int base, byte[] data, int off) {
+        synchronized (lock) {
+            for (int bit = 0; bit < 32 && base + 1 + bit < supported.length; bit++) {
+                supported[base + 1 + bit] = (data[off + bit / 8] & (0x80 >>> (bit % 8))) != 0;
+            }
+            if (base != supportBase) {
+                return;
+            }
+            // The last bit says whether the next bitmap is worth asking for
+            int next = base + OBDPID.SUPPORT_INTERVAL;
+            supportTime = 0;
+            if (next < supported.length && supported[next]) {
+                supportBase = next;
+            } else {
+                supportBase = -1;
+                supportKnown = true;
+                for (int pid = 0; pid < supported.length; pid++) {
+                    if (polls[pid] != null) {
+                        polls[pid].dropped = !supported[pid];
+                    }
+                }
+            }
+        }
+        wakeUp();
+    }
+
+    public void onTransferSent(ISOTPChannel channel) {
+        requestDone();
+    }
+
+    public void onTransferFailed(ISOTPChannel channel, ISOTPChannel.Failure failure) {
+        if (failure == ISOTPChannel.Failure.TX_FAILED) {
+            requestDone();
+        } else {
+            CANLog.d(TAG, "Response lost: " + failure);
+        }
+    }
+}
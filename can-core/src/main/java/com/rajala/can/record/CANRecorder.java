@@ -0,0 +1,347 @@
+package com.rajala.can.record;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.device.ICANDevice;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every frame of the devices it is attached to into memory mapped {@link CANTraceFormat}
+ * segments.
+ *
+ * onCANMessage only copies the frame into a preallocated staging ring, so the
+ * dispatch thread is never held up by storage. A writer thread drains the ring in batches into the
+ * mapped segment, flushes it to disk when the flush interval or flush size is reached, and rolls
+ * over to a new segment file when the current one is full. Frames that arrive while the staging
+ * ring is full are dropped and counted.
+ *
+ * With a segment limit, opening a segment deletes the oldest ones of the same prefix, including
+ * those left by earlier recordings, so the captures never take more than limit * segment size.
+ */
+public class CANRecorder implements ICANListener {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+    public static final int DEFAULT_FLUSH_SIZE = 1024 * 1024;
+    public static final int UNLIMITED_SEGMENTS = 0;
+
+    private static final int STAGING_CAPACITY = 16384;
+    private static final int WAKE_BATCH = 256;
+
+    private final File directory;
+    private final String prefix;
+    private final int recordsPerSegment;
+    private final long flushIntervalNanos;
+    private final int flushRecords;
+    private volatile int maxSegments = UNLIMITED_SEGMENTS;
+
+    // Staging ring, written by the dispatch threads and read by the writer thread. Producers are
+    // serialised by stagingLock, which is uncontended unless several devices are attached.
+    private final Object stagingLock = new Object();
+    private final long[] stagedTimestamps = new long[STAGING_CAPACITY];
+    private final long[] stagedData = new long[STAGING_CAPACITY];
+    private final int[] stagedIds = new int[STAGING_CAPACITY];
+    private final byte[] stagedChannels = new byte[STAGING_CAPACITY];
+    private final byte[] stagedDlcs = new byte[STAGING_CAPACITY];
+    private volatile long stagedHead;
+    private volatile long stagedTail;
+    private volatile long droppedFrames;
+
+    // Writer thread state
+    private volatile boolean isRunning;
+    private volatile boolean writerParked;
+    private volatile Thread writerThread;
+    private int segmentIndex = -1;
+    private RandomAccessFile segmentFile;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private long segmentRecords;
+    private int unflushedRecords;
+    private long lastFlushTime;
+    private volatile long recordedFrames;
+    private volatile long deletedSegments;
+    private volatile IOException lastError;
+
+    public CANRecorder(File directory) {
+        this(directory, "capture", DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_SIZE);
+    }
+
+    public CANRecorder(File directory, String prefix, int segmentSize, long flushIntervalMs, int flushSize) {
+        if (flushIntervalMs <= 0) {
+            // The writer parks for the flush interval, 0 would make it spin
+            throw new IllegalArgumentException("Flush interval must be positive, was " + flushIntervalMs);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        recordsPerSegment = (segmentSize - CANTraceFormat.HEADER_SIZE) / CANTraceFormat.RECORD_SIZE;
+        flushIntervalNanos = flushIntervalMs * 1000000;
+        flushRecords = Math.max(1, flushSize / CANTraceFormat.RECORD_SIZE);
+        if (recordsPerSegment < 1) {
+            throw new IllegalArgumentException("Segment size too small");
+        }
+    }
+
+    // === User methods ===
+
+    public void attach(ICANDevice device) {
+        device.addCANListener(this);
+    }
+
+    public void detach(ICANDevice device) {
+        device.removeCANListener(this);
+    }
+
+    public synchronized void start() {
+        if (writerThread != null) {
+            return;
+        }
+        isRunning = true;
+        writerThread = new Thread(new Writer(), "CANRecorder.writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Writes out everything staged so far and closes the current segment
+    public synchronized void stop() {
+        if (writerThread == null) {
+            return;
+        }
+        isRunning = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+    }
+
+    // Segment files kept at most, or UNLIMITED_SEGMENTS. Applied whenever a segment is opened.
+    public void setMaxSegments(int segments) {
+        if (segments < 0) {
+            throw new IllegalArgumentException("Negative segment count " + segments);
+        }
+        maxSegments = segments;
+    }
+
+    public long getRecordedFrameCount() {
+        return recordedFrames;
+    }
+
+    public long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    public long getDeletedSegmentCount() {
+        return deletedSegments;
+    }
+
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    // === Dispatch thread ===
+
+    public void onCANMessage(CANMessage msg) {
+
+        long staged;
+        synchronized (stagingLock) {
+            long head = stagedHead;
+            if (!isRunning || head - stagedTail >= STAGING_CAPACITY) {
+                droppedFrames++;
+                return;
+            }
+
+            int index = (int)head & (STAGING_CAPACITY - 1);
+            stagedTimestamps[index] = msg.getTimestamp();
+            stagedData[index] = msg.getLongData();
+            stagedIds[index] = msg.isExtended() ? (msg.getID() | CANTraceFormat.EXTENDED_FLAG) : msg.getID();
+            stagedChannels[index] = (byte)msg.getChannel();
+            stagedDlcs[index] = (byte)msg.getDLC();
+            stagedHead = head + 1;
+            staged = head + 1 - stagedTail;
+        }
+
+        // Let the writer sleep until there is a batch worth writing
+        if (writerParked && staged >= WAKE_BATCH) {
+            writerParked = false;
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    // === Writer thread ===
+
+    private class Writer implements Runnable {
+
+        public void run() {
+
+            lastFlushTime = System.nanoTime();
+            while (true) {
+                boolean running = isRunning;
+                try {
+                    drain();
+                    long now = System.nanoTime();
+                    if (unflushedRecords >= flushRecords || (now - lastFlushTime) >= flushIntervalNanos) {
+                        flush();
+                    }
+                } catch (IOException e) {
+                    lastError = e;
+                    closeSegment();
+                }
+                if (!running) {
+                    break;
+                }
+                writerParked = true;
+                if (stagedHead - stagedTail < WAKE_BATCH && isRunning) {
+                    LockSupport.parkNanos(flushIntervalNanos);
+                }
+                writerParked = false;
+            }
+            closeSegment();
+        }
+    }
+
+    private void drain() throws IOException {
+
+        long tail = stagedTail;
+        long head = stagedHead;
+        while (tail < head) {
+            if (segment == null || segmentRecords == recordsPerSegment) {
+                openSegment();
+            }
+            int index = (int)tail & (STAGING_CAPACITY - 1);
+            int position = CANTraceFormat.HEADER_SIZE + (int)segmentRecords * CANTraceFormat.RECORD_SIZE;
+            segment.putLong(position + CANTraceFormat.RECORD_TIMESTAMP, stagedTimestamps[index]);
+            segment.putInt(position + CANTraceFormat.RECORD_ID, stagedIds[index]);
+            segment.put(position + CANTraceFormat.RECORD_CHANNEL, stagedChannels[index]);
+            segment.put(position + CANTraceFormat.RECORD_DLC, stagedDlcs[index]);
+            segment.putLong(position + CANTraceFormat.RECORD_DATA, stagedData[index]);
+            segmentRecords++;
+            unflushedRecords++;
+            tail++;
+        }
+        recordedFrames += tail - stagedTail;
+        stagedTail = tail;
+    }
+
+    private void flush() {
+        if (segment != null && unflushedRecords > 0) {
+            segment.putLong(CANTraceFormat.HEADER_RECORD_COUNT, segmentRecords);
+            segment.force();
+        }
+        unflushedRecords = 0;
+        lastFlushTime = System.nanoTime();
+    }
+
+    private void openSegment() throws IOException {
+
+        closeSegment();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        if (segmentIndex < 0) {
+            // Continue after the segments of earlier recordings so the indices stay in time order
+            int[] existing = segmentIndices();
+            segmentIndex = (existing.length > 0) ? existing[existing.length - 1] + 1 : 0;
+        }
+        File file;
+        do {
+            file = segmentFile(segmentIndex++);
+        } while (file.exists());
+
+        long size = CANTraceFormat.HEADER_SIZE + (long)recordsPerSegment * CANTraceFormat.RECORD_SIZE;
+        segmentFile = new RandomAccessFile(file, "rw");
+        segmentChannel = segmentFile.getChannel();
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segment.putInt(CANTraceFormat.HEADER_MAGIC, CANTraceFormat.MAGIC);
+        segment.putShort(CANTraceFormat.HEADER_VERSION, CANTraceFormat.VERSION);
+        segment.putShort(CANTraceFormat.HEADER_RECORD_SIZE, (short)CANTraceFormat.RECORD_SIZE);
+        segment.putLong(CANTraceFormat.HEADER_WALL_CLOCK, System.currentTimeMillis());
+        segment.putLong(CANTraceFormat.HEADER_NANO_BASE, System.nanoTime());
+        segment.putLong(CANTraceFormat.HEADER_RECORD_COUNT, 0);
+        segmentRecords = 0;
+
+        int limit = maxSegments;
+        if (limit != UNLIMITED_SEGMENTS) {
+            deleteOldSegments(limit);
+        }
+    }
+
+    // Deletes the oldest segments until limit are left, the one just opened among them
+    private void deleteOldSegments(int limit) {
+        int[] indices = segmentIndices();
+        for (int i = 0; i < indices.length - limit; i++) {
+            File file = segmentFile(indices[i]);
+            if (file.delete()) {
+                deletedSegments++;
+            } else {
+                lastError = new IOException("Could not delete " + file);
+            }
+        }
+    }
+
+    // Indices of the segment files with this recorder's prefix, ascending
+    private int[] segmentIndices() {
+        String[] names = directory.list();
+        if (names == null) {
+            return new int[0];
+        }
+        String start = prefix + "-";
+        int[] indices = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (!name.startsWith(start) || !name.endsWith(CANTraceFormat.FILE_EXTENSION)) {
+                continue;
+            }
+            String digits = name.substring(start.length(), name.length() - CANTraceFormat.FILE_EXTENSION.length());
+            try {
+                int index = Integer.parseInt(digits);
+                // Only names this recorder writes itself, so that deleting by index hits the same file
+                if (index >= 0 && name.equals(segmentFile(index).getName())) {
+                    indices[count++] = index;
+                }
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+        indices = Arrays.copyOf(indices, count);
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, String.format(Locale.US, "%s-%05d%s", prefix, index,
+                CANTraceFormat.FILE_EXTENSION));
+    }
+
+    // Flushes the segment and trims the unused tail of the file
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.putLong(CANTraceFormat.HEADER_RECORD_COUNT, segmentRecords);
+            segment.force();
+            segmentChannel.truncate(CANTraceFormat.HEADER_SIZE + segmentRecords * CANTraceFormat.RECORD_SIZE);
+        } catch (IOException e) {
+            lastError = e;
+        }
+        try {
+            segmentFile.close();
+        } catch (IOException e) {
+            lastError = e;
+        }
+        segment = null;
+        segmentChannel = null;
+        segmentFile = null;
+        unflushedRecords = 0;
+    }
+}
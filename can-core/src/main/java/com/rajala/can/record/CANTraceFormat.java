@@ -0,0 +1,45 @@
+package com.rajala.can.record;
+
+/**
+ * Layout of the binary capture segments, all values big endian.
+ *
+ * Header, 32 bytes:
+ *   0  int   magic "CANT"
+ *   4  short format version
+ *   6  short record size
+ *   8  long  wall clock time of the segment start, ms since the epoch
+ *   16 long  System.nanoTime() of the segment start
+ *   24 long  number of valid records
+ *
+ * Record, 24 bytes:
+ *   0  long  receive timestamp, System.nanoTime()
+ *   8  int   CAN ID, bit 31 set for extended IDs
+ *   12 byte  channel
+ *   13 byte  DLC
+ *   14 short reserved
+ *   16 long  payload, left aligned as in CANMessage.getLongData()
+ */
+public interface CANTraceFormat {
+
+    int MAGIC = 0x43414E54;
+    short VERSION = 1;
+
+    int HEADER_SIZE = 32;
+    int HEADER_MAGIC = 0;
+    int HEADER_VERSION = 4;
+    int HEADER_RECORD_SIZE = 6;
+    int HEADER_WALL_CLOCK = 8;
+    int HEADER_NANO_BASE = 16;
+    int HEADER_RECORD_COUNT = 24;
+
+    int RECORD_SIZE = 24;
+    int RECORD_TIMESTAMP = 0;
+    int RECORD_ID = 8;
+    int RECORD_CHANNEL = 12;
+    int RECORD_DLC = 13;
+    int RECORD_DATA = 16;
+
+    int EXTENDED_FLAG = 0x80000000;
+
+    String FILE_EXTENSION = ".cantrace";
+}
@@ -0,0 +1,189 @@
+package com.rajala.can.record;
+
+import com.rajala.can.CANMessage;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Random access over one or more {@link CANTraceFormat} segments, addressed as a single sequence
+ * of records. Segments are memory mapped read only, reading a record allocates nothing.
+ *
+ * The segments may come from several recordings, each timestamped with System.nanoTime(), whose
+ * origin differs between runs and restarts at every boot. Timestamps are therefore rebased onto
+ * one trace clock: a segment whose header clocks advanced alike since the segment before continues
+ * that recording unchanged, any other starts a new recording right where the previous one ended.
+ * The trace clock is the first recording's own, so a single recording reads back as written. Time
+ * between recordings, and time a device slept through, is left out.
+ */
+public class CANTraceReader {
+
+    // Header clocks of segments of one recording advance alike up to this, in ns
+    private static final long SAME_CLOCK_TOLERANCE_NANOS = 1000000000L;
+
+    private final MappedByteBuffer[] segments;
+    private final long[] firstIndex;
+    // Added to the recorded timestamps of each segment to get trace time
+    private final long[] timeOffset;
+    private final long recordCount;
+
+    public CANTraceReader(File... files) throws IOException {
+        segments = new MappedByteBuffer[files.length];
+        firstIndex = new long[files.length + 1];
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            RandomAccessFile file = new RandomAccessFile(files[i], "r");
+            try {
+                FileChannel channel = file.getChannel();
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (channel.size() < CANTraceFormat.HEADER_SIZE
+                        || segment.getInt(CANTraceFormat.HEADER_MAGIC) != CANTraceFormat.MAGIC
+                        || segment.getShort(CANTraceFormat.HEADER_RECORD_SIZE) != CANTraceFormat.RECORD_SIZE) {
+                    throw new IOException("Not a CAN trace segment: " + files[i]);
+                }
+                // The header count is only updated on flush, trust whichever is smaller
+                long stored = segment.getLong(CANTraceFormat.HEADER_RECORD_COUNT);
+                long available = (channel.size() - CANTraceFormat.HEADER_SIZE) / CANTraceFormat.RECORD_SIZE;
+                segments[i] = segment;
+                firstIndex[i] = total;
+                total += Math.min(stored, available);
+            } finally {
+                file.close();
+            }
+        }
+        firstIndex[files.length] = total;
+        recordCount = total;
+        timeOffset = rebase();
+    }
+
+    // Segments written by a recorder with the given prefix, in recording order
+    public static File[] listSegments(File directory, final String prefix) {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                String name = file.getName();
+                return name.startsWith(prefix + "-") && name.endsWith(CANTraceFormat.FILE_EXTENSION);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    // Trace time of the record
+    public long getTimestamp(long index) {
+        int segment = segmentOf(index);
+        return recordedTimestamp(segment, index) + timeOffset[segment];
+    }
+
+    // Trace time of the first record, 0 for an empty trace
+    public long getStartTime() {
+        return (recordCount > 0) ? getTimestamp(0) : 0;
+    }
+
+    // Length of the trace in ns, first to last record
+    public long getDuration() {
+        return (recordCount > 0) ? getTimestamp(recordCount - 1) - getTimestamp(0) : 0;
+    }
+
+    public void read(long index, CANMessage msg) {
+        int segment = segmentOf(index);
+        MappedByteBuffer buffer = segments[segment];
+        int position = offset(segment, index);
+        int id = buffer.getInt(position + CANTraceFormat.RECORD_ID);
+        msg.set(buffer.get(position + CANTraceFormat.RECORD_CHANNEL) & 0xFF,
+                id & ~CANTraceFormat.EXTENDED_FLAG,
+                (id & CANTraceFormat.EXTENDED_FLAG) != 0,
+                buffer.getLong(position + CANTraceFormat.RECORD_DATA),
+                buffer.get(position + CANTraceFormat.RECORD_DLC),
+                buffer.getLong(position + CANTraceFormat.RECORD_TIMESTAMP) + timeOffset[segment]);
+    }
+
+    // Index of the first record at least offsetNanos after the start of the trace,
+    // getRecordCount() if there is none
+    public long seek(long offsetNanos) {
+        if (recordCount == 0) {
+            return 0;
+        }
+        long timestamp = getStartTime() + offsetNanos;
+        long low = 0;
+        long high = recordCount;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Offsets that join the recordings of the segments into one trace clock
+    private long[] rebase() {
+        long[] offsets = new long[segments.length];
+        long end = 0;
+        boolean anyRecords = false;
+        for (int i = 0; i < segments.length; i++) {
+            long count = firstIndex[i + 1] - firstIndex[i];
+            if (i == 0 || sameRecording(segments[i - 1], segments[i])) {
+                offsets[i] = (i == 0) ? 0 : offsets[i - 1];
+            } else if (anyRecords) {
+                long first = (count > 0) ? recordedTimestamp(i, firstIndex[i])
+                        : segments[i].getLong(CANTraceFormat.HEADER_NANO_BASE);
+                offsets[i] = end - first;
+            }
+            if (count > 0) {
+                long last = recordedTimestamp(i, firstIndex[i + 1] - 1) + offsets[i];
+                end = anyRecords ? Math.max(end, last) : last;
+                anyRecords = true;
+            }
+        }
+        return offsets;
+    }
+
+    // Whether both segments were stamped with the same System.nanoTime(), judged by their header
+    // clocks having advanced alike
+    private static boolean sameRecording(MappedByteBuffer previous, MappedByteBuffer segment) {
+        long nanos = segment.getLong(CANTraceFormat.HEADER_NANO_BASE)
+                - previous.getLong(CANTraceFormat.HEADER_NANO_BASE);
+        long wallNanos = (segment.getLong(CANTraceFormat.HEADER_WALL_CLOCK)
+                - previous.getLong(CANTraceFormat.HEADER_WALL_CLOCK)) * 1000000L;
+        return nanos >= 0 && Math.abs(nanos - wallNanos) <= SAME_CLOCK_TOLERANCE_NANOS;
+    }
+
+    private long recordedTimestamp(int segment, long index) {
+        return segments[segment].getLong(offset(segment, index) + CANTraceFormat.RECORD_TIMESTAMP);
+    }
+
+    private int segmentOf(long index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+        }
+        int low = 0;
+        int high = segments.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstIndex[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int offset(int segment, long index) {
+        return CANTraceFormat.HEADER_SIZE + (int)(index - firstIndex[segment]) * CANTraceFormat.RECORD_SIZE;
+    }
+}
@@ -0,0 +1,457 @@
+package com.rajala.can.session;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.dispatch.CANRingBuffer;
+import com.rajala.can.dispatch.CANSubscriptionRegistry;
+import com.rajala.can.dispatch.Sequence;
+import com.rajala.can.dispatch.YieldingWaitStrategy;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Several {@link ICANDevice}s read as one stream, e.g. the powertrain and body buses of a car
+ * through two adapters at the same time.
+ *
+ * Every device keeps its own reader thread and pipeline, so the adapters never wait on each other.
+ * The session subscribes to each device with the filters of its own listeners, and the device's
+ * dispatch thread copies matching frames into a ring of that device's channel. Every device is
+ * added under a session channel, a positive number separate from the bus channels of the device
+ * itself. A merged frame keeps the bus channel the device reported in getChannel(), so CAN1 and
+ * CAN2 of a two channel adapter stay apart, and carries its session channel in getSource(); the
+ * pair names the bus the frame was seen on. A single merge thread hands the frames of all channels
+ * to the session's listeners in receive timestamp order, taking the oldest from a heap of the ring
+ * heads, so a frame costs O(log k) for k channels.
+ *
+ * Lateness is bounded: the oldest head is only certain to be next once every channel has a frame
+ * waiting. While some channel has none, the head is held back at most the maximum lateness past
+ * its timestamp, then delivered anyway. A frame arriving after later ones were already delivered
+ * still goes out, out of order, and is counted as late.
+ */
+public class CANSession implements Runnable {
+
+    private static final String TAG = "CANSession";
+
+    public static final long DEFAULT_MAX_LATENESS_NANOS = 20000000L;
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final long IDLE_PARK_NANOS = 100000000L;
+
+    // One device and its frames that have not been merged yet
+    private class Source implements ICANListener {
+
+        final int channel;
+        final ICANDevice device;
+        final CANRingBuffer ring;
+        final Sequence sequence = new Sequence();
+
+        // Merge thread state
+        long next;
+        long available = Sequence.INITIAL_VALUE;
+        long headTime;
+        boolean queued;
+
+        Source(int channel, ICANDevice device, int capacity) {
+            this.channel = channel;
+            this.device = device;
+            // The merge thread never waits on the ring, it is woken by signal()
+            ring = new CANRingBuffer(capacity, new YieldingWaitStrategy());
+            ring.addGatingSequence(sequence);
+            next = sequence.get() + 1;
+        }
+
+        // Called on the device's dispatch thread, the only producer of this ring
+        public void onCANMessage(CANMessage msg) {
+            long seq = ring.tryNext();
+            if (seq < 0) {
+                return;
+            }
+            CANMessage slot = ring.get(seq);
+            slot.copyFrom(msg);
+            slot.setSource(channel);
+            ring.publish(seq);
+            signal();
+        }
+
+        // Makes the next unmerged frame the head, false if there is none yet
+        boolean poll() {
+            if (next > available) {
+                available = ring.getCursor().get();
+                if (next > available) {
+                    return false;
+                }
+            }
+            headTime = ring.get(next).getTimestamp();
+            return true;
+        }
+
+        CANMessage head() {
+            return ring.get(next);
+        }
+
+        // Hands the slot of the head back to the producer
+        void release() {
+            sequence.set(next);
+            next++;
+        }
+    }
+
+    private final int capacity;
+    private final CANSubscriptionRegistry registry = new CANSubscriptionRegistry();
+    private volatile long maxLateness = DEFAULT_MAX_LATENESS_NANOS;
+
+    // Channels, replaced as a whole under the session lock
+    private volatile Source[] sources = new Source[0];
+
+    private volatile boolean isRunning;
+    private volatile boolean waiting;
+    private volatile Thread mergeThread;
+
+    // Merge thread state
+    private Source[] heap = new Source[0];
+    private int heapSize;
+    private boolean anyMerged;
+    private long lastTime;
+
+    private volatile long mergedFrames;
+    private volatile long lateFrames;
+    private volatile long listenerErrors;
+
+    public CANSession() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // capacity is the number of frames each channel can hold back, a power of 2
+    public CANSession(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2");
+        }
+        this.capacity = capacity;
+    }
+
+    // === User methods ===
+
+    public synchronized void start() {
+        if (mergeThread != null) {
+            return;
+        }
+        isRunning = true;
+        mergeThread = new Thread(this, TAG);
+        mergeThread.setDaemon(true);
+        mergeThread.start();
+    }
+
+    // Stops merging and every device of the session
+    public void stop() {
+        Thread thread;
+        Source[] current;
+        synchronized (this) {
+            thread = mergeThread;
+            mergeThread = null;
+            isRunning = false;
+            current = sources;
+        }
+        for (Source source : current) {
+            source.device.removeCANListener(source);
+            source.device.stop();
+        }
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void disconnect() {
+        for (Source source : sources) {
+            source.device.disconnect();
+        }
+    }
+
+    // The device's frames are tagged with channel as their source, which must be positive and
+    // unused in this session
+    public synchronized void addDevice(int channel, ICANDevice device) {
+        if (device == null) {
+            throw new IllegalArgumentException("Session device is null");
+        }
+        if (channel <= CANMessage.NO_SOURCE) {
+            throw new IllegalArgumentException("Invalid session channel " + channel);
+        }
+        Source[] current = sources;
+        for (Source source : current) {
+            if (source.channel == channel) {
+                throw new IllegalArgumentException("Session channel " + channel + " already in use");
+            }
+        }
+        Source source = new Source(channel, device, capacity);
+        Source[] updated = new Source[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = source;
+        sources = updated;
+        subscribe(source);
+        signal();
+    }
+
+    // Unsubscribes from the device without stopping it, frames not merged yet are dropped
+    public synchronized ICANDevice removeDevice(int channel) {
+        Source[] current = sources;
+        int index = indexOf(current, channel);
+        if (index < 0) {
+            return null;
+        }
+        Source source = current[index];
+        Source[] updated = new Source[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, updated.length - index);
+        sources = updated;
+        source.device.removeCANListener(source);
+        signal();
+        return source.device;
+    }
+
+    public ICANDevice getDevice(int channel) {
+        Source[] current = sources;
+        int index = indexOf(current, channel);
+        return (index >= 0) ? current[index].device : null;
+    }
+
+    public int getDeviceCount() {
+        return sources.length;
+    }
+
+    // Sends on the device of channel, msg itself goes to the device unchanged
+    public boolean sendCANMessage(int channel, CANMessage msg, ICANTxCallback callback) {
+        ICANDevice device = getDevice(channel);
+        return (device != null) && device.sendCANMessage(msg, callback);
+    }
+
+    // Merged frames are delivered on the merge thread, getSource() tells their device apart and
+    // getChannel() the bus channel on that device
+    public synchronized void addCANListener(ICANListener listener) {
+        addCANListener(listener, CANFilter.all());
+    }
+
+    public synchronized void addCANListener(ICANListener listener, CANFilter filter) {
+        registry.subscribe(listener, filter);
+        subscribeAll();
+    }
+
+    public synchronized void removeCANListener(ICANListener listener) {
+        registry.unsubscribe(listener);
+        subscribeAll();
+    }
+
+    public synchronized void clearCANListeners() {
+        registry.clear();
+        subscribeAll();
+    }
+
+    // How long the oldest frame may wait for a channel that has none, in ns
+    public void setMaxLateness(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Negative maximum lateness " + nanos);
+        }
+        maxLateness = nanos;
+        signal();
+    }
+
+    public long getMaxLateness() {
+        return maxLateness;
+    }
+
+    public long getMergedCount() {
+        return mergedFrames;
+    }
+
+    // Frames delivered behind a frame with a later timestamp
+    public long getLateCount() {
+        return lateFrames;
+    }
+
+    // Frames dropped because a channel's ring was full
+    public long getDropCount() {
+        long dropped = 0;
+        for (Source source : sources) {
+            dropped += source.ring.getOverflowCount();
+        }
+        return dropped;
+    }
+
+    public long getListenerErrorCount() {
+        return listenerErrors;
+    }
+
+    // === Internal methods ===
+
+    // The devices only pass on what the session's listeners want
+    private void subscribe(Source source) {
+        source.device.setCANListenerFilters(source, registry.getFilters());
+    }
+
+    // The filters are swapped in one step per device, which only recomputes its acceptance filter
+    // when they actually changed
+    private void subscribeAll() {
+        List<CANFilter> filters = registry.getFilters();
+        for (Source source : sources) {
+            source.device.setCANListenerFilters(source, filters);
+        }
+    }
+
+    private static int indexOf(Source[] sources, int channel) {
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i].channel == channel) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void signal() {
+        Thread thread = mergeThread;
+        if (waiting && thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // === Merge thread ===
+
+    public void run() {
+
+        Source[] current = null;
+        while (isRunning) {
+            Source[] latest = sources;
+            if (latest != current) {
+                current = latest;
+                for (Source source : current) {
+                    source.queued = false;
+                }
+                heap = new Source[current.length];
+                heapSize = 0;
+            }
+            fill(current);
+
+            long now = System.nanoTime();
+            long wake = merge(current.length, now);
+            if (wake == 0) {
+                continue;
+            }
+
+            // A producer that publishes after this either sees waiting or is seen by fill
+            waiting = true;
+            if (!fill(current) && sources == current) {
+                long delay = wake - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(this, delay);
+                }
+            }
+            waiting = false;
+        }
+    }
+
+    // Puts the channels that have a frame waiting into the heap
+    private boolean fill(Source[] current) {
+        if (heapSize == current.length) {
+            return false;
+        }
+        boolean added = false;
+        for (Source source : current) {
+            if (!source.queued && source.poll()) {
+                source.queued = true;
+                heap[heapSize] = source;
+                siftUp(heapSize++);
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    // Delivers what can be delivered. Returns 0 when something was, otherwise the time to look
+    // again at the latest.
+    private long merge(int channels, long now) {
+
+        boolean delivered = false;
+        while (heapSize > 0) {
+            Source source = heap[0];
+            if (heapSize < channels) {
+                long due = source.headTime + maxLateness;
+                if (due - now > 0) {
+                    return delivered ? 0 : due;
+                }
+            }
+            deliver(source);
+            delivered = true;
+            if (source.poll()) {
+                siftDown(0);
+            } else {
+                source.queued = false;
+                heap[0] = heap[--heapSize];
+                heap[heapSize] = null;
+                siftDown(0);
+                // A channel may have received meanwhile, look again before waiting
+                return 0;
+            }
+        }
+        return delivered ? 0 : now + IDLE_PARK_NANOS;
+    }
+
+    private void deliver(Source source) {
+        CANMessage msg = source.head();
+        long time = msg.getTimestamp();
+        if (anyMerged && time - lastTime < 0) {
+            lateFrames++;
+        } else {
+            lastTime = time;
+            anyMerged = true;
+        }
+        try {
+            registry.dispatch(msg);
+        } catch (RuntimeException e) {
+            listenerErrors++;
+        }
+        mergedFrames++;
+        source.release();
+    }
+
+    // Binary min-heap on the head timestamps
+    private void siftUp(int index) {
+        Source source = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].headTime - source.headTime <= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = source;
+    }
+
+    private void siftDown(int index) {
+        if (index >= heapSize) {
+            return;
+        }
+        Source source = heap[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < heapSize && heap[right].headTime - heap[child].headTime < 0) {
+                child = right;
+            }
+            if (source.headTime - heap[child].headTime <= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = source;
+    }
+}
@@ -0,0 +1,308 @@
+package com.rajala.can.stats;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Operational counters of one device.
+ *
+ * Counters are striped so the reader, dispatch and transmit threads can bump them without
+ * contending, and the per-ID frame counts live in a primitive table written by the reader thread
+ * only. {@link #snapshot()} copies everything into an immutable {@link Snapshot}, and the
+ * difference of two snapshots gives rates over the interval between them.
+ */
+public class CANDeviceStats {
+
+    public interface Gauge {
+        long get();
+    }
+
+    private static final int EXTENDED_KEY = 1 << 29;
+    private static final int EMPTY = -1;
+    private static final int INITIAL_ID_CAPACITY = 256;
+
+    private final long createdTime = System.nanoTime();
+    private final StripedCounter frames = new StripedCounter();
+    private final StripedCounter bytes = new StripedCounter();
+    private final StripedCounter parseErrors = new StripedCounter();
+    private final StripedCounter overflowEvents = new StripedCounter();
+    private final StripedCounter droppedFrames = new StripedCounter();
+    private final StripedCounter reconnects = new StripedCounter();
+    private final StripedCounter transmitted = new StripedCounter();
+    private final StripedCounter transmitFailures = new StripedCounter();
+    private volatile Gauge queueDepth;
+
+    // Per-ID frame counts, replaced as a whole when it grows
+    private static class IdTable {
+        final int[] keys;
+        final AtomicLongArray counts;
+        int size;
+
+        IdTable(int capacity) {
+            keys = new int[capacity];
+            counts = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                keys[i] = EMPTY;
+            }
+        }
+    }
+    private volatile IdTable idTable = new IdTable(INITIAL_ID_CAPACITY);
+
+    // === Recording ===
+
+    // Reader thread only, every decoded frame whether or not anybody subscribed to it
+    public void recordFrame(int id, boolean extended) {
+        frames.increment();
+        countID(extended ? (id | EXTENDED_KEY) : id);
+    }
+
+    private void countID(int key) {
+        IdTable table = idTable;
+        int mask = table.keys.length - 1;
+        int i = hash(key) & mask;
+        while (table.keys[i] != EMPTY) {
+            if (table.keys[i] == key) {
+                table.counts.incrementAndGet(i);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        if ((table.size + 1) * 2 > table.keys.length) {
+            idTable = grow(table);
+            countID(key);
+            return;
+        }
+        table.counts.set(i, 1);
+        table.keys[i] = key;
+        table.size++;
+    }
+
+    // Raw bytes read from the transport
+    public void recordBytes(int count) {
+        bytes.add(count);
+    }
+
+    // A line from the adapter that should have been a frame but could not be decoded
+    public void recordParseError() {
+        parseErrors.increment();
+    }
+
+    // The adapter reported that its own buffer overflowed
+    public void recordOverflow() {
+        overflowEvents.increment();
+    }
+
+    // A frame dropped on the host because the dispatch ring was full
+    public void recordDrop() {
+        droppedFrames.increment();
+    }
+
+    public void recordReconnect() {
+        reconnects.increment();
+    }
+
+    public void recordTransmit(boolean sent) {
+        if (sent) {
+            transmitted.increment();
+        } else {
+            transmitFailures.increment();
+        }
+    }
+
+    public void setQueueDepthGauge(Gauge gauge) {
+        queueDepth = gauge;
+    }
+
+    public void reset() {
+        frames.reset();
+        bytes.reset();
+        parseErrors.reset();
+        overflowEvents.reset();
+        droppedFrames.reset();
+        reconnects.reset();
+        transmitted.reset();
+        transmitFailures.reset();
+    }
+
+    private static IdTable grow(IdTable table) {
+        IdTable grown = new IdTable(table.keys.length * 2);
+        int mask = grown.keys.length - 1;
+        for (int j = 0; j < table.keys.length; j++) {
+            if (table.keys[j] == EMPTY) {
+                continue;
+            }
+            int i = hash(table.keys[j]) & mask;
+            while (grown.keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            grown.keys[i] = table.keys[j];
+            grown.counts.set(i, table.counts.get(j));
+            grown.size++;
+        }
+        return grown;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // === Reading ===
+
+    public Snapshot snapshot() {
+
+        IdTable table = idTable;
+        int[] ids = new int[table.size];
+        long[] counts = new long[table.size];
+        int n = 0;
+        for (int i = 0; i < table.keys.length && n < ids.length; i++) {
+            if (table.keys[i] != EMPTY) {
+                ids[n] = table.keys[i];
+                counts[n] = table.counts.get(i);
+                n++;
+            }
+        }
+
+        Gauge gauge = queueDepth;
+        long now = System.nanoTime();
+        return new Snapshot(now - createdTime, now, frames.sum(), bytes.sum(), parseErrors.sum(),
+                overflowEvents.sum(), droppedFrames.sum(), reconnects.sum(), transmitted.sum(),
+                transmitFailures.sum(), (gauge != null) ? gauge.get() : 0, ids, counts);
+    }
+
+    public static class Snapshot {
+
+        private final long interval;
+        private final long time;
+        private final long frames;
+        private final long bytes;
+        private final long parseErrors;
+        private final long overflowEvents;
+        private final long droppedFrames;
+        private final long reconnects;
+        private final long transmitted;
+        private final long transmitFailures;
+        private final long queueDepth;
+        private final int[] ids;
+        private final long[] idFrames;
+
+        Snapshot(long interval, long time, long frames, long bytes, long parseErrors, long overflowEvents,
+                 long droppedFrames, long reconnects, long transmitted, long transmitFailures, long queueDepth,
+                 int[] ids, long[] idFrames) {
+            this.interval = interval;
+            this.time = time;
+            this.frames = frames;
+            this.bytes = bytes;
+            this.parseErrors = parseErrors;
+            this.overflowEvents = overflowEvents;
+            this.droppedFrames = droppedFrames;
+            this.reconnects = reconnects;
+            this.transmitted = transmitted;
+            this.transmitFailures = transmitFailures;
+            this.queueDepth = queueDepth;
+            this.ids = ids;
+            this.idFrames = idFrames;
+        }
+
+        // Counts since earlier, queue depth stays the current one
+        public Snapshot delta(Snapshot earlier) {
+            Map<Integer, Long> before = new HashMap<>(earlier.ids.length * 2);
+            for (int i = 0; i < earlier.ids.length; i++) {
+                before.put(earlier.ids[i], earlier.idFrames[i]);
+            }
+            long[] counts = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                Long previous = before.get(ids[i]);
+                counts[i] = idFrames[i] - ((previous != null) ? previous : 0);
+            }
+            return new Snapshot(time - earlier.time, time, frames - earlier.frames, bytes - earlier.bytes,
+                    parseErrors - earlier.parseErrors, overflowEvents - earlier.overflowEvents,
+                    droppedFrames - earlier.droppedFrames, reconnects - earlier.reconnects,
+                    transmitted - earlier.transmitted, transmitFailures - earlier.transmitFailures,
+                    queueDepth, ids, counts);
+        }
+
+        // Length of the interval the counts cover, in ns
+        public long getInterval() {
+            return interval;
+        }
+
+        public long getFrameCount() {
+            return frames;
+        }
+
+        public long getByteCount() {
+            return bytes;
+        }
+
+        public long getParseErrorCount() {
+            return parseErrors;
+        }
+
+        public long getOverflowCount() {
+            return overflowEvents;
+        }
+
+        public long getDroppedFrameCount() {
+            return droppedFrames;
+        }
+
+        public long getReconnectCount() {
+            return reconnects;
+        }
+
+        public long getTransmittedFrameCount() {
+            return transmitted;
+        }
+
+        public long getTransmitFailureCount() {
+            return transmitFailures;
+        }
+
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public double getFramesPerSecond() {
+            return perSecond(frames);
+        }
+
+        public double getBytesPerSecond() {
+            return perSecond(bytes);
+        }
+
+        public int getIdCount() {
+            return ids.length;
+        }
+
+        public int getID(int index) {
+            return ids[index] & ~EXTENDED_KEY;
+        }
+
+        public boolean isExtended(int index) {
+            return (ids[index] & EXTENDED_KEY) != 0;
+        }
+
+        public long getFrameCount(int index) {
+            return idFrames[index];
+        }
+
+        public double getFramesPerSecond(int index) {
+            return perSecond(idFrames[index]);
+        }
+
+        private double perSecond(long count) {
+            return (interval > 0) ? count * 1e9 / interval : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%.0f fr/s  %.1f kB/s  %d IDs\nqueue %d  dropped %d  overflow %d  errors %d  reconnects %d",
+                    getFramesPerSecond(), getBytesPerSecond() / 1000, ids.length, queueDepth, droppedFrames,
+                    overflowEvents, parseErrors, reconnects);
+        }
+    }
+}
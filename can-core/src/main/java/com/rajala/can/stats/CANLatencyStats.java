@@ -0,0 +1,48 @@
+package com.rajala.can.stats;
+
+import java.util.Locale;
+
+/**
+ * Latency of each stage a received frame passes through, all measured with System.nanoTime():
+ *
+ * read to parse: from the socket read returning to the decoded frame being published,
+ * parse to dispatch: from publishing to the dispatch thread picking the frame up,
+ * dispatch to render: from dispatch to the display frame that drew it, recorded by the UI.
+ */
+public class CANLatencyStats {
+
+    private final LatencyHistogram readToParse = new LatencyHistogram();
+    private final LatencyHistogram parseToDispatch = new LatencyHistogram();
+    private final LatencyHistogram dispatchToRender = new LatencyHistogram();
+
+    public LatencyHistogram getReadToParse() {
+        return readToParse;
+    }
+
+    public LatencyHistogram getParseToDispatch() {
+        return parseToDispatch;
+    }
+
+    public LatencyHistogram getDispatchToRender() {
+        return dispatchToRender;
+    }
+
+    public void reset() {
+        readToParse.reset();
+        parseToDispatch.reset();
+        dispatchToRender.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "read-parse " + summary(readToParse)
+                + "\nparse-dispatch " + summary(parseToDispatch)
+                + "\ndispatch-render " + summary(dispatchToRender);
+    }
+
+    // p50/p99/max in microseconds
+    private static String summary(LatencyHistogram h) {
+        return String.format(Locale.US, "%d/%d/%d us", h.getValueAtPercentile(50) / 1000,
+                h.getValueAtPercentile(99) / 1000, h.getMax() / 1000);
+    }
+}
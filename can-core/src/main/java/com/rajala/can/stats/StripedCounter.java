@@ -0,0 +1,47 @@
+package com.rajala.can.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over padded cells, in the manner of java.util.concurrent.atomic.LongAdder which
+ * is not available before API 24. Each thread adds to the cell picked by its ID, so concurrent
+ * writers do not contend on one cache line; reading sums every cell.
+ */
+public class StripedCounter {
+
+    // Cells are a cache line apart
+    private static final int PADDING = 8;
+    private static final int STRIPES;
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors()) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        int stripe = (int)Thread.currentThread().getId() & (STRIPES - 1);
+        cells.addAndGet(stripe * PADDING, delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.rajala.can.transport;
+
+import java.io.IOException;
+
+/**
+ * Adapter side of a {@link SimulatorTransport}. Subclasses speak one adapter's protocol and share
+ * the synthetic bus traffic defined here: a round robin over the configured IDs at a fixed frame
+ * rate, with a running counter in the payload so consecutive frames differ.
+ */
+public abstract class AdapterSimulator {
+
+    private volatile int[] ids = { 0x0C9, 0x1E5, 0x3E9, 0x4C1, 0x7E8 };
+    private volatile int frameRate = 1000;
+
+    public void setIDs(int... ids) {
+        this.ids = ids.clone();
+    }
+
+    public void setFrameRate(int framesPerSecond) {
+        this.frameRate = framesPerSecond;
+    }
+
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    // Runs until the host end of the pipes is closed
+    public abstract void run(BytePipe fromHost, BytePipe toHost) throws IOException;
+
+    // Number of frames that should have been sent since startNanos
+    protected long framesDue(long startNanos) {
+        return (System.nanoTime() - startNanos) * frameRate / 1000000000L;
+    }
+
+    protected int frameID(long frame) {
+        int[] current = ids;
+        return current[(int)(frame % current.length)];
+    }
+
+    protected long frameData(long frame) {
+        int[] current = ids;
+        long counter = frame / current.length;
+        return (counter << 32) | (frameID(frame) & 0xFFFFFFFFL);
+    }
+
+    protected int frameDLC(long frame) {
+        return 8;
+    }
+}
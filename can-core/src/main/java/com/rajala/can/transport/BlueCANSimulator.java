@@ -0,0 +1,59 @@
+package com.rajala.can.transport;
+
+import com.rajala.can.device.bluecan.BlueCANCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Simulated BlueCAN. Streams the synthetic bus traffic as CANn:ID:DATA lines, spread round robin
+ * over the configured number of channels. Commands from the host are read and discarded.
+ */
+public class BlueCANSimulator extends AdapterSimulator {
+
+    private static final long IDLE_PARK_MS = 1;
+
+    private final int channels;
+    private final byte[] line = new byte[BlueCANCodec.MAX_COMMAND_LENGTH];
+    private final byte[] discard = new byte[256];
+
+    public BlueCANSimulator() {
+        this(1);
+    }
+
+    public BlueCANSimulator(int channels) {
+        if (channels < 1 || channels > BlueCANCodec.MAX_CHANNEL) {
+            throw new IllegalArgumentException("BlueCAN has 1 to " + BlueCANCodec.MAX_CHANNEL + " channels");
+        }
+        this.channels = channels;
+    }
+
+    public void run(BytePipe fromHost, BytePipe toHost) throws IOException {
+
+        InputStream in = fromHost.getInputStream();
+        OutputStream out = toHost.getOutputStream();
+
+        long start = System.nanoTime();
+        long sent = 0;
+        while (!fromHost.isClosed()) {
+            int available = in.available();
+            if (available > 0) {
+                in.read(discard, 0, Math.min(available, discard.length));
+            }
+
+            long due = framesDue(start);
+            while (sent < due) {
+                long frame = sent++;
+                int length = BlueCANCodec.encodeFrame(1 + (int)(frame % channels), frameID(frame),
+                        frameData(frame), frameDLC(frame), line, 0);
+                out.write(line, 0, length);
+            }
+            try {
+                Thread.sleep(IDLE_PARK_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.rajala.can.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Bounded in-memory byte pipe. Unlike java.io.PipedInputStream it does not tie either end to the
+ * thread that last used it, so any thread may read or write.
+ */
+public class BytePipe {
+
+    private final byte[] buffer;
+    private int readPos;
+    private int count;
+    private boolean closed;
+
+    private final InputStream input = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return BytePipe.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            synchronized (BytePipe.this) {
+                return count;
+            }
+        }
+
+        @Override
+        public void close() {
+            BytePipe.this.close();
+        }
+    };
+
+    private final OutputStream output = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            BytePipe.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            BytePipe.this.close();
+        }
+    };
+
+    public BytePipe(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    public synchronized int remainingCapacity() {
+        return buffer.length - count;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (count == 0) {
+            if (closed) {
+                return -1;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+        int n = Math.min(len, count);
+        int first = Math.min(n, buffer.length - readPos);
+        System.arraycopy(buffer, readPos, b, off, first);
+        System.arraycopy(buffer, 0, b, off + first, n - first);
+        readPos = (readPos + n) % buffer.length;
+        count -= n;
+        notifyAll();
+        return n;
+    }
+
+    private synchronized void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            while (count == buffer.length && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            if (closed) {
+                throw new IOException("Pipe closed");
+            }
+            int writePos = (readPos + count) % buffer.length;
+            int n = Math.min(len, Math.min(buffer.length - count, buffer.length - writePos));
+            System.arraycopy(b, off, buffer, writePos, n);
+            count += n;
+            off += n;
+            len -= n;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.rajala.can.transport;
+
+import com.rajala.can.log.CANLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection lifecycle of one device. A single supervisor thread connects the {@link ITransport},
+ * retries with exponential backoff and jitter when that fails or the connection is lost, and
+ * reports every transition to the {@link IConnectionStateListener}s:
+ *
+ * <pre>
+ * DISCONNECTED -connect()-> CONNECTING -ok-> CONNECTED -lost-> BACKOFF -delay-> CONNECTING
+ *                           CONNECTING -failed-> BACKOFF, or DISCONNECTED after the last attempt
+ * </pre>
+ *
+ * disconnect() returns to DISCONNECTED from any state, stop() ends in STOPPED for good.
+ *
+ * The device's receive thread is started once and serves every connection: it blocks in
+ * {@link #awaitConnected()} while there is none, reads the {@link Connection} it gets until that
+ * fails, and hands it back through {@link #connectionLost(Connection)}.
+ */
+public class ConnectionSupervisor implements Runnable {
+
+    public enum State {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED,
+        BACKOFF,
+        STOPPED,
+    }
+
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 250;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 30000;
+    public static final int UNLIMITED_ATTEMPTS = 0;
+
+    // Keeps the shift in the backoff from overflowing
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    // The streams of one successful connect, valid until it is lost
+    public static class Connection {
+
+        private final long generation;
+        private final String address;
+        private final InputStream input;
+        private final OutputStream output;
+
+        private Connection(long generation, String address, InputStream input, OutputStream output) {
+            this.generation = generation;
+            this.address = address;
+            this.input = input;
+            this.output = output;
+        }
+
+        // Counts the connections of the supervisor, starting at 1
+        public long getGeneration() {
+            return generation;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        public OutputStream getOutputStream() {
+            return output;
+        }
+    }
+
+    private final String tag;
+    private final ITransport transport;
+    private final Random random = new Random();
+
+    // Everything below up to the listeners is guarded by lock
+    private final Lock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Condition connected = lock.newCondition();
+    private State state = State.DISCONNECTED;
+    private String address;
+    private Connection connection;
+    private long generation;
+    // Bumped by every request that invalidates a connect in progress
+    private int epoch;
+    private int attempt;
+    private long retryTime;
+    // Transitions not reported to the listeners yet
+    private final ArrayDeque<State> pending = new ArrayDeque<>();
+
+    private volatile IConnectionStateListener[] listeners = new IConnectionStateListener[0];
+    private volatile long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_BACKOFF_MS);
+    private volatile long maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF_MS);
+    private volatile int maxAttempts = UNLIMITED_ATTEMPTS;
+
+    private volatile long connectCount;
+    private volatile long failedCount;
+    private volatile long lostCount;
+
+    private Thread supervisorThread;
+
+    // name prefixes the log messages and the thread name
+    public ConnectionSupervisor(String name, ITransport transport) {
+        this.tag = name + ".supervisor";
+        this.transport = transport;
+    }
+
+    // === User methods ===
+
+    public synchronized void start() {
+        if (supervisorThread != null) {
+            return;
+        }
+        supervisorThread = new Thread(this, tag);
+        supervisorThread.setDaemon(true);
+        supervisorThread.start();
+    }
+
+    // Keeps connecting to address until it works, then reconnects whenever the connection is lost
+    public void connect(String address) {
+        lock.lock();
+        try {
+            if (state == State.STOPPED) {
+                return;
+            }
+            if (state != State.DISCONNECTED && address.equals(this.address)) {
+                return;
+            }
+            drop();
+            this.address = address;
+            attempt = 0;
+            setState(State.CONNECTING);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void disconnect() {
+        lock.lock();
+        try {
+            if (state == State.STOPPED || state == State.DISCONNECTED) {
+                return;
+            }
+            drop();
+            address = null;
+            setState(State.DISCONNECTED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Disconnects and ends the supervisor thread, the receive threads get no further connection
+    public void stop() {
+        lock.lock();
+        try {
+            if (state == State.STOPPED) {
+                return;
+            }
+            drop();
+            address = null;
+            setState(State.STOPPED);
+            connected.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        Thread thread;
+        synchronized (this) {
+            thread = supervisorThread;
+        }
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Called by whichever thread saw the connection fail, reports for stale connections are ignored
+    public void connectionLost(Connection lost) {
+        lock.lock();
+        try {
+            if (lost == null || lost != connection) {
+                return;
+            }
+            CANLog.w(tag, "Connection to " + lost.getAddress() + " lost");
+            lostCount++;
+            drop();
+            scheduleRetry();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Parks the calling I/O thread until there is a connection, null once stopped or interrupted
+    public Connection awaitConnected() {
+        lock.lock();
+        try {
+            while (state != State.CONNECTED && state != State.STOPPED) {
+                connected.await();
+            }
+            return connection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The current connection, null unless CONNECTED
+    public Connection getConnection() {
+        lock.lock();
+        try {
+            return connection;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ITransport getTransport() {
+        return transport;
+    }
+
+    // The n-th retry waits between half and all of min(initial * 2^n, max)
+    public void setBackoff(long initialMs, long maxMs) {
+        if (initialMs <= 0 || maxMs < initialMs) {
+            throw new IllegalArgumentException("Invalid backoff " + initialMs + " to " + maxMs + " ms");
+        }
+        initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(initialMs);
+        maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxMs);
+    }
+
+    // Failed connects in a row before giving up and going DISCONNECTED, or UNLIMITED_ATTEMPTS
+    public void setMaxAttempts(int attempts) {
+        if (attempts < 0) {
+            throw new IllegalArgumentException("Negative attempt count " + attempts);
+        }
+        maxAttempts = attempts;
+    }
+
+    public synchronized void addStateListener(IConnectionStateListener listener) {
+        IConnectionStateListener[] current = listeners;
+        IConnectionStateListener[] updated = new IConnectionStateListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    public synchronized void removeStateListener(IConnectionStateListener listener) {
+        IConnectionStateListener[] current = listeners;
+        int count = 0;
+        IConnectionStateListener[] updated = new IConnectionStateListener[current.length];
+        for (IConnectionStateListener l : current) {
+            if (l != listener) {
+                updated[count++] = l;
+            }
+        }
+        IConnectionStateListener[] trimmed = new IConnectionStateListener[count];
+        System.arraycopy(updated, 0, trimmed, 0, count);
+        listeners = trimmed;
+    }
+
+    public long getConnectCount() {
+        return connectCount;
+    }
+
+    public long getFailedConnectCount() {
+        return failedCount;
+    }
+
+    public long getLostCount() {
+        return lostCount;
+    }
+
+    // === Internal methods, called with the lock held ===
+
+    private void setState(State next) {
+        state = next;
+        pending.add(next);
+        if (next == State.CONNECTED) {
+            connected.signalAll();
+        }
+        changed.signal();
+    }
+
+    // Closes the transport, which also aborts a connect in progress
+    private void drop() {
+        epoch++;
+        connection = null;
+        transport.close();
+    }
+
+    private void scheduleRetry() {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt, MAX_BACKOFF_SHIFT));
+        long half = ceiling / 2;
+        long delay = half + (long)(random.nextDouble() * (ceiling - half));
+        retryTime = System.nanoTime() + delay;
+        CANLog.d(tag, "Retrying in " + TimeUnit.NANOSECONDS.toMillis(delay) + " ms");
+        setState(State.BACKOFF);
+    }
+
+    // === Supervisor thread ===
+
+    public void run() {
+
+        lock.lock();
+        try {
+            while (true) {
+                report();
+                if (state == State.STOPPED) {
+                    break;
+                }
+                if (state == State.CONNECTING) {
+                    attemptConnect();
+                } else if (state == State.BACKOFF) {
+                    long delay = retryTime - System.nanoTime();
+                    if (delay <= 0) {
+                        setState(State.CONNECTING);
+                    } else {
+                        changed.awaitNanos(delay);
+                    }
+                } else if (pending.isEmpty()) {
+                    changed.await();
+                }
+            }
+        } catch (InterruptedException e) {
+            CANLog.w(tag, "Supervisor interrupted");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Hands the pending transitions to the listeners without holding the lock
+    private void report() {
+        while (!pending.isEmpty()) {
+            State reported = pending.poll();
+            lock.unlock();
+            try {
+                for (IConnectionStateListener listener : listeners) {
+                    try {
+                        listener.onConnectionStateChanged(this, reported);
+                    } catch (RuntimeException e) {
+                        CANLog.e(tag, "State listener failed: " + e);
+                    }
+                }
+            } finally {
+                lock.lock();
+            }
+        }
+    }
+
+    // Connects without holding the lock, so that disconnect() and stop() can abort it
+    private void attemptConnect() {
+
+        String target = address;
+        int started = epoch;
+        IOException error = null;
+        lock.unlock();
+        try {
+            transport.connect(target);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+        }
+
+        if (epoch != started || state != State.CONNECTING) {
+            // Disconnected, stopped or redirected meanwhile, drop() already closed the transport
+            return;
+        }
+        InputStream input = transport.getInputStream();
+        OutputStream output = transport.getOutputStream();
+        if (error == null && (input == null || output == null)) {
+            transport.close();
+            error = new IOException("Transport has no input and output");
+        }
+        if (error == null) {
+            CANLog.i(tag, "Connected to " + target);
+            connectCount++;
+            attempt = 0;
+            connection = new Connection(++generation, target, input, output);
+            setState(State.CONNECTED);
+            return;
+        }
+
+        failedCount++;
+        attempt++;
+        CANLog.w(tag, "Connecting to " + target + " failed (" + attempt + "): " + error.getMessage());
+        int limit = maxAttempts;
+        if (limit != UNLIMITED_ATTEMPTS && attempt >= limit) {
+            CANLog.e(tag, "Giving up on " + target + " after " + attempt + " attempts");
+            address = null;
+            setState(State.DISCONNECTED);
+            return;
+        }
+        scheduleRetry();
+    }
+}
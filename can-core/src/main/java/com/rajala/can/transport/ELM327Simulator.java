@@ -0,0 +1,364 @@
+package com.rajala.can.transport;
+
+import com.rajala.can.isotp.ISOTPFrame;
+import com.rajala.can.obd.OBDPID;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Simulated ELM327. Answers the AT commands the driver uses, honours echo, header and space
+ * settings and the ATCF/ATCM/ATCRA receive filters, and streams the synthetic bus traffic while
+ * monitoring. As on the real chip any received byte stops monitoring, and BUFFER FULL is reported
+ * when the host does not read fast enough.
+ *
+ * Mode 01 requests to the engine ECU, functional 7DF or physical 7E0, are answered from 7E8 with a
+ * handful of slowly changing PIDs, split into ISO-TP frames as the real ECU would. A trailing
+ * response count digit stops the answer after that many frames.
+ */
+public class ELM327Simulator extends AdapterSimulator {
+
+    public static final String VERSION = "ELM327 v1.5";
+
+    private static final int MAX_COMMAND = 64;
+    private static final long IDLE_PARK_MS = 1;
+    // Free space below which the simulated output buffer counts as full
+    private static final int BUFFER_FULL_THRESHOLD = 256;
+
+    // Simulated engine ECU
+    private static final int FUNCTIONAL_ID = 0x7DF;
+    private static final int ECU_REQUEST_ID = 0x7E0;
+    private static final int ECU_RESPONSE_ID = 0x7E8;
+    private static final long ECU_RESPONSE_MS = 5;
+    private static final int[] ECU_PIDS = {
+            0x04, 0x05, 0x0B, 0x0C, 0x0D, 0x0F, 0x10, 0x11, 0x1F, 0x2F, 0x33, 0x42, 0x46, 0x5C };
+    private final long ecuStartTime = System.nanoTime();
+
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    // Adapter settings, reset by ATZ and ATD
+    private boolean echo;
+    private boolean headers;
+    private boolean spaces;
+    private int filter;
+    private int mask;
+    private int receiveAddress;
+    private int header;
+
+    private final byte[] command = new byte[MAX_COMMAND];
+    private final byte[] line = new byte[64];
+
+    public ELM327Simulator() {
+        defaults();
+    }
+
+    private void defaults() {
+        echo = true;
+        headers = false;
+        spaces = true;
+        filter = 0;
+        mask = 0;
+        receiveAddress = -1;
+        header = FUNCTIONAL_ID;
+    }
+
+    public void run(BytePipe fromHost, BytePipe toHost) throws IOException {
+
+        InputStream in = fromHost.getInputStream();
+        OutputStream out = toHost.getOutputStream();
+        write(out, VERSION + "\r\r>");
+
+        int length = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                return;
+            }
+            if (b == '\n' || b == ' ') {
+                continue;
+            }
+            if (b != '\r') {
+                if (length < MAX_COMMAND) {
+                    command[length++] = (byte)Character.toUpperCase((char)b);
+                }
+                continue;
+            }
+
+            String cmd = new String(command, 0, length, "US-ASCII");
+            length = 0;
+            if (echo) {
+                write(out, cmd + "\r");
+            }
+            if (cmd.equals("ATMA")) {
+                monitor(fromHost, toHost);
+            } else {
+                write(out, execute(cmd) + "\r\r>");
+            }
+        }
+    }
+
+    private String execute(String cmd) {
+
+        if (!cmd.startsWith("AT")) {
+            if (cmd.length() > 0 && isHex(cmd, 0)) {
+                return request(cmd);
+            }
+            return "?";
+        }
+
+        String at = cmd.substring(2);
+        if (at.equals("Z")) {
+            defaults();
+            return "\r" + VERSION;
+        }
+        if (at.equals("D")) {
+            defaults();
+            return "OK";
+        }
+        if (at.equals("I")) {
+            return VERSION;
+        }
+        if (at.equals("RV")) {
+            return "12.6V";
+        }
+        if (at.equals("DPN")) {
+            return "6";
+        }
+        if (at.equals("E0") || at.equals("E1")) {
+            echo = at.endsWith("1");
+            return "OK";
+        }
+        if (at.equals("H0") || at.equals("H1")) {
+            headers = at.endsWith("1");
+            return "OK";
+        }
+        if (at.equals("S0") || at.equals("S1")) {
+            spaces = at.endsWith("1");
+            return "OK";
+        }
+        if (at.equals("AR")) {
+            receiveAddress = -1;
+            filter = 0;
+            mask = 0;
+            return "OK";
+        }
+        if (at.startsWith("CRA")) {
+            receiveAddress = (at.length() > 3 && isHex(at, 3)) ? Integer.parseInt(at.substring(3), 16) : -1;
+            return "OK";
+        }
+        if (at.startsWith("CF") && at.length() > 2 && isHex(at, 2)) {
+            filter = Integer.parseInt(at.substring(2), 16);
+            return "OK";
+        }
+        if (at.startsWith("CM") && at.length() > 2 && isHex(at, 2)) {
+            mask = Integer.parseInt(at.substring(2), 16);
+            return "OK";
+        }
+        if (at.startsWith("SH") && at.length() > 2 && isHex(at, 2)) {
+            header = Integer.parseInt(at.substring(2), 16);
+            return "OK";
+        }
+        if (at.startsWith("SP") || at.startsWith("ST") || at.startsWith("L")
+                || at.startsWith("AL") || at.startsWith("CAF") || at.startsWith("M")) {
+            return "OK";
+        }
+        return "?";
+    }
+
+    // Only the engine ECU answers, and only Mode 01
+    private String request(String cmd) {
+
+        int bytes = cmd.length() / 2;
+        int responses = (cmd.length() % 2 != 0) ? Character.digit(cmd.charAt(cmd.length() - 1), 16) : 1;
+        if ((header != FUNCTIONAL_ID && header != ECU_REQUEST_ID) || responses == 0 || bytes < 2
+                || !cmd.startsWith("01")) {
+            return "NO DATA";
+        }
+
+        byte[] answer = new byte[1 + 6 * 5];
+        answer[0] = 0x41;
+        int length = 1;
+        for (int i = 1; i < bytes && i <= 6; i++) {
+            int pid = Integer.parseInt(cmd.substring(2 * i, 2 * i + 2), 16);
+            length = answer(pid, answer, length);
+        }
+        if (length == 1) {
+            return "NO DATA";
+        }
+        try {
+            Thread.sleep(ECU_RESPONSE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Single frame, or first frame and consecutive frames, padded to 8 bytes
+        StringBuilder lines = new StringBuilder();
+        int offset = 0;
+        int sequence = 0;
+        for (int frame = 0; frame < responses && offset < length; frame++) {
+            long data;
+            int count;
+            if (length <= ISOTPFrame.SINGLE_PAYLOAD) {
+                count = length;
+                data = ISOTPFrame.single(answer, 0, count);
+            } else if (offset == 0) {
+                count = ISOTPFrame.FIRST_PAYLOAD;
+                data = ISOTPFrame.first(length, answer, 0);
+            } else {
+                count = Math.min(ISOTPFrame.CONSECUTIVE_PAYLOAD, length - offset);
+                data = ISOTPFrame.consecutive(++sequence, answer, offset, count);
+            }
+            offset += count;
+            int lineLength = formatFrame(ECU_RESPONSE_ID, data, 8);
+            if (frame > 0) {
+                lines.append('\r');
+            }
+            lines.append(new String(line, 0, lineLength - 1));
+        }
+        return lines.toString();
+    }
+
+    // Appends the PID and its data to answer, unless the ECU does not have it
+    private int answer(int pid, byte[] answer, int length) {
+
+        OBDPID definition = OBDPID.get(pid);
+        long raw;
+        if (definition == null) {
+            return length;
+        }
+        if (OBDPID.isSupportPID(pid)) {
+            raw = 0;
+            for (int supported : ECU_PIDS) {
+                if (supported > pid && supported <= pid + OBDPID.SUPPORT_INTERVAL) {
+                    raw |= 1L << (31 - (supported - pid - 1));
+                } else if (supported > pid + OBDPID.SUPPORT_INTERVAL) {
+                    // The next bitmap is worth asking for
+                    raw |= 1;
+                }
+            }
+        } else {
+            double value = ecuValue(pid);
+            if (Double.isNaN(value)) {
+                return length;
+            }
+            raw = Math.round((value - definition.getOffset()) / definition.getFactor());
+            raw <<= 8 * (definition.getLength() - definition.getValueBytes());
+        }
+
+        answer[length++] = (byte)pid;
+        for (int i = definition.getLength() - 1; i >= 0; i--) {
+            answer[length++] = (byte)(raw >>> (8 * i));
+        }
+        return length;
+    }
+
+    private double ecuValue(int pid) {
+        double t = (System.nanoTime() - ecuStartTime) / 1e9;
+        switch (pid) {
+            case 0x04:
+                return 25 + 10 * Math.sin(t / 3);
+            case 0x05:
+                return Math.min(90, 20 + t);
+            case 0x0B:
+                return 35 + 10 * Math.sin(t / 3);
+            case 0x0C:
+                return 1600 + 800 * Math.sin(t / 3);
+            case 0x0D:
+                return 60 + 20 * Math.sin(t / 7);
+            case 0x0F:
+                return 25;
+            case 0x10:
+                return 8 + 4 * Math.sin(t / 3);
+            case 0x11:
+                return 15 + 10 * Math.sin(t / 3);
+            case 0x1F:
+                return Math.floor(t);
+            case 0x2F:
+                return 60;
+            case 0x33:
+                return 101;
+            case 0x42:
+                return 14.1;
+            case 0x46:
+                return 18;
+            case 0x5C:
+                return Math.min(95, 20 + t);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    // Streams frames until the host sends something or the output buffer overflows
+    private void monitor(BytePipe fromHost, BytePipe toHost) throws IOException {
+
+        InputStream in = fromHost.getInputStream();
+        OutputStream out = toHost.getOutputStream();
+        long start = System.nanoTime();
+        long sent = 0;
+        while (!fromHost.isClosed()) {
+            if (in.available() > 0) {
+                // The byte that stopped monitoring is discarded
+                in.read();
+                write(out, "STOPPED\r\r>");
+                return;
+            }
+
+            long due = framesDue(start);
+            while (sent < due) {
+                if (toHost.remainingCapacity() < BUFFER_FULL_THRESHOLD) {
+                    write(out, "\rBUFFER FULL\r\r>");
+                    return;
+                }
+                long frame = sent++;
+                if (accept(frameID(frame))) {
+                    out.write(line, 0, formatFrame(frameID(frame), frameData(frame), frameDLC(frame)));
+                }
+            }
+            try {
+                Thread.sleep(IDLE_PARK_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean accept(int id) {
+        if (receiveAddress >= 0) {
+            return id == receiveAddress;
+        }
+        return (id & mask) == (filter & mask);
+    }
+
+    private int formatFrame(int id, long data, int dlc) {
+        int pos = 0;
+        boolean extended = id > 0x7FF;
+        for (int shift = extended ? 28 : 8; shift >= 0; shift -= 4) {
+            line[pos++] = HEX_DIGITS[(id >>> shift) & 0xF];
+        }
+        for (int i = 0; i < dlc; i++) {
+            if (spaces) {
+                line[pos++] = ' ';
+            }
+            int b = (int)(data >>> (56 - 8*i)) & 0xFF;
+            line[pos++] = HEX_DIGITS[b >>> 4];
+            line[pos++] = HEX_DIGITS[b & 0xF];
+        }
+        line[pos++] = '\r';
+        return pos;
+    }
+
+    private static boolean isHex(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void write(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes("US-ASCII"));
+    }
+}
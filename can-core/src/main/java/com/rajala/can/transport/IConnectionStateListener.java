@@ -0,0 +1,7 @@
+package com.rajala.can.transport;
+
+public interface IConnectionStateListener {
+    // Called on the supervisor thread, in the order the transitions happened. The connection may
+    // already be gone again when CONNECTED is reported, its streams then fail at once.
+    void onConnectionStateChanged(ConnectionSupervisor supervisor, ConnectionSupervisor.State state);
+}
@@ -0,0 +1,22 @@
+package com.rajala.can.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Byte stream to an adapter, connected and reconnected by a ConnectionSupervisor
+public interface ITransport {
+
+    // Connects on the calling thread, address meaning depends on the transport. The streams are
+    // usable once it returns.
+    void connect(String address) throws IOException;
+
+    // May be called from another thread while connect() is blocked, which makes it fail
+    void close();
+
+    boolean isConnected();
+
+    InputStream getInputStream();
+
+    OutputStream getOutputStream();
+}
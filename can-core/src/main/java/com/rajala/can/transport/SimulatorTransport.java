@@ -0,0 +1,71 @@
+package com.rajala.can.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * In-process transport connected to an {@link AdapterSimulator} through a pair of byte pipes, so
+ * the drivers can be exercised and load tested without an adapter.
+ */
+public class SimulatorTransport implements ITransport {
+
+    private static final int PIPE_CAPACITY = 64 * 1024;
+
+    private final AdapterSimulator simulator;
+    private volatile BytePipe toAdapter;
+    private volatile BytePipe toHost;
+
+    public SimulatorTransport(AdapterSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    // Connects at once, the simulated adapter runs on a thread of its own
+    public void connect(String address) {
+
+        close();
+        final BytePipe adapterIn = new BytePipe(PIPE_CAPACITY);
+        final BytePipe adapterOut = new BytePipe(PIPE_CAPACITY);
+        toAdapter = adapterIn;
+        toHost = adapterOut;
+
+        Thread adapterThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    simulator.run(adapterIn, adapterOut);
+                } catch (IOException e) {
+                    // Host closed the pipes
+                }
+                adapterOut.close();
+            }
+        }, "SimulatorTransport.adapter");
+        adapterThread.setDaemon(true);
+        adapterThread.start();
+    }
+
+    public void close() {
+        BytePipe in = toAdapter;
+        BytePipe out = toHost;
+        if (in == null) {
+            return;
+        }
+        toAdapter = null;
+        toHost = null;
+        in.close();
+        out.close();
+    }
+
+    public boolean isConnected() {
+        return toAdapter != null;
+    }
+
+    public InputStream getInputStream() {
+        BytePipe pipe = toHost;
+        return (pipe != null) ? pipe.getInputStream() : null;
+    }
+
+    public OutputStream getOutputStream() {
+        BytePipe pipe = toAdapter;
+        return (pipe != null) ? pipe.getOutputStream() : null;
+    }
+}
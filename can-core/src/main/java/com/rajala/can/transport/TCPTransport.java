@@ -0,0 +1,77 @@
+package com.rajala.can.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * TCP transport, as used by WiFi ELM327 dongles. Addresses have the form host:port, the port
+ * defaults to 35000.
+ */
+public class TCPTransport implements ITransport {
+
+    public static final int DEFAULT_PORT = 35000;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private volatile Socket socket;
+    private volatile InputStream input;
+    private volatile OutputStream output;
+
+    public void connect(String address) throws IOException {
+
+        close();
+        String host = address;
+        int port = DEFAULT_PORT;
+        int colon = address.lastIndexOf(':');
+        if (colon > 0) {
+            host = address.substring(0, colon);
+            try {
+                port = Integer.parseInt(address.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid port in " + address);
+            }
+        }
+
+        // Published before connecting so that close() can abort the connect
+        Socket s = new Socket();
+        socket = s;
+        try {
+            s.setTcpNoDelay(true);
+            s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            input = s.getInputStream();
+            output = s.getOutputStream();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public void close() {
+        Socket s = socket;
+        if (s == null) {
+            return;
+        }
+        socket = null;
+        input = null;
+        output = null;
+        try {
+            s.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public boolean isConnected() {
+        Socket s = socket;
+        return (s != null) && s.isConnected() && !s.isClosed();
+    }
+
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    public OutputStream getOutputStream() {
+        return output;
+    }
+}
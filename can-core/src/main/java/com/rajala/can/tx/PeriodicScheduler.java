@@ -0,0 +1,360 @@
+package com.rajala.can.tx;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.device.ICyclicCANDevice;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends periodic frames from a single thread using a hashed timing wheel.
+ *
+ * Each scheduled frame sits in the wheel bucket of its next deadline, so a tick only visits the
+ * frames hashed to it no matter how many are scheduled. Every send records how late it was
+ * against its deadline; a frame that falls a whole period or more behind counts the periods it
+ * missed and is realigned to its original phase instead of bursting to catch up.
+ *
+ * Between sends the thread parks until the earliest deadline in the wheel, or until a frame is
+ * scheduled when the wheel is empty, so an idle scheduler does not wake every tick.
+ *
+ * When the device is an {@link ICyclicCANDevice} with a free slot, the frame is handed to the
+ * adapter instead and costs the host nothing after that. Offloaded frames keep no statistics.
+ */
+public class PeriodicScheduler implements Runnable {
+
+    public static final long TICK_NANOS = 1000000;
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int NO_SLOT = -1;
+    private static final long NO_TICK = Long.MAX_VALUE;
+
+    // Handle to a scheduled frame
+    public static class Entry {
+
+        private final CANMessage msg = new CANMessage();
+        private long periodNanos;
+        private long deadline;
+        private long tick;
+        private Entry next;
+        private boolean cancelled;
+        private int slot = NO_SLOT;
+
+        private volatile long sentFrames;
+        private volatile long missedDeadlines;
+        private volatile long jitterSum;
+        private volatile long maxJitter;
+
+        public boolean isOffloaded() {
+            return slot != NO_SLOT;
+        }
+
+        public long getSentFrameCount() {
+            return sentFrames;
+        }
+
+        public long getMissedDeadlineCount() {
+            return missedDeadlines;
+        }
+
+        // Mean and maximum lateness against the deadline, in ns
+        public long getMeanJitter() {
+            long sent = sentFrames;
+            return (sent > 0) ? jitterSum / sent : 0;
+        }
+
+        public long getMaxJitter() {
+            return maxJitter;
+        }
+    }
+
+    private final ICANDevice device;
+    private final ICyclicCANDevice cyclicDevice;
+    private final boolean[] slotsUsed;
+
+    // Wheel, guarded by lock
+    private final Object lock = new Object();
+    private final Entry[] buckets = new Entry[WHEEL_SIZE];
+    private long startTime;
+    private long currentTick;
+    private int scheduledCount;
+    // Tick the scheduler thread is parked until, NO_TICK for an empty wheel and 0 while it runs
+    private long wakeTick;
+    private Thread wakeThread;
+
+    // Scheduler thread state
+    private Entry[] due = new Entry[64];
+    private final CANMessage frame = new CANMessage();
+    private volatile boolean isRunning;
+    private Thread schedulerThread;
+
+    public PeriodicScheduler(ICANDevice device) {
+        this(device, true);
+    }
+
+    // offload = false keeps every frame on the host, e.g. to measure the host side timing
+    public PeriodicScheduler(ICANDevice device, boolean offload) {
+        this.device = device;
+        if (offload && device instanceof ICyclicCANDevice) {
+            cyclicDevice = (ICyclicCANDevice)device;
+            slotsUsed = new boolean[cyclicDevice.getCyclicSlotCount()];
+        } else {
+            cyclicDevice = null;
+            slotsUsed = new boolean[0];
+        }
+        startTime = System.nanoTime();
+    }
+
+    // === User methods ===
+
+    public synchronized void start() {
+        if (schedulerThread != null) {
+            return;
+        }
+        isRunning = true;
+        schedulerThread = new Thread(this, "PeriodicScheduler");
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+    }
+
+    public synchronized void stop() {
+        if (schedulerThread == null) {
+            return;
+        }
+        isRunning = false;
+        LockSupport.unpark(schedulerThread);
+        try {
+            schedulerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        schedulerThread = null;
+    }
+
+    // Sends a copy of msg every msg.getPeriod() ms, starting one period from now
+    public Entry schedule(CANMessage msg) {
+
+        if (!msg.isPeriodic() || msg.getPeriod() <= 0) {
+            throw new IllegalArgumentException("Message is not periodic");
+        }
+
+        Entry entry = new Entry();
+        entry.msg.copyFrom(msg);
+        entry.periodNanos = msg.getPeriod() * 1000000L;
+
+        synchronized (lock) {
+            int slot = freeSlot();
+            if (slot != NO_SLOT && cyclicDevice.startCyclic(slot, msg)) {
+                slotsUsed[slot] = true;
+                entry.slot = slot;
+            } else {
+                entry.deadline = System.nanoTime() + entry.periodNanos;
+                insert(entry);
+            }
+            scheduledCount++;
+        }
+        return entry;
+    }
+
+    // Changes the payload sent from the next period on
+    public void update(Entry entry, long data, int dlc) {
+        synchronized (lock) {
+            if (entry.cancelled) {
+                return;
+            }
+            entry.msg.setLongData(data, dlc);
+            if (entry.isOffloaded() && !cyclicDevice.startCyclic(entry.slot, entry.msg)) {
+                // The adapter did not take the new payload, the host sends the frame from now on
+                slotsUsed[entry.slot] = false;
+                entry.slot = NO_SLOT;
+                entry.deadline = System.nanoTime() + entry.periodNanos;
+                insert(entry);
+            }
+        }
+    }
+
+    public void cancel(Entry entry) {
+        synchronized (lock) {
+            if (entry.cancelled) {
+                return;
+            }
+            // Wheel entries are unlinked when their bucket is next visited
+            entry.cancelled = true;
+            if (entry.isOffloaded()) {
+                cyclicDevice.stopCyclic(entry.slot);
+                slotsUsed[entry.slot] = false;
+            }
+            scheduledCount--;
+        }
+    }
+
+    public int getScheduledCount() {
+        synchronized (lock) {
+            return scheduledCount;
+        }
+    }
+
+    private int freeSlot() {
+        for (int i = 0; i < slotsUsed.length; i++) {
+            if (!slotsUsed[i]) {
+                return i;
+            }
+        }
+        return NO_SLOT;
+    }
+
+    private void insert(Entry entry) {
+        long tick = (entry.deadline - startTime + TICK_NANOS - 1) / TICK_NANOS;
+        if (tick <= currentTick) {
+            tick = currentTick + 1;
+        }
+        entry.tick = tick;
+        int bucket = (int)tick & WHEEL_MASK;
+        entry.next = buckets[bucket];
+        buckets[bucket] = entry;
+        if (tick < wakeTick) {
+            // Due before the parked scheduler thread would wake
+            wakeTick = 0;
+            LockSupport.unpark(wakeThread);
+        }
+    }
+
+    // === Scheduler thread ===
+
+    public void run() {
+
+        synchronized (lock) {
+            wakeThread = Thread.currentThread();
+        }
+        while (isRunning) {
+            int count = collect(System.nanoTime());
+            for (int i = 0; i < count; i++) {
+                send(due[i]);
+                due[i] = null;
+            }
+
+            long tick;
+            synchronized (lock) {
+                tick = nextTick();
+                wakeTick = tick;
+            }
+            // Frames scheduled from here on unpark the thread if they are due sooner
+            if (tick == NO_TICK) {
+                LockSupport.park(this);
+            } else {
+                long delay = startTime + tick * TICK_NANOS - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(this, delay);
+                }
+            }
+        }
+    }
+
+    // Unlinks every entry due up to now. After a long park each bucket is visited once.
+    private int collect(long now) {
+
+        int count = 0;
+        synchronized (lock) {
+            wakeTick = 0;
+            long lastTick = (now - startTime) / TICK_NANOS;
+            long ticks = Math.min(lastTick - currentTick, WHEEL_SIZE);
+            for (long t = currentTick + 1; t <= currentTick + ticks; t++) {
+                int bucket = (int)t & WHEEL_MASK;
+                Entry previous = null;
+                Entry entry = buckets[bucket];
+                while (entry != null) {
+                    Entry next = entry.next;
+                    if (entry.cancelled || entry.tick <= lastTick) {
+                        // Unlink
+                        if (previous == null) {
+                            buckets[bucket] = next;
+                        } else {
+                            previous.next = next;
+                        }
+                        entry.next = null;
+                        if (!entry.cancelled) {
+                            if (count == due.length) {
+                                Entry[] grown = new Entry[count * 2];
+                                System.arraycopy(due, 0, grown, 0, count);
+                                due = grown;
+                            }
+                            due[count++] = entry;
+                        }
+                    } else {
+                        previous = entry;
+                    }
+                    entry = next;
+                }
+            }
+            if (lastTick > currentTick) {
+                currentTick = lastTick;
+            }
+        }
+        return count;
+    }
+
+    // Tick of the earliest entry in the wheel, NO_TICK when it is empty. Called with lock held
+    // after collect(), so every entry is due after currentTick; cancelled entries are unlinked.
+    private long nextTick() {
+
+        long earliest = NO_TICK;
+        for (long t = currentTick + 1; t <= currentTick + WHEEL_SIZE; t++) {
+            int bucket = (int)t & WHEEL_MASK;
+            Entry previous = null;
+            Entry entry = buckets[bucket];
+            while (entry != null) {
+                Entry next = entry.next;
+                if (entry.cancelled) {
+                    if (previous == null) {
+                        buckets[bucket] = next;
+                    } else {
+                        previous.next = next;
+                    }
+                    entry.next = null;
+                } else {
+                    earliest = Math.min(earliest, entry.tick);
+                    previous = entry;
+                }
+                entry = next;
+            }
+            // Buckets are visited in tick order, later ones cannot hold an earlier entry
+            if (earliest <= t) {
+                return earliest;
+            }
+        }
+        return earliest;
+    }
+
+    private void send(Entry entry) {
+
+        long deadline;
+        synchronized (lock) {
+            if (entry.cancelled) {
+                return;
+            }
+            frame.copyFrom(entry.msg);
+            deadline = entry.deadline;
+        }
+
+        long sendTime = System.nanoTime();
+        device.sendCANMessage(frame);
+
+        long jitter = sendTime - deadline;
+        long missed = jitter / entry.periodNanos;
+        entry.sentFrames++;
+        entry.jitterSum += jitter;
+        if (jitter > entry.maxJitter) {
+            entry.maxJitter = jitter;
+        }
+
+        synchronized (lock) {
+            if (entry.cancelled) {
+                return;
+            }
+            // Skip the periods that were missed, keeping the original phase
+            entry.missedDeadlines += missed;
+            entry.deadline = deadline + (missed + 1) * entry.periodNanos;
+            insert(entry);
+        }
+    }
+}
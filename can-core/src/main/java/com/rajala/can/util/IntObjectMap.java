@@ -0,0 +1,122 @@
+package com.rajala.can.util;
+
+/**
+ * Open addressing map from int keys to objects, avoids boxing the keys on lookups. Not thread safe,
+ * publish a fully built instance if it is read by other threads.
+ */
+public class IntObjectMap<V> {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    // Keys must not be negative, which holds for every CAN ID
+    public IntObjectMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) {
+                return (V)values[i];
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V)values[i];
+                values[i] = value;
+                return old;
+            }
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size * 2 > keys.length) {
+                    rehash(keys.length << 1);
+                }
+                return null;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Raw access for iteration, slots with a negative key are empty
+    public int capacity() {
+        return keys.length;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V)values[slot];
+    }
+
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = EMPTY;
+            values[i] = null;
+        }
+        size = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            keys[i] = EMPTY;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], (V)oldValues[i]);
+            }
+        }
+    }
+
+    // Murmur3 finalizer, CAN IDs are anything but random
+    static int hash(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
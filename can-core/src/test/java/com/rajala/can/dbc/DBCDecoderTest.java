@@ -0,0 +1,152 @@
+package com.rajala.can.dbc;
+
+import com.rajala.can.CANMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DBCDecoderTest {
+
+    private static final String DBC = ""
+            + "VERSION \"\"\n"
+            + "\n"
+            + "BU_: ECU\n"
+            + "\n"
+            + "BO_ 291 Engine: 8 ECU\n"
+            + " SG_ Speed : 0|16@1+ (0.25,-10) [0|16373] \"km/h\" Vector__XXX\n"
+            + " SG_ Rpm : 23|16@0+ (1,0) [0|65535] \"rpm\" Vector__XXX\n"
+            + " SG_ Temp : 32|8@1- (1,0) [-128|127] \"C\" Vector__XXX\n"
+            + "\n"
+            + "BO_ 2147484672 Mux: 8 ECU\n"
+            + " SG_ Selector M : 0|8@1+ (1,0) [0|255] \"\" Vector__XXX\n"
+            + " SG_ A m1 : 8|8@1+ (1,0) [0|255] \"\" Vector__XXX\n"
+            + " SG_ B m2 : 8|16@1+ (1,0) [0|65535] \"\" Vector__XXX\n"
+            + "\n"
+            + "BO_ 292 Float: 4 ECU\n"
+            + " SG_ Value : 0|32@1- (1,0) [0|0] \"\" Vector__XXX\n"
+            + "\n"
+            + "BO_ 3221225472 VECTOR__INDEPENDENT_SIG_MSG: 0 Vector__XXX\n"
+            + " SG_ Unassigned : 0|8@1+ (1,0) [0|255] \"\" Vector__XXX\n"
+            + "\n"
+            + "CM_ SG_ 291 Speed \"Vehicle speed\";\n"
+            + "SIG_VALTYPE_ 292 Value : 1;\n";
+
+    private List<DBCMessage> messages;
+
+    @Before
+    public void setUp() throws IOException {
+        messages = DBCLoader.load(new StringReader(DBC));
+    }
+
+    @Test
+    public void loadsMessagesAndSignals() {
+        assertEquals(3, messages.size());
+        DBCMessage engine = messages.get(0);
+        assertEquals(291, engine.getID());
+        assertFalse(engine.isExtended());
+        assertEquals(3, engine.getSignals().size());
+        assertEquals("km/h", engine.getSignal("Speed").getUnit());
+
+        DBCMessage mux = messages.get(1);
+        assertEquals(0x400, mux.getID());
+        assertTrue(mux.isExtended());
+        assertTrue(mux.getSignal("Selector").isMultiplexer());
+        assertEquals(2, mux.getSignal("B").getMultiplexValue());
+
+        assertEquals(DBCSignal.ValueType.FLOAT, messages.get(2).getSignal("Value").getValueType());
+    }
+
+    @Test
+    public void decodesIntelMotorolaAndSignedSignals() {
+        DBCDecoder decoder = new DBCDecoder(messages.get(0));
+        double[] values = new double[4];
+        assertEquals(3, decoder.decode(0x10271234FE000000L, 8, values, 1));
+        assertEquals(2490.0, values[1], 0);
+        assertEquals(0x1234, values[2], 0);
+        assertEquals(-2.0, values[3], 0);
+        assertEquals(0x1234, decoder.decode(0x10271234FE000000L, 8, decoder.indexOf("Rpm")), 0);
+        assertEquals(-1, decoder.indexOf("Missing"));
+    }
+
+    @Test
+    public void signalsBeyondTheDLCAreNaN() {
+        DBCDecoder decoder = new DBCDecoder(messages.get(0));
+        double[] values = new double[3];
+        decoder.decode(0x10271234FE000000L, 4, values, 0);
+        assertEquals(2490.0, values[0], 0);
+        assertEquals(0x1234, values[1], 0);
+        assertTrue(Double.isNaN(values[2]));
+    }
+
+    @Test
+    public void decodesOnlyTheSelectedMultiplexedSignals() {
+        DBCDecoder decoder = new DBCDecoder(messages.get(1));
+        double[] values = new double[3];
+        decoder.decode(0x012A000000000000L, 8, values, 0);
+        assertEquals(1.0, values[0], 0);
+        assertEquals(42.0, values[1], 0);
+        assertTrue(Double.isNaN(values[2]));
+
+        decoder.decode(0x0234120000000000L, 8, values, 0);
+        assertTrue(Double.isNaN(values[1]));
+        assertEquals(0x1234, values[2], 0);
+        assertTrue(Double.isNaN(decoder.decode(0x0234120000000000L, 8, decoder.indexOf("A"))));
+    }
+
+    @Test
+    public void decodesFloatSignals() {
+        DBCDecoder decoder = new DBCDecoder(messages.get(2));
+        // 1.5f, least significant byte first
+        assertEquals(1.5, decoder.decode(0x0000C03F00000000L, 4, 0), 0);
+    }
+
+    @Test
+    public void tableLooksUpByIDAndFormat() {
+        DBCDecoderTable table = new DBCDecoderTable(messages);
+        assertEquals(3, table.size());
+        assertEquals(3, table.getMaxSignalCount());
+        assertNotNull(table.get(291, false));
+        assertNull(table.get(291, true));
+        assertNotNull(table.get(0x400, true));
+        assertNull(table.get(0x400, false));
+
+        CANMessage msg = new CANMessage();
+        msg.set(1, 291, false, 0x10271234FE000000L, 8, 0);
+        double[] values = new double[table.getMaxSignalCount()];
+        assertEquals(3, table.decode(msg, values));
+        assertEquals(2490.0, values[0], 0);
+        msg.setID(0x7FF);
+        assertEquals(DBCDecoderTable.NO_DECODER, table.decode(msg, values));
+    }
+
+    @Test
+    public void buildsDecodersFromSignals() {
+        DBCMessage message = new DBCMessage(0x10, false, "Manual", 8);
+        message.addSignal(new DBCSignal("Wide", 7, 12, false, true, 0.5, 0, 0, 0, "",
+                DBCSignal.NOT_MULTIPLEXED));
+        DBCDecoder decoder = new DBCDecoder(message);
+        // 0xFFE is -2 in 12 bits
+        assertEquals(-1.0, decoder.decode(0xFFE0000000000000L, 2, 0), 0);
+        assertTrue(Double.isNaN(decoder.decode(0xFFE0000000000000L, 1, 0)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsSignalsOutsideThePayload() throws IOException {
+        DBCLoader.load(new StringReader("BO_ 1 Bad: 8 ECU\n SG_ Big : 60|8@1+ (1,0) [0|0] \"\" X\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedSignals() throws IOException {
+        DBCLoader.load(new StringReader("BO_ 1 Bad: 8 ECU\n SG_ Broken : 0|8@1+\n"));
+    }
+}
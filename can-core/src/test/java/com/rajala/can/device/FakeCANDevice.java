@@ -0,0 +1,136 @@
+package com.rajala.can.device;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.dispatch.CANChangeFilter;
+import com.rajala.can.dispatch.CANSubscriptionRegistry;
+import com.rajala.can.stats.CANDeviceStats;
+import com.rajala.can.stats.CANLatencyStats;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Device without a bus for the tests. Sent frames are copied into a queue and completed at once on
+ * the sender's thread, receive() delivers a frame to the listeners on the caller's thread.
+ */
+public class FakeCANDevice implements ICANDevice {
+
+    private final CANSubscriptionRegistry registry = new CANSubscriptionRegistry();
+    private final BlockingQueue<CANMessage> sent = new LinkedBlockingQueue<>();
+    private final CANLatencyStats latencyStats = new CANLatencyStats();
+    private final CANDeviceStats stats = new CANDeviceStats();
+    private volatile boolean connected = true;
+    private volatile boolean stopped;
+    private volatile boolean failSends;
+
+    public void connect(String deviceName) {
+        connected = true;
+    }
+
+    public void disconnect() {
+        connected = false;
+    }
+
+    public void stop() {
+        connected = false;
+        stopped = true;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public void sendCANMessage(CANMessage msg) {
+        sendCANMessage(msg, null);
+    }
+
+    public boolean sendCANMessage(CANMessage msg, ICANTxCallback callback) {
+        CANMessage copy = new CANMessage();
+        copy.copyFrom(msg);
+        boolean ok = !failSends;
+        if (ok) {
+            sent.add(copy);
+        }
+        if (callback != null) {
+            if (ok) {
+                callback.onTxComplete(copy);
+            } else {
+                callback.onTxFailed(copy);
+            }
+        }
+        return ok;
+    }
+
+    public void addCANListener(ICANListener listener) {
+        registry.subscribe(listener, CANFilter.all());
+    }
+
+    public void addCANListener(ICANListener listener, CANFilter filter) {
+        registry.subscribe(listener, filter);
+    }
+
+    public void setCANListenerFilters(ICANListener listener, List<CANFilter> filters) {
+        registry.resubscribe(listener, filters);
+    }
+
+    public void removeCANListener(ICANListener listener) {
+        registry.unsubscribe(listener);
+    }
+
+    public void clearCANListeners() {
+        registry.clear();
+    }
+
+    public void setChangeFilter(CANChangeFilter filter) {
+    }
+
+    public CANLatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    public CANDeviceStats getStats() {
+        return stats;
+    }
+
+    // === Test methods ===
+
+    public void receive(int id, boolean extended, long data, int dlc) {
+        receive(id, extended, data, dlc, System.nanoTime());
+    }
+
+    public void receive(int id, boolean extended, long data, int dlc, long timestamp) {
+        receive(1, id, extended, data, dlc, timestamp);
+    }
+
+    public void receive(int channel, int id, boolean extended, long data, int dlc, long timestamp) {
+        CANMessage msg = new CANMessage();
+        msg.set(channel, id, extended, data, dlc, timestamp);
+        registry.dispatch(msg);
+    }
+
+    public void setFailSends(boolean failSends) {
+        this.failSends = failSends;
+    }
+
+    // The next frame sent, null if none is sent within timeoutMs
+    public CANMessage nextSent(long timeoutMs) throws InterruptedException {
+        return sent.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public int getSentCount() {
+        return sent.size();
+    }
+
+    public List<CANFilter> getFilters() {
+        return registry.getFilters();
+    }
+}
@@ -0,0 +1,110 @@
+package com.rajala.can.device.bluecan;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlueCANCodecTest {
+
+    private final List<String> frames = new ArrayList<>();
+    private final List<String> unprocessed = new ArrayList<>();
+    private final byte[] out = new byte[BlueCANCodec.MAX_COMMAND_LENGTH];
+    private BlueCANCodec codec;
+
+    @Before
+    public void setUp() {
+        codec = new BlueCANCodec(new BlueCANCodec.Callback() {
+            public void onFrame(int channel, int id, boolean extended, long data, int dlc) {
+                frames.add(String.format("%d %X %b %016X %d", channel, id, extended, data, dlc));
+            }
+
+            public void onUnprocessed(byte[] line, int length) {
+                unprocessed.add(new String(line, 0, length));
+            }
+        });
+    }
+
+    private void feed(String s) {
+        byte[] bytes = s.getBytes();
+        codec.decode(bytes, 0, bytes.length);
+    }
+
+    private String encoded(int length) {
+        return new String(out, 0, length);
+    }
+
+    @Test
+    public void decodesFrames() {
+        feed("CAN1:123:1122\r\nCAN2:18DAF110:0102030405060708\r");
+        assertEquals(2, frames.size());
+        assertEquals("1 123 false 1122000000000000 2", frames.get(0));
+        assertEquals("2 18DAF110 true 0102030405060708 8", frames.get(1));
+        assertTrue(unprocessed.isEmpty());
+    }
+
+    @Test
+    public void shortExtendedIdIsTakenFromTheDigitCount() {
+        feed("CAN1:00000123:\r");
+        assertEquals("1 123 true 0000000000000000 0", frames.get(0));
+    }
+
+    @Test
+    public void decodesAcrossReads() {
+        feed("CA");
+        feed("N1:7E");
+        feed("8:0");
+        assertTrue(frames.isEmpty());
+        feed("1\r");
+        assertEquals("1 7E8 false 0100000000000000 1", frames.get(0));
+    }
+
+    @Test
+    public void otherLinesAreUnprocessed() {
+        feed("OK\rCAN0:123:00\rCAN1:123:012\rCAN1::00\r");
+        assertTrue(frames.isEmpty());
+        assertEquals(4, unprocessed.size());
+        assertEquals("OK", unprocessed.get(0));
+    }
+
+    @Test
+    public void encodeFrameRoundTrips() {
+        int length = BlueCANCodec.encodeFrame(1, 0x123, 0x1122000000000000L, 2, out, 0);
+        assertEquals("CAN1:123:1122\r", encoded(length));
+        codec.decode(out, 0, length);
+        assertEquals("1 123 false 1122000000000000 2", frames.get(0));
+    }
+
+    @Test
+    public void encodeCommands() {
+        assertEquals("CAN1:INIT:500\r", encoded(BlueCANCodec.encodeSetBaud(1, 500, out, 0)));
+        assertEquals("CONF:CAN2:CYC3:100:7DF:0201\r",
+                encoded(BlueCANCodec.encodePeriodicFrame(2, 3, 100, 0x7DF, 0x0201000000000000L, 2, out, 0)));
+        assertEquals("CONF:CAN2:CYC3:OFF\r", encoded(BlueCANCodec.encodePeriodicSwitch(2, 3, false, out, 0)));
+    }
+
+    @Test
+    public void longestCommandFits() {
+        int length = BlueCANCodec.encodePeriodicFrame(BlueCANCodec.MAX_CHANNEL, BlueCANCodec.MAX_SLOT,
+                Integer.MAX_VALUE, 0x1FFFFFFF, -1L, 8, out, 0);
+        assertTrue(length <= BlueCANCodec.MAX_COMMAND_LENGTH);
+    }
+
+    @Test
+    public void rejectsOutOfRangeArguments() {
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodeFrame(0, 0x123, 0, 0, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodeFrame(-1, 0x123, 0, 0, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodeFrame(10, 0x123, 0, 0, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodeFrame(1, -1, 0, 0, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodeFrame(1, 0x20000000, 0, 0, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodeFrame(1, 0x123, 0, 9, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodePeriodicFrame(1, 10, 100, 0x123, 0, 0, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodePeriodicFrame(1, 0, 0, 0x123, 0, 0, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodePeriodicSwitch(0, 0, true, out, 0));
+        assertEquals(BlueCANCodec.INVALID, BlueCANCodec.encodeSetBaud(1, 0, out, 0));
+    }
+}
@@ -0,0 +1,154 @@
+package com.rajala.can.device.bluecan;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.device.ICANDeviceListener;
+import com.rajala.can.transport.BlueCANSimulator;
+import com.rajala.can.transport.ConnectionSupervisor;
+import com.rajala.can.transport.SimulatorTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BlueCANTest {
+
+    private static final long WAIT_MS = 5000;
+
+    // Connection events, true for connected
+    private final BlockingQueue<Boolean> events = new LinkedBlockingQueue<>();
+    private final ICANDeviceListener deviceListener = new ICANDeviceListener() {
+        public void onDeviceConnected(ICANDevice device, String deviceName) {
+            events.add(true);
+        }
+
+        public void onDeviceDisconnected(ICANDevice device) {
+            events.add(false);
+        }
+    };
+
+    private BlueCAN device;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        BlueCANSimulator simulator = new BlueCANSimulator(2);
+        simulator.setIDs(0x100, 0x200, 0x300);
+        device = new BlueCAN(deviceListener, new SimulatorTransport(simulator), "sim");
+        assertEquals(Boolean.TRUE, events.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(device.isConnected());
+    }
+
+    @After
+    public void tearDown() {
+        device.stop();
+    }
+
+    @Test
+    public void deliversTheSubscribedFramesOfEveryChannel() throws InterruptedException {
+        final BlockingQueue<CANMessage> received = new LinkedBlockingQueue<>();
+        device.addCANListener(new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+                CANMessage copy = new CANMessage();
+                copy.copyFrom(msg);
+                received.add(copy);
+            }
+        }, CANFilter.id(0x200));
+
+        boolean[] channels = new boolean[3];
+        for (int i = 0; i < 4; i++) {
+            CANMessage msg = received.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(msg);
+            assertEquals(0x200, msg.getID());
+            assertFalse(msg.isExtended());
+            assertEquals(8, msg.getDLC());
+            // The simulator puts the ID into the low half of the payload
+            assertEquals(0x200, msg.getLongData() & 0xFFFFFFFFL);
+            channels[msg.getChannel()] = true;
+        }
+        assertTrue(channels[1] && channels[2]);
+        assertTrue(device.getStats().snapshot().getFrameCount() > 0);
+    }
+
+    @Test
+    public void sendsValidFramesAndRefusesInvalidOnes() throws InterruptedException {
+        final BlockingQueue<Boolean> results = new LinkedBlockingQueue<>();
+        ICANTxCallback callback = new ICANTxCallback() {
+            public void onTxComplete(CANMessage msg) {
+                results.add(true);
+            }
+
+            public void onTxFailed(CANMessage msg) {
+                results.add(false);
+            }
+        };
+
+        CANMessage msg = new CANMessage(1, 0x123, 2, false, 0);
+        msg.setLongData(0x1122000000000000L, 2);
+        assertTrue(device.sendCANMessage(msg, callback));
+        assertEquals(Boolean.TRUE, results.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+
+        msg.setChannel(BlueCANCodec.MAX_CHANNEL + 1);
+        assertFalse(device.sendCANMessage(msg, callback));
+        assertEquals(Boolean.FALSE, results.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, device.getStats().snapshot().getTransmitFailureCount());
+    }
+
+    @Test
+    public void startsAndStopsCyclicFrames() {
+        CANMessage msg = new CANMessage(1, 0x321, 8, true, 100);
+        assertTrue(device.startCyclic(0, msg));
+        assertTrue(device.stopCyclic(0));
+        // An invalid period falls back to the caller
+        assertFalse(device.startCyclic(1, new CANMessage(1, 0x321, 8, true, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCyclicSlotsOutOfRange() {
+        device.startCyclic(device.getCyclicSlotCount(), new CANMessage(1, 0x321, 8, true, 100));
+    }
+
+    @Test
+    public void reconnectsAfterDisconnect() throws InterruptedException {
+        final AtomicBoolean flowing = new AtomicBoolean();
+        device.addCANListener(new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+                flowing.set(true);
+            }
+        });
+
+        device.disconnect();
+        assertEquals(Boolean.FALSE, events.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertFalse(device.isConnected());
+        assertEquals(ConnectionSupervisor.State.DISCONNECTED, device.getSupervisor().getState());
+
+        flowing.set(false);
+        device.connect("sim");
+        assertEquals(Boolean.TRUE, events.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!flowing.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(flowing.get());
+        assertEquals(1, device.getStats().snapshot().getReconnectCount());
+    }
+
+    @Test
+    public void stopEndsTheSupervisor() {
+        device.stop();
+        assertEquals(ConnectionSupervisor.State.STOPPED, device.getSupervisor().getState());
+        assertFalse(device.isConnected());
+    }
+}
@@ -0,0 +1,81 @@
+package com.rajala.can.device.elm327;
+
+import com.rajala.can.CANFilter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ELM327AcceptanceFilterTest {
+
+    private static ELM327AcceptanceFilter compute(CANFilter... filters) {
+        return ELM327AcceptanceFilter.compute(Arrays.asList(filters));
+    }
+
+    @Test
+    public void noSubscriptionsPassEverything() {
+        assertSame(ELM327AcceptanceFilter.PASS_ALL, ELM327AcceptanceFilter.compute(Collections.<CANFilter>emptyList()));
+    }
+
+    @Test
+    public void singleIdUsesTheReceiveAddress() {
+        ELM327AcceptanceFilter filter = compute(CANFilter.id(0x7E8));
+        assertEquals(0x7E8, filter.getFilter());
+        assertEquals(CANFilter.MAX_STANDARD_ID, filter.getMask());
+        assertEquals(Arrays.asList("ATCRA", "ATCRA7E8"), filter.toCommands());
+    }
+
+    @Test
+    public void idsFoldIntoTheBitsTheyShare() {
+        ELM327AcceptanceFilter filter = compute(CANFilter.id(0x7E8), CANFilter.id(0x7E9), CANFilter.id(0x7EA));
+        assertEquals(0x7FC, filter.getMask());
+        assertEquals(0x7E8, filter.getFilter());
+        for (int id = 0x7E8; id <= 0x7EB; id++) {
+            assertTrue(filter.accepts(id));
+        }
+        assertFalse(filter.accepts(0x7E0));
+        assertEquals(Arrays.asList("ATCRA", "ATCF7E8", "ATCM7FC"), filter.toCommands());
+    }
+
+    @Test
+    public void rangesAndMasksAreCovered() {
+        ELM327AcceptanceFilter filter = compute(CANFilter.range(0x100, 0x13F), CANFilter.mask(0x120, 0x7F0));
+        for (int id = 0x100; id <= 0x13F; id++) {
+            assertTrue(filter.accepts(id));
+        }
+        assertFalse(filter.accepts(0x140));
+        assertFalse(filter.accepts(0x0FF));
+    }
+
+    @Test
+    public void extendedIds() {
+        ELM327AcceptanceFilter filter = compute(CANFilter.extendedId(0x18DAF110), CANFilter.extendedId(0x18DAF111));
+        assertTrue(filter.isExtended());
+        assertEquals(Arrays.asList("ATCRA", "ATCF18DAF110", "ATCM1FFFFFFE"), filter.toCommands());
+    }
+
+    @Test
+    public void unnarrowableSubscriptionsPassEverything() {
+        assertTrue(compute(CANFilter.id(0x100), CANFilter.all()).isPassAll());
+        assertTrue(compute(CANFilter.id(0x100), CANFilter.extendedId(0x100)).isPassAll());
+        // Disagreeing on every bit leaves nothing to filter on
+        assertTrue(compute(CANFilter.id(0x000), CANFilter.id(0x7FF)).isPassAll());
+
+        List<String> commands = ELM327AcceptanceFilter.PASS_ALL.toCommands();
+        assertEquals(Arrays.asList("ATCRA", "ATCM000", "ATCM00000000"), commands);
+    }
+
+    @Test
+    public void equalFiltersCompareEqual() {
+        assertEquals(compute(CANFilter.id(0x7E8)), compute(CANFilter.id(0x7E8)));
+        assertEquals(compute(CANFilter.id(0x7E8)).hashCode(), compute(CANFilter.id(0x7E8)).hashCode());
+        assertFalse(compute(CANFilter.id(0x7E8)).equals(compute(CANFilter.id(0x7E9))));
+    }
+}
@@ -0,0 +1,114 @@
+package com.rajala.can.device.elm327;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ELM327ParserTest {
+
+    private final List<String> frames = new ArrayList<>();
+    private final List<Integer> events = new ArrayList<>();
+    private ELM327Parser parser;
+
+    @Before
+    public void setUp() {
+        parser = new ELM327Parser(new ELM327Parser.Callback() {
+            public void onFrame(int id, boolean extended, long data, int dlc) {
+                frames.add(String.format("%X %b %016X %d", id, extended, data, dlc));
+            }
+
+            public void onEvent(int event, byte[] line, int length) {
+                events.add(event);
+            }
+        });
+    }
+
+    private void feed(String s) {
+        byte[] bytes = s.getBytes();
+        parser.parse(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void spacedStandardFrame() {
+        feed("7E8 03 41 0D 32\r");
+        assertEquals(1, frames.size());
+        assertEquals("7E8 false 03410D3200000000 4", frames.get(0));
+    }
+
+    @Test
+    public void spacedExtendedFrame() {
+        feed("18 DA F1 10 02 01 00\r");
+        assertEquals("18DAF110 true 0201000000000000 3", frames.get(0));
+    }
+
+    @Test
+    public void packedFramesAreToldApartByParity() {
+        feed("1230102\r18DAF11001\r");
+        assertEquals(2, frames.size());
+        assertEquals("123 false 0102000000000000 2", frames.get(0));
+        assertEquals("18DAF110 true 0100000000000000 1", frames.get(1));
+    }
+
+    @Test
+    public void frameWithoutPayload() {
+        feed("123\r");
+        assertEquals("123 false 0000000000000000 0", frames.get(0));
+    }
+
+    @Test
+    public void linesMaySpanReads() {
+        feed("7E");
+        feed("8 01 0");
+        assertTrue(frames.isEmpty());
+        feed("2\n");
+        assertEquals("7E8 false 0102000000000000 2", frames.get(0));
+    }
+
+    @Test
+    public void blankLinesAndNulBytesAreIgnored() {
+        feed("\r\n\r" + (char)0 + (char)0 + "123 01\r");
+        assertEquals(1, frames.size());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void outOfBandEvents() {
+        feed("OK\rBUFFER FULL\rNO DATA\rSTOPPED\rCAN ERROR\r?\rELM327 v1.5\r>");
+        assertEquals(ELM327Parser.EVENT_OK, (int)events.get(0));
+        assertEquals(ELM327Parser.EVENT_BUFFER_FULL, (int)events.get(1));
+        assertEquals(ELM327Parser.EVENT_NO_DATA, (int)events.get(2));
+        assertEquals(ELM327Parser.EVENT_STOPPED, (int)events.get(3));
+        assertEquals(ELM327Parser.EVENT_ERROR, (int)events.get(4));
+        assertEquals(ELM327Parser.EVENT_UNKNOWN_COMMAND, (int)events.get(5));
+        assertEquals(ELM327Parser.EVENT_TEXT, (int)events.get(6));
+        assertEquals(ELM327Parser.EVENT_PROMPT, (int)events.get(7));
+        assertTrue(frames.isEmpty());
+    }
+
+    @Test
+    public void malformedFrames() {
+        // Odd data length, an unknown header width and more than 8 data bytes
+        feed("123 010\r12345 01\r123 01 02 03 04 05 06 07 08 09\r");
+        assertTrue(frames.isEmpty());
+        assertEquals(3, events.size());
+        for (int event : events) {
+            assertEquals(ELM327Parser.EVENT_MALFORMED, event);
+        }
+    }
+
+    @Test
+    public void resetDropsThePartialLine() {
+        feed("7E8 01");
+        parser.reset();
+        feed("123 02\r");
+        assertEquals(1, frames.size());
+        assertEquals("123 false 0200000000000000 1", frames.get(0));
+        assertFalse(events.contains(ELM327Parser.EVENT_MALFORMED));
+    }
+}
@@ -0,0 +1,169 @@
+package com.rajala.can.device.elm327;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.device.ICANDeviceListener;
+import com.rajala.can.transport.ConnectionSupervisor;
+import com.rajala.can.transport.ELM327Simulator;
+import com.rajala.can.transport.SimulatorTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ELM327Test {
+
+    private static final long WAIT_MS = 5000;
+
+    // Connection events, true for connected
+    private final BlockingQueue<Boolean> events = new LinkedBlockingQueue<>();
+    private final ICANDeviceListener deviceListener = new ICANDeviceListener() {
+        public void onDeviceConnected(ICANDevice device, String deviceName) {
+            events.add(true);
+        }
+
+        public void onDeviceDisconnected(ICANDevice device) {
+            events.add(false);
+        }
+    };
+
+    // Copies of the frames a listener received
+    private static class Collector implements ICANListener {
+
+        final BlockingQueue<CANMessage> received = new LinkedBlockingQueue<>();
+
+        public void onCANMessage(CANMessage msg) {
+            CANMessage copy = new CANMessage();
+            copy.copyFrom(msg);
+            received.add(copy);
+        }
+
+        CANMessage next() throws InterruptedException {
+            return received.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private ELM327 device;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        ELM327Simulator simulator = new ELM327Simulator();
+        simulator.setIDs(0x100, 0x200, 0x300);
+        simulator.setFrameRate(500);
+        device = new ELM327(deviceListener, new SimulatorTransport(simulator), "sim");
+        assertEquals(Boolean.TRUE, events.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(device.isConnected());
+    }
+
+    @After
+    public void tearDown() {
+        device.stop();
+    }
+
+    @Test
+    public void monitorsTheSubscribedIDs() throws InterruptedException {
+        Collector collector = new Collector();
+        device.addCANListener(collector, CANFilter.id(0x200));
+        for (int i = 0; i < 3; i++) {
+            CANMessage msg = collector.next();
+            assertNotNull(msg);
+            assertEquals(0x200, msg.getID());
+            assertEquals(8, msg.getDLC());
+            assertEquals(0x200, msg.getLongData() & 0xFFFFFFFFL);
+        }
+    }
+
+    @Test
+    public void answersRequestsWhileMonitoring() throws InterruptedException {
+        Collector monitor = new Collector();
+        device.addCANListener(monitor, CANFilter.id(0x100));
+        assertNotNull(monitor.next());
+
+        Collector responses = new Collector();
+        device.addCANListener(responses, CANFilter.id(0x7E8));
+        assertEquals(Boolean.TRUE, requestEngineSpeed(0x7DF));
+        CANMessage response = responses.next();
+        assertNotNull(response);
+        assertEquals(0x41, response.getByte(1));
+        assertEquals(0x0C, response.getByte(2));
+
+        // Monitoring picks up again after the response
+        monitor.received.clear();
+        assertNotNull(monitor.next());
+    }
+
+    @Test
+    public void answersRequestsAfterAReconnect() throws InterruptedException {
+        Collector responses = new Collector();
+        device.addCANListener(responses, CANFilter.id(0x7E8));
+        assertEquals(Boolean.TRUE, requestEngineSpeed(0x7E0));
+        assertNotNull(responses.next());
+
+        device.disconnect();
+        assertEquals(Boolean.FALSE, events.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(Boolean.FALSE, requestEngineSpeed(0x7E0));
+        device.connect("sim");
+        assertEquals(Boolean.TRUE, events.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+
+        // The adapter was reset, the transmitter starts over with an empty header cache
+        responses.received.clear();
+        assertEquals(Boolean.TRUE, requestEngineSpeed(0x7E0));
+        assertNotNull(responses.next());
+        assertEquals(0, device.getTransmitter().getQueueDepth());
+    }
+
+    // Mode 01 PID 0C, engine speed. The adapter adds the ISO-TP length byte itself.
+    private Boolean requestEngineSpeed(int id) throws InterruptedException {
+        final BlockingQueue<Boolean> results = new LinkedBlockingQueue<>();
+        CANMessage request = new CANMessage(1, id, 2, false, 0);
+        request.setLongData(0x010C000000000000L, 2);
+        if (!device.sendRequest(request, 1, new ICANTxCallback() {
+            public void onTxComplete(CANMessage msg) {
+                results.add(true);
+            }
+
+            public void onTxFailed(CANMessage msg) {
+                results.add(false);
+            }
+        })) {
+            return false;
+        }
+        return results.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void reconnectsAfterDisconnect() throws InterruptedException {
+        Collector collector = new Collector();
+        device.addCANListener(collector);
+
+        device.disconnect();
+        assertEquals(Boolean.FALSE, events.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertFalse(device.isConnected());
+        assertEquals(ConnectionSupervisor.State.DISCONNECTED, device.getSupervisor().getState());
+
+        device.connect("sim");
+        assertEquals(Boolean.TRUE, events.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        collector.received.clear();
+        assertNotNull(collector.next());
+        assertEquals(1, device.getStats().snapshot().getReconnectCount());
+    }
+
+    @Test
+    public void refusesCommandsOnceStopped() {
+        device.stop();
+        assertEquals(ConnectionSupervisor.State.STOPPED, device.getSupervisor().getState());
+        assertEquals(ELM327CommandEngine.RESULT_DISCONNECTED, device.sendOBDCommand("ATI"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.rajala.can.device.replay;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.record.CANTraceFormat;
+import com.rajala.can.record.TraceFiles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayDeviceTest {
+
+    private static final long MS = 1000000L;
+    private static final long WALL = 1500000000000L;
+    private static final long WAIT_MS = 5000;
+
+    private final BlockingQueue<Integer> ids = new LinkedBlockingQueue<>();
+    private File directory;
+    private ReplayDevice device;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = TraceFiles.createDirectory();
+        device = new ReplayDevice();
+        device.addCANListener(new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+                ids.add(msg.getID());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        device.stop();
+        TraceFiles.delete(directory);
+    }
+
+    @Test
+    public void pacesFramesByTheirTimestamps() throws Exception {
+        TraceFiles.write(file(0), WALL, 0, 1000 * MS, 1050 * MS, 1100 * MS, 1150 * MS, 1200 * MS);
+        long start = System.nanoTime();
+        device.connect(directory.getPath());
+        assertTrue(device.awaitCompletion(WAIT_MS));
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue("Played in " + elapsed / MS + " ms", elapsed >= 190 * MS);
+        assertEquals(5, device.getPlayedFrameCount());
+        assertEquals(5, device.getPosition());
+        assertEquals(Arrays.asList(0x100, 0x101, 0x102, 0x103, 0x104), received(5));
+    }
+
+    @Test
+    public void speedDividesTheWaits() throws Exception {
+        TraceFiles.write(file(0), WALL, 0, 1000 * MS, 1400 * MS, 1800 * MS);
+        device.setSpeed(4);
+        long start = System.nanoTime();
+        device.connect(directory.getPath());
+        assertTrue(device.awaitCompletion(WAIT_MS));
+        long elapsed = System.nanoTime() - start;
+        assertTrue("Played in " + elapsed / MS + " ms", elapsed >= 190 * MS && elapsed < 700 * MS);
+    }
+
+    @Test
+    public void recordingsOfSeveralRunsPlayBackToBack() throws Exception {
+        // The second run is hours later and after a reboot, neither may stall or rush playback
+        TraceFiles.write(file(0), WALL, 900 * MS, 1000 * MS, 1050 * MS);
+        TraceFiles.write(file(1), WALL + 3 * 3600000L, 10 * MS, 20 * MS, 120 * MS);
+        long start = System.nanoTime();
+        device.connect(directory.getPath());
+        assertTrue(device.awaitCompletion(WAIT_MS));
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue("Played in " + elapsed / MS + " ms", elapsed >= 140 * MS && elapsed < 2000 * MS);
+        assertEquals(Arrays.asList(0x100, 0x101, 0x100, 0x101), received(4));
+    }
+
+    @Test
+    public void seeksRelativeToTheTraceStart() throws Exception {
+        long[] timestamps = new long[10];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = (2000 + 1000 * i) * MS;
+        }
+        TraceFiles.write(file(0), WALL, 0, timestamps);
+        device.connect(directory.getPath());
+        assertEquals(Integer.valueOf(0x100), ids.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+
+        // Skips the waits for frames 1 to 7
+        device.seek(7500 * MS);
+        assertTrue(device.awaitCompletion(WAIT_MS));
+        assertEquals(Arrays.asList(0x108, 0x109), received(2));
+        assertEquals(10, device.getPosition());
+    }
+
+    @Test
+    public void unlimitedSpeedPlaysWithoutWaiting() throws Exception {
+        TraceFiles.write(file(0), WALL, 0, 0, 3600000 * MS);
+        device.setSpeed(ReplayDevice.SPEED_UNLIMITED);
+        device.connect(file(0).getPath());
+        assertTrue(device.awaitCompletion(WAIT_MS));
+        assertEquals(2, device.getPlayedFrameCount());
+        assertFalse(device.isConnected());
+    }
+
+    @Test
+    public void cannotTransmit() {
+        assertFalse(device.sendCANMessage(new CANMessage(), null));
+    }
+
+    private List<Integer> received(int count) throws InterruptedException {
+        Integer[] result = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = ids.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(result[i]);
+        }
+        assertTrue(ids.isEmpty());
+        return Arrays.asList(result);
+    }
+
+    private File file(int index) {
+        return new File(directory, "capture-0000" + index + CANTraceFormat.FILE_EXTENSION);
+    }
+}
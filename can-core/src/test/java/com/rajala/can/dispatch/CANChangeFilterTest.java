@@ -0,0 +1,88 @@
+package com.rajala.can.dispatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CANChangeFilterTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void passesOnlyChanges() {
+        CANChangeFilter filter = new CANChangeFilter();
+        assertTrue(filter.accept(1, 0x100, false, 0x11L, 1, 0));
+        assertFalse(filter.accept(1, 0x100, false, 0x11L, 1, MS));
+        assertTrue(filter.accept(1, 0x100, false, 0x12L, 1, 2 * MS));
+        // A different DLC is a change even with the same bits
+        assertTrue(filter.accept(1, 0x100, false, 0x12L, 2, 3 * MS));
+        assertEquals(1, filter.getSuppressedFrameCount());
+    }
+
+    @Test
+    public void keysIncludeChannelAndFormat() {
+        CANChangeFilter filter = new CANChangeFilter();
+        assertTrue(filter.accept(1, 0x100, false, 0, 0, 0));
+        assertTrue(filter.accept(2, 0x100, false, 0, 0, 0));
+        assertTrue(filter.accept(1, 0x100, true, 0, 0, 0));
+        assertFalse(filter.accept(2, 0x100, false, 0, 0, 0));
+    }
+
+    @Test
+    public void interleavedIdsKeepTheirOwnPayload() {
+        CANChangeFilter filter = new CANChangeFilter();
+        assertTrue(filter.accept(1, 0x100, false, 1, 1, 0));
+        assertTrue(filter.accept(1, 0x200, false, 2, 1, 0));
+        assertFalse(filter.accept(1, 0x100, false, 1, 1, 0));
+        assertFalse(filter.accept(1, 0x200, false, 2, 1, 0));
+    }
+
+    @Test
+    public void heartbeatPassesUnchangedFrames() {
+        CANChangeFilter filter = new CANChangeFilter(100);
+        assertTrue(filter.accept(1, 0x100, false, 1, 1, 0));
+        assertFalse(filter.accept(1, 0x100, false, 1, 1, 99 * MS));
+        assertTrue(filter.accept(1, 0x100, false, 1, 1, 100 * MS));
+        assertFalse(filter.accept(1, 0x100, false, 1, 1, 150 * MS));
+    }
+
+    @Test
+    public void ignoreMaskHidesCounters() {
+        CANChangeFilter filter = new CANChangeFilter();
+        filter.setIgnoreMask(0x100, false, CANChangeFilter.byteMask(7));
+        assertTrue(filter.accept(1, 0x100, false, 0x1100000000000001L, 8, 0));
+        assertFalse(filter.accept(1, 0x100, false, 0x1100000000000002L, 8, 0));
+        assertTrue(filter.accept(1, 0x100, false, 0x1200000000000003L, 8, 0));
+        filter.setIgnoreMask(0x100, false, 0);
+        assertTrue(filter.accept(1, 0x100, false, 0x1200000000000004L, 8, 0));
+    }
+
+    @Test
+    public void byteMask() {
+        assertEquals(0xFF00000000000000L, CANChangeFilter.byteMask(0));
+        assertEquals(0x00000000000000FFL, CANChangeFilter.byteMask(7));
+        assertEquals(0xFF000000000000FFL, CANChangeFilter.byteMask(0, 7));
+    }
+
+    @Test
+    public void resetForgetsPayloads() {
+        CANChangeFilter filter = new CANChangeFilter();
+        assertTrue(filter.accept(1, 0x100, false, 1, 1, 0));
+        filter.reset();
+        assertTrue(filter.accept(1, 0x100, false, 1, 1, 0));
+        assertFalse(filter.accept(1, 0x100, false, 1, 1, 0));
+    }
+
+    @Test
+    public void growsPastTheInitialTable() {
+        CANChangeFilter filter = new CANChangeFilter();
+        for (int id = 0; id < 2000; id++) {
+            assertTrue(filter.accept(1, id, false, id, 2, 0));
+        }
+        for (int id = 0; id < 2000; id++) {
+            assertFalse(filter.accept(1, id, false, id, 2, 0));
+        }
+    }
+}
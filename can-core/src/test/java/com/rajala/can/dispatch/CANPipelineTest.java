@@ -0,0 +1,113 @@
+package com.rajala.can.dispatch;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CANPipelineTest {
+
+    private CANPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        pipeline = new CANPipeline("test", 4, new BlockingWaitStrategy());
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.stop();
+    }
+
+    @Test
+    public void deliversSubscribedFrames() throws InterruptedException {
+        final CountDownLatch received = new CountDownLatch(2);
+        final List<Long> data = new CopyOnWriteArrayList<>();
+        pipeline.addListener(new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+                data.add(msg.getLongData());
+                received.countDown();
+            }
+        }, CANFilter.id(0x100));
+        pipeline.start();
+
+        long now = System.nanoTime();
+        assertTrue(pipeline.publish(1, 0x100, false, 0x11L, 1, now));
+        assertTrue(pipeline.publish(1, 0x200, false, 0x22L, 1, now));
+        assertTrue(pipeline.publish(1, 0x100, false, 0x33L, 1, now));
+
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0x11L, 0x33L), data);
+        assertEquals(3, pipeline.getStats().snapshot().getFrameCount());
+    }
+
+    @Test
+    public void fullRingDropsAndCountsTheOverflow() {
+        pipeline.addListener(new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+            }
+        }, CANFilter.all());
+
+        // Not started, so nothing drains the ring
+        for (int i = 0; i < 4; i++) {
+            assertTrue(pipeline.publish(1, 0x100 + i, false, 0, 0, 0));
+        }
+        assertFalse(pipeline.publish(1, 0x200, false, 0x42L, 1, 0));
+        assertEquals(1, pipeline.getOverflowCount());
+        assertEquals(4, pipeline.getDepth());
+    }
+
+    @Test
+    public void framesWithoutSubscribersTakeNoSlot() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pipeline.publish(1, 0x100, false, i, 1, 0));
+        }
+        assertEquals(0, pipeline.getDepth());
+    }
+
+    @Test
+    public void fullRingDropsWithoutTheFilterRememberingTheFrame() {
+        pipeline.addListener(new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+            }
+        }, CANFilter.all());
+        CANChangeFilter filter = new CANChangeFilter();
+        pipeline.setChangeFilter(filter);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(pipeline.publish(1, 0x100 + i, false, 0, 0, 0));
+        }
+        assertFalse(pipeline.publish(1, 0x200, false, 0x42L, 1, 0));
+
+        // Had the filter remembered the dropped frame, it would now suppress the resend
+        assertTrue(filter.accept(1, 0x200, false, 0x42L, 1, 0));
+    }
+
+    @Test
+    public void rejectedFramesGiveTheirSlotBack() {
+        pipeline.addListener(new ICANListener() {
+            public void onCANMessage(CANMessage msg) {
+            }
+        }, CANFilter.all());
+        pipeline.setChangeFilter(new CANChangeFilter());
+        assertTrue(pipeline.publish(1, 0x100, false, 1, 1, 0));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pipeline.publish(1, 0x100, false, 1, 1, 0));
+        }
+        assertEquals(1, pipeline.getDepth());
+        assertEquals(0, pipeline.getOverflowCount());
+    }
+}
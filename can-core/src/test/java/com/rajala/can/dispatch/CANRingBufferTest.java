@@ -0,0 +1,87 @@
+package com.rajala.can.dispatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CANRingBufferTest {
+
+    private CANRingBuffer ring;
+    private Sequence consumer;
+
+    @Before
+    public void setUp() {
+        ring = new CANRingBuffer(4, new YieldingWaitStrategy());
+        consumer = new Sequence();
+        ring.addGatingSequence(consumer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAPowerOfTwo() {
+        new CANRingBuffer(6, new YieldingWaitStrategy());
+    }
+
+    @Test
+    public void claimsUpToCapacity() {
+        for (int i = 0; i < 4; i++) {
+            long sequence = ring.tryNext();
+            assertEquals(i, sequence);
+            ring.get(sequence).setID(0x100 + i);
+            ring.publish(sequence);
+        }
+        assertEquals(-1, ring.tryNext());
+        assertEquals(1, ring.getOverflowCount());
+        assertEquals(4, ring.getDepth());
+        assertEquals(0x102, ring.get(2).getID());
+    }
+
+    @Test
+    public void consumerFreesSlots() {
+        for (int i = 0; i < 4; i++) {
+            ring.publish(ring.tryNext());
+        }
+        consumer.set(1);
+        assertEquals(4, ring.tryNext());
+        assertEquals(5, ring.tryNext());
+        assertEquals(-1, ring.tryNext());
+        // Slots wrap around
+        assertTrue(ring.get(4) == ring.get(0));
+    }
+
+    @Test
+    public void tryClaimDoesNotCountOverflows() {
+        for (int i = 0; i < 4; i++) {
+            ring.publish(ring.tryClaim());
+        }
+        assertEquals(-1, ring.tryClaim());
+        assertEquals(0, ring.getOverflowCount());
+    }
+
+    @Test
+    public void cancelReusesTheSequence() {
+        long first = ring.tryNext();
+        ring.publish(first);
+        long second = ring.tryNext();
+        ring.cancel(second);
+        assertEquals(second, ring.tryNext());
+        assertEquals(first, ring.getCursor().get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void publishedSequencesCannotBeCancelled() {
+        long sequence = ring.tryNext();
+        ring.publish(sequence);
+        ring.cancel(sequence);
+    }
+
+    @Test
+    public void removedConsumerNoLongerGates() {
+        for (int i = 0; i < 4; i++) {
+            ring.publish(ring.tryNext());
+        }
+        ring.removeGatingSequence(consumer);
+        assertEquals(4, ring.tryNext());
+    }
+}
@@ -0,0 +1,126 @@
+package com.rajala.can.dispatch;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CANSubscriptionRegistryTest {
+
+    private static class Recorder implements ICANListener {
+        final List<Integer> ids = new ArrayList<>();
+
+        public void onCANMessage(CANMessage msg) {
+            ids.add(msg.getID());
+        }
+    }
+
+    private final CANSubscriptionRegistry registry = new CANSubscriptionRegistry();
+    private final CANMessage msg = new CANMessage();
+
+    private void dispatch(int id, boolean extended) {
+        msg.set(1, id, extended, 0, 0, 0);
+        registry.dispatch(msg);
+    }
+
+    @Test
+    public void exactRangeAndMaskFilters() {
+        Recorder exact = new Recorder();
+        Recorder range = new Recorder();
+        Recorder mask = new Recorder();
+        registry.subscribe(exact, CANFilter.id(0x7E8));
+        registry.subscribe(range, CANFilter.range(0x100, 0x1FF));
+        registry.subscribe(mask, CANFilter.mask(0x7E0, 0x7F0));
+
+        dispatch(0x7E8, false);
+        dispatch(0x150, false);
+        dispatch(0x200, false);
+        dispatch(0x7E8, true);
+
+        assertEquals(Arrays.asList(0x7E8), exact.ids);
+        assertEquals(Arrays.asList(0x150), range.ids);
+        assertEquals(Arrays.asList(0x7E8), mask.ids);
+    }
+
+    @Test
+    public void extendedFilters() {
+        Recorder exact = new Recorder();
+        Recorder wildcard = new Recorder();
+        registry.subscribe(exact, CANFilter.extendedId(0x18DAF110));
+        registry.subscribe(wildcard, CANFilter.extendedMask(0x18DAF100, 0x1FFFFF00));
+
+        dispatch(0x18DAF110, true);
+        dispatch(0x18DAF1FF, true);
+        dispatch(0x110, false);
+
+        assertEquals(Arrays.asList(0x18DAF110), exact.ids);
+        assertEquals(Arrays.asList(0x18DAF110, 0x18DAF1FF), wildcard.ids);
+        assertTrue(registry.hasSubscribers(0x18DAF1FF, true));
+        assertFalse(registry.hasSubscribers(0x18DAF200, true));
+    }
+
+    @Test
+    public void overlappingFiltersDeliverOnce() {
+        Recorder listener = new Recorder();
+        registry.subscribe(listener, CANFilter.all());
+        registry.subscribe(listener, CANFilter.id(0x100));
+        registry.subscribe(listener, CANFilter.extendedRange(0, 0x1000));
+
+        dispatch(0x100, false);
+        dispatch(0x100, true);
+
+        assertEquals(Arrays.asList(0x100, 0x100), listener.ids);
+    }
+
+    @Test
+    public void unsubscribeAndClear() {
+        Recorder a = new Recorder();
+        Recorder b = new Recorder();
+        registry.subscribe(a, CANFilter.id(0x100));
+        registry.subscribe(b, CANFilter.id(0x100));
+        registry.unsubscribe(a);
+        dispatch(0x100, false);
+        assertTrue(a.ids.isEmpty());
+        assertEquals(1, b.ids.size());
+
+        registry.clear();
+        assertFalse(registry.hasSubscribers(0x100, false));
+        assertTrue(registry.getFilters().isEmpty());
+    }
+
+    @Test
+    public void resubscribeSwapsInOneStep() {
+        final int[] changes = new int[1];
+        registry.setChangeListener(new CANSubscriptionRegistry.ChangeListener() {
+            public void onSubscriptionsChanged(CANSubscriptionRegistry r) {
+                changes[0]++;
+            }
+        });
+        Recorder listener = new Recorder();
+        registry.resubscribe(listener, Arrays.asList(CANFilter.id(0x100), CANFilter.id(0x200), CANFilter.id(0x100)));
+        assertEquals(1, changes[0]);
+        assertEquals(2, registry.getFilters().size());
+
+        // Same set in another order changes nothing
+        registry.resubscribe(listener, Arrays.asList(CANFilter.id(0x200), CANFilter.id(0x100)));
+        assertEquals(1, changes[0]);
+
+        registry.resubscribe(listener, Arrays.asList(CANFilter.id(0x300)));
+        assertEquals(2, changes[0]);
+        assertFalse(registry.hasSubscribers(0x100, false));
+        assertTrue(registry.hasSubscribers(0x300, false));
+
+        registry.resubscribe(listener, Collections.<CANFilter>emptyList());
+        assertFalse(registry.hasSubscribers(0x300, false));
+    }
+}
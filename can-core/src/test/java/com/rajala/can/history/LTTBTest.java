@@ -0,0 +1,62 @@
+package com.rajala.can.history;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LTTBTest {
+
+    private static double[] ramp(int count) {
+        double[] x = new double[count];
+        for (int i = 0; i < count; i++) {
+            x[i] = i;
+        }
+        return x;
+    }
+
+    @Test
+    public void keepsEverythingBelowTheThreshold() {
+        int[] selected = new int[10];
+        int kept = LTTB.downsample(ramp(5), new float[5], 5, 10, selected);
+        assertEquals(5, kept);
+        for (int i = 0; i < kept; i++) {
+            assertEquals(i, selected[i]);
+        }
+    }
+
+    @Test
+    public void keepsEndsAndAscendingIndices() {
+        int count = 1000;
+        float[] y = new float[count];
+        for (int i = 0; i < count; i++) {
+            y[i] = (float)Math.sin(i / 25.0);
+        }
+        int[] selected = new int[50];
+        int kept = LTTB.downsample(ramp(count), y, count, 50, selected);
+        assertEquals(50, kept);
+        assertEquals(0, selected[0]);
+        assertEquals(count - 1, selected[kept - 1]);
+        for (int i = 1; i < kept; i++) {
+            assertTrue(selected[i] > selected[i - 1]);
+        }
+    }
+
+    @Test
+    public void peaksSurvive() {
+        int count = 500;
+        float[] y = new float[count];
+        y[123] = 100;
+        y[377] = -100;
+        int[] selected = new int[20];
+        int kept = LTTB.downsample(ramp(count), y, count, 20, selected);
+        boolean high = false;
+        boolean low = false;
+        for (int i = 0; i < kept; i++) {
+            high |= selected[i] == 123;
+            low |= selected[i] == 377;
+        }
+        assertTrue(high);
+        assertTrue(low);
+    }
+}
@@ -0,0 +1,124 @@
+package com.rajala.can.history;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SignalSeriesTest {
+
+    private static final long MS = 1000000L;
+
+    // count samples 10 ms apart, sample i has value i
+    private static SignalSeries ramp(SignalSeries series, int count) {
+        for (int i = 0; i < count; i++) {
+            series.add(i * 10 * MS, i);
+        }
+        return series;
+    }
+
+    @Test
+    public void shortWindowsComeFromTheRawSamples() {
+        // More samples than the rings start with, so the raw ring has grown
+        SignalSeries series = ramp(new SignalSeries(), 1000);
+        SeriesQuery q = new SeriesQuery(1000);
+        series.query(0, 10000 * MS, q);
+
+        assertEquals(SeriesQuery.TIER_RAW, q.getTier());
+        assertEquals(1000, q.getCount());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i * 10 * MS, q.getTime(i));
+            assertEquals(i, q.getValue(i), 0);
+        }
+        assertEquals(1000, series.getSampleCount());
+        assertEquals(999, series.getLatest(), 0);
+    }
+
+    @Test
+    public void olderSamplesComeFromTheMinMaxBuckets() {
+        // The raw ring only keeps the last 64 samples
+        SignalSeries series = ramp(new SignalSeries(64, 6000, 14400), 1000);
+        SeriesQuery q = new SeriesQuery(300);
+        series.query(0, 9999 * MS, q);
+
+        assertEquals(SeriesQuery.TIER_100MS, q.getTier());
+        assertEquals(200, q.getCount());
+        for (int k = 0; k < 100; k++) {
+            assertEquals(k * 100 * MS + 50 * MS, q.getTime(2 * k));
+            assertEquals(10 * k, q.getValue(2 * k), 0);
+            assertEquals(10 * k + 9, q.getValue(2 * k + 1), 0);
+        }
+    }
+
+    @Test
+    public void longWindowsFallBackToTheOneSecondBuckets() {
+        // 100 ms buckets for the last two seconds only
+        SignalSeries series = ramp(new SignalSeries(64, 20, 14400), 1000);
+        SeriesQuery q = new SeriesQuery(300);
+        series.query(0, 9999 * MS, q);
+
+        assertEquals(SeriesQuery.TIER_1S, q.getTier());
+        assertEquals(20, q.getCount());
+        for (int k = 0; k < 10; k++) {
+            assertEquals(k * 1000 * MS + 500 * MS, q.getTime(2 * k));
+            assertEquals(100 * k, q.getValue(2 * k), 0);
+            assertEquals(100 * k + 99, q.getValue(2 * k + 1), 0);
+        }
+    }
+
+    @Test
+    public void bucketsSkippedOverStayEmpty() {
+        SignalSeries series = new SignalSeries(1, 6000, 14400);
+        series.add(0, 1);
+        series.add(30000 * MS, 2);
+        SeriesQuery q = new SeriesQuery(200);
+        series.query(0, 30000 * MS, q);
+
+        assertEquals(SeriesQuery.TIER_100MS, q.getTier());
+        assertEquals(2, q.getCount());
+        assertEquals(50 * MS, q.getTime(0));
+        assertEquals(1, q.getValue(0), 0);
+        assertEquals(30050 * MS, q.getTime(1));
+        assertEquals(2, q.getValue(1), 0);
+    }
+
+    @Test
+    public void bucketsWrapAroundOnceTheRingIsFull() {
+        // 100 buckets of 100 ms, filled three times over
+        SignalSeries series = ramp(new SignalSeries(1, 100, 14400), 3000);
+        SeriesQuery q = new SeriesQuery(300);
+        series.query(20000 * MS, 29999 * MS, q);
+
+        assertEquals(SeriesQuery.TIER_100MS, q.getTier());
+        assertEquals(200, q.getCount());
+        assertEquals(20050 * MS, q.getTime(0));
+        assertEquals(2000, q.getValue(0), 0);
+        assertEquals(2999, q.getValue(199), 0);
+    }
+
+    @Test
+    public void largeWindowsAreDownsampledToTheBudget() {
+        SignalSeries series = ramp(new SignalSeries(), 4000);
+        SeriesQuery q = new SeriesQuery(50);
+        series.query(0, 40000 * MS, q);
+
+        assertTrue(q.getCount() <= 50);
+        assertEquals(0, q.getValue(0), 0);
+        assertEquals(3999, q.getValue(q.getCount() - 1), 0);
+    }
+
+    @Test
+    public void ignoresNaN() {
+        SignalSeries series = new SignalSeries();
+        assertTrue(Float.isNaN(series.getLatest()));
+        series.add(0, 5);
+        series.add(10 * MS, Double.NaN);
+        assertEquals(1, series.getSampleCount());
+        assertEquals(5, series.getLatest(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyTier() {
+        new SignalSeries(64, 0, 14400);
+    }
+}
@@ -0,0 +1,228 @@
+package com.rajala.can.isotp;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANTxCallback;
+import com.rajala.can.device.FakeCANDevice;
+import com.rajala.can.device.IDiagnosticCANDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ISOTPChannelTest {
+
+    private static final int TX_ID = 0x7E0;
+    private static final int RX_ID = 0x7E8;
+    private static final long WAIT_MS = 5000;
+
+    // What the listener was told, in order
+    private static class Recorder implements ITransferListener {
+
+        final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        final BlockingQueue<ISOTPChannel> sent = new LinkedBlockingQueue<>();
+        final BlockingQueue<ISOTPChannel.Failure> failed = new LinkedBlockingQueue<>();
+
+        public void onTransferReceived(ISOTPChannel channel, byte[] data, int length) {
+            received.add(Arrays.copyOf(data, length));
+        }
+
+        public void onTransferSent(ISOTPChannel channel) {
+            sent.add(channel);
+        }
+
+        public void onTransferFailed(ISOTPChannel channel, ISOTPChannel.Failure failure) {
+            failed.add(failure);
+        }
+    }
+
+    private FakeCANDevice device;
+    private ISOTPEngine engine;
+    private Recorder recorder;
+    private ISOTPChannel channel;
+
+    @Before
+    public void setUp() {
+        device = new FakeCANDevice();
+        engine = new ISOTPEngine(device, 64);
+        engine.start();
+        recorder = new Recorder();
+        channel = engine.open(TX_ID, RX_ID, false, recorder);
+    }
+
+    @After
+    public void tearDown() {
+        engine.stop();
+    }
+
+    @Test
+    public void receivesSingleFrames() throws InterruptedException {
+        device.receive(RX_ID, false, 0x0362F190CCCCCCCCL, 8);
+        assertArrayEquals(new byte[] {0x62, (byte)0xF1, (byte)0x90}, recorder.received.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(0, device.getSentCount());
+    }
+
+    @Test
+    public void ignoresOtherIDs() {
+        device.receive(0x7E9, false, 0x0362F190CCCCCCCCL, 8);
+        assertTrue(recorder.received.isEmpty());
+    }
+
+    @Test
+    public void receivesMultiFrameTransfers() throws InterruptedException {
+        channel.setBlockSize(2);
+        device.receive(RX_ID, false, 0x1010010203040506L, 8);
+        CANMessage flow = device.nextSent(WAIT_MS);
+        assertNotNull(flow);
+        assertEquals(TX_ID, flow.getID());
+        assertEquals(0x300200CCCCCCCCCCL, flow.getLongData());
+
+        device.receive(RX_ID, false, 0x210708090A0B0C0DL, 8);
+        assertNull(device.nextSent(0));
+        // The last frame may be short
+        device.receive(RX_ID, false, 0x220E0F1000000000L, 4);
+
+        byte[] expected = new byte[16];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte)(i + 1);
+        }
+        assertArrayEquals(expected, recorder.received.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, channel.getReceivedTransferCount());
+        assertEquals(16, channel.getReceivedByteCount());
+    }
+
+    @Test
+    public void failsOnAWrongSequenceNumber() throws InterruptedException {
+        device.receive(RX_ID, false, 0x1010010203040506L, 8);
+        device.receive(RX_ID, false, 0x220708090A0B0C0DL, 8);
+        assertEquals(ISOTPChannel.Failure.WRONG_SEQUENCE, recorder.failed.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertFalse(channel.isReceiving());
+    }
+
+    @Test
+    public void refusesTransfersLongerThanTheMaximum() throws InterruptedException {
+        device.receive(RX_ID, false, 0x1041010203040506L, 8);
+        CANMessage flow = device.nextSent(WAIT_MS);
+        assertNotNull(flow);
+        assertEquals(ISOTPFrame.FLOW_OVERFLOW, ISOTPFrame.lowNibble(flow.getLongData()));
+        assertEquals(ISOTPChannel.Failure.TOO_LONG, recorder.failed.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void sendsSingleFrames() throws InterruptedException {
+        assertTrue(channel.send(new byte[] {0x22, (byte)0xF1, (byte)0x90}));
+        CANMessage frame = device.nextSent(WAIT_MS);
+        assertEquals(TX_ID, frame.getID());
+        assertEquals(8, frame.getDLC());
+        assertEquals(0x0322F190CCCCCCCCL, frame.getLongData());
+        assertNotNull(recorder.sent.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, channel.getSentTransferCount());
+    }
+
+    @Test
+    public void sendsShortFramesWithoutPadding() throws InterruptedException {
+        channel.setPadding(ISOTPChannel.NO_PADDING);
+        assertTrue(channel.send(new byte[] {0x3E, 0x00}));
+        CANMessage frame = device.nextSent(WAIT_MS);
+        assertEquals(3, frame.getDLC());
+        assertEquals(0x023E000000000000L, frame.getLongData());
+    }
+
+    @Test
+    public void sendsMultiFrameTransfersAfterFlowControl() throws InterruptedException {
+        byte[] data = new byte[20];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i + 1);
+        }
+        assertTrue(channel.send(data));
+        assertEquals(0x1014010203040506L, device.nextSent(WAIT_MS).getLongData());
+        // Nothing more until the peer answers
+        assertFalse(channel.send(data));
+        assertNull(device.nextSent(50));
+
+        device.receive(RX_ID, false, 0x3000000000000000L, 3);
+        assertEquals(0x210708090A0B0C0DL, device.nextSent(WAIT_MS).getLongData());
+        assertEquals(0x220E0F1011121314L, device.nextSent(WAIT_MS).getLongData());
+        assertNotNull(recorder.sent.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertFalse(channel.isSending());
+        assertEquals(20, channel.getSentByteCount());
+    }
+
+    @Test
+    public void failsWithoutFlowControl() throws InterruptedException {
+        channel.setTimeout(50);
+        assertTrue(channel.send(new byte[20]));
+        assertEquals(ISOTPChannel.Failure.TIMEOUT_FLOW_CONTROL, recorder.failed.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertFalse(channel.isSending());
+    }
+
+    @Test
+    public void failsOnAnOverflowFromThePeer() throws InterruptedException {
+        assertTrue(channel.send(new byte[20]));
+        device.receive(RX_ID, false, 0x3200000000000000L, 3);
+        assertEquals(ISOTPChannel.Failure.OVERFLOW, recorder.failed.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void failsWhenTheDeviceRefusesAFrame() throws InterruptedException {
+        device.setFailSends(true);
+        assertTrue(channel.send(new byte[] {1, 2, 3}));
+        assertEquals(ISOTPChannel.Failure.TX_FAILED, recorder.failed.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void listenOnlyChannelsSendNoFlowControl() throws InterruptedException {
+        Recorder listener = new Recorder();
+        engine.openListenOnly(0x7E9, false, listener);
+        device.receive(0x7E9, false, 0x100A010203040506L, 8);
+        device.receive(0x7E9, false, 0x2107080910000000L, 5);
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 0x10},
+                listener.received.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(0, device.getSentCount());
+    }
+
+    @Test
+    public void closingFailsATransferInProgress() throws InterruptedException {
+        device.receive(RX_ID, false, 0x1010010203040506L, 8);
+        engine.close(channel);
+        assertEquals(ISOTPChannel.Failure.CLOSED, recorder.failed.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(0, device.getFilters().size());
+    }
+
+    @Test
+    public void diagnosticDevicesOnlyTakeListenOnlyChannels() {
+        ISOTPEngine diagnostic = new ISOTPEngine(new DiagnosticDevice());
+        try {
+            diagnostic.open(TX_ID, RX_ID, false, recorder);
+            fail("Opened a sending channel on a diagnostic device");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertNotNull(diagnostic.openListenOnly(RX_ID, false, recorder));
+        assertEquals(1, diagnostic.getChannelCount());
+        diagnostic.stop();
+    }
+
+    // Formats its requests itself, like the ELM327
+    private static class DiagnosticDevice extends FakeCANDevice implements IDiagnosticCANDevice {
+
+        public boolean sendRequest(CANMessage msg, int responses, ICANTxCallback callback) {
+            return sendCANMessage(msg, callback);
+        }
+
+        public int getMaxResponses() {
+            return 1;
+        }
+    }
+}
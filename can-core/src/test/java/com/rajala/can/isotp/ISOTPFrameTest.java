@@ -0,0 +1,77 @@
+package com.rajala.can.isotp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ISOTPFrameTest {
+
+    private static final byte[] BYTES = {
+            0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0A, 0x0B, 0x0C, 0x0D, 0x0E,
+    };
+
+    @Test
+    public void packsSingleFrames() {
+        long data = ISOTPFrame.single(BYTES, 0, 3);
+        assertEquals(0x0301020300000000L, data);
+        assertEquals(ISOTPFrame.SINGLE, ISOTPFrame.type(data));
+        assertEquals(3, ISOTPFrame.lowNibble(data));
+        assertEquals(0x0301020300000000L | 0xCCCCCCCCL, ISOTPFrame.pad(data, 4, 0xCC));
+    }
+
+    @Test
+    public void packsFirstFrames() {
+        long data = ISOTPFrame.first(20, BYTES, 0);
+        assertEquals(0x1014010203040506L, data);
+        assertEquals(ISOTPFrame.FIRST, ISOTPFrame.type(data));
+        assertEquals(ISOTPFrame.FIRST_PAYLOAD, ISOTPFrame.firstPayload(20));
+    }
+
+    @Test
+    public void escapesLongFirstFrames() {
+        int length = ISOTPFrame.MAX_SHORT_LENGTH + 1;
+        long data = ISOTPFrame.first(length, BYTES, 0);
+        assertEquals(0x1000000010000102L, data);
+        assertEquals(ISOTPFrame.FIRST_ESCAPE_PAYLOAD, ISOTPFrame.firstPayload(length));
+    }
+
+    @Test
+    public void packsConsecutiveAndFlowControlFrames() {
+        long data = ISOTPFrame.consecutive(0x11, BYTES, 6, 7);
+        assertEquals(0x210708090A0B0C0DL, data);
+        assertEquals(ISOTPFrame.CONSECUTIVE, ISOTPFrame.type(data));
+        assertEquals(1, ISOTPFrame.lowNibble(data));
+
+        long flow = ISOTPFrame.flowControl(ISOTPFrame.FLOW_WAIT, 8, 0xF5);
+        assertEquals(0x3108F50000000000L, flow);
+        assertEquals(8, ISOTPFrame.getByte(flow, 1));
+        assertEquals(0xF5, ISOTPFrame.getByte(flow, 2));
+    }
+
+    @Test
+    public void readsPayloadBytes() {
+        byte[] buffer = new byte[4];
+        ISOTPFrame.getBytes(0x0301020300000000L, 1, 3, buffer, 1);
+        assertArrayEquals(new byte[] {0, 1, 2, 3}, buffer);
+    }
+
+    @Test
+    public void noPaddingLeavesTheFrameShort() {
+        assertEquals(0x0301020300000000L, ISOTPFrame.pad(0x0301020300000000L, 4, -1));
+    }
+
+    @Test
+    public void convertsSeparationTimes() {
+        assertEquals(0, ISOTPFrame.separationNanos(0));
+        assertEquals(127000000L, ISOTPFrame.separationNanos(0x7F));
+        assertEquals(100000L, ISOTPFrame.separationNanos(0xF1));
+        assertEquals(900000L, ISOTPFrame.separationNanos(0xF9));
+        // Reserved values are read as the longest gap
+        assertEquals(127000000L, ISOTPFrame.separationNanos(0x80));
+        assertTrue(ISOTPFrame.isValidSTmin(0xF3));
+        assertFalse(ISOTPFrame.isValidSTmin(0xFA));
+    }
+}
@@ -0,0 +1,184 @@
+package com.rajala.can.obd;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.device.FakeCANDevice;
+import com.rajala.can.device.ICANDevice;
+import com.rajala.can.device.ICANDeviceListener;
+import com.rajala.can.device.elm327.ELM327;
+import com.rajala.can.isotp.ISOTPEngine;
+import com.rajala.can.transport.ELM327Simulator;
+import com.rajala.can.transport.SimulatorTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class OBDPollerTest {
+
+    private static final long WAIT_MS = 5000;
+    private static final int FLOW_CONTROL = 0x30;
+
+    private FakeCANDevice device;
+    private ISOTPEngine isotp;
+    private OBDPoller poller;
+
+    @Before
+    public void setUp() {
+        device = new FakeCANDevice();
+        isotp = new ISOTPEngine(device);
+        isotp.start();
+        poller = new OBDPoller(device, isotp);
+    }
+
+    @After
+    public void tearDown() {
+        poller.stop();
+        isotp.stop();
+    }
+
+    @Test
+    public void batchesDuePIDsEarliestDeadlineFirst() throws InterruptedException {
+        poller.addPID(0x0D, 10);
+        Thread.sleep(5);
+        poller.addPID(0x05, 10);
+        Thread.sleep(5);
+        poller.addPID(0x0C, 10);
+        final BlockingQueue<Integer> updated = new LinkedBlockingQueue<>();
+        poller.addListener(new IPIDListener() {
+            public void onPIDValue(OBDPID pid, double value, long timestamp) {
+                updated.add(pid.getPID());
+            }
+        });
+        poller.start();
+
+        // PIDs 05, 0C and 0D supported
+        assertArrayEquals(new int[] {0x01, 0x00}, nextRequest());
+        device.receive(OBDPoller.DEFAULT_RESPONSE_ID, false, 0x0641000818000000L, 8);
+
+        // One request for all three, the PID added first leads
+        assertArrayEquals(new int[] {0x01, 0x0D, 0x05, 0x0C}, nextRequest());
+        // 41 0D 50 05 7B 0C 1A F8 takes a first and a consecutive frame
+        device.receive(OBDPoller.DEFAULT_RESPONSE_ID, false, 0x1008410D50057B0CL, 8);
+        assertNotNull(nextSent(FLOW_CONTROL));
+        device.receive(OBDPoller.DEFAULT_RESPONSE_ID, false, 0x211AF80000000000L, 8);
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(updated.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(80, poller.getValue(0x0D), 0);
+        assertEquals(83, poller.getValue(0x05), 0);
+        assertEquals(1726, poller.getValue(0x0C), 0);
+        assertEquals(2, poller.getResponseCount());
+    }
+
+    @Test
+    public void batchesOnlyThePIDsDueSoon() throws InterruptedException {
+        poller.addPID(0x0C, 10);
+        poller.addPID(0x05, 0.5);
+        poller.start();
+        assertArrayEquals(new int[] {0x01, 0x00}, nextRequest());
+        device.receive(OBDPoller.DEFAULT_RESPONSE_ID, false, 0x0641000818000000L, 8);
+
+        assertArrayEquals(new int[] {0x01, 0x0C, 0x05}, nextRequest());
+        device.receive(OBDPoller.DEFAULT_RESPONSE_ID, false, 0x06410C1AF8057B00L, 8);
+        // Coolant temperature is not due for another two seconds
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(new int[] {0x01, 0x0C}, nextRequest());
+            device.receive(OBDPoller.DEFAULT_RESPONSE_ID, false, 0x04410C1AF8000000L, 8);
+        }
+        assertEquals(10, poller.getTargetRate(0x0C), 1e-9);
+    }
+
+    @Test
+    public void leavesOutUnsupportedPIDs() throws InterruptedException {
+        poller.addPID(0x0C, 10);
+        poller.addPID(0x0D, 10);
+        poller.start();
+        // Only PID 0C supported
+        assertArrayEquals(new int[] {0x01, 0x00}, nextRequest());
+        device.receive(OBDPoller.DEFAULT_RESPONSE_ID, false, 0x0641000010000000L, 8);
+
+        assertArrayEquals(new int[] {0x01, 0x0C}, nextRequest());
+        assertTrue(poller.isPolling(0x0C));
+        assertFalse(poller.isPolling(0x0D));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSupportPIDs() {
+        poller.addPID(0x20, 1);
+    }
+
+    @Test
+    public void pollsTheSimulatedELM327() throws InterruptedException {
+        final CountDownLatch connected = new CountDownLatch(1);
+        ELM327 elm = new ELM327(new ICANDeviceListener() {
+            public void onDeviceConnected(ICANDevice device, String deviceName) {
+                connected.countDown();
+            }
+
+            public void onDeviceDisconnected(ICANDevice device) {
+            }
+        }, new SimulatorTransport(new ELM327Simulator()), "sim");
+        ISOTPEngine elmIsotp = new ISOTPEngine(elm);
+        OBDPoller elmPoller = new OBDPoller(elm, elmIsotp);
+        try {
+            assertTrue(connected.await(WAIT_MS, TimeUnit.MILLISECONDS));
+            elmIsotp.start();
+            elmPoller.addPID(0x0C, 20);
+            elmPoller.addPID(0x0D, 20);
+            elmPoller.addPID(0x05, 20);
+            // Not one of the simulated ECU's PIDs
+            elmPoller.addPID(0x5E, 20);
+            elmPoller.start();
+
+            long deadline = System.currentTimeMillis() + WAIT_MS;
+            while (elmPoller.getResponseCount() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(elmPoller.getResponseCount() >= 5);
+            assertFalse(Double.isNaN(elmPoller.getValue(0x0C)));
+            assertFalse(Double.isNaN(elmPoller.getValue(0x0D)));
+            assertFalse(Double.isNaN(elmPoller.getValue(0x05)));
+            assertFalse(elmPoller.isPolling(0x5E));
+        } finally {
+            elmPoller.stop();
+            elmIsotp.stop();
+            elm.stop();
+        }
+    }
+
+    // Payload of the next single frame request, without its PCI byte
+    private int[] nextRequest() throws InterruptedException {
+        CANMessage msg = nextSent(0x00);
+        assertNotNull(msg);
+        assertEquals(OBDPoller.DEFAULT_REQUEST_ID, msg.getID());
+        int[] payload = new int[msg.getByte(0) & 0x0F];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = msg.getByte(1 + i);
+        }
+        return payload;
+    }
+
+    // Next frame whose PCI type is type, skipping others
+    private CANMessage nextSent(int type) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            CANMessage msg = device.nextSent(deadline - System.currentTimeMillis());
+            if (msg != null && (msg.getByte(0) & 0xF0) == type) {
+                return msg;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+package com.rajala.can.record;
+
+import com.rajala.can.CANMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CANRecorderTest {
+
+    // Room for four records per segment
+    private static final int SMALL_SEGMENT = CANTraceFormat.HEADER_SIZE + 4 * CANTraceFormat.RECORD_SIZE;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = TraceFiles.createDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        TraceFiles.delete(directory);
+    }
+
+    @Test
+    public void recordsFramesAsTheyArrived() throws IOException {
+        CANRecorder recorder = new CANRecorder(directory);
+        recorder.start();
+        recorder.onCANMessage(frame(1, 0x123, false, 0x1122334455667788L, 8, 1000));
+        recorder.onCANMessage(frame(2, 0x18DAF110, true, 0x0210000000000000L, 2, 2000));
+        recorder.onCANMessage(frame(1, 0x7FF, false, 0, 0, 3000));
+        recorder.stop();
+
+        assertEquals(3, recorder.getRecordedFrameCount());
+        assertEquals(0, recorder.getDroppedFrameCount());
+        assertNull(recorder.getLastError());
+        File[] segments = CANTraceReader.listSegments(directory, "capture");
+        assertEquals(1, segments.length);
+        // The unused tail of the segment is trimmed on close
+        assertEquals(CANTraceFormat.HEADER_SIZE + 3 * CANTraceFormat.RECORD_SIZE, segments[0].length());
+
+        CANTraceReader reader = new CANTraceReader(segments);
+        assertEquals(3, reader.getRecordCount());
+        CANMessage msg = new CANMessage();
+        reader.read(0, msg);
+        assertEquals(1, msg.getChannel());
+        assertEquals(0x123, msg.getID());
+        assertFalse(msg.isExtended());
+        assertEquals(0x1122334455667788L, msg.getLongData());
+        assertEquals(8, msg.getDLC());
+        assertEquals(1000, msg.getTimestamp());
+        reader.read(1, msg);
+        assertEquals(2, msg.getChannel());
+        assertEquals(0x18DAF110, msg.getID());
+        assertTrue(msg.isExtended());
+        assertEquals(2, msg.getDLC());
+        reader.read(2, msg);
+        assertEquals(0, msg.getDLC());
+        assertEquals(3000, reader.getTimestamp(2));
+    }
+
+    @Test
+    public void rollsOverToNewSegments() throws IOException {
+        CANRecorder recorder = record(null, 10);
+        assertEquals(10, recorder.getRecordedFrameCount());
+
+        File[] segments = CANTraceReader.listSegments(directory, "test");
+        assertEquals(3, segments.length);
+        assertEquals("test-00000.cantrace", segments[0].getName());
+        assertEquals("test-00002.cantrace", segments[2].getName());
+        CANTraceReader reader = new CANTraceReader(segments);
+        assertEquals(10, reader.getRecordCount());
+        CANMessage msg = new CANMessage();
+        for (int i = 0; i < 10; i++) {
+            reader.read(i, msg);
+            assertEquals(0x100 + i, msg.getID());
+        }
+    }
+
+    @Test
+    public void keepsOnlyTheNewestSegments() throws IOException {
+        CANRecorder recorder = record(2, 10);
+        assertEquals(1, recorder.getDeletedSegmentCount());
+
+        File[] segments = CANTraceReader.listSegments(directory, "test");
+        assertEquals(2, segments.length);
+        CANTraceReader reader = new CANTraceReader(segments);
+        assertEquals(6, reader.getRecordCount());
+        CANMessage msg = new CANMessage();
+        reader.read(0, msg);
+        assertEquals(0x104, msg.getID());
+    }
+
+    @Test
+    public void laterRecordingsContinueTheNumbering() throws IOException {
+        record(2, 10);
+        // Not one of the recorder's names, so never deleted
+        File foreign = new File(directory, "test-7.cantrace");
+        assertTrue(foreign.createNewFile());
+
+        record(2, 6);
+        File[] segments = CANTraceReader.listSegments(directory, "test");
+        assertEquals(3, segments.length);
+        assertEquals("test-00003.cantrace", segments[0].getName());
+        assertEquals("test-00004.cantrace", segments[1].getName());
+        assertEquals(foreign, segments[2]);
+    }
+
+    @Test
+    public void dropsFramesWhileStopped() {
+        CANRecorder recorder = new CANRecorder(directory);
+        recorder.onCANMessage(frame(1, 0x100, false, 0, 0, 0));
+        assertEquals(1, recorder.getDroppedFrameCount());
+        assertEquals(0, CANTraceReader.listSegments(directory, "capture").length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAZeroFlushInterval() {
+        new CANRecorder(directory, "test", SMALL_SEGMENT, 0, CANRecorder.DEFAULT_FLUSH_SIZE);
+    }
+
+    @Test(expected = IOException.class)
+    public void readerRejectsOtherFiles() throws IOException {
+        File other = new File(directory, "other.cantrace");
+        assertTrue(other.createNewFile());
+        new CANTraceReader(other);
+    }
+
+    // Records count frames with IDs from 0x100 into four record segments
+    private CANRecorder record(Integer maxSegments, int count) {
+        CANRecorder recorder = new CANRecorder(directory, "test", SMALL_SEGMENT, 10, CANRecorder.DEFAULT_FLUSH_SIZE);
+        if (maxSegments != null) {
+            recorder.setMaxSegments(maxSegments);
+        }
+        recorder.start();
+        for (int i = 0; i < count; i++) {
+            recorder.onCANMessage(frame(1, 0x100 + i, false, i, 1, 1000L * (i + 1)));
+        }
+        recorder.stop();
+        return recorder;
+    }
+
+    private static CANMessage frame(int channel, int id, boolean extended, long data, int dlc, long timestamp) {
+        CANMessage msg = new CANMessage();
+        msg.set(channel, id, extended, data, dlc, timestamp);
+        return msg;
+    }
+}
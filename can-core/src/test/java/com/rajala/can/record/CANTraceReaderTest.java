@@ -0,0 +1,97 @@
+package com.rajala.can.record;
+
+import com.rajala.can.CANMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class CANTraceReaderTest {
+
+    private static final long MS = 1000000L;
+    private static final long HOUR_MS = 3600000L;
+    private static final long WALL = 1500000000000L;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = TraceFiles.createDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        TraceFiles.delete(directory);
+    }
+
+    @Test
+    public void segmentsOfOneRecordingKeepTheirTimestamps() throws IOException {
+        CANTraceReader reader = new CANTraceReader(
+                TraceFiles.write(file(0), WALL, 5000 * MS, 5100 * MS, 5200 * MS),
+                TraceFiles.write(file(1), WALL + 300, 5300 * MS, 5350 * MS));
+        assertEquals(3, reader.getRecordCount());
+        assertEquals(5100 * MS, reader.getTimestamp(0));
+        assertEquals(5200 * MS, reader.getTimestamp(1));
+        assertEquals(5350 * MS, reader.getTimestamp(2));
+        assertEquals(250 * MS, reader.getDuration());
+    }
+
+    @Test
+    public void aRecordingAfterARebootContinuesTheTrace() throws IOException {
+        // The nanoTime origin moved back, and hours went by
+        CANTraceReader reader = new CANTraceReader(
+                TraceFiles.write(file(0), WALL, 5000 * MS, 5100 * MS, 5200 * MS),
+                TraceFiles.write(file(1), WALL + 3 * HOUR_MS, 1000 * MS, 1100 * MS, 1300 * MS));
+        assertEquals(5100 * MS, reader.getStartTime());
+        assertEquals(5200 * MS, reader.getTimestamp(2));
+        assertEquals(5400 * MS, reader.getTimestamp(3));
+
+        CANMessage msg = new CANMessage();
+        reader.read(3, msg);
+        assertEquals(5400 * MS, msg.getTimestamp());
+        assertEquals(0x101, msg.getID());
+    }
+
+    @Test
+    public void aLaterRecordingLeavesOutTheTimeBetween() throws IOException {
+        // Same nanoTime origin, but the wall clock says the device slept in between
+        CANTraceReader reader = new CANTraceReader(
+                TraceFiles.write(file(0), WALL, 5000 * MS, 5100 * MS, 5200 * MS),
+                TraceFiles.write(file(1), WALL + 3 * HOUR_MS, 9000 * MS, 9050 * MS));
+        assertEquals(5200 * MS, reader.getTimestamp(2));
+        assertEquals(100 * MS, reader.getDuration());
+    }
+
+    @Test
+    public void emptySegmentsDoNotBreakTheTrace() throws IOException {
+        CANTraceReader reader = new CANTraceReader(
+                TraceFiles.write(file(0), WALL, 5000 * MS),
+                TraceFiles.write(file(1), WALL + HOUR_MS, 100 * MS, 200 * MS),
+                TraceFiles.write(file(2), WALL + 2 * HOUR_MS, 50 * MS),
+                TraceFiles.write(file(3), WALL + 3 * HOUR_MS, 70 * MS, 80 * MS));
+        assertEquals(2, reader.getRecordCount());
+        assertEquals(200 * MS, reader.getTimestamp(0));
+        assertEquals(200 * MS, reader.getTimestamp(1));
+    }
+
+    @Test
+    public void seeksRelativeToTheStart() throws IOException {
+        CANTraceReader reader = new CANTraceReader(
+                TraceFiles.write(file(0), WALL, 5000 * MS, 5100 * MS, 5200 * MS),
+                TraceFiles.write(file(1), WALL + 3 * HOUR_MS, 1000 * MS, 1100 * MS, 1300 * MS));
+        assertEquals(0, reader.seek(0));
+        assertEquals(1, reader.seek(50 * MS));
+        assertEquals(1, reader.seek(100 * MS));
+        assertEquals(3, reader.seek(101 * MS));
+        assertEquals(4, reader.seek(HOUR_MS * MS));
+    }
+
+    private File file(int index) {
+        return new File(directory, "capture-0000" + index + CANTraceFormat.FILE_EXTENSION);
+    }
+}
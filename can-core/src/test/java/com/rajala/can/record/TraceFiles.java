@@ -0,0 +1,61 @@
+package com.rajala.can.record;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes trace segments with chosen header clocks, as recordings of other runs would have left
+ * them. Record i gets the ID 0x100 + i.
+ */
+public final class TraceFiles {
+
+    private TraceFiles() {
+    }
+
+    public static File write(File file, long wallClockMs, long nanoBase, long... timestamps) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CANTraceFormat.HEADER_SIZE
+                + timestamps.length * CANTraceFormat.RECORD_SIZE);
+        buffer.putInt(CANTraceFormat.HEADER_MAGIC, CANTraceFormat.MAGIC);
+        buffer.putShort(CANTraceFormat.HEADER_VERSION, CANTraceFormat.VERSION);
+        buffer.putShort(CANTraceFormat.HEADER_RECORD_SIZE, (short)CANTraceFormat.RECORD_SIZE);
+        buffer.putLong(CANTraceFormat.HEADER_WALL_CLOCK, wallClockMs);
+        buffer.putLong(CANTraceFormat.HEADER_NANO_BASE, nanoBase);
+        buffer.putLong(CANTraceFormat.HEADER_RECORD_COUNT, timestamps.length);
+        for (int i = 0; i < timestamps.length; i++) {
+            int position = CANTraceFormat.HEADER_SIZE + i * CANTraceFormat.RECORD_SIZE;
+            buffer.putLong(position + CANTraceFormat.RECORD_TIMESTAMP, timestamps[i]);
+            buffer.putInt(position + CANTraceFormat.RECORD_ID, 0x100 + i);
+            buffer.put(position + CANTraceFormat.RECORD_CHANNEL, (byte)1);
+            buffer.put(position + CANTraceFormat.RECORD_DLC, (byte)8);
+            buffer.putLong(position + CANTraceFormat.RECORD_DATA, i);
+        }
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.write(buffer.array());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    public static File createDirectory() throws IOException {
+        File directory = File.createTempFile("trace", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create " + directory);
+        }
+        return directory;
+    }
+
+    public static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,162 @@
+package com.rajala.can.session;
+
+import com.rajala.can.CANFilter;
+import com.rajala.can.CANMessage;
+import com.rajala.can.ICANListener;
+import com.rajala.can.device.FakeCANDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CANSessionTest {
+
+    private static final long WAIT_MS = 5000;
+    private static final long MS = 1000000L;
+
+    // Copies of the merged frames
+    private final BlockingQueue<CANMessage> merged = new LinkedBlockingQueue<>();
+    private final ICANListener listener = new ICANListener() {
+        public void onCANMessage(CANMessage msg) {
+            CANMessage copy = new CANMessage();
+            copy.copyFrom(msg);
+            merged.add(copy);
+        }
+    };
+
+    private CANSession session;
+    private FakeCANDevice first;
+    private FakeCANDevice second;
+    private long base;
+
+    @Before
+    public void setUp() {
+        session = new CANSession(16);
+        first = new FakeCANDevice();
+        second = new FakeCANDevice();
+        session.addDevice(1, first);
+        session.addDevice(2, second);
+        base = System.nanoTime();
+    }
+
+    @After
+    public void tearDown() {
+        session.stop();
+    }
+
+    @Test
+    public void mergesTheChannelsInTimestampOrder() throws InterruptedException {
+        session.setMaxLateness(TimeUnit.SECONDS.toNanos(60));
+        session.addCANListener(listener);
+        session.start();
+
+        first.receive(0x100, false, 1, 1, base + MS);
+        first.receive(0x100, false, 3, 1, base + 3 * MS);
+        second.receive(0x200, false, 2, 1, base + 2 * MS);
+        second.receive(0x200, false, 4, 1, base + 4 * MS);
+
+        for (int i = 1; i <= 3; i++) {
+            CANMessage msg = merged.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(msg);
+            assertEquals(i, msg.getLongData());
+            assertEquals((i % 2 == 1) ? 1 : 2, msg.getSource());
+        }
+        // The first channel might still receive something older
+        assertNull(merged.poll(100, TimeUnit.MILLISECONDS));
+
+        session.setMaxLateness(0);
+        CANMessage last = merged.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull(last);
+        assertEquals(4, last.getLongData());
+        assertEquals(4, session.getMergedCount());
+        assertEquals(0, session.getLateCount());
+    }
+
+    @Test
+    public void countsFramesDeliveredOutOfOrder() throws InterruptedException {
+        session.setMaxLateness(0);
+        session.addCANListener(listener);
+        session.start();
+
+        first.receive(0x100, false, 2, 1, base + 2 * MS);
+        assertEquals(2, merged.poll(WAIT_MS, TimeUnit.MILLISECONDS).getLongData());
+        second.receive(0x200, false, 1, 1, base + MS);
+        assertEquals(1, merged.poll(WAIT_MS, TimeUnit.MILLISECONDS).getLongData());
+        assertEquals(1, session.getLateCount());
+    }
+
+    @Test
+    public void subscribesTheDevicesWithTheListenersFilters() throws InterruptedException {
+        session.setMaxLateness(0);
+        session.addCANListener(listener, CANFilter.id(0x100));
+        assertEquals(Collections.singletonList(CANFilter.id(0x100)), first.getFilters());
+        assertEquals(Collections.singletonList(CANFilter.id(0x100)), second.getFilters());
+        session.start();
+
+        second.receive(0x200, false, 1, 1, base);
+        second.receive(0x100, false, 2, 1, base + MS);
+        CANMessage msg = merged.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(0x100, msg.getID());
+        assertEquals(2, msg.getSource());
+
+        session.removeCANListener(listener);
+        assertTrue(first.getFilters().isEmpty());
+        assertTrue(second.getFilters().isEmpty());
+    }
+
+    @Test
+    public void stoppingStopsTheDevices() {
+        session.start();
+        session.stop();
+        assertTrue(first.isStopped());
+        assertTrue(second.isStopped());
+    }
+
+    @Test
+    public void keepsTheBusChannelsOfEachDevice() throws InterruptedException {
+        session.setMaxLateness(0);
+        session.addCANListener(listener);
+        session.start();
+
+        // CAN1 and CAN2 of the second device, then CAN2 of the first
+        second.receive(1, 0x100, false, 1, 1, base + MS);
+        second.receive(2, 0x100, false, 2, 1, base + 2 * MS);
+        first.receive(2, 0x100, false, 3, 1, base + 3 * MS);
+        int[][] expected = {{2, 1}, {2, 2}, {1, 2}};
+        for (int[] bus : expected) {
+            CANMessage msg = merged.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull(msg);
+            assertEquals(bus[0], msg.getSource());
+            assertEquals(bus[1], msg.getChannel());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sessionChannelsArePositive() {
+        session.addDevice(CANMessage.NO_SOURCE, new FakeCANDevice());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void channelsMustBeUnique() {
+        session.addDevice(1, new FakeCANDevice());
+    }
+
+    @Test
+    public void removedDevicesAreUnsubscribed() {
+        session.addCANListener(listener);
+        assertEquals(first, session.removeDevice(1));
+        assertTrue(first.getFilters().isEmpty());
+        assertEquals(1, session.getDeviceCount());
+        assertNull(session.removeDevice(1));
+    }
+}
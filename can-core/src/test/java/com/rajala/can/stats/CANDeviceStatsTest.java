@@ -0,0 +1,121 @@
+package com.rajala.can.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CANDeviceStatsTest {
+
+    @Test
+    public void snapshotsCopyTheCounters() {
+        CANDeviceStats stats = new CANDeviceStats();
+        stats.recordFrame(0x100, false);
+        stats.recordFrame(0x100, false);
+        stats.recordBytes(40);
+        stats.recordParseError();
+        stats.recordOverflow();
+        stats.recordDrop();
+        stats.recordReconnect();
+        stats.recordTransmit(true);
+        stats.recordTransmit(false);
+        stats.setQueueDepthGauge(new CANDeviceStats.Gauge() {
+            public long get() {
+                return 7;
+            }
+        });
+
+        CANDeviceStats.Snapshot snapshot = stats.snapshot();
+        stats.recordFrame(0x100, false);
+        // Later frames do not change an earlier snapshot
+        assertEquals(2, snapshot.getFrameCount());
+        assertEquals(40, snapshot.getByteCount());
+        assertEquals(1, snapshot.getParseErrorCount());
+        assertEquals(1, snapshot.getOverflowCount());
+        assertEquals(1, snapshot.getDroppedFrameCount());
+        assertEquals(1, snapshot.getReconnectCount());
+        assertEquals(1, snapshot.getTransmittedFrameCount());
+        assertEquals(1, snapshot.getTransmitFailureCount());
+        assertEquals(7, snapshot.getQueueDepth());
+        assertEquals(1, snapshot.getIdCount());
+        assertEquals(0x100, snapshot.getID(0));
+        assertEquals(2, snapshot.getFrameCount(0));
+    }
+
+    @Test
+    public void countsStandardAndExtendedIDsApart() {
+        CANDeviceStats stats = new CANDeviceStats();
+        stats.recordFrame(0x100, false);
+        stats.recordFrame(0x100, true);
+        stats.recordFrame(0x100, true);
+
+        CANDeviceStats.Snapshot snapshot = stats.snapshot();
+        assertEquals(2, snapshot.getIdCount());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(0x100, snapshot.getID(i));
+            assertEquals(snapshot.isExtended(i) ? 2 : 1, snapshot.getFrameCount(i));
+        }
+    }
+
+    @Test
+    public void keepsTheCountsWhenTheIDTableGrows() {
+        CANDeviceStats stats = new CANDeviceStats();
+        for (int id = 0; id < 1000; id++) {
+            for (int n = 0; n <= id % 3; n++) {
+                stats.recordFrame(id, false);
+            }
+        }
+
+        CANDeviceStats.Snapshot snapshot = stats.snapshot();
+        assertEquals(1000, snapshot.getIdCount());
+        boolean[] seen = new boolean[1000];
+        for (int i = 0; i < snapshot.getIdCount(); i++) {
+            int id = snapshot.getID(i);
+            assertFalse(seen[id]);
+            seen[id] = true;
+            assertEquals(id % 3 + 1, snapshot.getFrameCount(i));
+        }
+    }
+
+    @Test
+    public void deltaCountsTheInterval() throws InterruptedException {
+        CANDeviceStats stats = new CANDeviceStats();
+        stats.recordFrame(0x100, false);
+        stats.recordBytes(10);
+        CANDeviceStats.Snapshot earlier = stats.snapshot();
+
+        Thread.sleep(20);
+        stats.recordFrame(0x100, false);
+        stats.recordFrame(0x100, false);
+        stats.recordFrame(0x200, false);
+        stats.recordBytes(30);
+        CANDeviceStats.Snapshot later = stats.snapshot();
+
+        CANDeviceStats.Snapshot delta = later.delta(earlier);
+        assertEquals(3, delta.getFrameCount());
+        assertEquals(30, delta.getByteCount());
+        assertEquals(later.getInterval() - earlier.getInterval(), delta.getInterval());
+        assertTrue(delta.getInterval() >= 20000000L);
+        assertEquals(3e9 / delta.getInterval(), delta.getFramesPerSecond(), 1e-9);
+
+        // IDs first seen in the interval count from zero
+        assertEquals(2, delta.getIdCount());
+        for (int i = 0; i < 2; i++) {
+            assertEquals((delta.getID(i) == 0x100) ? 2 : 1, delta.getFrameCount(i));
+        }
+    }
+
+    @Test
+    public void resetClearsTheCounters() {
+        CANDeviceStats stats = new CANDeviceStats();
+        stats.recordFrame(0x100, false);
+        stats.recordTransmit(false);
+        stats.reset();
+
+        CANDeviceStats.Snapshot snapshot = stats.snapshot();
+        assertEquals(0, snapshot.getFrameCount());
+        assertEquals(0, snapshot.getTransmitFailureCount());
+        assertEquals(0, snapshot.getQueueDepth());
+    }
+}
@@ -0,0 +1,76 @@
+package com.rajala.can.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+        assertEquals(50, histogram.getTotalCount());
+        assertEquals(25, histogram.getMean());
+        assertEquals(25, histogram.getValueAtPercentile(50));
+        assertEquals(50, histogram.getValueAtPercentile(100));
+        assertEquals(50, histogram.getMax());
+    }
+
+    @Test
+    public void largeValuesAreWithinThreePercent() {
+        long[] values = {100, 1000, 12345, 1000000, 987654321L, 123456789012L};
+        for (long value : values) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(LatencyHistogram.MAX_VALUE);
+            long reported = histogram.getValueAtPercentile(50);
+            assertTrue(value + " reported as " + reported, reported >= value && reported <= value * 1.03 + 1);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000000);
+        }
+        long p50 = histogram.getValueAtPercentile(50);
+        long p999 = histogram.getValueAtPercentile(99.9);
+        assertTrue(p50 >= 1000 && p50 < 1040);
+        assertEquals(1000000, p999);
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    public void reset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,103 @@
+package com.rajala.can.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TCPTransportTest {
+
+    private ServerSocket server;
+    private final TCPTransport transport = new TCPTransport();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new ServerSocket(0);
+        server.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    public void exchangesBytesWithTheAdapter() throws IOException {
+        transport.connect("127.0.0.1:" + server.getLocalPort());
+        assertTrue(transport.isConnected());
+        Socket adapter = server.accept();
+        try {
+            transport.getOutputStream().write("ATZ\r".getBytes("US-ASCII"));
+            transport.getOutputStream().flush();
+            assertArrayEquals("ATZ\r".getBytes("US-ASCII"), read(adapter.getInputStream(), 4));
+
+            adapter.getOutputStream().write("OK\r>".getBytes("US-ASCII"));
+            adapter.getOutputStream().flush();
+            assertArrayEquals("OK\r>".getBytes("US-ASCII"), read(transport.getInputStream(), 4));
+        } finally {
+            adapter.close();
+        }
+    }
+
+    @Test
+    public void closeEndsTheStreams() throws IOException {
+        transport.connect("127.0.0.1:" + server.getLocalPort());
+        Socket adapter = server.accept();
+        try {
+            transport.close();
+            assertFalse(transport.isConnected());
+            assertNull(transport.getInputStream());
+            assertNull(transport.getOutputStream());
+            // The adapter sees the end of the stream
+            assertEquals(-1, adapter.getInputStream().read());
+            // Closing twice is harmless
+            transport.close();
+        } finally {
+            adapter.close();
+        }
+    }
+
+    @Test
+    public void aFailedConnectLeavesTheTransportClosed() throws IOException {
+        int port = server.getLocalPort();
+        server.close();
+        try {
+            transport.connect("127.0.0.1:" + port);
+        } catch (IOException expected) {
+            assertFalse(transport.isConnected());
+            assertNull(transport.getInputStream());
+            return;
+        }
+        throw new AssertionError("Connected to a closed port");
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnInvalidPort() throws IOException {
+        transport.connect("127.0.0.1:elm");
+    }
+
+    private static byte[] read(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int count = 0;
+        while (count < length) {
+            int n = in.read(bytes, count, length - count);
+            if (n < 0) {
+                throw new IOException("Stream ended after " + count + " bytes");
+            }
+            count += n;
+        }
+        return bytes;
+    }
+}
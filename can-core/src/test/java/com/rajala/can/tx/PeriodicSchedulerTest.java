@@ -0,0 +1,171 @@
+package com.rajala.can.tx;
+
+import com.rajala.can.CANMessage;
+import com.rajala.can.device.FakeCANDevice;
+import com.rajala.can.device.ICyclicCANDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PeriodicSchedulerTest {
+
+    private static final long WAIT_MS = 2000;
+    private static final long MS = 1000000L;
+
+    // Fake with one cyclic slot
+    private static class CyclicDevice extends FakeCANDevice implements ICyclicCANDevice {
+
+        volatile CANMessage cyclic;
+
+        public int getCyclicSlotCount() {
+            return 1;
+        }
+
+        public boolean startCyclic(int slot, CANMessage msg) {
+            CANMessage copy = new CANMessage();
+            copy.copyFrom(msg);
+            cyclic = copy;
+            return true;
+        }
+
+        public boolean stopCyclic(int slot) {
+            cyclic = null;
+            return true;
+        }
+    }
+
+    private FakeCANDevice device;
+    private PeriodicScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        device = new FakeCANDevice();
+        scheduler = new PeriodicScheduler(device);
+        scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void sendsEveryPeriod() throws InterruptedException {
+        PeriodicScheduler.Entry entry = scheduler.schedule(periodic(0x123, 20));
+        assertFalse(entry.isOffloaded());
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            CANMessage msg = device.nextSent(WAIT_MS);
+            assertNotNull(msg);
+            assertEquals(0x123, msg.getID());
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue("Sent 5 frames in " + elapsed / MS + " ms", elapsed >= 90 * MS);
+        // The statistics are updated after each send
+        scheduler.stop();
+        assertTrue(entry.getSentFrameCount() >= 5);
+        assertTrue(entry.getMaxJitter() >= entry.getMeanJitter());
+    }
+
+    @Test
+    public void anEarlierFrameWakesTheParkedScheduler() throws InterruptedException {
+        // The scheduler parks until this one is due in a minute
+        scheduler.schedule(periodic(0x100, 60000));
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        scheduler.schedule(periodic(0x200, 10));
+        CANMessage msg = device.nextSent(WAIT_MS);
+        assertNotNull(msg);
+        assertEquals(0x200, msg.getID());
+        assertTrue(System.nanoTime() - start < 1000 * MS);
+    }
+
+    @Test
+    public void schedulingIntoAnEmptyWheelWakesTheScheduler() throws InterruptedException {
+        PeriodicScheduler.Entry entry = scheduler.schedule(periodic(0x100, 10));
+        assertNotNull(device.nextSent(WAIT_MS));
+        scheduler.cancel(entry);
+        // The cancelled entry is dropped and the scheduler parks with nothing to do
+        Thread.sleep(50);
+        while (device.nextSent(0) != null) {
+        }
+        assertNull(device.nextSent(50));
+
+        scheduler.schedule(periodic(0x200, 10));
+        CANMessage msg = device.nextSent(WAIT_MS);
+        assertNotNull(msg);
+        assertEquals(0x200, msg.getID());
+    }
+
+    @Test
+    public void anEmptySchedulerParksUntilAFrameIsScheduled() throws InterruptedException {
+        Thread thread = null;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("PeriodicScheduler")) {
+                thread = t;
+            }
+        }
+        assertNotNull(thread);
+        Thread.sleep(50);
+        // Parked without a timeout, not woken every tick
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    @Test
+    public void sendsTheUpdatedPayload() throws InterruptedException {
+        PeriodicScheduler.Entry entry = scheduler.schedule(periodic(0x123, 10));
+        assertNotNull(device.nextSent(WAIT_MS));
+        scheduler.update(entry, 0x1122000000000000L, 2);
+        // One frame may already have been copied before the update
+        CANMessage msg = device.nextSent(WAIT_MS);
+        if (msg.getDLC() != 2) {
+            msg = device.nextSent(WAIT_MS);
+        }
+        assertEquals(2, msg.getDLC());
+        assertEquals(0x1122000000000000L, msg.getLongData());
+    }
+
+    @Test
+    public void cancelledFramesStop() throws InterruptedException {
+        PeriodicScheduler.Entry entry = scheduler.schedule(periodic(0x123, 10));
+        assertEquals(1, scheduler.getScheduledCount());
+        assertNotNull(device.nextSent(WAIT_MS));
+        scheduler.cancel(entry);
+        assertEquals(0, scheduler.getScheduledCount());
+        Thread.sleep(30);
+        while (device.nextSent(0) != null) {
+        }
+        assertNull(device.nextSent(100));
+    }
+
+    @Test
+    public void offloadsToTheFreeCyclicSlots() {
+        CyclicDevice cyclicDevice = new CyclicDevice();
+        PeriodicScheduler offloading = new PeriodicScheduler(cyclicDevice);
+        PeriodicScheduler.Entry first = offloading.schedule(periodic(0x100, 100));
+        PeriodicScheduler.Entry second = offloading.schedule(periodic(0x200, 100));
+        assertTrue(first.isOffloaded());
+        assertFalse(second.isOffloaded());
+        assertEquals(0x100, cyclicDevice.cyclic.getID());
+
+        offloading.cancel(first);
+        assertNull(cyclicDevice.cyclic);
+        assertEquals(1, offloading.getScheduledCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFramesThatAreNotPeriodic() {
+        scheduler.schedule(new CANMessage(1, 0x123, 8, false, 0));
+    }
+
+    private static CANMessage periodic(int id, int periodMs) {
+        return new CANMessage(1, id, 8, true, periodMs);
+    }
+}